@@ -5,15 +5,47 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import id.my.dsm.vrpsolver.engine.AlnsEngine;
+import id.my.dsm.vrpsolver.engine.ClarkeWrightEngine;
+import id.my.dsm.vrpsolver.engine.ClusterEngine;
+import id.my.dsm.vrpsolver.engine.LocalSearchEngine;
+import id.my.dsm.vrpsolver.engine.MultiDepotEngine;
+import id.my.dsm.vrpsolver.engine.MultiStartEngine;
+import id.my.dsm.vrpsolver.engine.NearestNeighborEngine;
+import id.my.dsm.vrpsolver.engine.SavingsEngine;
+import id.my.dsm.vrpsolver.engine.SavingsMatrix;
+import id.my.dsm.vrpsolver.engine.SolverControl;
+import id.my.dsm.vrpsolver.engine.SolverPool;
+import id.my.dsm.vrpsolver.engine.SpatialNearestNeighborEngine;
+import id.my.dsm.vrpsolver.engine.TimeWindows;
+import id.my.dsm.vrpsolver.enums.ClusteringMethod;
 import id.my.dsm.vrpsolver.enums.OptimizationMethod;
+import id.my.dsm.vrpsolver.event.OptimizationProgressListener;
 import id.my.dsm.vrpsolver.event.OptimizationResponseError;
 import id.my.dsm.vrpsolver.event.OptimizationResponseListener;
+import id.my.dsm.vrpsolver.matrix.DistanceMatrix;
+import id.my.dsm.vrpsolver.matrix.DistanceOracle;
+import id.my.dsm.vrpsolver.matrix.HaversineMatrixBuilder;
+import id.my.dsm.vrpsolver.matrix.HaversineOracle;
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.matrix.OracleMatrix;
+import id.my.dsm.vrpsolver.matrix.SymmetricDistanceMatrix;
 import id.my.dsm.vrpsolver.model.Location;
 import id.my.dsm.vrpsolver.model.MatrixElement;
 import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.SolutionSet;
 import id.my.dsm.vrpsolver.model.Vehicle;
 
 public class DSMSolver {
@@ -21,22 +53,130 @@ public class DSMSolver {
     // Constants
     private static final String TAG = DSMSolver.class.getSimpleName();
 
-    // Internal dependencies
-    private static OptimizationMethod optimizationMethod = OptimizationMethod.NEAREST_NEIGHBOR;
+    public static final long DEFAULT_PROGRESS_INTERVAL_MILLIS = 100;
+
+    private final List<MatrixElement> matrix;
+    private final IndexedMatrix indexedMatrix;
+    private final DistanceOracle distanceOracle;
+    private final IndexedMatrix durations;
+    private final List<Location> places;
+    private final List<Vehicle> vehicles;
+    private final OptimizationMethod optimizationMethod;
+    private final boolean isRoundTrip;
+    private final boolean isLazySavings;
+    private final int oracleCacheCapacity;
+    private final boolean isSpatialIndex;
+    private final long timeLimitMillis;
+    private final boolean isLocalSearch;
+    private final boolean isInterRouteSearch;
+    private final int localSearchNeighborCount;
+    private final OptimizationMethod initialMethod;
+    private final Long randomSeed;
+    private final int multiStartCount;
+    private final boolean isTimeConstrained;
+    private final boolean isMultiDepot;
+    private final boolean isCrossDepotSearch;
+    private final ClusteringMethod clusteringMethod;
+    private final int maxClusterSize;
+    private final boolean isBoundaryRepair;
+
+    // Listeners of every solver, see setOnOptimizationResponseListener
+    private static final CopyOnWriteArrayList<OptimizationResponseListener> globalResponseListeners = new CopyOnWriteArrayList<>();
+
+    // Listeners of this solver only, safe to add or remove while a response is dispatched
+    private final CopyOnWriteArrayList<OptimizationResponseListener> optimizationResponseListeners;
+    private final CopyOnWriteArrayList<OptimizationProgressListener> optimizationProgressListeners;
+    private final long progressIntervalMillis;
+
+    /**
+     * Configuration is copied from the builder and never changes afterwards. The matrix, indexed
+     * matrix and distance oracle are shared, not copied, and must not be modified while solving.
+     * @throws IllegalArgumentException if the places or vehicles have time windows but the
+     * travel times are unknown, see {@link OptimizationBuilder#withDurations(IndexedMatrix)}
+     */
+    public DSMSolver(@NonNull OptimizationBuilder builder) {
+        this.matrix = builder.matrix;
+        this.indexedMatrix = builder.indexedMatrix;
+        this.distanceOracle = builder.distanceOracle;
+        this.durations = builder.durations;
+        this.places = Collections.unmodifiableList(new ArrayList<>(builder.places));
+        this.vehicles = Collections.unmodifiableList(new ArrayList<>(builder.vehicles));
+        this.optimizationMethod = builder.optimizationMethod;
+        this.isRoundTrip = builder.isRoundTrip;
+        this.isLazySavings = builder.isLazySavings;
+        this.oracleCacheCapacity = builder.oracleCacheCapacity;
+        this.isSpatialIndex = builder.isSpatialIndex;
+        this.timeLimitMillis = builder.timeLimitMillis;
+        this.isLocalSearch = builder.isLocalSearch;
+        this.isInterRouteSearch = builder.isInterRouteSearch;
+        this.localSearchNeighborCount = builder.localSearchNeighborCount;
+        this.initialMethod = builder.initialMethod;
+        this.randomSeed = builder.randomSeed;
+        this.multiStartCount = builder.multiStartCount;
+        this.isTimeConstrained = TimeWindows.isConstrained(places, vehicles);
+        this.isMultiDepot = builder.isMultiDepot;
+        this.isCrossDepotSearch = builder.isCrossDepotSearch;
+        this.clusteringMethod = builder.clusteringMethod;
+        this.maxClusterSize = builder.maxClusterSize;
+        this.isBoundaryRepair = builder.isBoundaryRepair;
+        this.optimizationResponseListeners = new CopyOnWriteArrayList<>(builder.listeners);
+        this.optimizationProgressListeners = new CopyOnWriteArrayList<>(builder.progressListeners);
+        this.progressIntervalMillis = builder.progressIntervalMillis;
+
+        // MatrixElement durations are used unless travel times are given
+        if (isTimeConstrained && durations == null && matrix == null)
+            throw new IllegalArgumentException("Time windows need the travel times, see withDurations()");
+
+        if (isTimeConstrained)
+            TimeWindows.checkVehicles(vehicles);
+    }
 
+    /**
+     * Solver without places, kept for binary compatibility only, its optimize() throws
+     * IllegalStateException
+     * @deprecated build a solver with {@link OptimizationBuilder#build()}
+     */
+    @Deprecated
     public DSMSolver() {
+        this(new OptimizationBuilder(Collections.<MatrixElement>emptyList(), Collections.<Location>emptyList(), Collections.<Vehicle>emptyList()));
+    }
+
+    public OptimizationMethod getOptimizationMethod() {
+        return optimizationMethod;
     }
 
     /**
-     * Optimization builder for DSMSolver, recommended to be invoked under background thread
+     * Optimization builder for DSMSolver. Every build() creates an independent solver, so one process
+     * can run many optimizations in parallel.
      */
     public static class OptimizationBuilder {
 
         private final List<MatrixElement> matrix;
+        private final IndexedMatrix indexedMatrix;
+        private final DistanceOracle distanceOracle;
         private final List<Location> places;
         private final List<Vehicle> vehicles;
-        private OptimizationMethod optimizationMethod;
+        private final ArrayList<OptimizationResponseListener> listeners = new ArrayList<>();
+        private final ArrayList<OptimizationProgressListener> progressListeners = new ArrayList<>();
+        private long progressIntervalMillis = DEFAULT_PROGRESS_INTERVAL_MILLIS;
+        private OptimizationMethod optimizationMethod = OptimizationMethod.NEAREST_NEIGHBOR;
         private boolean isRoundTrip = true;
+        private boolean isLazySavings = false;
+        private int oracleCacheCapacity = OracleMatrix.DEFAULT_CACHE_CAPACITY;
+        private boolean isSpatialIndex = false;
+        private long timeLimitMillis = 0;
+        private boolean isLocalSearch = false;
+        private boolean isInterRouteSearch = false;
+        private int localSearchNeighborCount = LocalSearchEngine.DEFAULT_NEIGHBOR_COUNT;
+        private OptimizationMethod initialMethod = OptimizationMethod.SAVING_MATRIX;
+        private Long randomSeed;
+        private int multiStartCount = 1;
+        private IndexedMatrix durations;
+        private boolean isMultiDepot = false;
+        private boolean isCrossDepotSearch = false;
+        private ClusteringMethod clusteringMethod;
+        private int maxClusterSize;
+        private boolean isBoundaryRepair = false;
 
         public OptimizationBuilder(
                 @NonNull List<MatrixElement> matrix,
@@ -44,10 +184,52 @@ public class DSMSolver {
                 @NonNull List<Vehicle> vehicles
         ) {
             this.matrix = matrix;
+            this.indexedMatrix = null;
+            this.distanceOracle = null;
             this.places = places;
             this.vehicles = vehicles;
         }
 
+        /**
+         * Optimize straight from an {@link IndexedMatrix}, e.g. built by {@link HaversineMatrixBuilder},
+         * without any {@link MatrixElement}. The places are the locations of the matrix.
+         */
+        public OptimizationBuilder(
+                @NonNull IndexedMatrix indexedMatrix,
+                @NonNull List<Vehicle> vehicles
+        ) {
+            this.matrix = null;
+            this.indexedMatrix = indexedMatrix;
+            this.distanceOracle = null;
+            this.vehicles = vehicles;
+
+            ArrayList<Location> places = new ArrayList<>(indexedMatrix.size());
+            for (int i = 0; i < indexedMatrix.size(); i++)
+                places.add(indexedMatrix.getLocation(i));
+
+            this.places = places;
+        }
+
+        /**
+         * Optimize without a matrix. Distances are asked from the {@link DistanceOracle} only for the
+         * pairs the engine inspects, and memoized in a bounded cache. Saving Matrix pairs each place
+         * with its nearest places by coordinates only, see {@link SavingsEngine#computeGranular}.
+         */
+        public OptimizationBuilder(
+                @NonNull List<Location> places,
+                @NonNull DistanceOracle distanceOracle,
+                @NonNull List<Vehicle> vehicles
+        ) {
+            this.matrix = null;
+            this.indexedMatrix = null;
+            this.distanceOracle = distanceOracle;
+            this.places = places;
+            this.vehicles = vehicles;
+        }
+
+        /**
+         * Nearest Neighbor if not set. Unlike before, the method of the previous optimization is not reused.
+         */
         public OptimizationBuilder withMethod(@NonNull OptimizationMethod optimizationMethod) {
             this.optimizationMethod = optimizationMethod;
             return this;
@@ -58,109 +240,607 @@ public class DSMSolver {
             return this;
         }
 
-        public void optimize() {
-
-            if (this.optimizationMethod == null)
-                this.optimizationMethod = DSMSolver.optimizationMethod;
-            else
-                DSMSolver.optimizationMethod = this.optimizationMethod;
-
-            // Pick the first source because NN & SM only accepts one source
-            Location source = Location.Toolbox.getByProfile(places, Location.Profile.SOURCE).get(0);
-            int depotPlaceIndex = places.indexOf(source);
-
-            switch (optimizationMethod) {
-                case NEAREST_NEIGHBOR:
-
-                    // Post optimization response event (might take a while to process depends on the algorithm)
-                    sendOptimizationSuccessResponse(
-                            computeCapacitatedNearestNeighborResult(
-                                    matrix,
-                                    places,
-                                    vehicles,
-                                    depotPlaceIndex,
-                                    isRoundTrip
-                            )
-                    );
-//                    EventBus.getDefault().post(
-//                            new OnDSMSolverOptimizationResponse(
-//                                    OnDSMSolverOptimizationResponse.Status.SUCCESS,
-//                                    computeCapacitatedNearestNeighborResult(
-//                                            matrix,
-//                                            places,
-//                                            vehicles,
-//                                            depotPlaceIndex,
-//                                            isRoundTrip
-//                                    )
-//                            ));
+        /**
+         * Extract Saving Matrix savings from a max-heap as they are used instead of sorting all of them up front
+         */
+        public OptimizationBuilder withLazySavings(boolean isLazySavings) {
+            this.isLazySavings = isLazySavings;
+            return this;
+        }
 
-                    break;
-                case SAVING_MATRIX:
-
-                    // Post optimization response event
-                    sendOptimizationSuccessResponse(
-                            computeCapacitatedSavingMatrixResult(
-                                    matrix,
-                                    places,
-                                    vehicles,
-                                    depotPlaceIndex,
-                                    isRoundTrip
-                            )
-                    );
-//                    EventBus.getDefault().post(
-//                            new OnDSMSolverOptimizationResponse(
-//                                    OnDSMSolverOptimizationResponse.Status.SUCCESS,
-//                                    computeCapacitatedSavingMatrixResult(
-//                                            matrix,
-//                                            places,
-//                                            vehicles,
-//                                            depotPlaceIndex,
-//                                            isRoundTrip
-//                                    )
-//                            ));
-                    break;
+        /**
+         * Maximum number of distances memoized when optimizing with a {@link DistanceOracle}
+         */
+        public OptimizationBuilder withOracleCacheCapacity(int oracleCacheCapacity) {
+            this.oracleCacheCapacity = oracleCacheCapacity;
+            return this;
+        }
 
-                default:
-                    Log.e(TAG, "optimize: Method not yet implemented");
-
-                    // Post optimization response event
-                    sendOptimizationFailedResponse(OptimizationResponseError.METHOD_NOT_IMPLEMENTED);
-//                    EventBus.getDefault().post(
-//                            new OnDSMSolverOptimizationResponse(
-//                                    OnDSMSolverOptimizationResponse.Status.FAILED,
-//                                    OnDSMSolverOptimizationResponse.Error.MethodNotImplemented
-//                            )
-//                    );
-                    break;
+        /**
+         * Find Nearest Neighbor stops with a k-d tree over the place coordinates instead of a matrix.
+         * Only applies to {@link OptimizationMethod#NEAREST_NEIGHBOR} and always uses air distances.
+         */
+        public OptimizationBuilder withSpatialIndex(boolean isSpatialIndex) {
+            this.isSpatialIndex = isSpatialIndex;
+            return this;
+        }
+
+        /**
+         * Travel times of the time windows (see {@link Location#setTimeWindow(double, double)} and
+         * {@link Vehicle.Builder#withShift(double, double)}), its distances are read as durations.
+         * Needed with an IndexedMatrix or a DistanceOracle, the MatrixElement durations are used otherwise.
+         */
+        public OptimizationBuilder withDurations(@NonNull IndexedMatrix durations) {
+            this.durations = durations;
+            return this;
+        }
+
+        /**
+         * Improve each trip with 2-opt and Or-opt moves once the routes are built
+         */
+        public OptimizationBuilder withLocalSearch(boolean isLocalSearch) {
+            this.isLocalSearch = isLocalSearch;
+            return this;
+        }
+
+        /**
+         * Move locations between trips with relocate, swap and 2-opt* moves once the routes are
+         * built, without exceeding the vehicle capacities. Trips emptied by the moves are dropped.
+         */
+        public OptimizationBuilder withInterRouteSearch(boolean isInterRouteSearch) {
+            this.isInterRouteSearch = isInterRouteSearch;
+            return this;
+        }
+
+        /**
+         * Number of nearest locations a location may be linked to by a local search move.
+         * Higher finds better routes, lower is faster.
+         */
+        public OptimizationBuilder withLocalSearchNeighbors(int localSearchNeighborCount) {
+            this.localSearchNeighborCount = localSearchNeighborCount;
+            return this;
+        }
+
+        /**
+         * Constructive method that seeds {@link OptimizationMethod#ALNS}, Saving Matrix by default
+         */
+        public OptimizationBuilder withInitialMethod(@NonNull OptimizationMethod initialMethod) {
+            this.initialMethod = initialMethod;
+            return this;
+        }
+
+        /**
+         * Seed of the random choices of the search, the same seed and time gives the same result
+         */
+        public OptimizationBuilder withRandomSeed(long randomSeed) {
+            this.randomSeed = randomSeed;
+            return this;
+        }
+
+        /**
+         * Build the routes with the best of many randomized Nearest Neighbor (GRASP) and Saving
+         * Matrix (perturbed savings) starts run in parallel on every core, whichever method is
+         * selected. Also seeds {@link OptimizationMethod#ALNS}.
+         * @param multiStartCount number of starts, 1 to disable
+         */
+        public OptimizationBuilder withMultiStart(int multiStartCount) {
+            this.multiStartCount = multiStartCount;
+            return this;
+        }
+
+        /**
+         * Dispatch from every source instead of the first only. Each customer is served from its
+         * cheapest depot, unless the vehicles of that depot can not carry the demand, and every
+         * depot is solved in parallel with the selected method. Vehicles bound to a depot with
+         * {@link Vehicle.Builder#withDepot} only serve that depot, the others are shared.
+         */
+        public OptimizationBuilder withMultiDepot(boolean isMultiDepot) {
+            this.isMultiDepot = isMultiDepot;
+            return this;
+        }
+
+        /**
+         * Relocate customers between the trips of different depots once every depot is solved,
+         * see {@link #withMultiDepot(boolean)}
+         */
+        public OptimizationBuilder withCrossDepotSearch(boolean isCrossDepotSearch) {
+            this.isCrossDepotSearch = isCrossDepotSearch;
+            return this;
+        }
+
+        /**
+         * Cluster first, route second: partition the customers of a depot into clusters of at most
+         * maxClusterSize stops and solve every cluster in parallel with the selected method. Needs
+         * the coordinates of every location. With a {@link DistanceOracle} only one cluster per
+         * core is held as a dense matrix, so memory grows with maxClusterSize squared instead of n^2.
+         * @param clusteringMethod ClusteringMethod of the customers
+         * @param maxClusterSize   maximum number of stops of a cluster, a depot with fewer stops is solved whole
+         */
+        public OptimizationBuilder withClustering(@NonNull ClusteringMethod clusteringMethod, int maxClusterSize) {
+            this.clusteringMethod = clusteringMethod;
+            this.maxClusterSize = maxClusterSize;
+            return this;
+        }
+
+        /**
+         * Run the local search on each pair of neighboring clusters once they are solved, see
+         * {@link #withClustering(ClusteringMethod, int)}
+         */
+        public OptimizationBuilder withBoundaryRepair(boolean isBoundaryRepair) {
+            this.isBoundaryRepair = isBoundaryRepair;
+            return this;
+        }
+
+        /**
+         * Listen to the responses of the built solver only
+         */
+        public OptimizationBuilder withListener(@NonNull OptimizationResponseListener listener) {
+            this.listeners.add(listener);
+            return this;
+        }
+
+        /**
+         * Receive the improved solutions of the built solver while it is solving, on the solving
+         * thread. The final result is still sent to the response listeners.
+         */
+        public OptimizationBuilder withProgressListener(@NonNull OptimizationProgressListener listener) {
+            this.progressListeners.add(listener);
+            return this;
+        }
+
+        /**
+         * @param progressIntervalMillis minimum time between two progress reports, 100 ms by default
+         */
+        public OptimizationBuilder withProgressInterval(long progressIntervalMillis) {
+            this.progressIntervalMillis = progressIntervalMillis;
+            return this;
+        }
+
+        /**
+         * Stop the solve after a time limit and return the best result found so far. This is also
+         * the time budget of {@link OptimizationMethod#ALNS}, 10 seconds if not set.
+         * @param timeLimitMillis time limit in milliseconds, counted from optimize() or optimizeAsync()
+         */
+        public OptimizationBuilder withTimeLimit(long timeLimitMillis) {
+            this.timeLimitMillis = timeLimitMillis;
+            return this;
+        }
+
+        public DSMSolver build() {
+            return new DSMSolver(this);
+        }
+
+        /**
+         * Shortcut for build().optimize(). Returned void before, code compiled against that
+         * version must be recompiled.
+         */
+        public SolutionSet optimize() {
+            return build().optimize();
+        }
+
+        /**
+         * Shortcut for build().optimizeAsync(executor)
+         */
+        @NonNull
+        public Future<List<Solution>> optimizeAsync(@NonNull Executor executor) {
+            return build().optimizeAsync(executor);
+        }
+
+    }
+
+    /**
+     * Run the optimization on the calling thread, recommended to be invoked under background thread.
+     * A time limit or a short fleet may leave destinations unserved, see {@link SolutionSet#getUnservedCount()}.
+     * The result is read-only, the response listeners still receive a mutable ArrayList copy.
+     * A failure is sent to the response listeners, then thrown.
+     * @return SolutionSet indexed by trip and vehicle
+     */
+    @NonNull
+    public SolutionSet optimize() {
+
+        SolutionSet solutions;
+
+        try {
+            solutions = createSolutionSet(solve(createControl()));
+        } catch (RuntimeException e) {
+            sendOptimizationFailedResponse(e);
+            throw e;
+        }
+
+        // Post optimization response event
+        sendOptimizationSuccessResponse(solutions);
+
+        return solutions;
+
+    }
+
+    /**
+     * Run the optimization on an executor. Cancelling the returned future stops the engine
+     * cooperatively, the time limit returns the best result found so far. Listeners are notified
+     * on the executor thread unless the future is cancelled. A failure is sent to the response
+     * listeners, then thrown by the future as an ExecutionException.
+     * @param executor Executor to run the optimization on
+     * @return Future of the solutions, a SolutionSet
+     */
+    @NonNull
+    public Future<List<Solution>> optimizeAsync(@NonNull Executor executor) {
+
+        final SolverControl control = createControl();
+
+        FutureTask<List<Solution>> task = new FutureTask<List<Solution>>(new Callable<List<Solution>>() {
+            @Override
+            public List<Solution> call() {
+
+                SolutionSet solutions;
+
+                try {
+                    solutions = createSolutionSet(solve(control));
+                } catch (RuntimeException e) {
+                    if (!control.isCancelled())
+                        sendOptimizationFailedResponse(e);
+                    throw e;
+                }
+
+                if (!control.isCancelled())
+                    sendOptimizationSuccessResponse(solutions);
+
+                return solutions;
+
+            }
+        }) {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                control.cancel();
+                return super.cancel(mayInterruptIfRunning);
             }
+        };
+
+        executor.execute(task);
+
+        return task;
+
+    }
+
+    /**
+     * Index the result, destinations left unserved are counted and logged
+     */
+    private SolutionSet createSolutionSet(List<Solution> result) {
+
+        SolutionSet solutions = new SolutionSet(result, Location.Toolbox.getByProfile(places, Location.Profile.DESTINATION));
+
+        if (solutions.getUnservedCount() > 0)
+            Log.e(TAG, "optimize: " + solutions.getUnservedCount() + " location(s) left unserved");
+
+        return solutions;
+
+    }
+
+    private SolverControl createControl() {
+
+        SolverControl control;
+
+        if (timeLimitMillis > 0)
+            control = new SolverControl(timeLimitMillis);
+        else if (optimizationMethod == OptimizationMethod.ALNS)
+            control = new SolverControl(AlnsEngine.DEFAULT_TIME_LIMIT_MILLIS); // A metaheuristic always needs a budget
+        else
+            control = new SolverControl();
+
+        // Engines skip materializing progress when nobody listens
+        if (!optimizationProgressListeners.isEmpty())
+            control.setProgressListener(new OptimizationProgressListener() {
+                @Override
+                public void onImprovedSolution(List<Solution> solutions, double cost, long elapsedNanos) {
+                    sendOptimizationProgress(solutions, cost, elapsedNanos);
+                }
+            }, progressIntervalMillis);
+
+        return control;
+
+    }
+
+    private Random createRandom() {
+        return randomSeed != null ? new Random(randomSeed) : new Random();
+    }
+
+    /**
+     * Run the selected engine
+     * @return List of Solution
+     */
+    private List<Solution> solve(SolverControl control) {
+
+        if (places.isEmpty())
+            throw new IllegalStateException("No places to optimize, build the solver with DSMSolver.OptimizationBuilder instead of the deprecated DSMSolver()");
 
-            //
+        List<Location> sources = Location.Toolbox.getByProfile(places, Location.Profile.SOURCE);
 
+        if (sources.isEmpty())
+            throw new IllegalStateException("No SOURCE place to dispatch the vehicles from");
+
+        // Air distance Nearest Neighbor on a k-d tree, no matrix needed. Time windows need the matrix path
+        if (isSpatialIndex && !isTimeConstrained && !isMultiDepot && clusteringMethod == null && optimizationMethod == OptimizationMethod.NEAREST_NEIGHBOR) {
+            int depotPlaceIndex = places.indexOf(sources.get(0));
+            List<Solution> solutions = SpatialNearestNeighborEngine.solve(places, depotPlaceIndex, vehicles, isRoundTrip, control);
+            control.reportProgress(solutions, true);
+
+            // Post-optimization asks the air distances of the trip neighborhoods only
+            if (isLocalSearch || isInterRouteSearch)
+                solutions = improve(new OracleMatrix(places, new HaversineOracle(), oracleCacheCapacity), depotPlaceIndex, solutions, vehicles, null, control);
+
+            return solutions;
+        }
+
+        // Adapt the MatrixElement list once, both engines run on the indexed matrix
+        IndexedMatrix indexedMatrix;
+
+        if (this.indexedMatrix != null)
+            indexedMatrix = this.indexedMatrix;
+        else if (distanceOracle != null)
+            indexedMatrix = new OracleMatrix(places, distanceOracle, oracleCacheCapacity);
+        else
+            indexedMatrix = DistanceMatrix.fromMatrixElements(matrix, places);
+
+        IndexedMatrix travelTimes = null;
+
+        if (isTimeConstrained)
+            travelTimes = durations != null ? durations : DistanceMatrix.fromMatrixElementDurations(matrix, places);
+
+        if (isMultiDepot && sources.size() > 1)
+            return solveDepots(indexedMatrix, sources, travelTimes, SolverPool.get().getParallelism(), control);
+
+        // Pick the first source because NN & SM only accepts one source
+        int depotPlaceIndex = indexedMatrix.indexOf(sources.get(0));
+
+        return solveDepot(indexedMatrix, depotPlaceIndex, vehicles, travelTimes, SolverPool.get().getParallelism(), control);
+
+    }
+
+    /**
+     * Solve every depot in parallel on its own customers, then optionally relocate between depots
+     */
+    private List<Solution> solveDepots(IndexedMatrix indexedMatrix, List<Location> sources, IndexedMatrix travelTimes, int parallelism, SolverControl control) {
+
+        int[] depotIndices = new int[sources.size()];
+        for (int d = 0; d < depotIndices.length; d++)
+            depotIndices[d] = indexedMatrix.indexOf(sources.get(d));
+
+        List<Solution> solutions = MultiDepotEngine.solve(
+                indexedMatrix,
+                depotIndices,
+                vehicles,
+                isRoundTrip,
+                createDepotSolver(travelTimes, sources.size(), parallelism, control),
+                SolverPool.get(),
+                control
+        );
+
+        if (isCrossDepotSearch) {
+            TimeWindows timeWindows = travelTimes != null ? new TimeWindows(indexedMatrix, travelTimes) : null;
+            solutions = MultiDepotEngine.improve(indexedMatrix, depotIndices, solutions, vehicles, isRoundTrip, timeWindows, control);
+        }
+
+        // Depots report no progress of their own, only the merged result
+        control.reportProgress(solutions, true);
+
+        return solutions;
+
+    }
+
+    /**
+     * Partition the customers of a depot, solve every cluster in parallel and stitch the trips
+     */
+    private List<Solution> solveClusters(IndexedMatrix indexedMatrix, int depotPlaceIndex, List<Vehicle> vehicles, IndexedMatrix travelTimes, int parallelism, SolverControl control) {
+
+        int[][] clusters = ClusterEngine.cluster(indexedMatrix, depotPlaceIndex, vehicles, clusteringMethod, maxClusterSize);
+
+        List<Solution> solutions = ClusterEngine.solve(
+                indexedMatrix,
+                depotPlaceIndex,
+                clusters,
+                vehicles,
+                isRoundTrip,
+                distanceOracle != null, // Read each pair of a cluster once, not from the oracle cache
+                isBoundaryRepair,
+                localSearchNeighborCount,
+                travelTimes,
+                createDepotSolver(travelTimes, clusters.length, parallelism, control),
+                SolverPool.get(),
+                control
+        );
+
+        // Clusters report no progress of their own, only the stitched result
+        control.reportProgress(solutions, true);
+
+        return solutions;
+
+    }
+
+    /**
+     * Solve a depot or a cluster as one of count sub-problems run in parallel. ALNS searches until
+     * its deadline, so with a shared one the sub-problems still queued for a thread would start
+     * too late to even build their routes. Each gets its share of the remaining time instead, from
+     * the moment it starts.
+     * @param parallelism number of threads left to the sub-problems, e.g. to the clusters of a depot
+     */
+    private MultiDepotEngine.DepotSolver createDepotSolver(final IndexedMatrix travelTimes, int count, int parallelism, SolverControl control) {
+
+        // The other methods stop on their own and keep the shared deadline
+        final boolean isBudgeted = optimizationMethod == OptimizationMethod.ALNS;
+
+        // Sub-problems run in waves of parallelism, the waves split the time and the threads
+        int waves = (count + parallelism - 1) / Math.max(1, parallelism);
+        final long shareMillis = control.getRemainingNanos() / 1000000L / Math.max(1, waves);
+        final int subParallelism = Math.max(1, parallelism / Math.max(1, Math.min(count, parallelism)));
+
+        return new MultiDepotEngine.DepotSolver() {
+            @NonNull
+            @Override
+            public List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Vehicle> vehicles, @NonNull SolverControl control) {
+                return solveDepot(matrix, depotIndex, vehicles, travelTimes, subParallelism, isBudgeted ? new SolverControl(control, shareMillis) : control);
+            }
+        };
+
+    }
+
+    /**
+     * Run the selected engine on a single depot
+     * @param travelTimes IndexedMatrix of the travel times, null if time is not constrained
+     * @param parallelism number of threads left to the clusters of the depot
+     * @return List of Solution
+     */
+    private List<Solution> solveDepot(IndexedMatrix indexedMatrix, int depotPlaceIndex, List<Vehicle> vehicles, IndexedMatrix travelTimes, int parallelism, SolverControl control) {
+
+        // Cluster first, route second once a depot is too large to be solved whole
+        if (clusteringMethod != null && indexedMatrix.size() - 1 > maxClusterSize)
+            return solveClusters(indexedMatrix, depotPlaceIndex, vehicles, travelTimes, parallelism, control);
+
+        TimeWindows timeWindows = travelTimes != null ? new TimeWindows(indexedMatrix, travelTimes) : null;
+        List<Solution> solutions;
+
+        switch (optimizationMethod) {
+            case NEAREST_NEIGHBOR:
+            case SAVING_MATRIX:
+                // Might take a while to process depends on the algorithm
+                solutions = construct(indexedMatrix, depotPlaceIndex, vehicles, optimizationMethod, timeWindows, control);
+                break;
+            case ALNS:
+                if (timeWindows != null) {
+                    // ALNS repairs do not check time windows, keep the constructive routes
+                    Log.e(TAG, "optimize: ALNS does not support time windows, using " + initialMethod);
+                    solutions = construct(indexedMatrix, depotPlaceIndex, vehicles, initialMethod, timeWindows, control);
+                    break;
+                }
+
+                // Seed from a constructive method, then spend the rest of the time limit
+                solutions = AlnsEngine.solve(
+                        indexedMatrix,
+                        depotPlaceIndex,
+                        construct(indexedMatrix, depotPlaceIndex, vehicles, initialMethod, null, control),
+                        vehicles,
+                        isRoundTrip,
+                        createRandom(),
+                        control
+                );
+                break;
+            default:
+                throw new UnsupportedOperationException("Unexpected OptimizationMethod value: " + optimizationMethod);
         }
 
+        return improve(indexedMatrix, depotPlaceIndex, solutions, vehicles, timeWindows, control);
+
     }
 
-    private static final List<OptimizationResponseListener> optimizationResponseListeners = new ArrayList<>();
+    /**
+     * Build routes with a constructive method, or with the best of the multi-start variants
+     */
+    private List<Solution> construct(IndexedMatrix indexedMatrix, int depotPlaceIndex, List<Vehicle> vehicles, OptimizationMethod method, TimeWindows timeWindows, SolverControl control) {
+
+        List<Solution> solutions;
+
+        if (multiStartCount > 1)
+            solutions = MultiStartEngine.solve(
+                    indexedMatrix,
+                    depotPlaceIndex,
+                    vehicles,
+                    isRoundTrip,
+                    multiStartCount,
+                    createRandom().nextLong(),
+                    timeWindows,
+                    SolverPool.get(),
+                    control
+            );
+        else if (method == OptimizationMethod.NEAREST_NEIGHBOR)
+            solutions = NearestNeighborEngine.solve(indexedMatrix, depotPlaceIndex, vehicles, isRoundTrip, null, 0, timeWindows, control);
+        else
+            solutions = ClarkeWrightEngine.solve(indexedMatrix, depotPlaceIndex, vehicles, isRoundTrip, isLazySavings, 1, timeWindows, control);
+
+        // The constructive result is the first incumbent of the following stages
+        control.reportProgress(solutions, true);
+
+        return solutions;
+
+    }
+
+    /**
+     * Run the post-optimization stages enabled in the builder
+     */
+    private List<Solution> improve(IndexedMatrix indexedMatrix, int depotPlaceIndex, List<Solution> solutions, List<Vehicle> vehicles, TimeWindows timeWindows, SolverControl control) {
+
+        if (isLocalSearch || isInterRouteSearch)
+            solutions = LocalSearchEngine.improve(indexedMatrix, depotPlaceIndex, solutions, vehicles, isRoundTrip, localSearchNeighborCount, isLocalSearch, isInterRouteSearch, timeWindows, control);
+
+        // Reports skipped by the throttle end with the final result
+        control.reportProgress(solutions, true);
+
+        return solutions;
+
+    }
+
+    /**
+     * Listen to the responses of every solver, including the ones already built
+     * @deprecated listeners are now per solver, see {@link OptimizationBuilder#withListener} and
+     * {@link #addOnOptimizationResponseListener}
+     */
+    @Deprecated
     public static void setOnOptimizationResponseListener(OptimizationResponseListener listener) {
+        if (listener != null)
+            globalResponseListeners.add(listener);
+    }
+
+    public void addOnOptimizationResponseListener(@NonNull OptimizationResponseListener listener) {
         optimizationResponseListeners.add(listener);
     }
-    private static void sendOptimizationSuccessResponse(List<Solution> solutions) {
-        for (OptimizationResponseListener listener :  optimizationResponseListeners) {
-            if (listener != null)
-                listener.onOptimizationSuccess(solutions);
-            else
-                optimizationResponseListeners.remove(listener);
-        }
+
+    public void removeOnOptimizationResponseListener(@NonNull OptimizationResponseListener listener) {
+        optimizationResponseListeners.remove(listener);
     }
-    private static void sendOptimizationFailedResponse(OptimizationResponseError error) {
-        for (OptimizationResponseListener listener :  optimizationResponseListeners) {
-            if (listener != null)
-                listener.onOptimizationFailed(error);
-            else
-                optimizationResponseListeners.remove(listener);
-        }
+
+    public void addOnOptimizationProgressListener(@NonNull OptimizationProgressListener listener) {
+        optimizationProgressListeners.add(listener);
+    }
+
+    public void removeOnOptimizationProgressListener(@NonNull OptimizationProgressListener listener) {
+        optimizationProgressListeners.remove(listener);
+    }
+
+    private void sendOptimizationProgress(List<Solution> solutions, double cost, long elapsedNanos) {
+        for (OptimizationProgressListener listener : optimizationProgressListeners)
+            listener.onImprovedSolution(solutions, cost, elapsedNanos);
+    }
+
+    private void sendOptimizationSuccessResponse(List<Solution> result) {
+
+        // Listeners have always been free to edit the list
+        List<Solution> solutions = new ArrayList<>(result);
+
+        for (OptimizationResponseListener listener : optimizationResponseListeners)
+            listener.onOptimizationSuccess(solutions);
+
+        for (OptimizationResponseListener listener : globalResponseListeners)
+            listener.onOptimizationSuccess(solutions);
+
     }
 
+    private void sendOptimizationFailedResponse(RuntimeException e) {
+
+        Log.e(TAG, "optimize: " + e.getMessage(), e);
+
+        OptimizationResponseError error;
+
+        if (e instanceof UnsupportedOperationException)
+            error = OptimizationResponseError.METHOD_NOT_IMPLEMENTED;
+        else if (e instanceof IllegalArgumentException || e instanceof IllegalStateException)
+            error = OptimizationResponseError.INVALID_INPUT;
+        else
+            error = OptimizationResponseError.ENGINE_FAILURE;
+
+        for (OptimizationResponseListener listener : optimizationResponseListeners)
+            listener.onOptimizationFailed(error);
+
+        for (OptimizationResponseListener listener : globalResponseListeners)
+            listener.onOptimizationFailed(error);
+
+    }
 
     public static ArrayList<MatrixElement> getDistanceFromPlaceSequence(ArrayList<Location> places, ArrayList<Double> distanceValues, ArrayList<Double> durationValues) {
 
@@ -205,43 +885,32 @@ public class DSMSolver {
 
     // DEPENDENCIES FUNCTIONALITY
 
-    // TODO: Finish thoroughly
+    /**
+     * Calculate the saving value of each {@link MatrixElement} and store it by {@link MatrixElement#setSavingDistance(double)}.
+     * The savings are computed by {@link SavingsEngine} on an indexed matrix.
+     * @param places List of Location, the first source is used as the depot
+     * @param distancesArray List of MatrixElement
+     */
     public static void calculateDistanceSavingValue(@NonNull List<Location> places, List<MatrixElement> distancesArray) {
 
         // Pick the first source because Saving Matrix method only accepts one source
         Location source = Location.Toolbox.getByProfile(places, Location.Profile.SOURCE).get(0);
-        int depotId = places.indexOf(source);
 
-        // Saving MatrixElement (Saving matrix equivalent) TODO: Extract depotId as a parameter
+        DistanceMatrix matrix = DistanceMatrix.fromMatrixElements(distancesArray, places);
+        int depotId = matrix.indexOf(source);
+
+        SavingsMatrix savingsMatrix = SavingsEngine.compute(matrix, depotId);
+
         for (MatrixElement matrixElement : distancesArray) {
 
-            int oriId = places.indexOf(matrixElement.getOrigin());
-            int destId = places.indexOf(matrixElement.getDestination());
+            int oriId = matrix.indexOf(matrixElement.getOrigin());
+            int destId = matrix.indexOf(matrixElement.getDestination());
 
-            if (oriId == depotId || destId == depotId) {
+            if (oriId == -1 || destId == -1 || oriId == depotId || destId == depotId) {
                 continue;
             }
 
-            double doi = 0;
-            double doj = 0;
-            double dij = 0;
-
-            for (MatrixElement matrixElement2 : distancesArray) {
-                if (places.indexOf(matrixElement2.getOrigin()) == depotId && places.indexOf(matrixElement2.getDestination()) == oriId) {
-                    doi = matrixElement2.getDistance();
-                } else if (places.indexOf(matrixElement2.getOrigin()) == depotId && places.indexOf(matrixElement2.getDestination()) == destId) {
-                    doj = matrixElement2.getDistance();
-                } else if (places.indexOf(matrixElement2.getOrigin()) == oriId && places.indexOf(matrixElement2.getDestination()) == destId) {
-                    dij = matrixElement2.getDistance();
-                }
-            }
-
-            double sij = doi + doj - dij;
-
-            Log.d(TAG, "MatrixElement saving: " + doi + " + " + doj +  " - " + dij + " = " + sij);
-
-//            if (sij > 0)
-                matrixElement.setSavingDistance(sij);
+            matrixElement.setSavingDistance(savingsMatrix.getSaving(oriId, destId));
 
         }
 
@@ -362,6 +1031,7 @@ public class DSMSolver {
     /**
      * Capacitated TSP with Nearest Neighbor method. Returns a sequence of distances. MatrixElement traveled is not included, must be calculated manually.
      * Written by Damar Syah Maulana
+     * The distances are adapted into a {@link DistanceMatrix} and solved by {@link NearestNeighborEngine}.
      *
      * @param distancesArray  Arraylist of distances object
      * @param places          Arraylist of Destinations
@@ -373,423 +1043,137 @@ public class DSMSolver {
         Log.d(TAG, "computeCapacitatedNearestNeighborResult: Start of NN method");
         Log.d(TAG, "computeCapacitatedNearestNeighborResult: Distances: " + distancesArray.size() + " | Places: " + places.size() + " | Vehicles: " + Vehicle.Toolbox.getDefaultVehicle(vehicles));
 
-        ArrayList<Solution> solutions = new ArrayList<>(); // Store the Nearest Neighbor produced distance or the final result
-
-        // Get the default vehicle
-        Vehicle vehicle = Vehicle.Toolbox.getDefaultVehicle(vehicles);
-        vehicle = vehicle != null ? vehicle : vehicles.get(0);
-
-        // Used places needs to be stored inside arraylist to check whether the distance that is about to calculate is already used or not
-        ArrayList<Location> usedPlaces = new ArrayList<>();
-        Location depotPlace = places.get(depotPlaceIndex); // Set the depot place by place index  TODO: Change to placeID
-        usedPlaces.add(depotPlace);
-
-        // Sort vehicles, move default vehicle to the first
-        ArrayList<Vehicle> sortedVehicles = new ArrayList<>(vehicles);
-        sortedVehicles.remove(vehicle);
-        sortedVehicles.add(0, vehicle);
-
-        // Clone vehicles for each dispatch limit
-        ArrayList<Vehicle> fleet = new ArrayList<>();
-        for (Vehicle v : sortedVehicles)
-            if (v.getDispatchLimit() > 0)
-                for (int i = 0; i < v.getDispatchLimit(); i ++) {
-                    fleet.add(v);
-                }
-
-        boolean startNewRoute = false;
-
-        for (Vehicle v : fleet) {
-
-            // Skip current vehicle if solutions
-            if (usedPlaces.containsAll(places))
-                continue;
-
-            ////
-
-            // Vehicle remaining capacity should be visible in the entire scope for use multiple times
-            double vehicleRemainingCapacity = v.getCapacity();
-
-            // Compute solution for single trip
-            ArrayList<Solution> trip = new ArrayList<>(); // Store the Nearest Neighbor produced distance or the final result
-
-            for (int j = 0; vehicleRemainingCapacity >= 0; j++) {
-
-                if (startNewRoute)
-                    usedPlaces.add(depotPlace);
-
-                // Filter the distancesArray by the last place used so that it will show the distance only FROM that place to ANY place because isOrigin is true.
-                List<MatrixElement> filteredMatrixElements = filterDistancesArrayByPlace(distancesArray, usedPlaces.get(usedPlaces.size() - 1), true);
-                if (startNewRoute) {
-                    usedPlaces.remove(depotPlace);
-                    startNewRoute = false;
-                }
-
-                List<MatrixElement> processedMatrixElements = filterDistancesArrayByPlaces(filteredMatrixElements, usedPlaces, true, false);
+        DistanceMatrix matrix = DistanceMatrix.fromMatrixElements(distancesArray, places);
 
-                List<MatrixElement> sufficientCapacityMatrixElements = filterDistancesArrayBySufficientCapacity(processedMatrixElements, vehicleRemainingCapacity);
-
-                if (sufficientCapacityMatrixElements.size() == 0) {
-
-                    if (!isRoundTrip)
-                        break;
-
-                    // Find a distance that go straight to depot and add to solutions (ROUNDTRIP)
-                    for (MatrixElement matrixElement : filteredMatrixElements) {
-
-                        if (matrixElement.getDestination().equals(depotPlace) && trip.size() > 0 && matrixElement.getOrigin().equals(trip.get(trip.size() - 1).getDestination())) {
-                            Solution solution = Solution.fromMatrixElement(matrixElement);
-                            solution.setCarry(vehicleRemainingCapacity);
-                            solution.setVehicleId(v.getId()); // Assign vehicle id to solutionDistance
-                            trip.add(solution);
-                            startNewRoute = true;
-//                            Log.d(TAG, "computeCapacitatedNearestNeighborResult: Last used places: " + usedPlaces.get(usedPlaces.size()-1).getName());
-//                            Log.d(TAG, "computeCapacitatedNearestNeighborResult: (ROUNDTRIP) Added matrixElement " + solution.getOrigin().getName() + " to " + solution.getDestination().getName() + ": " + solution.getDistance());
-
-                        }
-                    }
-
-                    break;
-
-                }
-
-                List<MatrixElement> bestMatrixElements = findBestDistances(sufficientCapacityMatrixElements);
-                Solution bestDistance = Solution.fromMatrixElement(bestMatrixElements.get(0));
-
-                double demands = bestDistance.getDestination().getDemands();
-                vehicleRemainingCapacity -= demands;
-
-                bestDistance.setDemand(demands);
-                bestDistance.setCarry(vehicleRemainingCapacity);
-                bestDistance.setVehicleId(v.getId()); // Assign vehicle id to solutionDistance
-
-                usedPlaces.add(bestDistance.getDestination());
-                trip.add(bestDistance);
-//                Log.e(TAG, "(NN): Added distance " + bestDistance.getOrigin().getName() + " to " + bestDistance.getDestination().getName() + ": " + bestDistance.getDistance());
-
-            }
-
-            solutions.addAll(trip);
-
-
-        }
-
-        return solutions;
+        return NearestNeighborEngine.solve(matrix, depotPlaceIndex, vehicles, isRoundTrip);
     }
 
     public static List<Solution> computeCapacitatedSavingMatrixResult(List<MatrixElement> distancesArray, @NonNull List<Location> places, @NonNull List<Vehicle> vehicles, int depotPlaceIndex, boolean isRoundTrip) {
+        return computeCapacitatedSavingMatrixResult(distancesArray, places, vehicles, depotPlaceIndex, isRoundTrip, false);
+    }
 
-        // Result distances
-        ArrayList<Solution> solutions = new ArrayList<>();
+    /**
+     * Capacitated VRP with Saving Matrix method. Routes are merged by {@link ClarkeWrightEngine}.
+     *
+     * @param distancesArray  Arraylist of distances object
+     * @param places          Arraylist of Destinations
+     * @param depotPlaceIndex Index of Place defined as a Depot or initial point
+     * @param isLazySavings   true to extract savings from a max-heap as they are used instead of sorting all of them up front
+     * @return Arraylist of Distances in Saving Matrix
+     */
+    public static List<Solution> computeCapacitatedSavingMatrixResult(List<MatrixElement> distancesArray, @NonNull List<Location> places, @NonNull List<Vehicle> vehicles, int depotPlaceIndex, boolean isRoundTrip, boolean isLazySavings) {
 
-        // Filter distances to only those that has a savingDistance
+        // Pick the first source because Saving Matrix method only accepts one source
         Location depot = Location.Toolbox.getByProfile(places, Location.Profile.SOURCE).get(0);
-        ArrayList<MatrixElement> savingMatrixElements = new ArrayList<>();
-
-        for (MatrixElement matrixElement : distancesArray) {
-
-            if (matrixElement.getSavingDistance() == 0 && (matrixElement.getOrigin().equals(depot) || matrixElement.getDestination().equals(depot)))
-                continue;
-
-            // Validate whether the matrixElement is already exists
-            boolean isExists = false;
-
-            for (MatrixElement d : savingMatrixElements) {
 
-                // Looking for the reversed matrixElement
-                if (matrixElement.getOrigin().equals(d.getDestination()) && matrixElement.getDestination().equals(d.getOrigin())) {
-                    isExists = true;
-                    break; // Break loop if matrixElement is exists
-                }
-
-            }
+        DistanceMatrix matrix = DistanceMatrix.fromMatrixElements(distancesArray, places);
 
-            if (!isExists)
-                savingMatrixElements.add(matrixElement);
+        return ClarkeWrightEngine.solve(matrix, matrix.indexOf(depot), vehicles, isRoundTrip, isLazySavings);
 
-        }
+    }
 
-        // Log saving distances
-//        for (MatrixElement d : savingMatrixElements) {
-//            Log.e(TAG + "(SM)", "MatrixElement with saving: MatrixElement " + d.getOrigin().getName() + " to " + d.getDestination().getName());
-//        }
+    // Toolbox
 
-        // Begin computation
-        ArrayList<MatrixElement> maxMatrixElements = new ArrayList<>();
-        int totalDest = Location.Toolbox.getByProfile(places, Location.Profile.DESTINATION).size();
-        int iteration = ((totalDest * totalDest) - totalDest) / 2; // Number of iteration self defined formula
+    /**
+     * Symmetrize a matrix by copying the distance of the first listed direction of each pair to the
+     * other, the result the old nested loop produced, in O(n^2).
+     * The given MatrixElement instances are not modified.
+     * @param matrix List of MatrixElement
+     * @return List of symmetrized MatrixElement copies
+     */
+    @NonNull
+    public static List<MatrixElement> symmetrizeMatrix(@NonNull List<MatrixElement> matrix) {
 
-        Log.e(TAG + "(SM)", "Iteration: " + iteration + " | Saving distances: " + savingMatrixElements.size());
+        List<Location> locations = getListedLocations(matrix);
+        HashMap<Location, Integer> indices = new HashMap<>(locations.size() * 2);
+        for (int i = 0; i < locations.size(); i++)
+            indices.put(locations.get(i), i);
 
-        // Sort saving distances descending
-        for (int i = 0; i < iteration; i++) {
+        // Distance of each pair, set by the first listed direction
+        int size = locations.size();
 
-            MatrixElement maxMatrixElement = savingMatrixElements.get(0);
+        long cells = (long) size * size;
+        if (cells > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many locations to symmetrize: " + size);
 
-            // Find the largest saving value
-            for (int j = 0; j < savingMatrixElements.size(); j++) {
+        double[] distances = new double[(int) cells];
+        Arrays.fill(distances, Double.NaN);
 
-                MatrixElement matrixElement = savingMatrixElements.get(j);
+        for (MatrixElement d : matrix) {
 
-                // If matrixElement is larger than current maxMatrixElement
-                if (matrixElement.getSavingDistance() > maxMatrixElement.getSavingDistance()) {
-                    maxMatrixElement = matrixElement;
-                }
+            int origin = indices.get(d.getOrigin());
+            int destination = indices.get(d.getDestination());
 
+            if (Double.isNaN(distances[origin * size + destination])) {
+                distances[origin * size + destination] = d.getDistance();
+                distances[destination * size + origin] = d.getDistance();
             }
 
-            savingMatrixElements.remove(maxMatrixElement);
-
-            maxMatrixElements.add(maxMatrixElement); // Add the largest distance into array
-
-            // Log largest distance
-//            Log.e(TAG + "(SM)", "Descending sorted distance: " + maxMatrixElement.getSavingDistance() + " | Origin: " + maxMatrixElement.getOrigin().getName() + " | Destination: " + maxMatrixElement.getDestination().getName());
-
         }
 
-        // Main iteration
-        ArrayList<ArrayList<Location>> placeGroups = new ArrayList<>();
-        ArrayList<Location> usedPlaces = new ArrayList<>();
-
-        Vehicle vehicle = Vehicle.Toolbox.getDefaultVehicle(vehicles);
-        if (vehicle == null)
-            vehicle = vehicles.get(0);
-
-        // Sort vehicles, move default vehicle to the first
-        ArrayList<Vehicle> sortedVehicles = new ArrayList<>(vehicles);
-        sortedVehicles.remove(vehicle);
-        sortedVehicles.add(0, vehicle);
-
-        // Clone vehicles for each dispatch limit
-        Log.e(TAG + "(SM)", "Start populating vehicles...");
-        ArrayList<Vehicle> dispatchableVehicles = new ArrayList<>();
-        for (Vehicle v : sortedVehicles)
-            if (v.getDispatchLimit() > 0)
-                for (int i = 0; i < v.getDispatchLimit(); i ++) {
-                    dispatchableVehicles.add(v);
-                }
-
-        // Log dispatchableVehicles content
-        for (Vehicle v : dispatchableVehicles)
-            Log.e(TAG, "Vehicle added:" + v.getId());
-
-        boolean forceStopComputation = false;
-
-        for (MatrixElement matrixElement : maxMatrixElements) {
-
-            double vehicleCapacity;
-
-            Location origin = matrixElement.getOrigin();
-            Location destination = matrixElement.getDestination();
-
-            boolean isOriginExists = usedPlaces.contains(origin);
-            boolean isDestinationExists = usedPlaces.contains(destination);
-
-//            Log.e(TAG + "(SM)", "Inspecting MatrixElement " + matrixElement.getSavingDistance() + " | Origin: " + matrixElement.getOrigin().getName() + " | Destination: " + matrixElement.getDestination().getName());
-
-            if (isOriginExists && isDestinationExists) {
-                Log.e(TAG + "(SM)", "MatrixElement " + matrixElement.getSavingDistance() + ": Skipped due to both of its contents has been used");
-                continue;
-            }
-
-            // Initialize container to list places that has grouped and existed in a placeGroup in the next loop
-            ArrayList<Location> groupedPlaces = new ArrayList<>();
-
-            /*
-                Loops through places group if any.
-                Useful if the iterated matrixElement's places whether origin or destination
-                is a part of an existing placeGroup.
-                If no placeGroup existed, skip immediately by the nature of foreach loop
-                itself.
-             */
-            for (ArrayList<Location> placeGroup : placeGroups) {
-
-                int i = placeGroups.indexOf(placeGroup);
-
-                if (i > dispatchableVehicles.size() - 1) {
-                    forceStopComputation = true;
-                    continue;
-                }
-
-                vehicleCapacity = dispatchableVehicles.get(i).getCapacity();  // Get vehicle capacity from the matching index
-
-                Log.e(TAG + "(SM)", "Inspecting placeGroup " + i + " from MatrixElement " + matrixElement.getSavingDistance() + " | Using vehicle: " + dispatchableVehicles.get(i).getId());
+        ArrayList<MatrixElement> resultMatrix = new ArrayList<>(matrix.size());
 
-                groupedPlaces.addAll(placeGroup); // List places inside placeGroup into groupedPlaces for use outside of the loop
+        for (MatrixElement d : matrix)
+            resultMatrix.add(copyMatrixElement(d, distances[indices.get(d.getOrigin()) * size + indices.get(d.getDestination())]));
 
-                // Check to see if whether the origin or destination existed in the current placeGroup
-                boolean isOriginExistsInPlaceGroup = placeGroup.contains(origin);
-                boolean isDestinationExistsInPlaceGroup = placeGroup.contains(destination);
-
-//                if (isOriginExistsInPlaceGroup)
-//                    Log.e(TAG + "(SM)", "Origin exists in placeGroup " + i);
-//
-//                if (isDestinationExistsInPlaceGroup)
-//                    Log.e(TAG + "(SM)", "Destination exists in placeGroup " + i);
-
-                // Immediately skip if both origin and destination exist in the current placeGroup
-                if (isOriginExistsInPlaceGroup && isDestinationExistsInPlaceGroup) {
-                    Log.e(TAG + "(SM)", "Both origin and destination exist in the placeGroup " + i);
-                    break;
-                }
-
-                // Sum all demands of the place group
-                double totalDemand = 0;
-                for (Location p : placeGroup)
-                    totalDemand += p.getDemands();
-
-                // Check whether the demand of origin or destination and current placeGroup fits the vehicleCapacity
-                boolean isOriginCapacityFitsInPlaceGroup = totalDemand + origin.getDemands() <= vehicleCapacity;
-                boolean isDestinationCapacityFitsInPlaceGroup = totalDemand + destination.getDemands() <= vehicleCapacity;
-
-//                if (isOriginCapacityFitsInPlaceGroup)
-//                    Log.e(TAG + "(SM)", "Origin capacity fits in placeGroup " + i);
-//
-//                if (isDestinationCapacityFitsInPlaceGroup)
-//                    Log.e(TAG + "(SM)", "Destination capacity fits in placeGroup " + i);
-
-                Log.e(TAG + "(SM)", "Total demands of placeGroup " + i + ": " + totalDemand);
-
-                if (isOriginExistsInPlaceGroup && isDestinationCapacityFitsInPlaceGroup) {
-                    placeGroup.add(destination);
-//                    Log.e(TAG + "(SM)", "Added " + destination.getName() + " (destination) into placeGroup(" + placeGroups.indexOf(placeGroup) + ") from MatrixElement " + matrixElement.getSavingDistance());
-                    usedPlaces.add(destination);
-                } else if (isDestinationExistsInPlaceGroup && isOriginCapacityFitsInPlaceGroup) {
-                    placeGroup.add(origin);
-//                    Log.e(TAG + "(SM)", "Added " + origin.getName() + " (origin) into placeGroup(" + placeGroups.indexOf(placeGroup) + ") from MatrixElement " + matrixElement.getSavingDistance());
-                    usedPlaces.add(origin);
-                }
-
-            }
-
-            // If the placeGroups size is equal or more than dispatchableVehicles size, prevent creation of a new placeGroup
-            if (placeGroups.size() - 1 >= dispatchableVehicles.size() - 1) {
-                forceStopComputation = true; // By enabling the force stop computation, prevents unused places from being added to the solution
-                continue; // Must use continue to finish the inspection to all distances
-            }
-
-            // Checks if both origin & destination capacity fits
-            vehicleCapacity = dispatchableVehicles.get(placeGroups.size() == 0 ? 0 : placeGroups.size() - 1).getCapacity(); // Get vehicle capacity from the matching index
-            boolean isDistanceCapacityFits = origin.getDemands() + destination.getDemands() <= vehicleCapacity;
-
-            // Checks origin and destination presence in the existing groupedPlaces
-            boolean isOriginExistsInGroupedPlaces = groupedPlaces.contains(origin);
-            boolean isDestinationExistsInGroupedPlaces = groupedPlaces.contains(destination);
+        return resultMatrix;
 
-            // Insert both origin and destination for the first loop or if the origin & destination don't exist in the groupedPlaces, AND if the capacity fits
-            ArrayList<Location> ap = new ArrayList<>();
-            if (
-                    (placeGroups.size() == 0 || (!isOriginExistsInGroupedPlaces && !isDestinationExistsInGroupedPlaces))
-                            && isDistanceCapacityFits
-            ) {
+    }
 
-                ap.add(origin);
-                ap.add(destination);
+    /**
+     * Symmetrize a matrix through a {@link SymmetricDistanceMatrix}. Locations are indexed in the
+     * order they first appear, so UPPER keeps the direction whose origin appears first. That is the
+     * first listed direction only when the elements are listed row by row, e.g. (A, C) then (B, A)
+     * keeps d(A, B), see {@link #symmetrizeMatrix(List)} for the first listed direction.
+     * The given MatrixElement instances are not modified.
+     * @param matrix List of MatrixElement
+     * @param policy how the two directions of a pair are combined
+     * @return List of symmetrized MatrixElement copies
+     */
+    @NonNull
+    public static List<MatrixElement> symmetrizeMatrix(@NonNull List<MatrixElement> matrix, @NonNull SymmetricDistanceMatrix.Policy policy) {
 
-                placeGroups.add(ap);
-                usedPlaces.addAll(ap);
+        SymmetricDistanceMatrix symmetricMatrix = SymmetricDistanceMatrix.fromMatrixElements(matrix, getListedLocations(matrix), policy);
 
-//                Log.e(TAG + "(SM)", "Added " + origin.getName() + " and " + destination.getName() + " into a NEW placeGroup(" + placeGroups.indexOf(ap) + ") from MatrixElement " + matrixElement.getSavingDistance());
-            }
+        ArrayList<MatrixElement> resultMatrix = new ArrayList<>(matrix.size());
 
-        }
+        for (MatrixElement d : matrix) {
 
-        Log.e(TAG + "(SM)", "Begin populating used places");
+            int origin = symmetricMatrix.indexOf(d.getOrigin());
+            int destination = symmetricMatrix.indexOf(d.getDestination());
 
-//        for (DSMPlace p : usedPlaces)
-//            Log.e(TAG + "(SM)", "Used: " + p.getName());
+            resultMatrix.add(copyMatrixElement(d, symmetricMatrix.getDistance(origin, destination)));
 
-        // Populate unused places into one array if computation doesn't force stopped
-        if (!forceStopComputation) {
-            ArrayList<Location> unusedPlaces = new ArrayList<>();
-            for (Location p : places) {
-                if (!usedPlaces.contains(p) && !p.equals(depot)) {
-                    unusedPlaces.add(p);
-//                    Log.e(TAG + "(SM)", "Unused: " + p.getName());
-                }
-            }
-
-            // Add unusedPlaces into placesGroup
-            if (unusedPlaces.size() > 0) {
-                /*
-                    Possibilities on unusedPlaces:
-                    - Filled with leftover places that have don't have pair due to large amount of demands
-                 */
-                for (Location p : unusedPlaces)
-                    placeGroups.add(new ArrayList<>(Collections.singletonList(p)));
-
-                // Warn if the number of unusedPlaces is more than 1 because there might be an error in the algorithm
-                if (unusedPlaces.size() > 2)
-                    Log.e(TAG + "(SM)", "Unused place should be a maximum of one. The solution produce more than one unused places. There might be an error during optimization!");
-            }
         }
 
-        Log.e(TAG + "(SM)", "Start of placeGroups log session");
-
-        for (int i = 0; i < placeGroups.size(); i++) {
-            ArrayList<Location> ap = placeGroups.get(i);
-
-            ap.add(0, depot); // Adds depot every placeGroup's end
-
-            Log.e(TAG + "(SM)", "Start of placeGroup " + i + " contents");
-
-//            for (DSMPlace p : ap) {
-//                Log.e(TAG + "(SM)", "placeGroup " + i + " content: " + p.getName());
-//            }
-
-            /*
-                Filter all distances from distancesArray which its origin and destination are members of
-                the current placeGroup. Required before continuing to optimization.
-             */
-            List<MatrixElement> filteredMatrixElements = filterDistancesArrayByPlacesStrict(distancesArray, ap);
-
-            ArrayList<Vehicle> assignedVehicle = new ArrayList<>(Collections.singletonList(dispatchableVehicles.get(i)));
-            List<Solution> optimizedDistances = computeCapacitatedNearestNeighborResult(filteredMatrixElements, ap, assignedVehicle, depotPlaceIndex, isRoundTrip);
-            solutions.addAll(optimizedDistances);
-
-            Log.e(TAG + "(SM)", "Start of placeGroup " + i + " optimized distances");
-//            for (Solution s : optimizedDistances) {
-//                Log.e(TAG + "(SM)", "placeGroup " + i + ": Place:" + s.getOrigin().getName() + " | Place: " + s.getDestination().getName());
-//            }
-
-            Log.e(TAG + "(SM)", "Start of placeGroup " + i + " demands");
+        return resultMatrix;
 
-            double totalDemands = 0;
-//            for (DSMPlace p : ap) {
-//                totalDemands += p.getDemands();
-//                Log.e(TAG + "(SM)", "placeGroup " + i + ": " + p.getName() + ", demands: " + totalDemands);
-//            }
+    }
 
-            Log.e(TAG + "(SM)", "Total demands: " + totalDemands);
-            Log.e(TAG + "(SM)", "End of placeGroup " + i);
+    /**
+     * Locations in the order they first appear
+     */
+    private static List<Location> getListedLocations(List<MatrixElement> matrix) {
 
+        LinkedHashSet<Location> locations = new LinkedHashSet<>();
+        for (MatrixElement d : matrix) {
+            locations.add(d.getOrigin());
+            locations.add(d.getDestination());
         }
 
-        return solutions;
+        return new ArrayList<>(locations);
 
     }
 
-    // Toolbox
-
-    @NonNull
-    public static List<MatrixElement> symmetrizeMatrix(@NonNull List<MatrixElement> matrix) {
-
-        ArrayList<MatrixElement> resultMatrix = new ArrayList<>(matrix);
+    private static MatrixElement copyMatrixElement(MatrixElement d, double distance) {
 
-        for (MatrixElement d : resultMatrix) {
+        MatrixElement d2 = new MatrixElement(d.getOrigin(), d.getDestination(), distance);
+        d2.setIndex(d.getIndex());
+        d2.setId(d.getId());
+        d2.setDuration(d.getDuration());
+        d2.setSavingDistance(d.getSavingDistance());
 
-            Location origin = d.getOrigin();
-            Location destination = d.getDestination();
-            double distance = d.getDistance();
-
-            // Iterate through matrix again and find the opposite distance and set the value to match the previous distance
-            for (MatrixElement d2 : resultMatrix)
-                if (d2.getOrigin().equals(destination) && d2.getDestination().equals(origin)) // If it's opposite distance
-                    d2.setDistance(distance);
-
-        }
-
-        return resultMatrix;
+        return d2;
 
     }
 
@@ -0,0 +1,848 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+/**
+ * Adaptive Large Neighborhood Search. Starting from a constructive solution, every iteration
+ * removes a part of the locations with a destroy operator (random, worst cost or related/Shaw)
+ * and inserts them back with a repair operator (greedy or regret-3). Operators are picked by a
+ * roulette wheel whose weights adapt to how well each operator performed, and candidates are
+ * accepted with simulated annealing cooled over the time budget.
+ * Repairs keep a cache of the best insertion of every removed location into every trip, so an
+ * insertion only re-evaluates the single trip it changed.
+ */
+public final class AlnsEngine {
+
+    // Time budget when the control has no deadline
+    public static final long DEFAULT_TIME_LIMIT_MILLIS = 10000;
+
+    // Removed locations per iteration
+    private static final int MIN_REMOVAL = 4;
+    private static final int MAX_REMOVAL = 60;
+    private static final double MAX_REMOVAL_RATIO = 0.3;
+
+    // Randomization of the worst and related removals, higher is greedier
+    private static final double REMOVAL_DETERMINISM = 3;
+
+    private static final int REGRET_DEPTH = 3;
+
+    // Adaptive weights
+    private static final int SEGMENT_LENGTH = 100;
+    private static final double REACTION_FACTOR = 0.1;
+    private static final double SCORE_NEW_BEST = 33;
+    private static final double SCORE_BETTER = 9;
+    private static final double SCORE_ACCEPTED = 13;
+
+    // Simulated annealing: a solution 5% worse than the seed is first accepted with probability 0.5
+    private static final double START_WORSENING = 0.05;
+    private static final double START_ACCEPTANCE = 0.5;
+    private static final double END_TEMPERATURE_RATIO = 0.001;
+
+    private static final double EPSILON = 1e-9;
+
+    // Free end of a one way trip, every distance to it is 0
+    private static final int END = -1;
+
+    private static final int DESTROY_RANDOM = 0;
+    private static final int DESTROY_WORST = 1;
+    private static final int DESTROY_RELATED = 2;
+    private static final int REPAIR_GREEDY = 0;
+    private static final int REPAIR_REGRET = 1;
+
+    private final IndexedMatrix matrix;
+    private final int depotIndex;
+    private final int endIndex;
+    private final List<Vehicle> vehicles;
+    private final Random random;
+    private final double unassignedPenalty;
+    private final double maxDistance;
+    private final double maxDemand;
+
+    // Buffers reused between iterations
+    private final BitSet removed;
+    private final int[] items;
+    private final int[] candidates;
+    private final double[] keys;
+    private double[][] insertionCosts; // By trip, then by unassigned location
+    private int[][] insertionPositions;
+
+    private AlnsEngine(IndexedMatrix matrix, int depotIndex, List<Vehicle> vehicles, boolean isRoundTrip, Random random) {
+
+        this.matrix = matrix;
+        this.depotIndex = depotIndex;
+        this.endIndex = isRoundTrip ? depotIndex : END;
+        this.vehicles = NearestNeighborEngine.getSortedVehicles(vehicles);
+        this.random = random;
+
+        int size = matrix.size();
+        double maxDistance = 0;
+        double maxDemand = 0;
+        double maxRoundTrip = 0;
+
+        for (int i = 0; i < size; i++) {
+
+            if (i == depotIndex)
+                continue;
+
+            double roundTrip = getDistance(depotIndex, i) + getDistance(i, endIndex);
+            if (roundTrip < Double.POSITIVE_INFINITY) {
+                maxRoundTrip = Math.max(maxRoundTrip, roundTrip);
+                maxDistance = Math.max(maxDistance, roundTrip);
+            }
+
+            maxDemand = Math.max(maxDemand, matrix.getDemand(i));
+
+        }
+
+        // Serving a location must always beat leaving it out
+        this.unassignedPenalty = 2 * maxRoundTrip + 1;
+        this.maxDistance = Math.max(maxDistance, EPSILON);
+        this.maxDemand = Math.max(maxDemand, EPSILON);
+
+        this.removed = new BitSet(size);
+        this.items = new int[size];
+        this.candidates = new int[size];
+        this.keys = new double[size];
+
+    }
+
+    /**
+     * Capacitated VRP with Adaptive Large Neighborhood Search, runs until the control stops
+     *
+     * @param matrix           IndexedMatrix of the places
+     * @param depotIndex       index of the depot in the matrix
+     * @param initialSolutions List of Solution grouped by trip to start from, e.g. from {@link ClarkeWrightEngine}
+     * @param vehicles         List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip      whether each trip returns to the depot
+     * @param random           Random source of the search
+     * @param control          SolverControl, its deadline is the search budget
+     * @return List of Solution grouped by trip, the best found
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Solution> initialSolutions, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, @NonNull Random random, @NonNull SolverControl control) {
+        return solve(matrix, depotIndex, initialSolutions, vehicles, isRoundTrip, random, Integer.MAX_VALUE, control);
+    }
+
+    /**
+     * Capacitated VRP with Adaptive Large Neighborhood Search, runs until the control stops or the
+     * iteration count is reached. The temperature is cooled over whichever comes first.
+     *
+     * @param matrix           IndexedMatrix of the places
+     * @param depotIndex       index of the depot in the matrix
+     * @param initialSolutions List of Solution grouped by trip to start from, e.g. from {@link ClarkeWrightEngine}
+     * @param vehicles         List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip      whether each trip returns to the depot
+     * @param random           Random source of the search
+     * @param maxIterations    maximum number of destroy and repair iterations
+     * @param control          SolverControl, its deadline is the search budget
+     * @return List of Solution grouped by trip, the best found
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Solution> initialSolutions, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, @NonNull Random random, int maxIterations, @NonNull SolverControl control) {
+
+        AlnsEngine engine = new AlnsEngine(matrix, depotIndex, vehicles, isRoundTrip, random);
+
+        State best = engine.createState(Routes.fromSolutions(initialSolutions, matrix, depotIndex, vehicles));
+        engine.search(best, maxIterations, control);
+
+        return Routes.toSolutions(best.routes, matrix, depotIndex, isRoundTrip);
+
+    }
+
+    private State createState(List<Route> routes) {
+
+        State state = new State();
+
+        BitSet served = new BitSet(matrix.size());
+        state.loads = new double[routes.size()];
+
+        for (int r = 0; r < routes.size(); r++) {
+
+            Route route = routes.get(r);
+            state.routes.add(route);
+
+            for (int p = 0; p < route.length; p++) {
+                served.set(route.stops[p]);
+                state.loads[r] += matrix.getDemand(route.stops[p]);
+            }
+
+        }
+
+        // Locations the seed could not serve
+        for (int i = 0; i < matrix.size(); i++)
+            if (i != depotIndex && !served.get(i))
+                state.addUnassigned(i);
+
+        normalizeSlots(state);
+        state.cost = computeCost(state);
+
+        return state;
+
+    }
+
+    /**
+     * Run the search, best is replaced by the best state found
+     */
+    private void search(State best, int maxIterations, SolverControl control) {
+
+        State current = new State();
+        State candidate = new State();
+        current.copyFrom(best);
+
+        double[] destroyWeights = {1, 1, 1};
+        double[] repairWeights = {1, 1};
+        double[] destroyScores = new double[destroyWeights.length];
+        double[] repairScores = new double[repairWeights.length];
+        int[] destroyUses = new int[destroyWeights.length];
+        int[] repairUses = new int[repairWeights.length];
+
+        double startTemperature = -START_WORSENING * Math.max(best.cost, EPSILON) / Math.log(START_ACCEPTANCE);
+        long startTime = System.nanoTime();
+        long budget = control.getRemainingNanos();
+
+        if (budget == Long.MAX_VALUE && maxIterations == Integer.MAX_VALUE)
+            budget = DEFAULT_TIME_LIMIT_MILLIS * 1000000L;
+
+        for (int iteration = 0; iteration < maxIterations && !control.shouldStop(); iteration++) {
+
+            long elapsed = System.nanoTime() - startTime;
+
+            if (elapsed >= budget)
+                break;
+
+            // Cool down over the time budget or the iterations, whichever runs out first
+            double progress = Math.max((double) elapsed / budget, (double) iteration / maxIterations);
+            double temperature = startTemperature * Math.pow(END_TEMPERATURE_RATIO, progress);
+
+            int destroy = select(destroyWeights);
+            int repair = select(repairWeights);
+
+            candidate.copyFrom(current);
+            destroy(candidate, destroy);
+            repair(candidate, repair);
+            candidate.cost = computeCost(candidate);
+
+            double score = 0;
+
+            if (candidate.cost < best.cost - EPSILON) {
+                best.copyFrom(candidate);
+                current.copyFrom(candidate);
+                score = SCORE_NEW_BEST;
+
+                if (best.unassignedCount == 0 && control.isProgressDue(best.cost))
+                    control.reportProgress(Routes.toSolutions(best.routes, matrix, depotIndex, endIndex != END), best.cost);
+
+            } else if (candidate.cost < current.cost - EPSILON) {
+                current.copyFrom(candidate);
+                score = SCORE_BETTER;
+            } else if (random.nextDouble() < Math.exp((current.cost - candidate.cost) / temperature)) {
+                current.copyFrom(candidate);
+                score = SCORE_ACCEPTED;
+            }
+
+            destroyScores[destroy] += score;
+            repairScores[repair] += score;
+            destroyUses[destroy]++;
+            repairUses[repair]++;
+
+            if ((iteration + 1) % SEGMENT_LENGTH == 0) {
+                updateWeights(destroyWeights, destroyScores, destroyUses);
+                updateWeights(repairWeights, repairScores, repairUses);
+            }
+
+        }
+
+        // Empty slots are only needed while searching
+        best.removeEmptyRoutes();
+
+    }
+
+    private int select(double[] weights) {
+
+        double total = 0;
+        for (double weight : weights)
+            total += weight;
+
+        double target = random.nextDouble() * total;
+
+        for (int i = 0; i < weights.length - 1; i++) {
+            target -= weights[i];
+            if (target < 0)
+                return i;
+        }
+
+        return weights.length - 1;
+
+    }
+
+    private static void updateWeights(double[] weights, double[] scores, int[] uses) {
+
+        for (int i = 0; i < weights.length; i++) {
+
+            if (uses[i] > 0)
+                weights[i] = weights[i] * (1 - REACTION_FACTOR) + REACTION_FACTOR * scores[i] / uses[i];
+
+            // Keep every operator selectable
+            weights[i] = Math.max(weights[i], 0.01);
+            scores[i] = 0;
+            uses[i] = 0;
+
+        }
+
+    }
+
+    // Destroy operators
+
+    private void destroy(State state, int operator) {
+
+        // Routed locations
+        int count = 0;
+        for (Route route : state.routes)
+            for (int p = 0; p < route.length; p++)
+                items[count++] = route.stops[p];
+
+        if (count == 0)
+            return;
+
+        int maxRemoval = Math.max(1, Math.min(MAX_REMOVAL, Math.max(MIN_REMOVAL, (int) (count * MAX_REMOVAL_RATIO))));
+        int minRemoval = Math.min(MIN_REMOVAL, maxRemoval);
+        int removal = Math.min(count, minRemoval + random.nextInt(maxRemoval - minRemoval + 1));
+
+        removed.clear();
+
+        switch (operator) {
+            case DESTROY_RANDOM:
+                removeRandom(count, removal);
+                break;
+            case DESTROY_WORST:
+                removeWorst(state, count, removal);
+                break;
+            default:
+                removeRelated(count, removal);
+                break;
+        }
+
+        state.remove(removed, matrix);
+
+    }
+
+    private void removeRandom(int count, int removal) {
+
+        // Partial Fisher-Yates shuffle
+        for (int i = 0; i < removal; i++) {
+            int j = i + random.nextInt(count - i);
+            int swap = items[i];
+            items[i] = items[j];
+            items[j] = swap;
+            removed.set(items[i]);
+        }
+
+    }
+
+    /**
+     * Remove the locations whose detour is the largest, randomized towards the worst
+     */
+    private void removeWorst(State state, int count, int removal) {
+
+        int k = 0;
+
+        for (Route route : state.routes) {
+            for (int p = 0; p < route.length; p++) {
+                int before = p == 0 ? depotIndex : route.stops[p - 1];
+                int after = p == route.length - 1 ? endIndex : route.stops[p + 1];
+                int location = route.stops[p];
+                items[k] = location;
+                keys[k] = -(getDistance(before, location) + getDistance(location, after) - getDistance(before, after));
+                k++;
+            }
+        }
+
+        sort(items, keys, 0, count);
+
+        // Pick from the sorted worst first, skipping the ones already removed
+        for (int i = 0; i < removal; i++) {
+
+            int pick = (int) (Math.pow(random.nextDouble(), REMOVAL_DETERMINISM) * (count - i));
+
+            for (int j = 0; j < count; j++) {
+                if (removed.get(items[j]))
+                    continue;
+                if (pick-- == 0) {
+                    removed.set(items[j]);
+                    break;
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * Shaw removal: remove locations close to, and with a demand similar to, the ones already removed
+     */
+    private void removeRelated(int count, int removal) {
+
+        int[] chosen = new int[removal];
+        int chosenCount = 0;
+
+        int seed = items[random.nextInt(count)];
+        removed.set(seed);
+        chosen[chosenCount++] = seed;
+
+        while (chosenCount < removal) {
+
+            int reference = chosen[random.nextInt(chosenCount)];
+
+            // Remaining routed locations by relatedness
+            int remaining = 0;
+            for (int i = 0; i < count; i++) {
+
+                int location = items[i];
+
+                if (removed.get(location))
+                    continue;
+
+                double distance = Math.min(getDistance(reference, location), getDistance(location, reference));
+
+                candidates[remaining] = location;
+                keys[remaining] = distance / maxDistance + Math.abs(matrix.getDemand(reference) - matrix.getDemand(location)) / maxDemand;
+                remaining++;
+
+            }
+
+            if (remaining == 0)
+                break;
+
+            sort(candidates, keys, 0, remaining);
+
+            int location = candidates[(int) (Math.pow(random.nextDouble(), REMOVAL_DETERMINISM) * remaining)];
+            removed.set(location);
+            chosen[chosenCount++] = location;
+
+        }
+
+    }
+
+    // Repair operators
+
+    /**
+     * Insert the unassigned locations back, greedy picks the cheapest insertion first, regret the
+     * location that would lose the most by not getting its best trip
+     */
+    private void repair(State state, int operator) {
+
+        int unassigned = state.unassignedCount;
+
+        if (unassigned == 0) {
+            normalizeSlots(state);
+            return;
+        }
+
+        // Every insertion opens at most one new trip
+        ensureCacheCapacity(state.routes.size() + unassigned, unassigned);
+
+        for (int r = 0; r < state.routes.size(); r++)
+            computeInsertions(state, r);
+
+        while (state.unassignedCount > 0) {
+
+            int bestU = -1;
+            int bestRoute = -1;
+            double bestKey = Double.NEGATIVE_INFINITY;
+            double bestCost = Double.POSITIVE_INFINITY;
+
+            for (int u = 0; u < state.unassignedCount; u++) {
+
+                int route = -1;
+                double cost = Double.POSITIVE_INFINITY;
+                double key;
+
+                if (operator == REPAIR_GREEDY) {
+
+                    for (int r = 0; r < state.routes.size(); r++) {
+                        if (insertionCosts[r][u] < cost) {
+                            cost = insertionCosts[r][u];
+                            route = r;
+                        }
+                    }
+
+                    key = -cost;
+
+                } else {
+
+                    // Best REGRET_DEPTH insertions into distinct trips
+                    double[] best = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+
+                    for (int r = 0; r < state.routes.size(); r++) {
+
+                        double c = insertionCosts[r][u];
+
+                        if (c >= best[REGRET_DEPTH - 1])
+                            continue;
+
+                        if (c < best[0])
+                            route = r;
+
+                        int k = REGRET_DEPTH - 1;
+                        while (k > 0 && best[k - 1] > c) {
+                            best[k] = best[k - 1];
+                            k--;
+                        }
+                        best[k] = c;
+
+                    }
+
+                    cost = best[0];
+                    key = 0;
+
+                    for (int k = 1; k < REGRET_DEPTH; k++)
+                        key += Math.min(best[k], unassignedPenalty) - cost;
+
+                }
+
+                if (route == -1)
+                    continue;
+
+                if (key > bestKey || (key == bestKey && cost < bestCost)) {
+                    bestU = u;
+                    bestRoute = route;
+                    bestKey = key;
+                    bestCost = cost;
+                }
+
+            }
+
+            // Nothing fits anymore
+            if (bestU == -1)
+                break;
+
+            Route route = state.routes.get(bestRoute);
+            boolean wasEmpty = route.length == 0;
+
+            state.insert(bestRoute, insertionPositions[bestRoute][bestU], state.unassigned[bestU], matrix);
+
+            // Keep the cache aligned with the unassigned list
+            int last = state.unassignedCount;
+            state.removeUnassigned(bestU);
+            for (int r = 0; r < state.routes.size(); r++) {
+                insertionCosts[r][bestU] = insertionCosts[r][last - 1];
+                insertionPositions[r][bestU] = insertionPositions[r][last - 1];
+            }
+
+            // Only the changed trip needs new insertion costs
+            computeInsertions(state, bestRoute);
+
+            // Open a new empty trip of the same vehicle if it can still be dispatched
+            if (wasEmpty && canDispatch(state, route.vehicle)) {
+                state.routes.add(new Route(route.vehicle, new int[4], 0));
+                state.loads = ensureLength(state.loads, state.routes.size());
+                state.loads[state.routes.size() - 1] = 0;
+                computeInsertions(state, state.routes.size() - 1);
+            }
+
+        }
+
+        normalizeSlots(state);
+
+    }
+
+    private void ensureCacheCapacity(int routes, int unassigned) {
+
+        if (insertionCosts == null || insertionCosts.length < routes || insertionCosts[0].length < unassigned) {
+
+            int routeCapacity = Math.max(routes, insertionCosts == null ? 0 : insertionCosts.length * 2);
+            int unassignedCapacity = Math.max(unassigned, insertionCosts == null ? 0 : insertionCosts[0].length);
+
+            insertionCosts = new double[routeCapacity][unassignedCapacity];
+            insertionPositions = new int[routeCapacity][unassignedCapacity];
+
+        }
+
+    }
+
+    /**
+     * Cache the cheapest feasible insertion of every unassigned location into a trip
+     */
+    private void computeInsertions(State state, int r) {
+
+        Route route = state.routes.get(r);
+        double capacity = route.vehicle.getCapacity() - state.loads[r];
+        double[] costs = insertionCosts[r];
+        int[] positions = insertionPositions[r];
+
+        for (int u = 0; u < state.unassignedCount; u++) {
+
+            int location = state.unassigned[u];
+            costs[u] = Double.POSITIVE_INFINITY;
+
+            if (matrix.getDemand(location) > capacity)
+                continue;
+
+            int before = depotIndex;
+
+            for (int p = 0; p <= route.length; p++) {
+
+                int after = p == route.length ? endIndex : route.stops[p];
+                double cost = getDistance(before, location) + getDistance(location, after) - getDistance(before, after);
+
+                if (cost < costs[u]) {
+                    costs[u] = cost;
+                    positions[u] = p;
+                }
+
+                before = after;
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Keep a single empty trip for each vehicle that can still be dispatched
+     */
+    private void normalizeSlots(State state) {
+
+        state.removeEmptyRoutes();
+
+        for (Vehicle v : vehicles) {
+            if (canDispatch(state, v)) {
+                state.routes.add(new Route(v, new int[4], 0));
+                state.loads = ensureLength(state.loads, state.routes.size());
+                state.loads[state.routes.size() - 1] = 0;
+            }
+        }
+
+    }
+
+    private boolean canDispatch(State state, Vehicle vehicle) {
+
+        int dispatched = 0;
+
+        for (Route route : state.routes) {
+            if (route.vehicle != vehicle)
+                continue;
+            if (route.length == 0)
+                return false;
+            dispatched++;
+        }
+
+        return dispatched < vehicle.getDispatchLimit();
+
+    }
+
+    private double computeCost(State state) {
+
+        double cost = state.unassignedCount * unassignedPenalty;
+
+        for (Route route : state.routes) {
+
+            if (route.length == 0)
+                continue;
+
+            int before = depotIndex;
+            for (int p = 0; p < route.length; p++) {
+                cost += getDistance(before, route.stops[p]);
+                before = route.stops[p];
+            }
+            cost += getDistance(before, endIndex);
+
+        }
+
+        return cost;
+
+    }
+
+    private double getDistance(int origin, int destination) {
+        return origin == END || destination == END ? 0 : matrix.getDistance(origin, destination);
+    }
+
+    private static double[] ensureLength(double[] array, int length) {
+        return array.length >= length ? array : Arrays.copyOf(array, Math.max(length, array.length * 2));
+    }
+
+    /**
+     * Sort items[from, to) by ascending key, keys are moved along
+     */
+    private static void sort(int[] items, double[] keys, int from, int to) {
+
+        while (to - from > 16) {
+
+            double pivot = keys[(from + to) >>> 1];
+            int i = from;
+            int j = to - 1;
+
+            while (i <= j) {
+                while (keys[i] < pivot)
+                    i++;
+                while (keys[j] > pivot)
+                    j--;
+                if (i <= j) {
+                    swap(items, keys, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            // Recurse into the smaller half
+            if (j - from < to - i) {
+                sort(items, keys, from, j + 1);
+                from = i;
+            } else {
+                sort(items, keys, i, to);
+                to = j + 1;
+            }
+
+        }
+
+        // Insertion sort small ranges
+        for (int i = from + 1; i < to; i++)
+            for (int j = i; j > from && keys[j - 1] > keys[j]; j--)
+                swap(items, keys, j, j - 1);
+
+    }
+
+    private static void swap(int[] items, double[] keys, int i, int j) {
+        int item = items[i];
+        items[i] = items[j];
+        items[j] = item;
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+    }
+
+    /**
+     * Trips, their loads and the unassigned locations of a candidate solution
+     */
+    private static final class State {
+
+        final ArrayList<Route> routes = new ArrayList<>();
+        double[] loads = new double[0];
+        int[] unassigned = new int[0];
+        int unassignedCount;
+        double cost;
+
+        void copyFrom(State other) {
+
+            for (int r = 0; r < other.routes.size(); r++) {
+
+                Route source = other.routes.get(r);
+                Route route = r < routes.size() ? routes.get(r) : null;
+
+                if (route == null || route.vehicle != source.vehicle || route.stops.length < source.length) {
+                    route = new Route(source.vehicle, new int[Math.max(4, source.stops.length)], 0);
+                    if (r < routes.size())
+                        routes.set(r, route);
+                    else
+                        routes.add(route);
+                }
+
+                System.arraycopy(source.stops, 0, route.stops, 0, source.length);
+                route.length = source.length;
+
+            }
+
+            while (routes.size() > other.routes.size())
+                routes.remove(routes.size() - 1);
+
+            loads = ensureLength(loads, other.routes.size());
+            System.arraycopy(other.loads, 0, loads, 0, other.routes.size());
+
+            if (unassigned.length < other.unassignedCount)
+                unassigned = new int[other.unassigned.length];
+            System.arraycopy(other.unassigned, 0, unassigned, 0, other.unassignedCount);
+            unassignedCount = other.unassignedCount;
+
+            cost = other.cost;
+
+        }
+
+        /**
+         * Move the locations of a set from their trips to the unassigned list
+         */
+        void remove(BitSet locations, IndexedMatrix matrix) {
+
+            for (int r = 0; r < routes.size(); r++) {
+
+                Route route = routes.get(r);
+                int length = 0;
+
+                for (int p = 0; p < route.length; p++) {
+
+                    int location = route.stops[p];
+
+                    if (locations.get(location)) {
+                        loads[r] -= matrix.getDemand(location);
+                        addUnassigned(location);
+                    } else {
+                        route.stops[length++] = location;
+                    }
+
+                }
+
+                route.length = length;
+
+            }
+
+        }
+
+        void insert(int r, int position, int location, IndexedMatrix matrix) {
+
+            Route route = routes.get(r);
+
+            if (route.stops.length == route.length)
+                route.stops = Arrays.copyOf(route.stops, route.length * 2);
+
+            System.arraycopy(route.stops, position, route.stops, position + 1, route.length - position);
+            route.stops[position] = location;
+            route.length++;
+            loads[r] += matrix.getDemand(location);
+
+        }
+
+        void addUnassigned(int location) {
+
+            if (unassigned.length == unassignedCount)
+                unassigned = Arrays.copyOf(unassigned, Math.max(4, unassignedCount * 2));
+
+            unassigned[unassignedCount++] = location;
+
+        }
+
+        /**
+         * Remove by swapping the last unassigned location into its place
+         */
+        void removeUnassigned(int index) {
+            unassigned[index] = unassigned[--unassignedCount];
+        }
+
+        void removeEmptyRoutes() {
+
+            int count = 0;
+
+            for (int r = 0; r < routes.size(); r++) {
+                if (routes.get(r).length == 0)
+                    continue;
+                routes.set(count, routes.get(r));
+                loads[count] = loads[r];
+                count++;
+            }
+
+            while (routes.size() > count)
+                routes.remove(routes.size() - 1);
+
+        }
+
+    }
+
+}
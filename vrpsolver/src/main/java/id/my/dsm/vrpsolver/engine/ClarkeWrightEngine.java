@@ -0,0 +1,641 @@
+package id.my.dsm.vrpsolver.engine;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.matrix.OracleMatrix;
+import id.my.dsm.vrpsolver.matrix.SubMatrix;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+/**
+ * Parallel Clarke-Wright Saving Matrix engine. Every location starts in its own route, then routes
+ * are joined end to end by descending saving. Each location keeps its route id in a union-find,
+ * its two route neighbours (a location is an endpoint while one of them is the depot) and every
+ * route root keeps its running load, so each saving pair is accepted or rejected in near-constant time.
+ */
+public final class ClarkeWrightEngine {
+
+    private static final String TAG = ClarkeWrightEngine.class.getSimpleName();
+
+    // Neighbour value that stands for the depot
+    private static final int NONE = -1;
+
+    private ClarkeWrightEngine() {
+    }
+
+    /**
+     * Capacitated VRP with Saving Matrix method
+     *
+     * @param matrix        IndexedMatrix of the places
+     * @param depotIndex    index of the depot in the matrix
+     * @param vehicles      List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip   whether each trip returns to the depot
+     * @param isLazySavings true to extract savings from a max-heap as they are used instead of sorting all of them up front
+     * @return List of Solution grouped by trip
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, boolean isLazySavings) {
+        return solve(matrix, depotIndex, vehicles, isRoundTrip, isLazySavings, new SolverControl());
+    }
+
+    /**
+     * Capacitated VRP with Saving Matrix method. Once the control stops, merging stops and the
+     * routes merged so far are returned, every location is still served.
+     *
+     * @param matrix        IndexedMatrix of the places
+     * @param depotIndex    index of the depot in the matrix
+     * @param vehicles      List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip   whether each trip returns to the depot
+     * @param isLazySavings true to extract savings from a max-heap as they are used instead of sorting all of them up front
+     * @param control       SolverControl polled while computing and merging savings
+     * @return List of Solution grouped by trip
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, boolean isLazySavings, @NonNull SolverControl control) {
+        return solve(matrix, depotIndex, vehicles, isRoundTrip, isLazySavings, 1, control);
+    }
+
+    /**
+     * Capacitated VRP with Saving Matrix method on the parameterized savings
+     * s(i, j) = d(depot, i) + d(depot, j) - lambda * d(i, j), see {@link SavingsEngine}
+     *
+     * @param matrix        IndexedMatrix of the places
+     * @param depotIndex    index of the depot in the matrix
+     * @param vehicles      List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip   whether each trip returns to the depot
+     * @param isLazySavings true to extract savings from a max-heap as they are used instead of sorting all of them up front
+     * @param lambda        weight of the distance between both locations, 1 for the classic savings
+     * @param control       SolverControl polled while computing and merging savings
+     * @return List of Solution grouped by trip
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, boolean isLazySavings, double lambda, @NonNull SolverControl control) {
+        return solve(matrix, depotIndex, vehicles, isRoundTrip, isLazySavings, lambda, null, control);
+    }
+
+    /**
+     * Capacitated VRP with Saving Matrix method on the parameterized savings and time windows.
+     * On an {@link OracleMatrix} the savings are granular, see {@link SavingsEngine#computeGranular}.
+     *
+     * @param matrix        IndexedMatrix of the places
+     * @param depotIndex    index of the depot in the matrix
+     * @param vehicles      List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip   whether each trip returns to the depot
+     * @param isLazySavings true to extract savings from a max-heap as they are used instead of sorting all of them up front
+     * @param lambda        weight of the distance between both locations, 1 for the classic savings
+     * @param timeWindows   TimeWindows of the places, null if time is not constrained, otherwise every vehicle is dispatched once
+     * @param control       SolverControl polled while computing and merging savings
+     * @return List of Solution grouped by trip
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, boolean isLazySavings, double lambda, @Nullable TimeWindows timeWindows, @NonNull SolverControl control) {
+
+        // An oracle is only asked for the pairs of nearest locations, not for every pair
+        SavingsList savingsList = matrix instanceof OracleMatrix
+                ? SavingsEngine.computeGranular(matrix, depotIndex, lambda, SavingsEngine.DEFAULT_NEIGHBOR_COUNT, control)
+                : SavingsEngine.computeList(matrix, depotIndex, lambda, SolverPool.get(), control);
+
+        // Skip the full sort when the control already stopped, nothing will be merged anyway
+        return solve(matrix, depotIndex, savingsList, savingsList.iterator(isLazySavings || control.shouldStop()), vehicles, isRoundTrip, timeWindows, control);
+
+    }
+
+    /**
+     * Capacitated VRP with Saving Matrix method on a view of a matrix whose savings are kept, e.g.
+     * the live view of a {@link id.my.dsm.vrpsolver.matrix.MutableDistanceMatrix} with savings
+     * updated on every change by {@link SavingsEngine#update}, instead of computing them again
+     *
+     * @param view          SubMatrix of the places, e.g. from MutableDistanceMatrix#newLiveView()
+     * @param depotIndex    index of the depot in the view
+     * @param savings       SavingsMatrix of the parent of the view, indexed like the parent
+     * @param vehicles      List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip   whether each trip returns to the depot
+     * @param isLazySavings true to extract savings from a max-heap as they are used instead of sorting all of them up front
+     * @param timeWindows   TimeWindows of the view, null if time is not constrained
+     * @param control       SolverControl polled while merging savings
+     * @return List of Solution grouped by trip
+     * @throws IllegalArgumentException if the savings are of another depot or were not updated
+     *                                  with the last locations of the parent
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull SubMatrix view, int depotIndex, @NonNull SavingsMatrix savings, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, boolean isLazySavings, @Nullable TimeWindows timeWindows, @NonNull SolverControl control) {
+
+        if (view.getParentIndex(depotIndex) != savings.getDepotIndex())
+            throw new IllegalArgumentException("The savings are of depot " + savings.getDepotIndex() + ", not " + view.getParentIndex(depotIndex));
+
+        for (int i = 0; i < view.size(); i++)
+            if (view.getParentIndex(i) >= savings.size())
+                throw new IllegalArgumentException("No savings of index " + view.getParentIndex(i) + ", update them once a location is added");
+
+        SavingsList savingsList = SavingsList.fromSavingsMatrix(savings, view);
+
+        return solve(view, depotIndex, savingsList, savingsList.iterator(isLazySavings || control.shouldStop()), vehicles, isRoundTrip, timeWindows, control);
+
+    }
+
+    /**
+     * Capacitated VRP with Saving Matrix method using precomputed savings
+     *
+     * @param matrix          IndexedMatrix of the places
+     * @param depotIndex      index of the depot in the matrix
+     * @param savingsList     SavingsList of the places
+     * @param savingsIterator iterator over savingsList by descending saving
+     * @param vehicles        List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip     whether each trip returns to the depot
+     * @return List of Solution grouped by trip
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull SavingsList savingsList, @NonNull SavingsList.SavingsIterator savingsIterator, @NonNull List<Vehicle> vehicles, boolean isRoundTrip) {
+        return solve(matrix, depotIndex, savingsList, savingsIterator, vehicles, isRoundTrip, new SolverControl());
+    }
+
+    /**
+     * Capacitated VRP with Saving Matrix method using precomputed savings
+     *
+     * @param matrix          IndexedMatrix of the places
+     * @param depotIndex      index of the depot in the matrix
+     * @param savingsList     SavingsList of the places
+     * @param savingsIterator iterator over savingsList by descending saving
+     * @param vehicles        List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip     whether each trip returns to the depot
+     * @param control         SolverControl polled while merging
+     * @return List of Solution grouped by trip
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull SavingsList savingsList, @NonNull SavingsList.SavingsIterator savingsIterator, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, @NonNull SolverControl control) {
+        return solve(matrix, depotIndex, savingsList, savingsIterator, vehicles, isRoundTrip, null, control);
+    }
+
+    /**
+     * Capacitated VRP with Saving Matrix method using precomputed savings and time windows.
+     * With time windows routes are directed: a saving only joins the last stop of a route to the
+     * first stop of another. Every route root keeps the schedule summary of its stops (duration,
+     * earliest and latest start, see {@link #isOnTime}), which concatenates in O(1), so a merge is
+     * still accepted or rejected in near-constant time. Merges are checked against the widest
+     * shift of the fleet, the exact shift is checked once routes are assigned to vehicles.
+     *
+     * @param matrix          IndexedMatrix of the places
+     * @param depotIndex      index of the depot in the matrix
+     * @param savingsList     SavingsList of the places
+     * @param savingsIterator iterator over savingsList by descending saving
+     * @param vehicles        List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip     whether each trip returns to the depot
+     * @param timeWindows     TimeWindows of the places, null if time is not constrained, otherwise every vehicle is dispatched once
+     * @param control         SolverControl polled while merging
+     * @return List of Solution grouped by trip
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull SavingsList savingsList, @NonNull SavingsList.SavingsIterator savingsIterator, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, @Nullable TimeWindows timeWindows, @NonNull SolverControl control) {
+
+        if (timeWindows != null)
+            TimeWindows.checkVehicles(vehicles);
+
+        int size = matrix.size();
+        int end = isRoundTrip ? depotIndex : TimeWindows.END;
+
+        // Vehicle types, the default vehicle first
+        Fleet fleet = new Fleet(vehicles);
+
+        // Routes can not grow beyond the largest dispatchable vehicle, nor beyond the widest shift
+        double maxCapacity = fleet.getMaxCapacity();
+        double startTime = Double.POSITIVE_INFINITY;
+        double endTime = Double.NEGATIVE_INFINITY;
+        for (int t = 0; timeWindows != null && t < fleet.size(); t++) {
+            if (fleet.getRemaining(t) > 0) {
+                startTime = Math.min(startTime, timeWindows.getStartTime(fleet.getVehicle(t), depotIndex));
+                endTime = Math.max(endTime, timeWindows.getEndTime(fleet.getVehicle(t), depotIndex));
+            }
+        }
+
+        // Schedule summary of each route, valid on route roots only: the route starts its first
+        // stop at most at latest and leaves its last stop at max(start, earliest) + duration
+        int[] heads = null;
+        int[] tails = null;
+        double[] durations = null;
+        double[] earliest = null;
+        double[] latest = null;
+
+        if (timeWindows != null) {
+            heads = new int[size];
+            tails = new int[size];
+            durations = new double[size];
+            earliest = new double[size];
+            latest = new double[size];
+        }
+
+        // Route state of each location
+        int[] parent = new int[size]; // Union-find, the root is the route id
+        int[] rank = new int[size];
+        double[] load = new double[size]; // Running load, valid on route roots only
+        int[] firstLink = new int[size]; // Route neighbours, NONE is the depot
+        int[] secondLink = new int[size];
+        BitSet routed = new BitSet(size); // Locations that fit into a vehicle
+
+        for (int i = 0; i < size; i++) {
+
+            parent[i] = i;
+            load[i] = matrix.getDemand(i);
+            firstLink[i] = NONE;
+            secondLink[i] = NONE;
+
+            if (timeWindows != null) {
+                heads[i] = i;
+                tails[i] = i;
+                durations[i] = timeWindows.getServiceDuration(i);
+                earliest[i] = timeWindows.getReadyTime(i);
+                latest[i] = timeWindows.getDueTime(i);
+            }
+
+            if (i != depotIndex && load[i] <= maxCapacity
+                    && (timeWindows == null || isOnTime(timeWindows, depotIndex, end, startTime, endTime, i, i, durations[i], earliest[i], latest[i])))
+                routed.set(i);
+
+        }
+
+        // Merge routes by descending saving, routes merged so far stay valid when stopped
+        while (savingsIterator.hasNext() && !control.shouldStop()) {
+
+            int position = savingsIterator.next();
+
+            // Merging is no longer profitable
+            if (savingsList.getSaving(position) <= 0)
+                break;
+
+            int i = savingsList.getOrigin(position);
+            int j = savingsList.getDestination(position);
+
+            if (!routed.get(i) || !routed.get(j))
+                continue;
+
+            // Interior locations can not be linked anymore
+            if (secondLink[i] != NONE || secondLink[j] != NONE)
+                continue;
+
+            int routeI = find(parent, i);
+            int routeJ = find(parent, j);
+
+            if (routeI == routeJ)
+                continue;
+
+            double mergedLoad = load[routeI] + load[routeJ];
+
+            if (mergedLoad > maxCapacity)
+                continue;
+
+            // Directed join, the last stop of the first route to the first stop of the second
+            int first = NONE;
+            int second = NONE;
+            double mergedDuration = 0;
+            double mergedEarliest = 0;
+            double mergedLatest = 0;
+
+            if (timeWindows != null) {
+
+                for (int k = 0; k < 2 && first == NONE; k++) {
+
+                    int a = k == 0 ? routeI : routeJ;
+                    int b = k == 0 ? routeJ : routeI;
+
+                    if (tails[a] != (k == 0 ? i : j) || heads[b] != (k == 0 ? j : i))
+                        continue;
+
+                    // Concatenation of both summaries
+                    double shift = durations[a] + timeWindows.getTravelTime(tails[a], heads[b]);
+
+                    if (earliest[a] + shift > latest[b])
+                        continue;
+
+                    double duration = shift + durations[b];
+                    double early = Math.max(earliest[a], earliest[b] - shift);
+                    double late = Math.min(latest[a], latest[b] - shift);
+
+                    if (!isOnTime(timeWindows, depotIndex, end, startTime, endTime, heads[a], tails[b], duration, early, late))
+                        continue;
+
+                    first = a;
+                    second = b;
+                    mergedDuration = duration;
+                    mergedEarliest = early;
+                    mergedLatest = late;
+
+                }
+
+                if (first == NONE)
+                    continue;
+
+            }
+
+            // Join both routes end to end
+            link(firstLink, secondLink, i, j);
+            link(firstLink, secondLink, j, i);
+
+            int root = union(parent, rank, routeI, routeJ);
+            load[root] = mergedLoad;
+
+            if (timeWindows != null) {
+                heads[root] = heads[first];
+                tails[root] = tails[second];
+                durations[root] = mergedDuration;
+                earliest[root] = mergedEarliest;
+                latest[root] = mergedLatest;
+            }
+
+        }
+
+        // Collect routes by walking from one endpoint to the other
+        int[] sequence = new int[size];
+        int[] routeStarts = new int[size];
+        int[] routeLengths = new int[size];
+        double[] routeLoads = new double[size];
+        int routes = 0;
+        int cursor = 0;
+
+        BitSet collected = new BitSet(size);
+
+        for (int i = routed.nextSetBit(0); i >= 0; i = routed.nextSetBit(i + 1)) {
+
+            if (collected.get(i) || secondLink[i] != NONE)
+                continue;
+
+            // Directed routes are walked from their first stop
+            if (timeWindows != null && heads[find(parent, i)] != i)
+                continue;
+
+            routeStarts[routes] = cursor;
+
+            int previous = NONE;
+            int current = i;
+
+            while (current != NONE) {
+                sequence[cursor++] = current;
+                collected.set(current);
+
+                int next = firstLink[current] != previous ? firstLink[current] : secondLink[current];
+                previous = current;
+                current = next;
+            }
+
+            routeLengths[routes] = cursor - routeStarts[routes];
+            routeLoads[routes] = load[find(parent, i)];
+
+            if (timeWindows == null)
+                orient(matrix, depotIndex, sequence, routeStarts[routes], routeLengths[routes], isRoundTrip);
+
+            routes++;
+
+        }
+
+        // Assign the heaviest routes first, each to the smallest vehicle that fits
+        Segments segments = assignVehicles(matrix, depotIndex, fleet, sequence, routeStarts, routeLengths, routeLoads, routes, isRoundTrip, timeWindows);
+        Integer[] loadOrder = getLoadOrder(segments.loads, segments.count);
+
+        ArrayList<Solution> solutions = new ArrayList<>();
+        int[] route = new int[size];
+
+        for (int t = 0; t < fleet.size(); t++) {
+            for (int r : loadOrder) {
+
+                if (segments.vehicles[r] != t)
+                    continue;
+
+                System.arraycopy(sequence, segments.starts[r], route, 0, segments.lengths[r]);
+                Trips.appendTrip(solutions, matrix, depotIndex, route, segments.lengths[r], fleet.getVehicle(t), isRoundTrip, timeWindows);
+
+            }
+        }
+
+        return solutions;
+
+    }
+
+    private static int find(int[] parent, int i) {
+
+        int root = i;
+        while (parent[root] != root)
+            root = parent[root];
+
+        // Path compression
+        while (parent[i] != root) {
+            int next = parent[i];
+            parent[i] = root;
+            i = next;
+        }
+
+        return root;
+
+    }
+
+    private static int union(int[] parent, int[] rank, int a, int b) {
+
+        if (rank[a] < rank[b]) {
+            parent[a] = b;
+            return b;
+        }
+
+        parent[b] = a;
+
+        if (rank[a] == rank[b])
+            rank[a]++;
+
+        return a;
+
+    }
+
+    private static void link(int[] firstLink, int[] secondLink, int from, int to) {
+        if (firstLink[from] == NONE)
+            firstLink[from] = to;
+        else
+            secondLink[from] = to;
+    }
+
+    /**
+     * Reverse the route in place if travelling it backwards is cheaper. Only matters for asymmetric matrices.
+     */
+    private static void orient(IndexedMatrix matrix, int depotIndex, int[] sequence, int start, int length, boolean isRoundTrip) {
+
+        int end = start + length - 1;
+
+        double forward = matrix.getDistance(depotIndex, sequence[start]);
+        double backward = matrix.getDistance(depotIndex, sequence[end]);
+
+        for (int k = start; k < end; k++) {
+            forward += matrix.getDistance(sequence[k], sequence[k + 1]);
+            backward += matrix.getDistance(sequence[k + 1], sequence[k]);
+        }
+
+        if (isRoundTrip) {
+            forward += matrix.getDistance(sequence[end], depotIndex);
+            backward += matrix.getDistance(sequence[start], depotIndex);
+        }
+
+        if (backward < forward) {
+            for (int a = start, b = end; a < b; a++, b--) {
+                int swap = sequence[a];
+                sequence[a] = sequence[b];
+                sequence[b] = swap;
+            }
+        }
+
+    }
+
+    /**
+     * Best fit assignment of routes to vehicles, heaviest route first. Dispatch counters are kept per vehicle type.
+     * A route that no remaining vehicle can carry, e.g. merged up to a larger vehicle whose dispatches
+     * ran out, is split in order over the largest remaining vehicles.
+     * With time windows a vehicle must also be on time for the whole route within its own shift.
+     * @return trips as segments of the sequence with the type of their vehicle in the fleet
+     */
+    private static Segments assignVehicles(IndexedMatrix matrix, int depotIndex, Fleet fleet, int[] sequence, int[] routeStarts, int[] routeLengths, double[] routeLoads, int routes, boolean isRoundTrip, TimeWindows timeWindows) {
+
+        boolean[] onTime = timeWindows != null ? new boolean[fleet.size()] : null;
+        Segments segments = new Segments(sequence.length);
+        int unserved = 0;
+
+        for (int r : getLoadOrder(routeLoads, routes)) {
+
+            checkShifts(timeWindows, depotIndex, fleet, sequence, routeStarts[r], routeLengths[r], isRoundTrip, onTime);
+            int best = fleet.find(routeLoads[r], onTime, true);
+
+            if (best != -1) {
+                fleet.dispatch(best);
+                segments.add(routeStarts[r], routeLengths[r], routeLoads[r], best);
+                continue;
+            }
+
+            // Split the route over the largest remaining vehicles
+            int k = routeStarts[r];
+            int end = routeStarts[r] + routeLengths[r];
+
+            while (k < end) {
+
+                checkShifts(timeWindows, depotIndex, fleet, sequence, k, 1, isRoundTrip, onTime);
+                int largest = fleet.find(matrix.getDemand(sequence[k]), onTime, false);
+
+                if (largest == -1) {
+                    // Skip a stop no remaining vehicle can serve
+                    unserved++;
+                    k++;
+                    continue;
+                }
+
+                Vehicle vehicle = fleet.getVehicle(largest);
+                double load = 0;
+                int start = k;
+
+                while (k < end && load + matrix.getDemand(sequence[k]) <= vehicle.getCapacity()
+                        && (timeWindows == null || isOnTime(timeWindows, depotIndex, vehicle, sequence, start, k - start + 1, isRoundTrip)))
+                    load += matrix.getDemand(sequence[k++]);
+
+                checkShifts(timeWindows, depotIndex, fleet, sequence, start, k - start, isRoundTrip, onTime);
+                int fit = fleet.find(load, onTime, true);
+                fleet.dispatch(fit);
+                segments.add(start, k - start, load, fit);
+
+            }
+
+        }
+
+        if (unserved > 0)
+            Log.e(TAG, "assignVehicles: Not enough vehicles, " + unserved + " location(s) left unserved");
+
+        return segments;
+
+    }
+
+    /**
+     * Check a route with the shift of every vehicle, in O(length) per vehicle
+     * @param onTime filled with whether each vehicle type of the fleet is on time, null without time windows
+     */
+    private static void checkShifts(TimeWindows timeWindows, int depotIndex, Fleet fleet, int[] sequence, int start, int length, boolean isRoundTrip, boolean[] onTime) {
+        for (int t = 0; onTime != null && t < onTime.length; t++)
+            onTime[t] = fleet.getRemaining(t) > 0 && isOnTime(timeWindows, depotIndex, fleet.getVehicle(t), sequence, start, length, isRoundTrip);
+    }
+
+    /**
+     * Walk a route forward from the shift start of a vehicle
+     */
+    private static boolean isOnTime(TimeWindows timeWindows, int depotIndex, Vehicle vehicle, int[] sequence, int start, int length, boolean isRoundTrip) {
+
+        double departure = timeWindows.getStartTime(vehicle, depotIndex);
+        int previous = depotIndex;
+
+        for (int k = start; k < start + length; k++) {
+            departure = timeWindows.depart(previous, departure, sequence[k]);
+            previous = sequence[k];
+        }
+
+        return departure + timeWindows.getTravelTime(previous, isRoundTrip ? depotIndex : TimeWindows.END) <= timeWindows.getEndTime(vehicle, depotIndex);
+
+    }
+
+    /**
+     * Check a route summary between two depot visits in O(1). The route can start its first stop
+     * at most at latest and leaves its last stop at max(start, earliest) + duration.
+     */
+    private static boolean isOnTime(TimeWindows timeWindows, int depotIndex, int end, double startTime, double endTime, int head, int tail, double duration, double earliest, double latest) {
+
+        double arrival = startTime + timeWindows.getTravelTime(depotIndex, head);
+
+        if (arrival > latest)
+            return false;
+
+        return Math.max(arrival, earliest) + duration + timeWindows.getTravelTime(tail, end) <= endTime;
+
+    }
+
+    private static Integer[] getLoadOrder(final double[] routeLoads, int routes) {
+
+        Integer[] order = new Integer[routes];
+        for (int r = 0; r < routes; r++)
+            order[r] = r;
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(routeLoads[b], routeLoads[a]);
+            }
+        });
+
+        return order;
+
+    }
+
+    /**
+     * Trips as segments of the route sequence
+     */
+    private static final class Segments {
+
+        final int[] starts;
+        final int[] lengths;
+        final double[] loads;
+        final int[] vehicles;
+        int count;
+
+        Segments(int capacity) {
+            starts = new int[capacity];
+            lengths = new int[capacity];
+            loads = new double[capacity];
+            vehicles = new int[capacity];
+        }
+
+        void add(int start, int length, double load, int vehicle) {
+            starts[count] = start;
+            lengths[count] = length;
+            loads[count] = load;
+            vehicles[count] = vehicle;
+            count++;
+        }
+
+    }
+
+}
@@ -0,0 +1,765 @@
+package id.my.dsm.vrpsolver.engine;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import id.my.dsm.vrpsolver.enums.ClusteringMethod;
+import id.my.dsm.vrpsolver.matrix.DistanceMatrix;
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.matrix.SubMatrix;
+import id.my.dsm.vrpsolver.model.LatLngAlt;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+/**
+ * Cluster first, route second. The customers are partitioned into clusters bounded by a number of
+ * stops and a demand, either by sweep (polar angle around the depot) or by capacitated k-means on
+ * their coordinates, then every cluster is solved on its own in parallel and the trips are
+ * stitched in the order of the clusters. An engine only ever sees a cluster, so with a dense copy
+ * of each cluster the memory grows with the cluster size squared instead of n^2.
+ * Boundary repair optionally runs the local search on each pair of neighboring clusters, so stops
+ * near a border can move to the trips of the other side.
+ */
+public final class ClusterEngine {
+
+    private static final String TAG = ClusterEngine.class.getSimpleName();
+
+    // Iterations of the capacitated k-means, it usually settles well before
+    private static final int MAX_ITERATIONS = 20;
+
+    private ClusterEngine() {
+    }
+
+    /**
+     * Partition the customers into clusters of at most maxSize stops. The demand of a cluster is
+     * bounded by a whole number of loads of the largest vehicle, so its trips leave full.
+     *
+     * @param matrix     IndexedMatrix of the places, every location needs its coordinates
+     * @param depotIndex index of the depot in the matrix
+     * @param vehicles   List of Vehicle
+     * @param method     ClusteringMethod
+     * @param maxSize    maximum number of stops of a cluster
+     * @return location indices of every cluster, excluding the depot
+     * @throws IllegalArgumentException if a location has no coordinates
+     */
+    @NonNull
+    public static int[][] cluster(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Vehicle> vehicles, @NonNull ClusteringMethod method, int maxSize) {
+
+        double maxDemand = getMaxDemand(matrix, depotIndex, vehicles, maxSize);
+
+        switch (method) {
+            case SWEEP:
+                return sweep(matrix, depotIndex, maxSize, maxDemand);
+            case CAPACITATED_K_MEANS:
+                return kMeans(matrix, depotIndex, maxSize, maxDemand);
+            default:
+                throw new IllegalStateException("Unexpected ClusteringMethod value: " + method);
+        }
+
+    }
+
+    /**
+     * Sweep the customers by polar angle around the depot, from the widest empty angle on, and
+     * close a cluster once it is full
+     *
+     * @param matrix     IndexedMatrix of the places
+     * @param depotIndex index of the depot in the matrix
+     * @param maxSize    maximum number of stops of a cluster
+     * @param maxDemand  maximum demand of a cluster
+     * @return location indices of every cluster in angular order, excluding the depot
+     */
+    @NonNull
+    public static int[][] sweep(@NonNull IndexedMatrix matrix, int depotIndex, int maxSize, double maxDemand) {
+
+        maxSize = Math.max(1, maxSize);
+        int size = matrix.size();
+        double[] x = new double[size];
+        double[] y = new double[size];
+        project(matrix, depotIndex, x, y);
+
+        final double[] angles = new double[size];
+        Integer[] order = new Integer[size - 1];
+
+        for (int i = 0, k = 0; i < size; i++) {
+            if (i != depotIndex) {
+                angles[i] = Math.atan2(y[i], x[i]);
+                order[k++] = i;
+            }
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(angles[a], angles[b]);
+            }
+        });
+
+        // Start right after the widest gap, so no cluster straddles it
+        int start = 0;
+        double widestGap = -1;
+
+        for (int k = 0; k < order.length; k++) {
+
+            double next = k + 1 < order.length ? angles[order[k + 1]] : angles[order[0]] + 2 * Math.PI;
+            double gap = next - angles[order[k]];
+
+            if (gap > widestGap) {
+                widestGap = gap;
+                start = (k + 1) % order.length;
+            }
+
+        }
+
+        ArrayList<int[]> clusters = new ArrayList<>();
+        int[] cluster = new int[maxSize];
+        int count = 0;
+        double demand = 0;
+
+        for (int k = 0; k < order.length; k++) {
+
+            int i = order[(start + k) % order.length];
+            double locationDemand = matrix.getDemand(i);
+
+            if (count == maxSize || (count > 0 && demand + locationDemand > maxDemand)) {
+                clusters.add(Arrays.copyOf(cluster, count));
+                count = 0;
+                demand = 0;
+            }
+
+            cluster[count++] = i;
+            demand += locationDemand;
+
+        }
+
+        if (count > 0)
+            clusters.add(Arrays.copyOf(cluster, count));
+
+        return clusters.toArray(new int[0][]);
+
+    }
+
+    /**
+     * Capacitated k-means from the sweep clusters. Every iteration assigns the customers, the
+     * largest regret first, to the nearest centroid that still has room, then moves the centroids.
+     * A customer that fits no cluster opens a new one.
+     *
+     * @param matrix     IndexedMatrix of the places
+     * @param depotIndex index of the depot in the matrix
+     * @param maxSize    maximum number of stops of a cluster
+     * @param maxDemand  maximum demand of a cluster
+     * @return location indices of every cluster by angle of its centroid, excluding the depot
+     */
+    @NonNull
+    public static int[][] kMeans(@NonNull IndexedMatrix matrix, int depotIndex, int maxSize, double maxDemand) {
+
+        maxSize = Math.max(1, maxSize);
+        int size = matrix.size();
+        double[] x = new double[size];
+        double[] y = new double[size];
+        project(matrix, depotIndex, x, y);
+
+        int[][] initial = sweep(matrix, depotIndex, maxSize, maxDemand);
+
+        // A cluster per customer at most
+        int[] assignment = new int[size];
+        double[] centroidX = new double[size];
+        double[] centroidY = new double[size];
+        double[] sumX = new double[size];
+        double[] sumY = new double[size];
+        int[] counts = new int[size];
+        double[] demands = new double[size];
+        int clusters = initial.length;
+
+        Arrays.fill(assignment, -1);
+        for (int c = 0; c < initial.length; c++)
+            for (int i : initial[c])
+                assignment[i] = c;
+
+        Integer[] order = new Integer[size - 1];
+        for (int i = 0, k = 0; i < size; i++)
+            if (i != depotIndex)
+                order[k++] = i;
+
+        final double[] regrets = new double[size];
+
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+
+            // Move the centroids, an emptied one stays where it was
+            Arrays.fill(sumX, 0, clusters, 0);
+            Arrays.fill(sumY, 0, clusters, 0);
+            Arrays.fill(counts, 0, clusters, 0);
+
+            for (int i : order) {
+                sumX[assignment[i]] += x[i];
+                sumY[assignment[i]] += y[i];
+                counts[assignment[i]]++;
+            }
+
+            for (int c = 0; c < clusters; c++) {
+                if (counts[c] > 0) {
+                    centroidX[c] = sumX[c] / counts[c];
+                    centroidY[c] = sumY[c] / counts[c];
+                }
+            }
+
+            // Customers that lose the most when they miss their nearest centroid pick first
+            for (int i : order) {
+
+                double nearest = Double.POSITIVE_INFINITY;
+                double second = Double.POSITIVE_INFINITY;
+
+                for (int c = 0; c < clusters; c++) {
+
+                    if (counts[c] == 0)
+                        continue;
+
+                    double distance = getSquaredDistance(x[i], y[i], centroidX[c], centroidY[c]);
+
+                    if (distance < nearest) {
+                        second = nearest;
+                        nearest = distance;
+                    } else if (distance < second) {
+                        second = distance;
+                    }
+
+                }
+
+                regrets[i] = second - nearest;
+
+            }
+
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Double.compare(regrets[b], regrets[a]);
+                }
+            });
+
+            boolean isChanged = false;
+            Arrays.fill(counts, 0, clusters, 0);
+            Arrays.fill(demands, 0, clusters, 0);
+
+            for (int i : order) {
+
+                double locationDemand = matrix.getDemand(i);
+                int best = -1;
+                double bestDistance = Double.POSITIVE_INFINITY;
+
+                for (int c = 0; c < clusters; c++) {
+
+                    if (counts[c] == maxSize || (counts[c] > 0 && demands[c] + locationDemand > maxDemand))
+                        continue;
+
+                    double distance = getSquaredDistance(x[i], y[i], centroidX[c], centroidY[c]);
+
+                    if (distance < bestDistance) {
+                        best = c;
+                        bestDistance = distance;
+                    }
+
+                }
+
+                if (best == -1) {
+                    best = clusters++;
+                    centroidX[best] = x[i];
+                    centroidY[best] = y[i];
+                }
+
+                if (assignment[i] != best)
+                    isChanged = true;
+
+                assignment[i] = best;
+                counts[best]++;
+                demands[best] += locationDemand;
+
+            }
+
+            if (!isChanged)
+                break;
+
+        }
+
+        // Order the clusters by angle of their centroid, like sweep
+        final double[] angles = new double[clusters];
+        Integer[] clusterOrder = new Integer[clusters];
+
+        for (int c = 0; c < clusters; c++) {
+            angles[c] = Math.atan2(centroidY[c], centroidX[c]);
+            clusterOrder[c] = c;
+        }
+
+        Arrays.sort(clusterOrder, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(angles[a], angles[b]);
+            }
+        });
+
+        return group(assignment, clusterOrder, clusters);
+
+    }
+
+    /**
+     * Solve every cluster in parallel as a depot of its own and stitch the trips in cluster order.
+     * Vehicles are shared out between the clusters by demand, see {@link Fleet#allot}. With fewer
+     * dispatches than clusters, neighboring clusters are merged first so that each gets a vehicle.
+     * Stops a cluster could not serve are then inserted in the trips of the others, see
+     * {@link ReoptimizationEngine}.
+     *
+     * @param matrix           IndexedMatrix of the places
+     * @param depotIndex       index of the depot in the matrix
+     * @param clusters         location indices of every cluster, excluding the depot
+     * @param vehicles         List of Vehicle
+     * @param isRoundTrip      whether each trip returns to the depot
+     * @param isMaterialized   whether each cluster is copied into a {@link DistanceMatrix} first, e.g.
+     *                         when the matrix computes its distances on demand
+     * @param isBoundaryRepair whether to run the local search on each pair of neighboring clusters
+     * @param neighborCount    number of nearest neighbors of the boundary repair, see {@link LocalSearchEngine}
+     * @param travelTimes      IndexedMatrix of the travel times of the boundary repair, null if time is not constrained
+     * @param solver           DepotSolver of every cluster
+     * @param pool             ForkJoinPool to run the clusters on
+     * @param control          SolverControl of the whole solve
+     * @return List of Solution grouped by cluster, then by trip
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull int[][] clusters, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, boolean isMaterialized, boolean isBoundaryRepair, int neighborCount, @Nullable IndexedMatrix travelTimes, @NonNull MultiDepotEngine.DepotSolver solver, @NonNull ForkJoinPool pool, @NonNull SolverControl control) {
+
+        Fleet fleet = new Fleet(vehicles);
+        clusters = merge(matrix, clusters, getDispatchCount(fleet));
+
+        // Share out the dispatches by the demand of each cluster, at least one each
+        double[] needs = new double[clusters.length];
+        boolean[] isServed = new boolean[clusters.length];
+        int[][] allotments = new int[clusters.length][fleet.size()];
+
+        for (int c = 0; c < clusters.length; c++) {
+            for (int i : clusters[c])
+                needs[c] += matrix.getDemand(i);
+            needs[c] = Math.max(needs[c], Double.MIN_VALUE);
+            isServed[c] = true;
+        }
+
+        fleet.allot(needs, allotments);
+        fleet.allotEvenly(isServed, allotments);
+
+        ArrayList<Cluster> tasks = new ArrayList<>(clusters.length);
+
+        for (int c = 0; c < clusters.length; c++) {
+
+            List<Vehicle> allotted = fleet.getAllotted(allotments[c]);
+
+            if (allotted.isEmpty())
+                Log.e(TAG, "solve: No vehicle left for cluster " + c + ", " + clusters[c].length + " location(s) left unserved");
+
+            tasks.add(new Cluster(matrix, depotIndex, clusters[c], allotted, isMaterialized, solver, new SolverControl(control)));
+
+        }
+
+        pool.invoke(new Clusters(tasks));
+
+        if (isBoundaryRepair)
+            repair(matrix, depotIndex, vehicles, isRoundTrip, isMaterialized, neighborCount, travelTimes, tasks, control);
+
+        ArrayList<Solution> solutions = new ArrayList<>();
+
+        for (Cluster task : tasks)
+            solutions.addAll(task.solutions);
+
+        // The trips of a cluster only carry its share of the fleet, the others may have room left
+        List<Location> unserved = getUnserved(matrix, clusters, solutions);
+
+        if (unserved.isEmpty())
+            return solutions;
+
+        TimeWindows timeWindows = travelTimes != null ? new TimeWindows(matrix, travelTimes) : null;
+
+        return ReoptimizationEngine.update(matrix, depotIndex, solutions, vehicles, unserved, Collections.<Location>emptyList(), isRoundTrip, timeWindows, false, neighborCount, control);
+
+    }
+
+    /**
+     * Merge neighboring clusters, the pair of least demand first, until there are at most maxCount
+     * clusters. Clusters are in angular order, the first and the last are not neighbors.
+     */
+    private static int[][] merge(IndexedMatrix matrix, int[][] clusters, int maxCount) {
+
+        if (clusters.length <= Math.max(1, maxCount))
+            return clusters;
+
+        ArrayList<int[]> merged = new ArrayList<>(Arrays.asList(clusters));
+        ArrayList<Double> demands = new ArrayList<>(clusters.length);
+
+        for (int[] cluster : clusters) {
+            double demand = 0;
+            for (int i : cluster)
+                demand += matrix.getDemand(i);
+            demands.add(demand);
+        }
+
+        while (merged.size() > Math.max(1, maxCount)) {
+
+            int best = 0;
+            for (int c = 1; c + 1 < merged.size(); c++)
+                if (demands.get(c) + demands.get(c + 1) < demands.get(best) + demands.get(best + 1))
+                    best = c;
+
+            int[] first = merged.get(best);
+            int[] second = merged.remove(best + 1);
+            int[] cluster = Arrays.copyOf(first, first.length + second.length);
+            System.arraycopy(second, 0, cluster, first.length, second.length);
+
+            merged.set(best, cluster);
+            demands.set(best, demands.get(best) + demands.remove(best + 1));
+
+        }
+
+        Log.e(TAG, "merge: " + clusters.length + " clusters for " + maxCount + " dispatch(es), merged into " + merged.size());
+
+        return merged.toArray(new int[0][]);
+
+    }
+
+    private static int getDispatchCount(Fleet fleet) {
+
+        long count = 0;
+        for (int t = 0; t < fleet.size(); t++)
+            count += fleet.getRemaining(t);
+
+        return (int) Math.min(Integer.MAX_VALUE, count);
+
+    }
+
+    /**
+     * Customers of the clusters no trip visits
+     */
+    private static List<Location> getUnserved(IndexedMatrix matrix, int[][] clusters, List<Solution> solutions) {
+
+        boolean[] isServed = new boolean[matrix.size()];
+
+        for (Solution solution : solutions) {
+            int index = matrix.indexOf(solution.getDestination());
+            if (index != -1)
+                isServed[index] = true;
+        }
+
+        ArrayList<Location> unserved = new ArrayList<>();
+
+        for (int[] cluster : clusters)
+            for (int i : cluster)
+                if (!isServed[i])
+                    unserved.add(matrix.getLocation(i));
+
+        // Least demand first, so the room left in the trips serves as many stops as it can
+        Collections.sort(unserved, new Comparator<Location>() {
+            @Override
+            public int compare(Location a, Location b) {
+                return Double.compare(a.getDemands(), b.getDemands());
+            }
+        });
+
+        return unserved;
+
+    }
+
+    /**
+     * Improve each pair of neighboring clusters, the nearest centroids, on the matrix of both. A
+     * repaired trip then belongs to the cluster holding most of its stops.
+     */
+    private static void repair(IndexedMatrix matrix, int depotIndex, List<Vehicle> vehicles, boolean isRoundTrip, boolean isMaterialized, int neighborCount, IndexedMatrix travelTimes, List<Cluster> tasks, SolverControl control) {
+
+        int size = matrix.size();
+        double[] x = new double[size];
+        double[] y = new double[size];
+        project(matrix, depotIndex, x, y);
+
+        int clusters = tasks.size();
+        double[] centroidX = new double[clusters];
+        double[] centroidY = new double[clusters];
+
+        for (int c = 0; c < clusters; c++) {
+            int[] indices = tasks.get(c).indices;
+            for (int i : indices) {
+                centroidX[c] += x[i] / indices.length;
+                centroidY[c] += y[i] / indices.length;
+            }
+        }
+
+        // Cluster of every customer
+        int[] owners = new int[size];
+        Arrays.fill(owners, -1);
+
+        for (int c = 0; c < clusters; c++)
+            for (int i : tasks.get(c).indices)
+                owners[i] = c;
+
+        boolean[][] isRepaired = new boolean[clusters][clusters];
+
+        for (int a = 0; a < clusters && !control.shouldStop(); a++) {
+
+            // Nearest other cluster
+            int b = -1;
+            double bestDistance = Double.POSITIVE_INFINITY;
+
+            for (int c = 0; c < clusters; c++) {
+
+                double distance = getSquaredDistance(centroidX[a], centroidY[a], centroidX[c], centroidY[c]);
+
+                if (c != a && distance < bestDistance) {
+                    b = c;
+                    bestDistance = distance;
+                }
+
+            }
+
+            if (b == -1 || isRepaired[a][b])
+                continue;
+
+            isRepaired[a][b] = isRepaired[b][a] = true;
+
+            Cluster first = tasks.get(a);
+            Cluster second = tasks.get(b);
+
+            if (first.solutions.isEmpty() || second.solutions.isEmpty())
+                continue;
+
+            // Both clusters as one depot
+            int[] indices = new int[first.indices.length + second.indices.length + 1];
+            indices[0] = depotIndex;
+            int count = 1;
+
+            for (int i = 0; i < size; i++)
+                if (owners[i] == a || owners[i] == b)
+                    indices[count++] = i;
+
+            IndexedMatrix pair = new SubMatrix(matrix, Arrays.copyOf(indices, count));
+            if (isMaterialized)
+                pair = DistanceMatrix.fromMatrix(pair);
+
+            ArrayList<Solution> solutions = new ArrayList<>(first.solutions);
+            solutions.addAll(second.solutions);
+
+            TimeWindows timeWindows = travelTimes != null ? new TimeWindows(pair, travelTimes) : null;
+            List<Solution> repaired = LocalSearchEngine.improve(pair, 0, solutions, vehicles, isRoundTrip, neighborCount, true, true, timeWindows, new SolverControl(control));
+
+            // Give every trip back to the cluster holding most of its stops
+            first.solutions = new ArrayList<>();
+            second.solutions = new ArrayList<>();
+
+            Location depot = matrix.getLocation(depotIndex);
+            int start = 0;
+
+            for (int k = 1; k <= repaired.size(); k++) {
+
+                if (k < repaired.size() && repaired.get(k).getOrigin() != depot)
+                    continue;
+
+                int firstStops = 0;
+                int secondStops = 0;
+
+                for (int l = start; l < k; l++) {
+                    int destination = matrix.indexOf(repaired.get(l).getDestination());
+                    if (destination != depotIndex) {
+                        if (owners[destination] == a)
+                            firstStops++;
+                        else
+                            secondStops++;
+                    }
+                }
+
+                Cluster owner = firstStops >= secondStops ? first : second;
+
+                for (int l = start; l < k; l++) {
+                    int destination = matrix.indexOf(repaired.get(l).getDestination());
+                    if (destination != depotIndex)
+                        owners[destination] = owner == first ? a : b;
+                    owner.solutions.add(repaired.get(l));
+                }
+
+                start = k;
+
+            }
+
+            first.indices = getOwned(owners, a);
+            second.indices = getOwned(owners, b);
+
+        }
+
+    }
+
+    /**
+     * Largest demand of a cluster, a whole number of loads of the largest vehicle close to what
+     * maxSize average stops demand
+     */
+    private static double getMaxDemand(IndexedMatrix matrix, int depotIndex, List<Vehicle> vehicles, int maxSize) {
+
+        double capacity = new Fleet(vehicles).getMaxCapacity();
+        double demand = 0;
+
+        for (int i = 0; i < matrix.size(); i++)
+            if (i != depotIndex)
+                demand += matrix.getDemand(i);
+
+        double meanDemand = demand / Math.max(1, matrix.size() - 1);
+
+        if (capacity <= 0 || meanDemand <= 0)
+            return Double.POSITIVE_INFINITY;
+
+        return Math.max(1, Math.floor(maxSize * meanDemand / capacity)) * capacity;
+
+    }
+
+    /**
+     * Equirectangular projection of the coordinates around the depot, in degrees of latitude
+     */
+    private static void project(IndexedMatrix matrix, int depotIndex, double[] x, double[] y) {
+
+        LatLngAlt origin = getLatLngAlt(matrix, depotIndex);
+        double cosLatitude = Math.cos(Math.toRadians(origin.getLatitude()));
+
+        for (int i = 0; i < matrix.size(); i++) {
+            LatLngAlt latLngAlt = getLatLngAlt(matrix, i);
+            x[i] = (latLngAlt.getLongitude() - origin.getLongitude()) * cosLatitude;
+            y[i] = latLngAlt.getLatitude() - origin.getLatitude();
+        }
+
+    }
+
+    private static LatLngAlt getLatLngAlt(IndexedMatrix matrix, int index) {
+
+        Location location = matrix.getLocation(index);
+
+        if (location.getLatLngAlt() == null)
+            throw new IllegalArgumentException("Clustering needs the coordinates of location: " + location.getId());
+
+        return location.getLatLngAlt();
+
+    }
+
+    private static double getSquaredDistance(double x1, double y1, double x2, double y2) {
+        return (x1 - x2) * (x1 - x2) + (y1 - y2) * (y1 - y2);
+    }
+
+    /**
+     * Location indices of every non empty cluster, in the given cluster order
+     */
+    private static int[][] group(int[] assignment, Integer[] clusterOrder, int clusters) {
+
+        int[] counts = new int[clusters];
+        for (int c : assignment)
+            if (c != -1)
+                counts[c]++;
+
+        ArrayList<int[]> groups = new ArrayList<>();
+
+        for (int c : clusterOrder) {
+
+            if (counts[c] == 0)
+                continue;
+
+            int[] group = new int[counts[c]];
+            int k = 0;
+
+            for (int i = 0; i < assignment.length; i++)
+                if (assignment[i] == c)
+                    group[k++] = i;
+
+            groups.add(group);
+
+        }
+
+        return groups.toArray(new int[0][]);
+
+    }
+
+    private static int[] getOwned(int[] owners, int cluster) {
+
+        int count = 0;
+        for (int owner : owners)
+            if (owner == cluster)
+                count++;
+
+        int[] owned = new int[count];
+        int k = 0;
+
+        for (int i = 0; i < owners.length; i++)
+            if (owners[i] == cluster)
+                owned[k++] = i;
+
+        return owned;
+
+    }
+
+    @SuppressWarnings("serial")
+    private static class Clusters extends RecursiveAction {
+
+        private final List<Cluster> tasks;
+
+        Clusters(List<Cluster> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected void compute() {
+            invokeAll(tasks);
+        }
+
+    }
+
+    @SuppressWarnings("serial")
+    private static class Cluster extends RecursiveAction {
+
+        private final IndexedMatrix matrix;
+        private final int depotIndex;
+        private final List<Vehicle> vehicles;
+        private final boolean isMaterialized;
+        private final MultiDepotEngine.DepotSolver solver;
+        private final SolverControl control;
+
+        private int[] indices; // Customers of the cluster
+
+        // Result
+        private List<Solution> solutions = new ArrayList<>();
+
+        Cluster(IndexedMatrix matrix, int depotIndex, int[] indices, List<Vehicle> vehicles, boolean isMaterialized, MultiDepotEngine.DepotSolver solver, SolverControl control) {
+            this.matrix = matrix;
+            this.depotIndex = depotIndex;
+            this.indices = indices;
+            this.vehicles = vehicles;
+            this.isMaterialized = isMaterialized;
+            this.solver = solver;
+            this.control = control;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (vehicles.isEmpty())
+                return;
+
+            int[] parentIndices = new int[indices.length + 1];
+            parentIndices[0] = depotIndex;
+            System.arraycopy(indices, 0, parentIndices, 1, indices.length);
+
+            // Only the cluster being solved is copied, it is dropped once solved
+            IndexedMatrix cluster = new SubMatrix(matrix, parentIndices);
+            if (isMaterialized)
+                cluster = DistanceMatrix.fromMatrix(cluster);
+
+            solutions = solver.solve(cluster, 0, vehicles, control);
+
+        }
+
+    }
+
+}
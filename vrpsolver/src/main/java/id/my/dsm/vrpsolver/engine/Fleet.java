@@ -0,0 +1,214 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+/**
+ * Dispatch scheduler over the vehicle types of a fleet. Each {@link Vehicle} is a type with a
+ * remaining dispatch counter, so a type costs the same whatever its dispatch limit and nothing is
+ * materialized per dispatch. Types are dispatched in order, the default vehicle first.
+ * Not thread-safe, every solve owns its fleet.
+ */
+final class Fleet {
+
+    private final Vehicle[] vehicles; // By type, the default vehicle first
+    private final int[] remaining; // Remaining dispatches by type
+    private int current; // Type handed out by next()
+
+    Fleet(@NonNull List<Vehicle> vehicles) {
+
+        List<Vehicle> sortedVehicles = NearestNeighborEngine.getSortedVehicles(vehicles);
+
+        this.vehicles = sortedVehicles.toArray(new Vehicle[0]);
+        this.remaining = new int[this.vehicles.length];
+
+        for (int t = 0; t < this.vehicles.length; t++)
+            remaining[t] = Math.max(0, this.vehicles[t].getDispatchLimit());
+
+    }
+
+    /**
+     * Number of vehicle types
+     */
+    int size() {
+        return vehicles.length;
+    }
+
+    @NonNull
+    Vehicle getVehicle(int type) {
+        return vehicles[type];
+    }
+
+    int getRemaining(int type) {
+        return remaining[type];
+    }
+
+    /**
+     * Dispatch the next vehicle in order
+     * @return the dispatched Vehicle or null once every dispatch is used
+     */
+    @Nullable
+    Vehicle next() {
+
+        while (current < vehicles.length && remaining[current] == 0)
+            current++;
+
+        if (current == vehicles.length)
+            return null;
+
+        remaining[current]--;
+
+        return vehicles[current];
+
+    }
+
+    /**
+     * Drop the remaining dispatches of the type last handed out by {@link #next()}, e.g. once a
+     * fresh dispatch of it could not serve anything, so would every other one
+     */
+    void skipType() {
+        if (current < vehicles.length)
+            remaining[current] = 0;
+    }
+
+    /**
+     * Dispatch a vehicle of a given type
+     */
+    void dispatch(int type) {
+        remaining[type]--;
+    }
+
+    /**
+     * Largest capacity among the types that can still be dispatched
+     */
+    double getMaxCapacity() {
+
+        double maxCapacity = 0;
+
+        for (int t = 0; t < vehicles.length; t++)
+            if (remaining[t] > 0)
+                maxCapacity = Math.max(maxCapacity, vehicles[t].getCapacity());
+
+        return maxCapacity;
+
+    }
+
+    /**
+     * Share out dispatches between groups by need, e.g. depots or clusters solved on their own.
+     * Each group takes the dispatches of every type in order until its need is carried.
+     * @param needs      load each group needs carried, decreased by the allotted capacity
+     * @param allotments allotted dispatches by group then type, added to
+     */
+    void allot(@NonNull double[] needs, @NonNull int[][] allotments) {
+
+        for (int t = 0; t < vehicles.length; t++) {
+
+            double capacity = vehicles[t].getCapacity();
+
+            for (int g = 0; g < needs.length && capacity > 0; g++) {
+
+                if (needs[g] <= 0)
+                    continue;
+
+                int count = (int) Math.min(remaining[t], Math.ceil(needs[g] / capacity));
+
+                remaining[t] -= count;
+                allotments[g][t] += count;
+                needs[g] -= count * capacity;
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Share out every remaining dispatch evenly between groups
+     * @param isServed   whether each group takes a share
+     * @param allotments allotted dispatches by group then type, added to
+     */
+    void allotEvenly(@NonNull boolean[] isServed, @NonNull int[][] allotments) {
+
+        int served = 0;
+        for (boolean b : isServed)
+            if (b)
+                served++;
+
+        for (int t = 0; t < vehicles.length && served > 0; t++) {
+
+            int k = 0;
+
+            for (int g = 0; g < isServed.length; g++)
+                if (isServed[g])
+                    allotments[g][t] += remaining[t] / served + (k++ < remaining[t] % served ? 1 : 0);
+
+            remaining[t] = 0;
+
+        }
+
+    }
+
+    /**
+     * Vehicles of a group, each type copied with its id and the dispatches allotted to the group
+     * @param allotment allotted dispatches by type
+     */
+    @NonNull
+    List<Vehicle> getAllotted(@NonNull int[] allotment) {
+
+        ArrayList<Vehicle> allotted = new ArrayList<>();
+
+        for (int t = 0; t < vehicles.length; t++) {
+
+            if (allotment[t] == 0)
+                continue;
+
+            Vehicle vehicle = vehicles[t];
+            Vehicle copy = new Vehicle();
+            copy.setId(vehicle.getId());
+            copy.setDefault(vehicle.isDefault());
+            copy.setCapacity(vehicle.getCapacity());
+            copy.setDispatchLimit(allotment[t]);
+            copy.setShiftStart(vehicle.getShiftStart());
+            copy.setShiftEnd(vehicle.getShiftEnd());
+            copy.setDepotId(vehicle.getDepotId());
+            allotted.add(copy);
+
+        }
+
+        return allotted;
+
+    }
+
+    /**
+     * Find a type that can still be dispatched and fits a load
+     * @param load      load to carry
+     * @param allowed   whether each type may be used, null to allow every type
+     * @param isBestFit true for the smallest capacity that fits, false for the largest
+     * @return the type, or -1 if none fits
+     */
+    int find(double load, @Nullable boolean[] allowed, boolean isBestFit) {
+
+        int best = -1;
+
+        for (int t = 0; t < vehicles.length; t++) {
+
+            double capacity = vehicles[t].getCapacity();
+
+            if (remaining[t] <= 0 || capacity < load || (allowed != null && !allowed[t]))
+                continue;
+
+            if (best == -1 || (isBestFit ? capacity < vehicles[best].getCapacity() : capacity > vehicles[best].getCapacity()))
+                best = t;
+
+        }
+
+        return best;
+
+    }
+
+}
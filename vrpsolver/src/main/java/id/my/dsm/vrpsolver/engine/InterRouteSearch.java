@@ -0,0 +1,553 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+
+/**
+ * Capacity-aware local search between trips with relocate, swap and 2-opt* moves. Like
+ * {@link IntraRouteSearch}, moves only link a location to one of its k nearest locations and
+ * don't-look bits skip locations whose neighborhood did not change.
+ * Every trip keeps its prefix demands, the demand of a suffix being the trip load minus a prefix,
+ * so the capacity of both trips of a move is checked in O(1). Applying a move only rebuilds the
+ * two trips it touches. Trips keep their vehicle, so the dispatch limits still hold, and a trip
+ * emptied by the search is dropped when materialized.
+ * With time windows every trip also keeps its forward time and backward slack (see
+ * {@link TimeWindows}), so the schedule of both trips of a relocate, swap or 2-opt* is checked in O(1).
+ * Not thread-safe.
+ */
+final class InterRouteSearch {
+
+    // Minimum gain of an applied move, keeps the search from cycling on rounding noise
+    private static final double EPSILON = 1e-9;
+
+    // Free end of a one way trip, every distance to it is 0
+    private static final int END = -1;
+
+    private static final int NONE = -1;
+
+    private static final int NO_MOVE = 0;
+    private static final int RELOCATE = 1;
+    private static final int SWAP = 2;
+    private static final int TWO_OPT_STAR = 3;
+
+    private final IndexedMatrix matrix;
+    private final int depotIndex;
+    private final int endIndex;
+    private final boolean isRoundTrip;
+    private final int neighborCount;
+    private final TimeWindows timeWindows; // Null if time is not constrained
+
+    // By location index
+    private final int[] routeIndices; // Route of each stop, NONE if not routed
+    private final int[] positions; // Position of each stop in its route, the depot being 0
+
+    private List<Route> routes;
+    private double[][] prefixLoads; // prefixLoads[r][p] = demand of the first p stops of route r
+    private double[][] forwardTimes; // forwardTimes[r][p] = earliest departure from position p of route r
+    private double[][] latestTimes; // latestTimes[r][p] = latest service start at position p of route r
+
+    private int[] neighbors = new int[0]; // neighborCount location indices per routed location
+    private int[] neighborOffsets; // By location index
+    private int[] neighborCounts = new int[0];
+    private int[] queue = new int[0];
+    private final BitSet queued = new BitSet();
+    private int queueHead;
+    private int queueSize;
+
+    // Best move of the current step
+    private int moveType;
+    private double moveDelta;
+    private int moveFromRoute;
+    private int moveFrom; // Position in moveFromRoute
+    private int moveToRoute;
+    private int moveTo; // Position in moveToRoute
+
+    private final int[] touched = new int[8];
+    private int touchedCount;
+    private int[] buffer = new int[0];
+
+    InterRouteSearch(@NonNull IndexedMatrix matrix, int depotIndex, boolean isRoundTrip, int neighborCount) {
+        this(matrix, depotIndex, isRoundTrip, neighborCount, null);
+    }
+
+    InterRouteSearch(@NonNull IndexedMatrix matrix, int depotIndex, boolean isRoundTrip, int neighborCount, @Nullable TimeWindows timeWindows) {
+        this.matrix = matrix;
+        this.timeWindows = timeWindows;
+        this.depotIndex = depotIndex;
+        this.endIndex = isRoundTrip ? depotIndex : END;
+        this.isRoundTrip = isRoundTrip;
+        this.neighborCount = Math.max(1, neighborCount);
+        this.routeIndices = new int[matrix.size()];
+        this.positions = new int[matrix.size()];
+        this.neighborOffsets = new int[matrix.size()];
+    }
+
+    /**
+     * Move locations between routes until no improving move is left or the control stops
+     * @param routes  List of Route, edited in place
+     * @param control SolverControl polled on every step
+     * @return true if any route changed
+     */
+    boolean optimize(@NonNull List<Route> routes, @NonNull SolverControl control) {
+
+        this.routes = routes;
+        this.prefixLoads = new double[routes.size()][];
+        this.forwardTimes = new double[routes.size()][];
+        this.latestTimes = new double[routes.size()][];
+
+        Arrays.fill(routeIndices, NONE);
+
+        int stopCount = 0;
+        for (int r = 0; r < routes.size(); r++) {
+            indexRoute(r);
+            stopCount += routes.get(r).length;
+        }
+
+        if (routes.size() < 2 || stopCount < 2)
+            return false;
+
+        // Routed locations, in route order
+        int[] stops = new int[stopCount];
+        int count = 0;
+        for (Route route : routes)
+            for (int p = 0; p < route.length; p++)
+                stops[count++] = route.stops[p];
+
+        if (!computeNeighbors(stops, control))
+            return false;
+
+        queue = new int[stopCount];
+        queued.clear();
+        queueHead = 0;
+        queueSize = 0;
+        for (int stop : stops)
+            enqueue(stop);
+
+        boolean isImproved = false;
+        double cost = Routes.computeCost(routes, matrix, depotIndex, isRoundTrip);
+
+        while (queueSize > 0 && !control.shouldStop()) {
+
+            int location = queue[queueHead];
+            queueHead = (queueHead + 1) % queue.length;
+            queueSize--;
+            queued.clear(location);
+
+            if (!findMove(location))
+                continue;
+
+            applyMove();
+            isImproved = true;
+            cost += moveDelta;
+
+            if (control.isProgressDue(cost))
+                control.reportProgress(Routes.toSolutions(routes, matrix, depotIndex, isRoundTrip, timeWindows), cost);
+
+        }
+
+        return isImproved;
+
+    }
+
+    /**
+     * Refresh the positions and prefix demands of a route
+     */
+    private void indexRoute(int r) {
+
+        Route route = routes.get(r);
+        double[] prefixLoad = prefixLoads[r];
+
+        if (prefixLoad == null || prefixLoad.length < route.length + 1)
+            prefixLoads[r] = prefixLoad = new double[route.stops.length + 1];
+
+        if (timeWindows != null) {
+
+            if (forwardTimes[r] == null || forwardTimes[r].length < route.length + 2) {
+                forwardTimes[r] = new double[route.stops.length + 2];
+                latestTimes[r] = new double[route.stops.length + 2];
+            }
+
+            timeWindows.schedule(route.vehicle, depotIndex, route.stops, 0, route.length, isRoundTrip, forwardTimes[r], latestTimes[r]);
+
+        }
+
+        prefixLoad[0] = 0;
+
+        for (int p = 0; p < route.length; p++) {
+            int location = route.stops[p];
+            routeIndices[location] = r;
+            positions[location] = p + 1;
+            prefixLoad[p + 1] = prefixLoad[p] + matrix.getDemand(location);
+        }
+
+    }
+
+    /**
+     * Collect the k nearest routed locations of every routed location, either direction counts
+     * @return false if the control stopped
+     */
+    private boolean computeNeighbors(int[] stops, SolverControl control) {
+
+        neighbors = new int[stops.length * neighborCount];
+        neighborCounts = new int[stops.length];
+        double[] distances = new double[neighborCount];
+
+        for (int i = 0; i < stops.length; i++) {
+
+            if (control.shouldStop())
+                return false;
+
+            int origin = stops[i];
+            int offset = i * neighborCount;
+            int count = 0;
+
+            for (int destination : stops) {
+
+                if (destination == origin)
+                    continue;
+
+                double distance = Math.min(matrix.getDistance(origin, destination), matrix.getDistance(destination, origin));
+
+                if (count == neighborCount && distance >= distances[count - 1])
+                    continue;
+
+                // Insertion into the bounded sorted list
+                int k = count < neighborCount ? count++ : count - 1;
+                while (k > 0 && distances[k - 1] > distance) {
+                    distances[k] = distances[k - 1];
+                    neighbors[offset + k] = neighbors[offset + k - 1];
+                    k--;
+                }
+
+                distances[k] = distance;
+                neighbors[offset + k] = destination;
+
+            }
+
+            neighborOffsets[origin] = offset;
+            neighborCounts[i] = count;
+
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Find the best improving move that links a location to one of its neighbors in another route
+     * @return true if an improving move is found
+     */
+    private boolean findMove(int u) {
+
+        moveType = NO_MOVE;
+        moveDelta = -EPSILON;
+
+        int a = routeIndices[u];
+        int i = positions[u];
+        int offset = neighborOffsets[u];
+
+        for (int n = 0; n < neighborCounts[offset / neighborCount]; n++) {
+
+            int v = neighbors[offset + n];
+            int b = routeIndices[v];
+
+            if (b == a)
+                continue;
+
+            int j = positions[v];
+
+            // u right after or right before v
+            evaluateRelocate(a, i, b, j);
+            evaluateRelocate(a, i, b, j - 1);
+
+            // u in place of the predecessor or successor of v
+            evaluateSwap(a, i, b, j - 1);
+            evaluateSwap(a, i, b, j + 1);
+
+            // u followed by the tail of v, or v followed by the tail of u
+            evaluateTwoOptStar(a, i, b, j - 1);
+            evaluateTwoOptStar(b, j, a, i - 1);
+
+        }
+
+        return moveType != NO_MOVE;
+
+    }
+
+    /**
+     * Move the stop at position i of route a between positions k and k + 1 of route b
+     */
+    private void evaluateRelocate(int a, int i, int b, int k) {
+
+        Route to = routes.get(b);
+
+        if (k < 0 || k > to.length)
+            return;
+
+        int u = getNode(a, i);
+
+        if (getLoad(b) + matrix.getDemand(u) > to.vehicle.getCapacity())
+            return;
+
+        int before = getNode(a, i - 1);
+        int after = getNode(a, i + 1);
+        int x = getNode(b, k);
+        int y = getNode(b, k + 1);
+
+        double delta = getDistance(x, u) + getDistance(u, y) - getDistance(x, y)
+                + getDistance(before, after) - getDistance(before, u) - getDistance(u, after);
+
+        if (delta < moveDelta && isOnTime(b, k, u, k + 1) && isOnTime(a, i - 1, NONE, i + 1))
+            setMove(RELOCATE, delta, a, i, b, k);
+
+    }
+
+    /**
+     * Exchange the stop at position i of route a with the stop at position k of route b
+     */
+    private void evaluateSwap(int a, int i, int b, int k) {
+
+        if (k < 1 || k > routes.get(b).length)
+            return;
+
+        int u = getNode(a, i);
+        int w = getNode(b, k);
+        double demandDifference = matrix.getDemand(w) - matrix.getDemand(u);
+
+        if (getLoad(a) + demandDifference > routes.get(a).vehicle.getCapacity()
+                || getLoad(b) - demandDifference > routes.get(b).vehicle.getCapacity())
+            return;
+
+        int beforeU = getNode(a, i - 1);
+        int afterU = getNode(a, i + 1);
+        int beforeW = getNode(b, k - 1);
+        int afterW = getNode(b, k + 1);
+
+        double delta = getDistance(beforeU, w) + getDistance(w, afterU) - getDistance(beforeU, u) - getDistance(u, afterU)
+                + getDistance(beforeW, u) + getDistance(u, afterW) - getDistance(beforeW, w) - getDistance(w, afterW);
+
+        if (delta < moveDelta && isOnTime(a, i - 1, w, i + 1) && isOnTime(b, k - 1, u, k + 1))
+            setMove(SWAP, delta, a, i, b, k);
+
+    }
+
+    /**
+     * Exchange tails: route a keeps its first i stops followed by the stops of route b after
+     * position k, route b keeps its first k stops followed by the stops of route a after position i
+     */
+    private void evaluateTwoOptStar(int a, int i, int b, int k) {
+
+        if (i < 0 || k < 0)
+            return;
+
+        double[] prefixLoadA = prefixLoads[a];
+        double[] prefixLoadB = prefixLoads[b];
+        double loadA = prefixLoadA[i] + getLoad(b) - prefixLoadB[k];
+        double loadB = prefixLoadB[k] + getLoad(a) - prefixLoadA[i];
+
+        if (loadA > routes.get(a).vehicle.getCapacity() || loadB > routes.get(b).vehicle.getCapacity())
+            return;
+
+        int x = getNode(a, i);
+        int xNext = getNode(a, i + 1);
+        int y = getNode(b, k);
+        int yNext = getNode(b, k + 1);
+
+        // Both tails already end the same way
+        if (xNext == endIndex && yNext == endIndex)
+            return;
+
+        double delta = getDistance(x, yNext) + getDistance(y, xNext) - getDistance(x, xNext) - getDistance(y, yNext);
+
+        if (delta < moveDelta && isTailOnTime(a, i, b, k + 1) && isTailOnTime(b, k, a, i + 1))
+            setMove(TWO_OPT_STAR, delta, a, i, b, k);
+
+    }
+
+    /**
+     * Check a route whose positions between from and to are replaced by at most one location
+     * @param r        route index
+     * @param from     last unchanged position before the change
+     * @param location location inserted after from, NONE to only link from to to
+     * @param to       first unchanged position after the change
+     * @return true if the route is still on time
+     */
+    private boolean isOnTime(int r, int from, int location, int to) {
+
+        if (timeWindows == null)
+            return true;
+
+        int previous = getNode(r, from);
+        double time = forwardTimes[r][from];
+
+        if (location != NONE) {
+            time = timeWindows.depart(previous, time, location);
+            previous = location;
+        }
+
+        int next = getNode(r, to);
+
+        return timeWindows.isOnTime(next, time + timeWindows.getTravelTime(previous, next), latestTimes[r][to]);
+
+    }
+
+    /**
+     * Check the first positions of route a up to from followed by the positions of route b from to.
+     * The backward slack of b assumes the shift end of its own vehicle, so the tail is walked when
+     * the vehicle of a ends at another time.
+     */
+    private boolean isTailOnTime(int a, int from, int b, int to) {
+
+        if (timeWindows == null)
+            return true;
+
+        Route routeB = routes.get(b);
+        int previous = getNode(a, from);
+        double time = forwardTimes[a][from];
+        double endTime = timeWindows.getEndTime(routes.get(a).vehicle, depotIndex);
+
+        if (endTime == timeWindows.getEndTime(routeB.vehicle, depotIndex)) {
+            int next = getNode(b, to);
+            return timeWindows.isOnTime(next, time + timeWindows.getTravelTime(previous, next), latestTimes[b][to]);
+        }
+
+        for (int p = to; p <= routeB.length; p++) {
+            time = timeWindows.depart(previous, time, routeB.stops[p - 1]);
+            previous = routeB.stops[p - 1];
+        }
+
+        return time + timeWindows.getTravelTime(previous, endIndex) <= endTime;
+
+    }
+
+    private void setMove(int type, double delta, int fromRoute, int from, int toRoute, int to) {
+        moveType = type;
+        moveDelta = delta;
+        moveFromRoute = fromRoute;
+        moveFrom = from;
+        moveToRoute = toRoute;
+        moveTo = to;
+    }
+
+    private void applyMove() {
+
+        Route a = routes.get(moveFromRoute);
+        Route b = routes.get(moveToRoute);
+        int i = moveFrom;
+        int k = moveTo;
+
+        // Locations around the changed links, woken up once the move is applied
+        touchedCount = 0;
+        touch(getNode(moveFromRoute, i - 1));
+        touch(getNode(moveFromRoute, i));
+        touch(getNode(moveFromRoute, i + 1));
+        touch(getNode(moveToRoute, k));
+        touch(getNode(moveToRoute, k + 1));
+
+        switch (moveType) {
+            case RELOCATE: {
+
+                int u = a.stops[i - 1];
+
+                System.arraycopy(a.stops, i, a.stops, i - 1, a.length - i);
+                a.length--;
+
+                ensureCapacity(b, b.length + 1);
+                System.arraycopy(b.stops, k, b.stops, k + 1, b.length - k);
+                b.stops[k] = u;
+                b.length++;
+
+                break;
+
+            }
+            case SWAP: {
+
+                touch(getNode(moveToRoute, k - 1));
+
+                int swap = a.stops[i - 1];
+                a.stops[i - 1] = b.stops[k - 1];
+                b.stops[k - 1] = swap;
+
+                break;
+
+            }
+            case TWO_OPT_STAR: {
+
+                int tailA = a.length - i;
+                int tailB = b.length - k;
+
+                if (buffer.length < tailA)
+                    buffer = new int[Math.max(tailA, buffer.length * 2)];
+
+                System.arraycopy(a.stops, i, buffer, 0, tailA);
+
+                ensureCapacity(a, i + tailB);
+                System.arraycopy(b.stops, k, a.stops, i, tailB);
+                a.length = i + tailB;
+
+                ensureCapacity(b, k + tailA);
+                System.arraycopy(buffer, 0, b.stops, k, tailA);
+                b.length = k + tailA;
+
+                break;
+
+            }
+        }
+
+        indexRoute(moveFromRoute);
+        indexRoute(moveToRoute);
+
+        for (int t = 0; t < touchedCount; t++)
+            enqueue(touched[t]);
+
+    }
+
+    private void ensureCapacity(Route route, int length) {
+        if (route.stops.length < length)
+            route.stops = Arrays.copyOf(route.stops, Math.max(length, route.stops.length * 2));
+    }
+
+    private void touch(int location) {
+        touched[touchedCount++] = location;
+    }
+
+    private void enqueue(int location) {
+
+        if (location == END || location == depotIndex || queued.get(location))
+            return;
+
+        queued.set(location);
+        queue[(queueHead + queueSize) % queue.length] = location;
+        queueSize++;
+
+    }
+
+    /**
+     * Location at a position of a route, the depot before the first stop and the end after the last
+     */
+    private int getNode(int r, int p) {
+
+        Route route = routes.get(r);
+
+        if (p == 0)
+            return depotIndex;
+
+        return p > route.length ? endIndex : route.stops[p - 1];
+
+    }
+
+    private double getLoad(int r) {
+        return prefixLoads[r][routes.get(r).length];
+    }
+
+    private double getDistance(int origin, int destination) {
+        return origin == END || destination == END ? 0 : matrix.getDistance(origin, destination);
+    }
+
+}
@@ -0,0 +1,509 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.BitSet;
+
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+/**
+ * 2-opt and Or-opt local search inside a single trip. Moves are only generated between a location
+ * and its k nearest locations of the same trip (granular neighborhood), and locations whose
+ * surroundings did not change are skipped through don't-look bits.
+ * Every move is evaluated in O(1): the trip keeps prefix costs walked forward and backward, so
+ * reversing a segment does not need to sum its legs, which also keeps asymmetric matrices exact.
+ * Intra-route moves never change the trip load, so no capacity check is needed. With time windows,
+ * only a move that improves on the best one of the step is checked: the stops between both changed
+ * links are walked from the forward time of the first link and compared to the backward slack of
+ * the second, see {@link TimeWindows}.
+ * Not thread-safe, buffers are reused between trips.
+ */
+final class IntraRouteSearch {
+
+    static final int DEFAULT_NEIGHBOR_COUNT = 10;
+
+    // Minimum gain of an applied move, keeps the search from cycling on rounding noise
+    private static final double EPSILON = 1e-9;
+
+    // Free end of a one way trip, every distance to it is 0
+    private static final int END = -1;
+
+    private static final int MAX_SEGMENT_LENGTH = 3;
+
+    private static final int NONE = 0;
+    private static final int TWO_OPT = 1;
+    private static final int OR_OPT = 2;
+
+    private final IndexedMatrix matrix;
+    private final int depotIndex;
+    private final boolean isRoundTrip;
+    private final int neighborCount;
+    private final TimeWindows timeWindows; // Null if time is not constrained
+
+    // By location index
+    private final int[] positions; // Tour position of each stop
+    private final int[] localIndices; // Index of each stop in the trip, stable while searching
+
+    // Per trip buffers, grown on demand
+    private int[] tour = new int[0]; // Depot, stops, then depot or END
+    private double[] forward = new double[0]; // forward[p] = cost of tour[0..p]
+    private double[] backward = new double[0]; // backward[p] = cost of tour[0..p] walked backward
+    private double[] forwardTimes = new double[0]; // Earliest departure from tour[p]
+    private double[] latestTimes = new double[0]; // Latest service start at tour[p]
+    private int[] locations = new int[0]; // Location index of each local index
+    private int[] neighbors = new int[0]; // neighborCount local indices per local index, nearest first
+    private int[] neighborCounts = new int[0];
+    private double[] neighborDistances = new double[0];
+    private final int[] segment = new int[MAX_SEGMENT_LENGTH];
+    private final int[] touched = new int[6];
+    private int touchedCount;
+    private int[] queue = new int[0];
+    private final BitSet queued = new BitSet();
+    private int queueHead;
+    private int queueSize;
+
+    // Best move of the current step
+    private int moveType;
+    private double moveDelta;
+    private int moveFrom;
+    private int moveTo;
+    private int moveLength;
+    private boolean isMoveReversed;
+
+    // Walk of a candidate order, see isOnTime
+    private Vehicle vehicle;
+    private double walkTime;
+    private int walkLocation;
+
+    IntraRouteSearch(@NonNull IndexedMatrix matrix, int depotIndex, boolean isRoundTrip, int neighborCount) {
+        this(matrix, depotIndex, isRoundTrip, neighborCount, null);
+    }
+
+    IntraRouteSearch(@NonNull IndexedMatrix matrix, int depotIndex, boolean isRoundTrip, int neighborCount, @Nullable TimeWindows timeWindows) {
+        this.matrix = matrix;
+        this.depotIndex = depotIndex;
+        this.isRoundTrip = isRoundTrip;
+        this.neighborCount = Math.max(1, neighborCount);
+        this.timeWindows = timeWindows;
+        this.positions = new int[matrix.size()];
+        this.localIndices = new int[matrix.size()];
+    }
+
+    /**
+     * Improve a trip in place until no improving move is left or the control stops
+     * @param route   Route to improve
+     * @param control SolverControl polled on every step
+     * @return true if the trip changed
+     */
+    boolean optimize(@NonNull Route route, @NonNull SolverControl control) {
+
+        int length = route.length;
+
+        if (length < 2)
+            return false;
+
+        ensureCapacity(length);
+
+        tour[0] = depotIndex;
+        tour[length + 1] = isRoundTrip ? depotIndex : END;
+
+        for (int p = 1; p <= length; p++) {
+            int location = route.stops[p - 1];
+            tour[p] = location;
+            positions[location] = p;
+            localIndices[location] = p - 1;
+            locations[p - 1] = location;
+        }
+
+        vehicle = route.vehicle;
+
+        computeNeighbors(length);
+        computePrefixCosts(length);
+        computeSchedule(length);
+
+        queued.clear();
+        queueHead = 0;
+        queueSize = 0;
+        for (int i = 0; i < length; i++)
+            enqueue(locations[i], length);
+
+        boolean isImproved = false;
+
+        while (queueSize > 0 && !control.shouldStop()) {
+
+            int local = queue[queueHead];
+            queueHead = (queueHead + 1) % length;
+            queueSize--;
+            queued.clear(local);
+
+            if (findMove(locations[local], length)) {
+                applyMove(length);
+                isImproved = true;
+            }
+
+        }
+
+        if (isImproved)
+            System.arraycopy(tour, 1, route.stops, 0, length);
+
+        return isImproved;
+
+    }
+
+    private void ensureCapacity(int length) {
+
+        if (locations.length >= length)
+            return;
+
+        int capacity = Math.max(length, locations.length * 2);
+
+        tour = new int[capacity + 2];
+        forward = new double[capacity + 2];
+        backward = new double[capacity + 2];
+
+        if (timeWindows != null) {
+            forwardTimes = new double[capacity + 2];
+            latestTimes = new double[capacity + 2];
+        }
+        locations = new int[capacity];
+        neighbors = new int[capacity * neighborCount];
+        neighborCounts = new int[capacity];
+        neighborDistances = new double[neighborCount];
+        queue = new int[capacity];
+
+    }
+
+    /**
+     * Collect the k nearest stops of every stop, either direction counts
+     */
+    private void computeNeighbors(int length) {
+
+        for (int i = 0; i < length; i++) {
+
+            int count = 0;
+            int offset = i * neighborCount;
+
+            for (int j = 0; j < length; j++) {
+
+                if (i == j)
+                    continue;
+
+                double distance = Math.min(getDistance(locations[i], locations[j]), getDistance(locations[j], locations[i]));
+
+                if (count == neighborCount && distance >= neighborDistances[count - 1])
+                    continue;
+
+                // Insertion into the bounded sorted list
+                int k = count < neighborCount ? count++ : count - 1;
+                while (k > 0 && neighborDistances[k - 1] > distance) {
+                    neighborDistances[k] = neighborDistances[k - 1];
+                    neighbors[offset + k] = neighbors[offset + k - 1];
+                    k--;
+                }
+
+                neighborDistances[k] = distance;
+                neighbors[offset + k] = j;
+
+            }
+
+            neighborCounts[i] = count;
+
+        }
+
+    }
+
+    private void computePrefixCosts(int length) {
+
+        forward[0] = 0;
+        backward[0] = 0;
+
+        for (int p = 0; p <= length; p++) {
+            forward[p + 1] = forward[p] + getDistance(tour[p], tour[p + 1]);
+            backward[p + 1] = backward[p] + getDistance(tour[p + 1], tour[p]);
+        }
+
+    }
+
+    private void computeSchedule(int length) {
+        if (timeWindows != null)
+            timeWindows.schedule(vehicle, depotIndex, tour, 1, length, isRoundTrip, forwardTimes, latestTimes);
+    }
+
+    /**
+     * Find the best improving move that links a location to one of its neighbors
+     * @return true if an improving move is found
+     */
+    private boolean findMove(int location, int length) {
+
+        moveType = NONE;
+        moveDelta = -EPSILON;
+
+        int p = positions[location];
+        int local = localIndices[location];
+        int offset = local * neighborCount;
+
+        for (int n = 0; n < neighborCounts[local]; n++) {
+
+            int q = positions[locations[neighbors[offset + n]]];
+            int low = Math.min(p, q);
+            int high = Math.max(p, q);
+
+            // Both 2-opt moves that create a link between the two locations
+            evaluateTwoOpt(low + 1, high, length);
+            evaluateTwoOpt(low, high - 1, length);
+
+            // Move a segment starting or ending at the location next to the neighbor
+            for (int segmentLength = 1; segmentLength <= MAX_SEGMENT_LENGTH; segmentLength++) {
+
+                evaluateOrOpt(p, segmentLength, q - 1, length);
+                evaluateOrOpt(p, segmentLength, q, length);
+
+                if (segmentLength > 1) {
+                    evaluateOrOpt(p - segmentLength + 1, segmentLength, q - 1, length);
+                    evaluateOrOpt(p - segmentLength + 1, segmentLength, q, length);
+                }
+
+            }
+
+        }
+
+        return moveType != NONE;
+
+    }
+
+    /**
+     * Reverse tour[from..to]
+     */
+    private void evaluateTwoOpt(int from, int to, int length) {
+
+        if (from < 1 || to > length || from >= to)
+            return;
+
+        int before = tour[from - 1];
+        int first = tour[from];
+        int last = tour[to];
+        int after = tour[to + 1];
+
+        double delta = getDistance(before, last) + getDistance(first, after) + (backward[to] - backward[from])
+                - getDistance(before, first) - getDistance(last, after) - (forward[to] - forward[from]);
+
+        if (delta < moveDelta && isTwoOptOnTime(from, to)) {
+            moveType = TWO_OPT;
+            moveDelta = delta;
+            moveFrom = from;
+            moveTo = to;
+        }
+
+    }
+
+    /**
+     * Move tour[from..from + segmentLength - 1] between tour[to] and tour[to + 1], optionally reversed
+     */
+    private void evaluateOrOpt(int from, int segmentLength, int to, int length) {
+
+        int last = from + segmentLength - 1;
+
+        if (from < 1 || last > length || to < 0 || to > length || (to >= from - 1 && to <= last))
+            return;
+
+        int before = tour[from - 1];
+        int after = tour[last + 1];
+        int first = tour[from];
+        int end = tour[last];
+        int x = tour[to];
+        int y = tour[to + 1];
+
+        double removal = getDistance(before, first) + getDistance(end, after) - getDistance(before, after);
+        double link = getDistance(x, y);
+
+        double delta = getDistance(x, first) + getDistance(end, y) - link - removal;
+
+        if (delta < moveDelta && isOrOptOnTime(from, segmentLength, to, false)) {
+            moveType = OR_OPT;
+            moveDelta = delta;
+            moveFrom = from;
+            moveTo = to;
+            moveLength = segmentLength;
+            isMoveReversed = false;
+        }
+
+        if (segmentLength == 1)
+            return;
+
+        delta = getDistance(x, end) + getDistance(first, y) - link - removal
+                + (backward[last] - backward[from]) - (forward[last] - forward[from]);
+
+        if (delta < moveDelta && isOrOptOnTime(from, segmentLength, to, true)) {
+            moveType = OR_OPT;
+            moveDelta = delta;
+            moveFrom = from;
+            moveTo = to;
+            moveLength = segmentLength;
+            isMoveReversed = true;
+        }
+
+    }
+
+    private void applyMove(int length) {
+
+        int from;
+        int to;
+
+        // Locations around the changed links, woken up once the move is applied
+        touched[0] = tour[moveFrom - 1];
+        touched[1] = tour[moveFrom];
+
+        if (moveType == TWO_OPT) {
+
+            from = moveFrom;
+            to = moveTo;
+            touched[2] = tour[moveTo];
+            touched[3] = tour[moveTo + 1];
+            touchedCount = 4;
+
+            for (int i = from, j = to; i < j; i++, j--) {
+                int swap = tour[i];
+                tour[i] = tour[j];
+                tour[j] = swap;
+            }
+
+        } else {
+
+            int last = moveFrom + moveLength - 1;
+
+            touched[2] = tour[last];
+            touched[3] = tour[last + 1];
+            touched[4] = tour[moveTo];
+            touched[5] = tour[moveTo + 1];
+            touchedCount = 6;
+
+            for (int i = 0; i < moveLength; i++)
+                segment[i] = tour[isMoveReversed ? last - i : moveFrom + i];
+
+            if (moveTo < moveFrom) {
+                // Shift tour[moveTo + 1..moveFrom - 1] right
+                System.arraycopy(tour, moveTo + 1, tour, moveTo + 1 + moveLength, moveFrom - moveTo - 1);
+                System.arraycopy(segment, 0, tour, moveTo + 1, moveLength);
+                from = moveTo;
+                to = last + 1;
+            } else {
+                // Shift tour[last + 1..moveTo] left
+                System.arraycopy(tour, last + 1, tour, moveFrom, moveTo - last);
+                System.arraycopy(segment, 0, tour, moveTo - moveLength + 1, moveLength);
+                from = moveFrom - 1;
+                to = moveTo + 1;
+            }
+
+        }
+
+        for (int p = Math.max(1, from); p <= Math.min(length, to); p++)
+            positions[tour[p]] = p;
+
+        computePrefixCosts(length);
+        computeSchedule(length);
+
+        for (int i = 0; i < touchedCount; i++)
+            enqueue(touched[i], length);
+
+    }
+
+    /**
+     * Check the time windows of a 2-opt move, the reversed stops are walked
+     */
+    private boolean isTwoOptOnTime(int from, int to) {
+
+        if (timeWindows == null)
+            return true;
+
+        startWalk(from - 1);
+
+        for (int p = to; p >= from; p--)
+            walk(tour[p]);
+
+        return endWalk(to + 1);
+
+    }
+
+    /**
+     * Check the time windows of an Or-opt move, the segment and the stops it jumps over are walked
+     */
+    private boolean isOrOptOnTime(int from, int segmentLength, int to, boolean isReversed) {
+
+        if (timeWindows == null)
+            return true;
+
+        int last = from + segmentLength - 1;
+
+        if (to < from) {
+
+            startWalk(to);
+            walkSegment(from, last, isReversed);
+
+            for (int p = to + 1; p < from; p++)
+                walk(tour[p]);
+
+            return endWalk(last + 1);
+
+        }
+
+        startWalk(from - 1);
+
+        for (int p = last + 1; p <= to; p++)
+            walk(tour[p]);
+
+        walkSegment(from, last, isReversed);
+
+        return endWalk(to + 1);
+
+    }
+
+    private void walkSegment(int from, int last, boolean isReversed) {
+        for (int i = 0; i <= last - from; i++)
+            walk(tour[isReversed ? last - i : from + i]);
+    }
+
+    /**
+     * Start a walk at the forward time of an unchanged position
+     */
+    private void startWalk(int position) {
+        walkTime = forwardTimes[position];
+        walkLocation = tour[position];
+    }
+
+    private void walk(int location) {
+        walkTime = timeWindows.depart(walkLocation, walkTime, location);
+        walkLocation = location;
+    }
+
+    /**
+     * End a walk at the backward slack of an unchanged position
+     * @return true if the candidate order is on time
+     */
+    private boolean endWalk(int position) {
+        int location = tour[position];
+        return timeWindows.isOnTime(location, walkTime + timeWindows.getTravelTime(walkLocation, location), latestTimes[position]);
+    }
+
+    private void enqueue(int location, int length) {
+
+        if (location == END || location == depotIndex)
+            return;
+
+        int local = localIndices[location];
+
+        if (queued.get(local))
+            return;
+
+        queued.set(local);
+        queue[(queueHead + queueSize) % length] = local;
+        queueSize++;
+
+    }
+
+    private double getDistance(int origin, int destination) {
+        return origin == END || destination == END ? 0 : matrix.getDistance(origin, destination);
+    }
+
+}
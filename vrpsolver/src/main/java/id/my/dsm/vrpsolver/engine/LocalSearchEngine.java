@@ -0,0 +1,149 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+/**
+ * Post-optimization of constructive routes. Locations can be moved between trips with relocate,
+ * swap and 2-opt* moves (see {@link InterRouteSearch}), then each trip is improved with 2-opt and
+ * Or-opt moves (see {@link IntraRouteSearch}). Trips keep their vehicle.
+ */
+public final class LocalSearchEngine {
+
+    public static final int DEFAULT_NEIGHBOR_COUNT = IntraRouteSearch.DEFAULT_NEIGHBOR_COUNT;
+
+    private LocalSearchEngine() {
+    }
+
+    /**
+     * Improve every trip of a solution list
+     *
+     * @param matrix      IndexedMatrix of the places
+     * @param depotIndex  index of the depot in the matrix
+     * @param solutions   List of Solution grouped by trip, e.g. from {@link NearestNeighborEngine}
+     * @param vehicles    List of Vehicle referenced by the solutions
+     * @param isRoundTrip whether each trip returns to the depot
+     * @return List of Solution with the same trips in the same order
+     */
+    @NonNull
+    public static List<Solution> improve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Solution> solutions, @NonNull List<Vehicle> vehicles, boolean isRoundTrip) {
+        return improve(matrix, depotIndex, solutions, vehicles, isRoundTrip, DEFAULT_NEIGHBOR_COUNT, new SolverControl());
+    }
+
+    /**
+     * Improve every trip of a solution list. Once the control stops, the trips improved so far are kept.
+     *
+     * @param matrix        IndexedMatrix of the places
+     * @param depotIndex    index of the depot in the matrix
+     * @param solutions     List of Solution grouped by trip, e.g. from {@link NearestNeighborEngine}
+     * @param vehicles      List of Vehicle referenced by the solutions
+     * @param isRoundTrip   whether each trip returns to the depot
+     * @param neighborCount number of nearest locations a location may be linked to by a move
+     * @param control       SolverControl polled on every step
+     * @return List of Solution with the same trips in the same order
+     */
+    @NonNull
+    public static List<Solution> improve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Solution> solutions, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, int neighborCount, @NonNull SolverControl control) {
+        return improve(matrix, depotIndex, solutions, vehicles, isRoundTrip, neighborCount, true, false, control);
+    }
+
+    /**
+     * Improve a solution list within and optionally between trips. Once the control stops, the
+     * moves applied so far are kept.
+     *
+     * @param matrix        IndexedMatrix of the places
+     * @param depotIndex    index of the depot in the matrix
+     * @param solutions     List of Solution grouped by trip, e.g. from {@link NearestNeighborEngine}
+     * @param vehicles      List of Vehicle referenced by the solutions
+     * @param isRoundTrip   whether each trip returns to the depot
+     * @param neighborCount number of nearest locations a location may be linked to by a move
+     * @param isIntraRoute  whether to improve the order of each trip
+     * @param isInterRoute  whether to move locations between trips, within the vehicle capacities
+     * @param control       SolverControl polled on every step
+     * @return List of Solution grouped by trip, trips emptied by the search are dropped
+     */
+    @NonNull
+    public static List<Solution> improve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Solution> solutions, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, int neighborCount, boolean isIntraRoute, boolean isInterRoute, @NonNull SolverControl control) {
+        return improve(matrix, depotIndex, solutions, vehicles, isRoundTrip, neighborCount, isIntraRoute, isInterRoute, null, control);
+    }
+
+    /**
+     * Improve a solution list within and optionally between trips, every move keeps the trips on time
+     *
+     * @param matrix        IndexedMatrix of the places
+     * @param depotIndex    index of the depot in the matrix
+     * @param solutions     List of Solution grouped by trip, e.g. from {@link NearestNeighborEngine}
+     * @param vehicles      List of Vehicle referenced by the solutions
+     * @param isRoundTrip   whether each trip returns to the depot
+     * @param neighborCount number of nearest locations a location may be linked to by a move
+     * @param isIntraRoute  whether to improve the order of each trip
+     * @param isInterRoute  whether to move locations between trips, within the vehicle capacities
+     * @param timeWindows   TimeWindows of the places, null if time is not constrained, otherwise every vehicle is dispatched once
+     * @param control       SolverControl polled on every step
+     * @return List of Solution grouped by trip, trips emptied by the search are dropped
+     */
+    @NonNull
+    public static List<Solution> improve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Solution> solutions, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, int neighborCount, boolean isIntraRoute, boolean isInterRoute, @Nullable TimeWindows timeWindows, @NonNull SolverControl control) {
+
+        if (timeWindows != null)
+            TimeWindows.checkVehicles(vehicles);
+
+        List<Route> routes = Routes.fromSolutions(solutions, matrix, depotIndex, vehicles);
+        boolean isImproved = false;
+
+        if (isInterRoute)
+            isImproved = new InterRouteSearch(matrix, depotIndex, isRoundTrip, neighborCount, timeWindows).optimize(routes, control);
+
+        if (isIntraRoute)
+            isImproved |= improveRoutes(routes, matrix, depotIndex, isRoundTrip, neighborCount, timeWindows, control);
+
+        if (!isImproved)
+            return solutions;
+
+        return Routes.toSolutions(routes, matrix, depotIndex, isRoundTrip, timeWindows);
+
+    }
+
+    /**
+     * Improve routes in place
+     * @return true if any route changed
+     */
+    static boolean improveRoutes(@NonNull List<Route> routes, @NonNull IndexedMatrix matrix, int depotIndex, boolean isRoundTrip, int neighborCount, @NonNull SolverControl control) {
+        return improveRoutes(routes, matrix, depotIndex, isRoundTrip, neighborCount, null, control);
+    }
+
+    static boolean improveRoutes(@NonNull List<Route> routes, @NonNull IndexedMatrix matrix, int depotIndex, boolean isRoundTrip, int neighborCount, @Nullable TimeWindows timeWindows, @NonNull SolverControl control) {
+
+        IntraRouteSearch search = new IntraRouteSearch(matrix, depotIndex, isRoundTrip, neighborCount, timeWindows);
+        boolean isImproved = false;
+        double cost = Routes.computeCost(routes, matrix, depotIndex, isRoundTrip);
+
+        for (Route route : routes) {
+
+            if (control.shouldStop())
+                break;
+
+            double routeCost = Routes.computeCost(route, matrix, depotIndex, isRoundTrip);
+
+            if (!search.optimize(route, control))
+                continue;
+
+            isImproved = true;
+            cost += Routes.computeCost(route, matrix, depotIndex, isRoundTrip) - routeCost;
+
+            if (control.isProgressDue(cost))
+                control.reportProgress(Routes.toSolutions(routes, matrix, depotIndex, isRoundTrip, timeWindows), cost);
+
+        }
+
+        return isImproved;
+
+    }
+
+}
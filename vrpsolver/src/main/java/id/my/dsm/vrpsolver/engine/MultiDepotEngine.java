@@ -0,0 +1,657 @@
+package id.my.dsm.vrpsolver.engine;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.matrix.SubMatrix;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+/**
+ * Multi-depot VRP by decomposition. Every customer is assigned to its cheapest depot, then the
+ * customers of a depot whose vehicles can not carry its demand are moved, smallest extra cost
+ * first, to the depots with spare capacity. Each depot is solved on its own {@link SubMatrix} in
+ * parallel and the trips are merged in the order of the depots.
+ * Vehicles bound to a depot, see {@link Vehicle.Builder#withDepot}, only serve that depot. The
+ * dispatches of the other vehicles are shared out, first by the demand each depot can not carry
+ * with its own vehicles, then evenly.
+ */
+public final class MultiDepotEngine {
+
+    private static final String TAG = MultiDepotEngine.class.getSimpleName();
+
+    // Minimum gain of an applied move, keeps the search from cycling on rounding noise
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Solves the sub-problem of a single depot, e.g. with the method selected in the solver
+     */
+    public interface DepotSolver {
+
+        /**
+         * Called concurrently for different depots
+         * @param matrix     IndexedMatrix of the depot and its customers
+         * @param depotIndex index of the depot in the matrix
+         * @param vehicles   List of Vehicle dispatched from the depot
+         * @param control    SolverControl of the depot, stops with the whole solve
+         * @return List of Solution grouped by trip
+         */
+        @NonNull
+        List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Vehicle> vehicles, @NonNull SolverControl control);
+
+    }
+
+    private MultiDepotEngine() {
+    }
+
+    /**
+     * Assign every customer to a depot, the cheapest one unless capacity-aware rebalancing moves it
+     *
+     * @param matrix       IndexedMatrix of the places
+     * @param depotIndices indices of the depots in the matrix
+     * @param vehicles     List of Vehicle, bound to a depot or shared
+     * @param isRoundTrip  whether each trip returns to the depot, otherwise only the way out counts
+     * @return position in depotIndices of the depot of every location, -1 for the depots
+     */
+    @NonNull
+    public static int[] assign(@NonNull IndexedMatrix matrix, @NonNull int[] depotIndices, @NonNull List<Vehicle> vehicles, boolean isRoundTrip) {
+        return new Plan(matrix, depotIndices, vehicles, isRoundTrip).assignment;
+    }
+
+    /**
+     * Multi-depot capacitated VRP, each depot solved in parallel
+     *
+     * @param matrix       IndexedMatrix of the places
+     * @param depotIndices indices of the depots in the matrix
+     * @param vehicles     List of Vehicle, bound to a depot or shared
+     * @param isRoundTrip  whether each trip returns to the depot
+     * @param solver       DepotSolver of every depot
+     * @param pool         ForkJoinPool to run the depots on
+     * @param control      SolverControl of the whole solve
+     * @return List of Solution grouped by depot, then by trip
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, @NonNull int[] depotIndices, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, @NonNull DepotSolver solver, @NonNull ForkJoinPool pool, @NonNull SolverControl control) {
+
+        Plan plan = new Plan(matrix, depotIndices, vehicles, isRoundTrip);
+
+        // Sub-problem of every depot, the depot first then its customers
+        int[] counts = new int[depotIndices.length];
+        for (int i = 0; i < matrix.size(); i++)
+            if (plan.assignment[i] != -1)
+                counts[plan.assignment[i]]++;
+
+        int[][] indices = new int[depotIndices.length][];
+        for (int d = 0; d < depotIndices.length; d++) {
+            indices[d] = new int[counts[d] + 1];
+            indices[d][0] = depotIndices[d];
+            counts[d] = 1;
+        }
+
+        for (int i = 0; i < matrix.size(); i++)
+            if (plan.assignment[i] != -1)
+                indices[plan.assignment[i]][counts[plan.assignment[i]]++] = i;
+
+        ArrayList<Depot> tasks = new ArrayList<>(depotIndices.length);
+
+        for (int d = 0; d < depotIndices.length; d++) {
+
+            if (indices[d].length == 1)
+                continue;
+
+            if (plan.vehicles.get(d).isEmpty()) {
+                Log.e(TAG, "solve: No vehicle for depot " + matrix.getLocation(depotIndices[d]).getId() + ", " + (indices[d].length - 1) + " location(s) left unserved");
+                continue;
+            }
+
+            tasks.add(new Depot(new SubMatrix(matrix, indices[d]), plan.vehicles.get(d), solver, new SolverControl(control)));
+
+        }
+
+        pool.invoke(new Depots(tasks));
+
+        ArrayList<Solution> solutions = new ArrayList<>();
+
+        for (Depot task : tasks)
+            if (task.solutions != null)
+                solutions.addAll(task.solutions);
+
+        return solutions;
+
+    }
+
+    /**
+     * Relocate customers between the trips of different depots while it shortens the total
+     * distance. Like {@link InterRouteSearch}, trips keep their vehicle and capacity, so the
+     * dispatch limits still hold, and a trip emptied by the search is dropped.
+     *
+     * @param matrix       IndexedMatrix of the places
+     * @param depotIndices indices of the depots in the matrix
+     * @param solutions    List of Solution, every trip starting from one of the depots
+     * @param vehicles     List of Vehicle referenced by the solutions
+     * @param isRoundTrip  whether each trip returns to its depot
+     * @param timeWindows  TimeWindows of the places, null if time is not constrained, otherwise every vehicle is dispatched once
+     * @param control      SolverControl polled on every customer
+     * @return List of Solution grouped by trip
+     */
+    @NonNull
+    public static List<Solution> improve(@NonNull IndexedMatrix matrix, @NonNull int[] depotIndices, @NonNull List<Solution> solutions, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, @Nullable TimeWindows timeWindows, @NonNull SolverControl control) {
+
+        if (timeWindows != null)
+            TimeWindows.checkVehicles(vehicles);
+
+        return new CrossDepotSearch(matrix, depotIndices, vehicles, isRoundTrip, timeWindows).improve(solutions, control);
+    }
+
+    /**
+     * Depot of every customer and vehicles of every depot
+     */
+    private static final class Plan {
+
+        private final int[] assignment;
+        private final List<List<Vehicle>> vehicles = new ArrayList<>();
+
+        Plan(IndexedMatrix matrix, int[] depotIndices, List<Vehicle> vehicles, boolean isRoundTrip) {
+
+            int size = matrix.size();
+            int depots = depotIndices.length;
+
+            HashMap<String, Integer> depotsById = new HashMap<>();
+            for (int d = 0; d < depots; d++) {
+                depotsById.put(matrix.getLocation(depotIndices[d]).getId(), d);
+                this.vehicles.add(new ArrayList<Vehicle>());
+            }
+
+            // Vehicles bound to a depot, the others are shared
+            double[] capacities = new double[depots];
+            int[] dispatches = new int[depots];
+            ArrayList<Vehicle> shared = new ArrayList<>();
+
+            for (Vehicle vehicle : vehicles) {
+
+                Integer depot = vehicle.getDepotId() != null ? depotsById.get(vehicle.getDepotId()) : null;
+
+                if (depot == null) {
+                    if (vehicle.getDepotId() != null)
+                        Log.e(TAG, "Plan: Unknown depot id " + vehicle.getDepotId() + ", vehicle " + vehicle.getId() + " is shared");
+                    shared.add(vehicle);
+                    continue;
+                }
+
+                this.vehicles.get(depot).add(vehicle);
+                capacities[depot] += vehicle.getCapacity() * Math.max(0, vehicle.getDispatchLimit());
+                dispatches[depot] += Math.max(0, vehicle.getDispatchLimit());
+
+            }
+
+            // Cheapest depot of every customer
+            this.assignment = new int[size];
+            Arrays.fill(assignment, -2);
+
+            for (int depotIndex : depotIndices)
+                assignment[depotIndex] = -1;
+
+            double[] demands = new double[depots];
+            int[] customers = new int[depots];
+
+            for (int i = 0; i < size; i++) {
+
+                if (assignment[i] == -1)
+                    continue;
+
+                int best = 0;
+                double bestCost = Double.POSITIVE_INFINITY;
+
+                for (int d = 0; d < depots; d++) {
+                    double cost = getCost(matrix, depotIndices[d], i, isRoundTrip);
+                    if (cost < bestCost) {
+                        best = d;
+                        bestCost = cost;
+                    }
+                }
+
+                assignment[i] = best;
+                demands[best] += matrix.getDemand(i);
+                customers[best]++;
+
+            }
+
+            // Share out the dispatches each depot needs beyond its own vehicles, a depot without
+            // vehicles needs at least one dispatch
+            Fleet fleet = !shared.isEmpty() ? new Fleet(shared) : null;
+            int[][] allotments = new int[depots][fleet != null ? fleet.size() : 0];
+
+            if (fleet != null) {
+
+                double[] needs = new double[depots];
+                for (int d = 0; d < depots; d++) {
+                    needs[d] = demands[d] - capacities[d];
+                    if (customers[d] > 0 && dispatches[d] == 0)
+                        needs[d] = Math.max(needs[d], Double.MIN_VALUE);
+                }
+
+                fleet.allot(needs, allotments);
+
+                for (int d = 0; d < depots; d++)
+                    for (int t = 0; t < fleet.size(); t++)
+                        capacities[d] += allotments[d][t] * fleet.getVehicle(t).getCapacity();
+
+            }
+
+            rebalance(matrix, depotIndices, isRoundTrip, demands, capacities, customers);
+
+            // Spread the dispatches left evenly over the depots with customers
+            if (fleet != null) {
+
+                boolean[] isServed = new boolean[depots];
+                for (int d = 0; d < depots; d++)
+                    isServed[d] = customers[d] > 0;
+
+                fleet.allotEvenly(isServed, allotments);
+
+                for (int d = 0; d < depots; d++)
+                    this.vehicles.get(d).addAll(fleet.getAllotted(allotments[d]));
+
+            }
+
+        }
+
+        /**
+         * Move customers out of the depots that can not carry their demand, the smallest extra
+         * cost first, to the cheapest depot with spare capacity
+         */
+        private void rebalance(final IndexedMatrix matrix, final int[] depotIndices, final boolean isRoundTrip, double[] demands, double[] capacities, int[] customers) {
+
+            for (int d = 0; d < depotIndices.length; d++) {
+
+                if (demands[d] <= capacities[d])
+                    continue;
+
+                // Customers of the depot by regret, the extra cost of their next cheapest depot
+                ArrayList<Integer> candidates = new ArrayList<>();
+                final double[] regrets = new double[matrix.size()];
+
+                for (int i = 0; i < matrix.size(); i++) {
+
+                    if (assignment[i] != d || matrix.getDemand(i) <= 0)
+                        continue;
+
+                    double cost = getCost(matrix, depotIndices[d], i, isRoundTrip);
+                    double regret = Double.POSITIVE_INFINITY;
+
+                    for (int e = 0; e < depotIndices.length; e++)
+                        if (e != d)
+                            regret = Math.min(regret, getCost(matrix, depotIndices[e], i, isRoundTrip) - cost);
+
+                    regrets[i] = regret;
+                    candidates.add(i);
+
+                }
+
+                Collections.sort(candidates, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer a, Integer b) {
+                        return Double.compare(regrets[a], regrets[b]);
+                    }
+                });
+
+                for (int i : candidates) {
+
+                    if (demands[d] <= capacities[d])
+                        break;
+
+                    double demand = matrix.getDemand(i);
+                    int best = -1;
+                    double bestCost = Double.POSITIVE_INFINITY;
+
+                    for (int e = 0; e < depotIndices.length; e++) {
+
+                        if (e == d || demands[e] + demand > capacities[e])
+                            continue;
+
+                        double cost = getCost(matrix, depotIndices[e], i, isRoundTrip);
+
+                        if (best == -1 || cost < bestCost) {
+                            best = e;
+                            bestCost = cost;
+                        }
+
+                    }
+
+                    if (best == -1)
+                        continue;
+
+                    assignment[i] = best;
+                    demands[d] -= demand;
+                    demands[best] += demand;
+                    customers[d]--;
+                    customers[best]++;
+
+                }
+
+                if (demands[d] > capacities[d])
+                    Log.e(TAG, "rebalance: Not enough capacity for depot " + matrix.getLocation(depotIndices[d]).getId());
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Cost of serving a customer alone from a depot
+     */
+    private static double getCost(IndexedMatrix matrix, int depotIndex, int index, boolean isRoundTrip) {
+        double cost = matrix.getDistance(depotIndex, index);
+        return isRoundTrip ? cost + matrix.getDistance(index, depotIndex) : cost;
+    }
+
+    @SuppressWarnings("serial")
+    private static class Depots extends RecursiveAction {
+
+        private final List<Depot> tasks;
+
+        Depots(List<Depot> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected void compute() {
+            invokeAll(tasks);
+        }
+
+    }
+
+    @SuppressWarnings("serial")
+    private static class Depot extends RecursiveAction {
+
+        private final SubMatrix matrix;
+        private final List<Vehicle> vehicles;
+        private final DepotSolver solver;
+        private final SolverControl control;
+
+        // Result
+        private List<Solution> solutions;
+
+        Depot(SubMatrix matrix, List<Vehicle> vehicles, DepotSolver solver, SolverControl control) {
+            this.matrix = matrix;
+            this.vehicles = vehicles;
+            this.solver = solver;
+            this.control = control;
+        }
+
+        @Override
+        protected void compute() {
+            solutions = solver.solve(matrix, 0, vehicles, control);
+        }
+
+    }
+
+    /**
+     * Relocate search between the trips of different depots. Every trip keeps its forward time and
+     * backward slack when there are time windows, so a removal or an insertion is checked in O(1).
+     */
+    private static final class CrossDepotSearch {
+
+        // Free end of a one way trip, every distance to it is 0
+        private static final int END = TimeWindows.END;
+
+        private final IndexedMatrix matrix;
+        private final boolean[] isDepot;
+        private final HashMap<String, Vehicle> vehiclesById = new HashMap<>();
+        private final boolean isRoundTrip;
+        private final TimeWindows timeWindows;
+
+        private final ArrayList<Route> routes = new ArrayList<>();
+        private final ArrayList<Integer> routeDepots = new ArrayList<>();
+        private double[] loads;
+        private double[][] forwardTimes;
+        private double[][] latestTimes;
+
+        CrossDepotSearch(IndexedMatrix matrix, int[] depotIndices, List<Vehicle> vehicles, boolean isRoundTrip, TimeWindows timeWindows) {
+            this.matrix = matrix;
+            this.isDepot = new boolean[matrix.size()];
+            this.isRoundTrip = isRoundTrip;
+            this.timeWindows = timeWindows;
+
+            for (int depotIndex : depotIndices)
+                isDepot[depotIndex] = true;
+
+            for (Vehicle v : vehicles)
+                vehiclesById.put(v.getId(), v);
+        }
+
+        List<Solution> improve(List<Solution> solutions, SolverControl control) {
+
+            indexRoutes(solutions);
+
+            double cost = computeCost();
+            boolean isImproved = true;
+
+            while (isImproved && !control.shouldStop()) {
+
+                isImproved = false;
+
+                for (int a = 0; a < routes.size() && !control.shouldStop(); a++) {
+
+                    Route from = routes.get(a);
+
+                    for (int p = 0; p < from.length; ) {
+
+                        double gain = relocate(a, p);
+
+                        if (gain > 0) {
+                            isImproved = true;
+                            cost -= gain;
+
+                            if (control.isProgressDue(cost))
+                                control.reportProgress(toSolutions(), cost);
+                        } else {
+                            p++;
+                        }
+
+                    }
+
+                }
+
+            }
+
+            return toSolutions();
+
+        }
+
+        /**
+         * Move the stop at position p of a route to the best position of a trip of another depot
+         * @return the gain of the applied move, 0 if none improves
+         */
+        private double relocate(int a, int p) {
+
+            Route from = routes.get(a);
+            int depot = routeDepots.get(a);
+            int stop = from.stops[p];
+            int previous = p == 0 ? depot : from.stops[p - 1];
+            int next = p + 1 < from.length ? from.stops[p + 1] : (isRoundTrip ? depot : END);
+
+            if (next != END && !matrix.hasDistance(previous, next))
+                return 0;
+
+            double gain = getDistance(previous, stop) + getDistance(stop, next) - getDistance(previous, next);
+
+            if (!(gain > EPSILON))
+                return 0;
+
+            // Removing a stop keeps a trip on time as long as its neighbors are still reachable in time
+            if (timeWindows != null && !timeWindows.isOnTime(next, forwardTimes[a][p] + timeWindows.getTravelTime(previous, next), latestTimes[a][p + 2]))
+                return 0;
+
+            double demand = matrix.getDemand(stop);
+            int bestRoute = -1;
+            int bestPosition = -1;
+            double bestDelta = gain - EPSILON;
+
+            for (int b = 0; b < routes.size(); b++) {
+
+                Route to = routes.get(b);
+                int toDepot = routeDepots.get(b);
+
+                if (toDepot == depot || to.length == 0 || loads[b] + demand > to.vehicle.getCapacity())
+                    continue;
+
+                for (int q = 0; q <= to.length; q++) {
+
+                    int before = q == 0 ? toDepot : to.stops[q - 1];
+                    int after = q < to.length ? to.stops[q] : (isRoundTrip ? toDepot : END);
+
+                    double delta = getDistance(before, stop) + getDistance(stop, after) - getDistance(before, after);
+
+                    if (!(delta < bestDelta))
+                        continue;
+
+                    if (timeWindows != null) {
+                        double departure = timeWindows.depart(before, forwardTimes[b][q], stop);
+                        if (!timeWindows.isOnTime(after, departure + timeWindows.getTravelTime(stop, after), latestTimes[b][q + 1]))
+                            continue;
+                    }
+
+                    bestRoute = b;
+                    bestPosition = q;
+                    bestDelta = delta;
+
+                }
+
+            }
+
+            if (bestRoute == -1)
+                return 0;
+
+            // Apply
+            System.arraycopy(from.stops, p + 1, from.stops, p, from.length - p - 1);
+            from.length--;
+            loads[a] -= demand;
+
+            Route to = routes.get(bestRoute);
+            if (to.length == to.stops.length)
+                to.stops = Arrays.copyOf(to.stops, to.length * 2);
+
+            System.arraycopy(to.stops, bestPosition, to.stops, bestPosition + 1, to.length - bestPosition);
+            to.stops[bestPosition] = stop;
+            to.length++;
+            loads[bestRoute] += demand;
+
+            schedule(a);
+            schedule(bestRoute);
+
+            return gain - bestDelta;
+
+        }
+
+        private double getDistance(int origin, int destination) {
+            return destination == END ? 0 : matrix.getDistance(origin, destination);
+        }
+
+        /**
+         * Split solutions into trips, a trip starts at every leg leaving a depot
+         */
+        private void indexRoutes(List<Solution> solutions) {
+
+            Route route = null;
+
+            for (Solution solution : solutions) {
+
+                int origin = matrix.indexOf(solution.getOrigin());
+                int destination = matrix.indexOf(solution.getDestination());
+
+                if (isDepot[origin] || route == null) {
+
+                    Vehicle vehicle = vehiclesById.get(solution.getVehicleId());
+
+                    if (vehicle == null)
+                        throw new IllegalArgumentException("Unknown vehicle id: " + solution.getVehicleId());
+
+                    route = new Route(vehicle, new int[4], 0);
+                    routes.add(route);
+                    routeDepots.add(origin);
+
+                }
+
+                if (isDepot[destination])
+                    continue;
+
+                if (route.length == route.stops.length)
+                    route.stops = Arrays.copyOf(route.stops, route.length * 2);
+
+                route.stops[route.length++] = destination;
+
+            }
+
+            loads = new double[routes.size()];
+            forwardTimes = new double[routes.size()][];
+            latestTimes = new double[routes.size()][];
+
+            for (int r = 0; r < routes.size(); r++) {
+
+                Route trip = routes.get(r);
+                for (int p = 0; p < trip.length; p++)
+                    loads[r] += matrix.getDemand(trip.stops[p]);
+
+                schedule(r);
+
+            }
+
+        }
+
+        private void schedule(int r) {
+
+            if (timeWindows == null)
+                return;
+
+            Route route = routes.get(r);
+
+            if (forwardTimes[r] == null || forwardTimes[r].length < route.length + 2) {
+                forwardTimes[r] = new double[route.stops.length + 2];
+                latestTimes[r] = new double[route.stops.length + 2];
+            }
+
+            timeWindows.schedule(route.vehicle, routeDepots.get(r), route.stops, 0, route.length, isRoundTrip, forwardTimes[r], latestTimes[r]);
+
+        }
+
+        private double computeCost() {
+
+            double cost = 0;
+
+            for (int r = 0; r < routes.size(); r++)
+                cost += Routes.computeCost(routes.get(r), matrix, routeDepots.get(r), isRoundTrip);
+
+            return cost;
+
+        }
+
+        private List<Solution> toSolutions() {
+
+            ArrayList<Solution> solutions = new ArrayList<>();
+
+            for (int r = 0; r < routes.size(); r++) {
+                Route route = routes.get(r);
+                Trips.appendTrip(solutions, matrix, routeDepots.get(r), route.stops, route.length, route.vehicle, isRoundTrip, timeWindows);
+            }
+
+            return solutions;
+
+        }
+
+    }
+
+}
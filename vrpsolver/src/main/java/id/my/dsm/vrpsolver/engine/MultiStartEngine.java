@@ -0,0 +1,171 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+/**
+ * Runs many randomized constructive solves in parallel and keeps the best. Start 0 and 1 are the
+ * deterministic Nearest Neighbor and Saving Matrix, so the result is never worse than either.
+ * The following starts alternate between GRASP Nearest Neighbor (random restricted candidate
+ * list, see {@link NearestNeighborEngine}) and Clarke-Wright on perturbed lambda savings (see
+ * {@link SavingsEngine}). Every start owns a Random derived from the seed and its index, so a
+ * seed always gives the same result whatever the number of cores.
+ */
+public final class MultiStartEngine {
+
+    // Widest restricted candidate list of a GRASP start
+    private static final double MAX_CANDIDATE_RATIO = 0.2;
+
+    // Range of the savings lambda of a Clarke-Wright start
+    private static final double MIN_LAMBDA = 0.4;
+    private static final double MAX_LAMBDA = 2.0;
+
+    private MultiStartEngine() {
+    }
+
+    /**
+     * Capacitated VRP with the best of many randomized constructive starts
+     *
+     * @param matrix      IndexedMatrix of the places
+     * @param depotIndex  index of the depot in the matrix
+     * @param vehicles    List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip whether each trip returns to the depot
+     * @param starts      number of starts
+     * @param seed        seed of the random starts
+     * @param pool        ForkJoinPool to run the starts on
+     * @param control     SolverControl, starts left once it stops are skipped
+     * @return List of Solution grouped by trip, the best start
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, int starts, long seed, @NonNull ForkJoinPool pool, @NonNull SolverControl control) {
+        return solve(matrix, depotIndex, vehicles, isRoundTrip, starts, seed, null, pool, control);
+    }
+
+    /**
+     * Capacitated VRP with time windows with the best of many randomized constructive starts
+     *
+     * @param timeWindows TimeWindows of the places, null if time is not constrained
+     * @see #solve(IndexedMatrix, int, List, boolean, int, long, ForkJoinPool, SolverControl)
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, int starts, long seed, @Nullable TimeWindows timeWindows, @NonNull ForkJoinPool pool, @NonNull SolverControl control) {
+
+        Start[] tasks = new Start[Math.max(1, starts)];
+        for (int i = 0; i < tasks.length; i++)
+            tasks[i] = new Start(matrix, depotIndex, vehicles, isRoundTrip, i, seed, timeWindows, control);
+
+        pool.invoke(new Starts(tasks));
+
+        // Most served locations first, then the shortest
+        Start best = null;
+
+        for (Start task : tasks) {
+
+            if (task.solutions == null)
+                continue;
+
+            if (best == null || task.served > best.served || (task.served == best.served && task.cost < best.cost))
+                best = task;
+
+        }
+
+        return best != null ? best.solutions : new ArrayList<Solution>();
+
+    }
+
+    @SuppressWarnings("serial")
+    private static class Starts extends RecursiveAction {
+
+        private final Start[] tasks;
+
+        Starts(Start[] tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected void compute() {
+            invokeAll(tasks);
+        }
+
+    }
+
+    @SuppressWarnings("serial")
+    private static class Start extends RecursiveAction {
+
+        private final IndexedMatrix matrix;
+        private final int depotIndex;
+        private final List<Vehicle> vehicles;
+        private final boolean isRoundTrip;
+        private final int index;
+        private final long seed;
+        private final TimeWindows timeWindows;
+        private final SolverControl control;
+
+        // Result
+        private List<Solution> solutions;
+        private int served;
+        private double cost;
+
+        Start(IndexedMatrix matrix, int depotIndex, List<Vehicle> vehicles, boolean isRoundTrip, int index, long seed, TimeWindows timeWindows, SolverControl control) {
+            this.matrix = matrix;
+            this.depotIndex = depotIndex;
+            this.vehicles = vehicles;
+            this.isRoundTrip = isRoundTrip;
+            this.index = index;
+            this.seed = seed;
+            this.timeWindows = timeWindows;
+            this.control = control;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (control.shouldStop())
+                return;
+
+            // Spread the seeds of consecutive starts
+            Random random = new Random(seed + index * 0x9E3779B97F4A7C15L);
+
+            switch (index) {
+                case 0:
+                    solutions = NearestNeighborEngine.solve(matrix, depotIndex, vehicles, isRoundTrip, null, 0, timeWindows, control);
+                    break;
+                case 1:
+                    solutions = ClarkeWrightEngine.solve(matrix, depotIndex, vehicles, isRoundTrip, false, 1, timeWindows, control);
+                    break;
+                default:
+                    if (index % 2 == 0) {
+                        double candidateRatio = random.nextDouble() * MAX_CANDIDATE_RATIO;
+                        solutions = NearestNeighborEngine.solve(matrix, depotIndex, vehicles, isRoundTrip, random, candidateRatio, timeWindows, control);
+                    } else {
+                        double lambda = MIN_LAMBDA + random.nextDouble() * (MAX_LAMBDA - MIN_LAMBDA);
+                        solutions = ClarkeWrightEngine.solve(matrix, depotIndex, vehicles, isRoundTrip, false, lambda, timeWindows, control);
+                    }
+                    break;
+            }
+
+            for (Solution solution : solutions) {
+                cost += solution.getDistance();
+                if (solution.getDestination() != matrix.getLocation(depotIndex))
+                    served++;
+            }
+
+            // A start cut short by the control may serve fewer locations
+            if (!control.shouldStop())
+                control.reportProgress(solutions, cost);
+
+        }
+
+    }
+
+}
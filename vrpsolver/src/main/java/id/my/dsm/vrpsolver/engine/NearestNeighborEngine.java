@@ -0,0 +1,275 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+/**
+ * Capacitated Nearest Neighbor engine running on an {@link IndexedMatrix}.
+ * Each step scans one matrix row over the unvisited locations, so a full solve is O(n^2) and the
+ * main loop does not allocate. Solutions are materialized once the routes are complete.
+ */
+public final class NearestNeighborEngine {
+
+    private NearestNeighborEngine() {
+    }
+
+    /**
+     * Capacitated TSP with Nearest Neighbor method. Returns a sequence of solutions grouped by trip.
+     *
+     * @param matrix      IndexedMatrix of the places
+     * @param depotIndex  index of the depot in the matrix
+     * @param vehicles    List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip whether each trip returns to the depot
+     * @return List of Solution in Nearest Neighbor order
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Vehicle> vehicles, boolean isRoundTrip) {
+        return solve(matrix, depotIndex, vehicles, isRoundTrip, new SolverControl());
+    }
+
+    /**
+     * Capacitated TSP with Nearest Neighbor method. Once the control stops, the current trip is
+     * closed and the trips built so far are returned.
+     *
+     * @param matrix      IndexedMatrix of the places
+     * @param depotIndex  index of the depot in the matrix
+     * @param vehicles    List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip whether each trip returns to the depot
+     * @param control     SolverControl polled on every step
+     * @return List of Solution in Nearest Neighbor order
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, @NonNull SolverControl control) {
+        return solve(matrix, depotIndex, vehicles, isRoundTrip, null, 0, control);
+    }
+
+    /**
+     * Randomized capacitated TSP with Nearest Neighbor method (GRASP). Each step picks uniformly
+     * among the restricted candidate list: the locations that fit and are at most
+     * min + candidateRatio * (max - min) away. A ratio of 0 only breaks ties randomly.
+     *
+     * @param matrix         IndexedMatrix of the places
+     * @param depotIndex     index of the depot in the matrix
+     * @param vehicles       List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip    whether each trip returns to the depot
+     * @param random         Random source, null for the deterministic nearest location
+     * @param candidateRatio width of the restricted candidate list between 0 and 1
+     * @param control        SolverControl polled on every step
+     * @return List of Solution in Nearest Neighbor order
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, @Nullable Random random, double candidateRatio, @NonNull SolverControl control) {
+        return solve(matrix, depotIndex, vehicles, isRoundTrip, random, candidateRatio, null, control);
+    }
+
+    /**
+     * Capacitated TSP with Nearest Neighbor method and time windows. A location is a candidate only
+     * if the trip reaches it before its due time and can still get back to the depot before the
+     * shift end, both checked in O(1) from the current departure time.
+     *
+     * @param matrix         IndexedMatrix of the places
+     * @param depotIndex     index of the depot in the matrix
+     * @param vehicles       List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip    whether each trip returns to the depot
+     * @param random         Random source, null for the deterministic nearest location
+     * @param candidateRatio width of the restricted candidate list between 0 and 1
+     * @param timeWindows    TimeWindows of the places, null if time is not constrained, otherwise every vehicle is dispatched once
+     * @param control        SolverControl polled on every step
+     * @return List of Solution in Nearest Neighbor order
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, @Nullable Random random, double candidateRatio, @Nullable TimeWindows timeWindows, @NonNull SolverControl control) {
+
+        if (timeWindows != null)
+            TimeWindows.checkVehicles(vehicles);
+
+        int size = matrix.size();
+        int end = isRoundTrip ? depotIndex : TimeWindows.END;
+
+        // Visited locations, the depot is never a candidate
+        BitSet visited = new BitSet(size);
+        visited.set(depotIndex);
+        int unserved = size - 1;
+
+        // Leg buffers. Every served location produces one leg and every trip at most one return leg
+        int legCapacity = 2 * size;
+        int[] legOrigins = new int[legCapacity];
+        int[] legDestinations = new int[legCapacity];
+        double[] legCarries = new double[legCapacity];
+        Vehicle[] legVehicles = new Vehicle[legCapacity];
+        int legs = 0;
+
+        Fleet fleet = new Fleet(vehicles);
+
+        // Stop dispatching once every location is served
+        while (unserved > 0 && !control.shouldStop()) {
+
+            Vehicle v = fleet.next();
+
+            if (v == null)
+                break;
+
+            double vehicleRemainingCapacity = v.getCapacity();
+            int current = depotIndex;
+            int tripLegs = 0;
+
+            // Departure from the current location and latest return of the dispatch
+            double departure = timeWindows != null ? timeWindows.getStartTime(v, depotIndex) : 0;
+            double endTime = timeWindows != null ? timeWindows.getEndTime(v, depotIndex) : 0;
+
+            while (true) {
+
+                // Find the nearest unvisited location that fits the remaining capacity
+                int best = -1;
+                double bestDistance = Double.POSITIVE_INFINITY;
+                double worstDistance = 0;
+
+                // Close the trip when stopped
+                int candidates = control.shouldStop() ? size : visited.nextClearBit(0);
+
+                for (int j = candidates; j < size; j = visited.nextClearBit(j + 1)) {
+
+                    if (matrix.getDemand(j) > vehicleRemainingCapacity)
+                        continue;
+
+                    if (timeWindows != null && !isOnTime(timeWindows, current, departure, j, end, endTime))
+                        continue;
+
+                    double distance = matrix.getDistance(current, j);
+
+                    if (distance < bestDistance) {
+                        best = j;
+                        bestDistance = distance;
+                    }
+
+                    if (distance > worstDistance && distance < Double.POSITIVE_INFINITY)
+                        worstDistance = distance;
+
+                }
+
+                // Pick uniformly within the restricted candidate list, reservoir sampling
+                if (random != null && best != -1) {
+
+                    double threshold = bestDistance + candidateRatio * (worstDistance - bestDistance);
+                    int count = 0;
+
+                    for (int j = candidates; j < size; j = visited.nextClearBit(j + 1))
+                        if (matrix.getDemand(j) <= vehicleRemainingCapacity && matrix.getDistance(current, j) <= threshold
+                                && (timeWindows == null || isOnTime(timeWindows, current, departure, j, end, endTime))
+                                && random.nextInt(++count) == 0)
+                            best = j;
+
+                }
+
+                if (best == -1) {
+
+                    // Go straight to depot (ROUNDTRIP)
+                    if (isRoundTrip && tripLegs > 0 && matrix.hasDistance(current, depotIndex)) {
+                        legOrigins[legs] = current;
+                        legDestinations[legs] = depotIndex;
+                        legCarries[legs] = vehicleRemainingCapacity;
+                        legVehicles[legs] = v;
+                        legs++;
+                    }
+
+                    // Every other dispatch of this vehicle would start the same way
+                    if (tripLegs == 0)
+                        fleet.skipType();
+
+                    break;
+
+                }
+
+                vehicleRemainingCapacity -= matrix.getDemand(best);
+                visited.set(best);
+
+                if (timeWindows != null)
+                    departure = timeWindows.depart(current, departure, best);
+
+                unserved--;
+
+                legOrigins[legs] = current;
+                legDestinations[legs] = best;
+                legCarries[legs] = vehicleRemainingCapacity;
+                legVehicles[legs] = v;
+                legs++;
+                tripLegs++;
+
+                current = best;
+
+            }
+
+        }
+
+        // Materialize solutions
+        ArrayList<Solution> solutions = new ArrayList<>(legs);
+        double departure = 0;
+
+        for (int i = 0; i < legs; i++) {
+
+            int origin = legOrigins[i];
+            int destination = legDestinations[i];
+
+            Solution solution = new Solution(matrix.getLocation(origin), matrix.getLocation(destination), matrix.getDistance(origin, destination));
+            solution.setDemand(destination == depotIndex ? 0 : matrix.getDemand(destination));
+            solution.setCarry(legCarries[i]);
+            solution.setVehicleId(legVehicles[i].getId()); // Assign vehicle id to solution
+
+            if (timeWindows != null) {
+
+                if (origin == depotIndex)
+                    departure = timeWindows.getStartTime(legVehicles[i], depotIndex);
+
+                double travelTime = timeWindows.getTravelTime(origin, destination);
+                double start = Math.max(timeWindows.getReadyTime(destination), departure + travelTime);
+                solution.setDuration(travelTime);
+                solution.setServiceStartTime(start);
+                departure = start + timeWindows.getServiceDuration(destination);
+
+            }
+
+            solutions.add(solution);
+
+        }
+
+        return solutions;
+
+    }
+
+    /**
+     * Whether a location can be served next and the trip still ends on time
+     */
+    private static boolean isOnTime(TimeWindows timeWindows, int current, double departure, int candidate, int end, double endTime) {
+        double candidateDeparture = timeWindows.depart(current, departure, candidate);
+        return candidateDeparture + timeWindows.getTravelTime(candidate, end) <= endTime;
+    }
+
+    /**
+     * Sort vehicles, move default vehicle to the first
+     * @param vehicles List of Vehicle
+     * @return sorted List of Vehicle
+     */
+    @NonNull
+    static List<Vehicle> getSortedVehicles(@NonNull List<Vehicle> vehicles) {
+
+        Vehicle vehicle = Vehicle.Toolbox.getDefaultVehicle(vehicles);
+        vehicle = vehicle != null ? vehicle : vehicles.get(0);
+
+        ArrayList<Vehicle> sortedVehicles = new ArrayList<>(vehicles);
+        sortedVehicles.remove(vehicle);
+        sortedVehicles.add(0, vehicle);
+
+        return sortedVehicles;
+
+    }
+
+}
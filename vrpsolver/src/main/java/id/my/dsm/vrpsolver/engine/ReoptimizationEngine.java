@@ -0,0 +1,389 @@
+package id.my.dsm.vrpsolver.engine;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+/**
+ * Updates a solved plan as orders are placed or cancelled during the day, without solving again.
+ * A cancelled location is unlinked from its trip. A new location goes to the cheapest position
+ * of any trip that still has the capacity and, with time windows, stays on time, which is checked
+ * in O(1) from the forward time and backward slack of the trip (see {@link TimeWindows}). A
+ * location no trip can take gets a new trip if a vehicle dispatch is left.
+ * <p>
+ * Locations never move to another trip unless the optional local search is on, which only runs
+ * on the changed trips and on the trips of the stops nearest to the changed locations. Trips keep
+ * their vehicle and their trip index, new trips are numbered after the last one.
+ * The matrix must know the new locations, e.g. a
+ * {@link id.my.dsm.vrpsolver.matrix.MutableDistanceMatrix} they were added to. Cancelled locations
+ * may be removed from it first, even if a new location took their slot since, they are resolved
+ * by Location, not by index. The legs of a {@link RoutePlan} are only read once needed, so read
+ * them before changing the matrix the plan was solved on.
+ */
+public final class ReoptimizationEngine {
+
+    private static final String TAG = ReoptimizationEngine.class.getSimpleName();
+
+    // Free end of a one way trip, every distance to it is 0
+    private static final int END = -1;
+
+    private static final int NONE = -1;
+
+    private ReoptimizationEngine() {
+    }
+
+    /**
+     * Update a plan without time windows nor local search
+     * @see #update(IndexedMatrix, int, List, List, List, List, boolean, TimeWindows, boolean, int, SolverControl)
+     */
+    @NonNull
+    public static List<Solution> update(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Solution> solutions, @NonNull List<Vehicle> vehicles, @NonNull List<Location> added, @NonNull List<Location> removed, boolean isRoundTrip) {
+        return update(matrix, depotIndex, solutions, vehicles, added, removed, isRoundTrip, null, false, LocalSearchEngine.DEFAULT_NEIGHBOR_COUNT, new SolverControl());
+    }
+
+    /**
+     * Remove then insert locations in a plan
+     *
+     * @param matrix        IndexedMatrix of the places, new locations included
+     * @param depotIndex    index of the depot in the matrix
+     * @param solutions     List of Solution grouped by trip, the current plan
+     * @param vehicles      List of Vehicle referenced by the solutions, the dispatch limits bound the new trips
+     * @param added         List of Location to serve, locations already served are ignored
+     * @param removed       List of Location to drop, locations not served are ignored
+     * @param isRoundTrip   whether each trip returns to the depot
+     * @param timeWindows   TimeWindows of the places, null if time is not constrained, otherwise every vehicle is dispatched once
+     * @param isLocalSearch whether to improve the changed trips and their nearest trips afterwards
+     * @param neighborCount number of nearest stops whose trips are searched, and linked to by a move
+     * @param control       SolverControl bounding the local search, the moves applied so far are kept
+     * @return List of Solution grouped by trip, the trips in the same order then the new trips
+     */
+    @NonNull
+    public static List<Solution> update(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Solution> solutions, @NonNull List<Vehicle> vehicles, @NonNull List<Location> added, @NonNull List<Location> removed, boolean isRoundTrip, @Nullable TimeWindows timeWindows, boolean isLocalSearch, int neighborCount, @NonNull SolverControl control) {
+
+        if (timeWindows != null)
+            TimeWindows.checkVehicles(vehicles);
+
+        ArrayList<Route> routes = new ArrayList<>(Routes.fromSolutions(solutions, matrix, depotIndex, vehicles));
+        ArrayList<Integer> tripIndices = getTripIndices(solutions, matrix.getLocation(depotIndex));
+        int nextTripIndex = 0;
+
+        for (int tripIndex : tripIndices)
+            nextTripIndex = Math.max(nextTripIndex, tripIndex + 1);
+
+        int[] routeIndices = new int[matrix.size()]; // Route of each stop, NONE if not routed
+        Arrays.fill(routeIndices, NONE);
+
+        for (int r = 0; r < routes.size(); r++)
+            for (int p = 0; p < routes.get(r).length; p++)
+                routeIndices[routes.get(r).stops[p]] = r;
+
+        BitSet touched = new BitSet();
+        int[] changed = new int[added.size() + removed.size()]; // Locations the local search starts from
+        int changedCount = 0;
+
+        // Cancelled locations already gone from the matrix were skipped, their trips changed all the same
+        for (Location location : removed) {
+            if (matrix.indexOf(location) == -1) {
+                touchGone(solutions, matrix, depotIndex, touched);
+                break;
+            }
+        }
+
+        // Unlink the cancelled locations
+        for (Location location : removed) {
+
+            int index = matrix.indexOf(location);
+
+            if (index == -1 || routeIndices[index] == NONE)
+                continue;
+
+            Route route = routes.get(routeIndices[index]);
+            int p = 0;
+
+            while (route.stops[p] != index)
+                p++;
+
+            System.arraycopy(route.stops, p + 1, route.stops, p, route.length - p - 1);
+            route.length--;
+
+            touched.set(routeIndices[index]);
+            routeIndices[index] = NONE;
+            changed[changedCount++] = index;
+
+        }
+
+        // Loads and dispatches left
+        Fleet fleet = new Fleet(vehicles);
+        ArrayList<Double> loads = new ArrayList<>(routes.size());
+
+        for (Route route : routes) {
+
+            double load = 0;
+            for (int p = 0; p < route.length; p++)
+                load += matrix.getDemand(route.stops[p]);
+            loads.add(load);
+
+            for (int t = 0; t < fleet.size(); t++) {
+                if (fleet.getVehicle(t).getId().equals(route.vehicle.getId())) {
+                    if (fleet.getRemaining(t) > 0)
+                        fleet.dispatch(t);
+                    break;
+                }
+            }
+
+        }
+
+        // Schedule of each trip, null until needed or once stale
+        ArrayList<double[][]> schedules = new ArrayList<>(routes.size());
+        for (int r = 0; r < routes.size(); r++)
+            schedules.add(null);
+
+        int end = isRoundTrip ? depotIndex : END;
+        int unserved = 0;
+
+        // Cheapest feasible insertion of the new locations, in the order they were placed
+        for (Location location : added) {
+
+            int index = matrix.indexOf(location);
+
+            if (index == -1) {
+                Log.e(TAG, "update: Unknown location " + location.getId() + ", add it to the matrix first");
+                unserved++;
+                continue;
+            }
+
+            if (index == depotIndex || routeIndices[index] != NONE)
+                continue;
+
+            double demand = matrix.getDemand(index);
+            double bestDelta = Double.POSITIVE_INFINITY;
+            int bestRoute = NONE;
+            int bestPosition = 0;
+
+            for (int r = 0; r < routes.size(); r++) {
+
+                Route route = routes.get(r);
+
+                if (loads.get(r) + demand > route.vehicle.getCapacity())
+                    continue;
+
+                double[][] schedule = null;
+
+                if (timeWindows != null) {
+                    schedule = schedules.get(r);
+                    if (schedule == null) {
+                        schedule = new double[][]{new double[route.length + 2], new double[route.length + 2]};
+                        timeWindows.schedule(route.vehicle, depotIndex, route.stops, 0, route.length, isRoundTrip, schedule[0], schedule[1]);
+                        schedules.set(r, schedule);
+                    }
+                }
+
+                for (int p = 0; p <= route.length; p++) {
+
+                    int previous = p == 0 ? depotIndex : route.stops[p - 1];
+                    int next = p == route.length ? end : route.stops[p];
+                    double delta = getDistance(matrix, previous, index) + getDistance(matrix, index, next) - getDistance(matrix, previous, next);
+
+                    if (!(delta < bestDelta))
+                        continue;
+
+                    if (schedule != null) {
+                        double departure = timeWindows.depart(previous, schedule[0][p], index);
+                        if (!timeWindows.isOnTime(next, departure + timeWindows.getTravelTime(index, next), schedule[1][p + 1]))
+                            continue;
+                    }
+
+                    bestDelta = delta;
+                    bestRoute = r;
+                    bestPosition = p;
+
+                }
+
+            }
+
+            if (bestRoute == NONE) {
+
+                // A new trip, with the largest vehicle left so that later orders fit in
+                int type = fleet.find(demand, null, false);
+                Route route = type != -1 ? new Route(fleet.getVehicle(type), new int[]{index, 0, 0, 0}, 1) : null;
+
+                if (route != null && timeWindows != null) {
+                    double[] forward = new double[3];
+                    double[] latest = new double[3];
+                    if (!timeWindows.schedule(route.vehicle, depotIndex, route.stops, 0, 1, isRoundTrip, forward, latest))
+                        route = null;
+                }
+
+                if (route == null || Double.isInfinite(getDistance(matrix, depotIndex, index))) {
+                    unserved++;
+                    continue;
+                }
+
+                fleet.dispatch(type);
+                routes.add(route);
+                tripIndices.add(nextTripIndex++);
+                loads.add(demand);
+                schedules.add(null);
+                bestRoute = routes.size() - 1;
+
+            } else {
+
+                Route route = routes.get(bestRoute);
+
+                if (route.length == route.stops.length)
+                    route.stops = Arrays.copyOf(route.stops, route.length * 2);
+
+                System.arraycopy(route.stops, bestPosition, route.stops, bestPosition + 1, route.length - bestPosition);
+                route.stops[bestPosition] = index;
+                route.length++;
+
+                loads.set(bestRoute, loads.get(bestRoute) + demand);
+                schedules.set(bestRoute, null);
+
+            }
+
+            routeIndices[index] = bestRoute;
+            touched.set(bestRoute);
+            changed[changedCount++] = index;
+
+        }
+
+        if (unserved > 0)
+            Log.e(TAG, "update: No feasible trip nor vehicle left, " + unserved + " location(s) left unserved");
+
+        if (isLocalSearch && changedCount > 0)
+            improve(routes, routeIndices, touched, changed, changedCount, matrix, depotIndex, isRoundTrip, timeWindows, neighborCount, control);
+
+        // Materialize, trips emptied by a removal or the search are dropped
+        ArrayList<Solution> updatedSolutions = new ArrayList<>(solutions.size() + added.size());
+
+        for (int r = 0; r < routes.size(); r++) {
+
+            int from = updatedSolutions.size();
+            Route route = routes.get(r);
+
+            Trips.appendTrip(updatedSolutions, matrix, depotIndex, route.stops, route.length, route.vehicle, isRoundTrip, timeWindows);
+
+            for (int i = from; i < updatedSolutions.size(); i++)
+                updatedSolutions.get(i).setTripIndex(tripIndices.get(r));
+
+        }
+
+        return updatedSolutions;
+
+    }
+
+    /**
+     * Local search on the touched trips and the trips of the stops nearest to the changed locations
+     */
+    private static void improve(List<Route> routes, int[] routeIndices, BitSet touched, int[] changed, int changedCount, IndexedMatrix matrix, int depotIndex, boolean isRoundTrip, TimeWindows timeWindows, int neighborCount, SolverControl control) {
+
+        int[] nearest = new int[Math.max(1, neighborCount)];
+        double[] nearestDistances = new double[nearest.length];
+
+        for (int c = 0; c < changedCount; c++) {
+
+            int location = changed[c];
+            int count = 0;
+
+            for (Route route : routes) {
+                for (int p = 0; p < route.length; p++) {
+
+                    int stop = route.stops[p];
+
+                    if (stop == location)
+                        continue;
+
+                    double distance = Math.min(matrix.getDistance(location, stop), matrix.getDistance(stop, location));
+
+                    if (count == nearest.length && !(distance < nearestDistances[count - 1]))
+                        continue;
+
+                    // Insertion sort into the k nearest
+                    int i = count < nearest.length ? count++ : count - 1;
+
+                    while (i > 0 && nearestDistances[i - 1] > distance) {
+                        nearest[i] = nearest[i - 1];
+                        nearestDistances[i] = nearestDistances[i - 1];
+                        i--;
+                    }
+
+                    nearest[i] = stop;
+                    nearestDistances[i] = distance;
+
+                }
+            }
+
+            for (int i = 0; i < count; i++)
+                touched.set(routeIndices[nearest[i]]);
+
+        }
+
+        // The searches edit the Route instances in place
+        ArrayList<Route> localRoutes = new ArrayList<>(touched.cardinality());
+
+        for (int r = touched.nextSetBit(0); r >= 0; r = touched.nextSetBit(r + 1))
+            localRoutes.add(routes.get(r));
+
+        // A sub-problem, the progress of a few trips is not reported
+        SolverControl localControl = new SolverControl(control);
+
+        new InterRouteSearch(matrix, depotIndex, isRoundTrip, neighborCount, timeWindows).optimize(localRoutes, localControl);
+        LocalSearchEngine.improveRoutes(localRoutes, matrix, depotIndex, isRoundTrip, neighborCount, timeWindows, localControl);
+
+    }
+
+    /**
+     * Touch the trips of the stops gone from the matrix, in the order of {@link Routes#fromSolutions}
+     */
+    private static void touchGone(List<Solution> solutions, IndexedMatrix matrix, int depotIndex, BitSet touched) {
+
+        Location depot = matrix.getLocation(depotIndex);
+        int route = -1;
+
+        for (Solution solution : solutions) {
+
+            if (solution.getOrigin() == depot || route == -1)
+                route++;
+
+            if (solution.getDestination() != depot && matrix.indexOf(solution.getDestination()) == -1)
+                touched.set(route);
+
+        }
+
+    }
+
+    /**
+     * Trip index of the first leg of each trip, trips split as in {@link Routes#fromSolutions}
+     */
+    private static ArrayList<Integer> getTripIndices(List<Solution> solutions, Location depot) {
+
+        ArrayList<Integer> tripIndices = new ArrayList<>();
+        boolean isFirst = true;
+
+        for (Solution solution : solutions) {
+            if (solution.getOrigin() == depot || isFirst)
+                tripIndices.add(solution.getTripIndex());
+            isFirst = false;
+        }
+
+        return tripIndices;
+
+    }
+
+    private static double getDistance(IndexedMatrix matrix, int origin, int destination) {
+        return origin == END || destination == END ? 0 : matrix.getDistance(origin, destination);
+    }
+
+}
@@ -0,0 +1,22 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+/**
+ * A single trip as a sequence of location indices, excluding the depot
+ */
+final class Route {
+
+    final Vehicle vehicle;
+    int[] stops;
+    int length;
+
+    Route(@NonNull Vehicle vehicle, @NonNull int[] stops, int length) {
+        this.vehicle = vehicle;
+        this.stops = stops;
+        this.length = length;
+    }
+
+}
@@ -0,0 +1,306 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.matrix.MutableDistanceMatrix;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+/**
+ * Compact plan of trips: the stops of every trip packed in a single int array of location indices,
+ * with the vehicle, load, distance and travel time of each trip in primitive arrays. A plan of
+ * n stops costs a few bytes per stop instead of a {@link Solution} per leg.
+ * <p>
+ * {@link #asSolutions()} is a read-only List of Solution whose legs are only materialized, a
+ * trip at a time, once read. The engines hand this view around, and turn it back into trips
+ * without materializing any leg. Immutable, so a plan is shared instead of copied.
+ */
+public final class RoutePlan {
+
+    private final IndexedMatrix matrix;
+    private final int depotIndex;
+    private final boolean isRoundTrip;
+    private final TimeWindows timeWindows; // Null if time is not constrained
+
+    private final int tripCount;
+    private final int[] stops; // Location indices of every trip, one after the other
+    private final int[] tripOffsets; // Position of the first stop of each trip in stops, then the stop count
+    private final int[] legOffsets; // Index of the first leg of each trip in the solutions, then the leg count
+    private final Vehicle[] vehicles; // By trip
+    private final double[] loads; // By trip
+    private final double[] distances; // By trip
+    private final double[] durations; // Travel time by trip, 0 if time is not constrained
+
+    private Solution[] legs; // Materialized legs, null until read
+    private List<Solution> solutions;
+
+    private RoutePlan(IndexedMatrix matrix, int depotIndex, boolean isRoundTrip, TimeWindows timeWindows, int tripCount, int[] stops, int[] tripOffsets, Vehicle[] vehicles) {
+        this.matrix = matrix;
+        this.depotIndex = depotIndex;
+        this.isRoundTrip = isRoundTrip;
+        this.timeWindows = timeWindows;
+        this.tripCount = tripCount;
+        this.stops = stops;
+        this.tripOffsets = tripOffsets;
+        this.vehicles = vehicles;
+        this.legOffsets = new int[tripCount + 1];
+        this.loads = new double[tripCount];
+        this.distances = new double[tripCount];
+        this.durations = new double[tripCount];
+
+        int end = isRoundTrip ? depotIndex : TimeWindows.END;
+
+        for (int t = 0; t < tripCount; t++) {
+
+            int previous = depotIndex;
+
+            for (int p = tripOffsets[t]; p < tripOffsets[t + 1]; p++) {
+                int stop = stops[p];
+                loads[t] += matrix.getDemand(stop);
+                distances[t] += matrix.getDistance(previous, stop);
+                if (timeWindows != null)
+                    durations[t] += timeWindows.getTravelTime(previous, stop);
+                previous = stop;
+            }
+
+            if (isRoundTrip)
+                distances[t] += matrix.getDistance(previous, depotIndex);
+
+            if (timeWindows != null)
+                durations[t] += timeWindows.getTravelTime(previous, end);
+
+            legOffsets[t + 1] = legOffsets[t] + tripOffsets[t + 1] - tripOffsets[t] + (isRoundTrip ? 1 : 0);
+
+        }
+    }
+
+    /**
+     * Pack solutions into a plan
+     *
+     * @param solutions   List of Solution grouped by trip
+     * @param matrix      IndexedMatrix of the places
+     * @param depotIndex  index of the depot in the matrix
+     * @param vehicles    List of Vehicle referenced by the solutions
+     * @param isRoundTrip whether each trip returns to the depot
+     * @param timeWindows TimeWindows of the places, null if time is not constrained
+     * @return a RoutePlan of the same trips in the same order
+     */
+    @NonNull
+    public static RoutePlan fromSolutions(@NonNull List<Solution> solutions, @NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, @Nullable TimeWindows timeWindows) {
+        return fromRoutes(Routes.fromSolutions(solutions, matrix, depotIndex, vehicles), matrix, depotIndex, isRoundTrip, timeWindows);
+    }
+
+    /**
+     * Pack trips into a plan, empty trips are dropped
+     */
+    @NonNull
+    static RoutePlan fromRoutes(@NonNull List<Route> routes, @NonNull IndexedMatrix matrix, int depotIndex, boolean isRoundTrip, @Nullable TimeWindows timeWindows) {
+
+        int tripCount = 0;
+        int stopCount = 0;
+
+        for (Route route : routes) {
+            if (route.length > 0) {
+                tripCount++;
+                stopCount += route.length;
+            }
+        }
+
+        int[] stops = new int[stopCount];
+        int[] tripOffsets = new int[tripCount + 1];
+        Vehicle[] vehicles = new Vehicle[tripCount];
+        int t = 0;
+
+        for (Route route : routes) {
+
+            if (route.length == 0)
+                continue;
+
+            System.arraycopy(route.stops, 0, stops, tripOffsets[t], route.length);
+            vehicles[t] = route.vehicle;
+            tripOffsets[t + 1] = tripOffsets[t] + route.length;
+            t++;
+
+        }
+
+        return new RoutePlan(matrix, depotIndex, isRoundTrip, timeWindows, tripCount, stops, tripOffsets, vehicles);
+
+    }
+
+    /**
+     * Unpack into trips that can be edited, e.g. by a search
+     * @param vehicles List of Vehicle the trips may reference
+     * @throws IllegalArgumentException if a trip vehicle is not one of vehicles
+     */
+    @NonNull
+    List<Route> toRoutes(@NonNull List<Vehicle> vehicles) {
+
+        HashMap<String, Vehicle> vehiclesById = new HashMap<>();
+        for (Vehicle v : vehicles)
+            vehiclesById.put(v.getId(), v);
+
+        ArrayList<Route> routes = new ArrayList<>(tripCount);
+
+        for (int t = 0; t < tripCount; t++) {
+
+            Vehicle vehicle = vehiclesById.get(this.vehicles[t].getId());
+
+            if (vehicle == null)
+                throw new IllegalArgumentException("Unknown vehicle id: " + this.vehicles[t].getId());
+
+            routes.add(new Route(vehicle, Arrays.copyOfRange(stops, tripOffsets[t], tripOffsets[t + 1]), getTripLength(t)));
+
+        }
+
+        return routes;
+
+    }
+
+    /**
+     * Whether this plan indexes the locations of a matrix the same way. A mutable matrix may have
+     * given the index of a removed location to another one since.
+     */
+    boolean isOf(@NonNull IndexedMatrix matrix, int depotIndex) {
+        return this.matrix == matrix && this.depotIndex == depotIndex && !(matrix instanceof MutableDistanceMatrix);
+    }
+
+    /**
+     * Read-only view of the legs, see {@link Trips#appendTrip}. Each trip is materialized the
+     * first time one of its legs is read, then the same Solution instances are returned.
+     * @return List of Solution grouped by trip
+     */
+    @NonNull
+    public List<Solution> asSolutions() {
+
+        if (solutions == null)
+            solutions = new SolutionView();
+
+        return solutions;
+
+    }
+
+    public int getTripCount() {
+        return tripCount;
+    }
+
+    public int getStopCount() {
+        return tripOffsets[tripCount];
+    }
+
+    public int getTripLength(int trip) {
+        return tripOffsets[trip + 1] - tripOffsets[trip];
+    }
+
+    /**
+     * @param trip     index of the trip
+     * @param position position of the stop in the trip, the depot excluded
+     * @return location index of the stop
+     */
+    public int getStop(int trip, int position) {
+        return stops[tripOffsets[trip] + position];
+    }
+
+    @NonNull
+    public Vehicle getVehicle(int trip) {
+        return vehicles[trip];
+    }
+
+    public double getLoad(int trip) {
+        return loads[trip];
+    }
+
+    public double getDistance(int trip) {
+        return distances[trip];
+    }
+
+    /**
+     * Travel time of a trip, waiting and services excluded, 0 if time is not constrained
+     */
+    public double getDuration(int trip) {
+        return durations[trip];
+    }
+
+    public double getTotalDistance() {
+
+        double distance = 0;
+
+        for (int t = 0; t < tripCount; t++)
+            distance += distances[t];
+
+        return distance;
+
+    }
+
+    @NonNull
+    public IndexedMatrix getMatrix() {
+        return matrix;
+    }
+
+    public int getDepotIndex() {
+        return depotIndex;
+    }
+
+    public boolean isRoundTrip() {
+        return isRoundTrip;
+    }
+
+    private synchronized Solution getLeg(int leg) {
+
+        if (legs == null)
+            legs = new Solution[legOffsets[tripCount]];
+
+        if (legs[leg] == null) {
+
+            // Trip of the leg, the offsets are strictly increasing as no trip is empty
+            int trip = Arrays.binarySearch(legOffsets, leg);
+            if (trip < 0)
+                trip = -trip - 2;
+
+            ArrayList<Solution> tripLegs = new ArrayList<>(legOffsets[trip + 1] - legOffsets[trip]);
+            Trips.appendTrip(tripLegs, matrix, depotIndex, stops, tripOffsets[trip], getTripLength(trip), vehicles[trip], isRoundTrip, timeWindows);
+
+            for (int l = 0; l < tripLegs.size(); l++)
+                legs[legOffsets[trip] + l] = tripLegs.get(l);
+
+        }
+
+        return legs[leg];
+
+    }
+
+    /**
+     * Read-only List of the legs, backed by the plan
+     */
+    final class SolutionView extends AbstractList<Solution> implements RandomAccess {
+
+        @Override
+        public Solution get(int index) {
+
+            if (index < 0 || index >= size())
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+
+            return getLeg(index);
+
+        }
+
+        @Override
+        public int size() {
+            return legOffsets[tripCount];
+        }
+
+        RoutePlan getPlan() {
+            return RoutePlan.this;
+        }
+
+    }
+
+}
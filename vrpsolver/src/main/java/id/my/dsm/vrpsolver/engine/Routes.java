@@ -0,0 +1,131 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+/**
+ * Converts between {@link Solution} legs and {@link Route} trips
+ */
+final class Routes {
+
+    private Routes() {
+    }
+
+    /**
+     * Split solutions into trips, a trip starts at every leg leaving the depot. A stop gone from
+     * the matrix, e.g. removed from a {@link id.my.dsm.vrpsolver.matrix.MutableDistanceMatrix},
+     * is skipped, its trip stays.
+     * @param solutions  List of Solution grouped by trip
+     * @param matrix     IndexedMatrix of the places
+     * @param depotIndex index of the depot
+     * @param vehicles   List of Vehicle referenced by the solutions
+     * @return List of Route in the same order as the solutions
+     */
+    @NonNull
+    static List<Route> fromSolutions(@NonNull List<Solution> solutions, @NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Vehicle> vehicles) {
+
+        // Trips of a plan are read as is, none of its legs is materialized
+        if (solutions instanceof RoutePlan.SolutionView) {
+            RoutePlan plan = ((RoutePlan.SolutionView) solutions).getPlan();
+            if (plan.isOf(matrix, depotIndex))
+                return plan.toRoutes(vehicles);
+        }
+
+        HashMap<String, Vehicle> vehiclesById = new HashMap<>();
+        for (Vehicle v : vehicles)
+            vehiclesById.put(v.getId(), v);
+
+        Location depot = matrix.getLocation(depotIndex);
+        ArrayList<Route> routes = new ArrayList<>();
+        Route route = null;
+
+        for (Solution solution : solutions) {
+
+            if (solution.getOrigin() == depot || route == null) {
+
+                Vehicle vehicle = vehiclesById.get(solution.getVehicleId());
+
+                if (vehicle == null)
+                    throw new IllegalArgumentException("Unknown vehicle id: " + solution.getVehicleId());
+
+                route = new Route(vehicle, new int[4], 0);
+                routes.add(route);
+
+            }
+
+            if (solution.getDestination() == depot)
+                continue;
+
+            int index = matrix.indexOf(solution.getDestination());
+
+            if (index == -1)
+                continue;
+
+            if (route.length == route.stops.length)
+                route.stops = Arrays.copyOf(route.stops, route.length * 2);
+
+            route.stops[route.length++] = index;
+
+        }
+
+        return routes;
+
+    }
+
+    /**
+     * Pack trips into a {@link RoutePlan}, see {@link Trips#appendTrip} for the legs of its view
+     */
+    @NonNull
+    static List<Solution> toSolutions(@NonNull List<Route> routes, @NonNull IndexedMatrix matrix, int depotIndex, boolean isRoundTrip) {
+        return toSolutions(routes, matrix, depotIndex, isRoundTrip, null);
+    }
+
+    @NonNull
+    static List<Solution> toSolutions(@NonNull List<Route> routes, @NonNull IndexedMatrix matrix, int depotIndex, boolean isRoundTrip, @Nullable TimeWindows timeWindows) {
+
+        return RoutePlan.fromRoutes(routes, matrix, depotIndex, isRoundTrip, timeWindows).asSolutions();
+
+    }
+
+    /**
+     * Total distance of the trips, one way trips have no return leg
+     */
+    static double computeCost(@NonNull List<Route> routes, @NonNull IndexedMatrix matrix, int depotIndex, boolean isRoundTrip) {
+
+        double cost = 0;
+
+        for (Route route : routes)
+            cost += computeCost(route, matrix, depotIndex, isRoundTrip);
+
+        return cost;
+
+    }
+
+    static double computeCost(@NonNull Route route, @NonNull IndexedMatrix matrix, int depotIndex, boolean isRoundTrip) {
+
+        if (route.length == 0)
+            return 0;
+
+        double cost = 0;
+        int current = depotIndex;
+
+        for (int p = 0; p < route.length; p++) {
+            cost += matrix.getDistance(current, route.stops[p]);
+            current = route.stops[p];
+        }
+
+        return isRoundTrip ? cost + matrix.getDistance(current, depotIndex) : cost;
+
+    }
+
+}
@@ -0,0 +1,385 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.spatial.KdTree;
+
+/**
+ * Computes Clarke-Wright savings s(i, j) = d(depot, i) + d(depot, j) - d(i, j) straight from a
+ * {@link IndexedMatrix}. Large instances are split by row range across a {@link ForkJoinPool}.
+ * The parameterized form s(i, j) = d(depot, i) + d(depot, j) - lambda * d(i, j) weights the link
+ * between both locations against their distance to the depot.
+ */
+public final class SavingsEngine {
+
+    // Number of cells computed by a single task before it stops splitting
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 14;
+
+    // Number of nearest locations each location is paired with by the granular savings
+    public static final int DEFAULT_NEIGHBOR_COUNT = 32;
+
+    private SavingsEngine() {
+    }
+
+    /**
+     * Compute the saving of every pair of locations using the shared {@link SolverPool}
+     * @param matrix IndexedMatrix of the places
+     * @param depotIndex index of the depot in the matrix
+     * @return SavingsMatrix of the places
+     */
+    @NonNull
+    public static SavingsMatrix compute(@NonNull IndexedMatrix matrix, int depotIndex) {
+        return compute(matrix, depotIndex, SolverPool.get());
+    }
+
+    /**
+     * Compute the saving of every pair of locations
+     * @param matrix IndexedMatrix of the places
+     * @param depotIndex index of the depot in the matrix
+     * @param pool ForkJoinPool to run the computation on
+     * @return SavingsMatrix of the places
+     */
+    @NonNull
+    public static SavingsMatrix compute(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull ForkJoinPool pool) {
+        return compute(matrix, depotIndex, pool, new SolverControl());
+    }
+
+    /**
+     * Compute the saving of every pair of locations. Rows left once the control stops keep no saving.
+     * @param matrix IndexedMatrix of the places
+     * @param depotIndex index of the depot in the matrix
+     * @param pool ForkJoinPool to run the computation on
+     * @param control SolverControl polled on every row
+     * @return SavingsMatrix of the places
+     */
+    @NonNull
+    public static SavingsMatrix compute(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull ForkJoinPool pool, @NonNull SolverControl control) {
+        return compute(matrix, depotIndex, 1, pool, control);
+    }
+
+    /**
+     * Compute the parameterized saving of every pair of locations. Rows left once the control stops keep no saving.
+     * @param matrix IndexedMatrix of the places
+     * @param depotIndex index of the depot in the matrix
+     * @param lambda weight of the distance between both locations, 1 for the classic savings
+     * @param pool ForkJoinPool to run the computation on
+     * @param control SolverControl polled on every row
+     * @return SavingsMatrix of the places
+     */
+    @NonNull
+    public static SavingsMatrix compute(@NonNull IndexedMatrix matrix, int depotIndex, double lambda, @NonNull ForkJoinPool pool, @NonNull SolverControl control) {
+
+        SavingsMatrix savings = new SavingsMatrix(matrix.size(), depotIndex);
+        SavingsTask task = new SavingsTask(matrix, savings, lambda, control, 0, matrix.size());
+
+        if ((long) matrix.size() * matrix.size() <= SEQUENTIAL_THRESHOLD)
+            task.computeRows();
+        else
+            pool.invoke(task);
+
+        return savings;
+
+    }
+
+    /**
+     * Compute the parameterized saving of every pair of locations straight into a packed
+     * {@link SavingsList}, without the n x n {@link SavingsMatrix}, so only the pairs with
+     * origin &lt; destination are held. Rows left once the control stops keep no saving.
+     * @param matrix IndexedMatrix of the places
+     * @param depotIndex index of the depot in the matrix
+     * @param lambda weight of the distance between both locations, 1 for the classic savings
+     * @param pool ForkJoinPool to run the computation on
+     * @param control SolverControl polled on every row
+     * @return an unordered SavingsList of the pairs with origin &lt; destination
+     */
+    @NonNull
+    public static SavingsList computeList(@NonNull IndexedMatrix matrix, int depotIndex, double lambda, @NonNull ForkJoinPool pool, @NonNull SolverControl control) {
+
+        int pairs = SavingsList.getPairCount(matrix.size());
+
+        int[] origins = new int[pairs];
+        int[] destinations = new int[pairs];
+        double[] savings = new double[pairs];
+
+        PackedSavingsTask task = new PackedSavingsTask(matrix, depotIndex, lambda, control, origins, destinations, savings, 0, matrix.size());
+
+        if (pairs <= SEQUENTIAL_THRESHOLD)
+            task.computeRows();
+        else
+            pool.invoke(task);
+
+        return new SavingsList(origins, destinations, savings, pairs);
+
+    }
+
+    /**
+     * Compute the saving of each location with its nearest locations only, for a matrix whose
+     * distances are costly to ask, e.g. an {@link id.my.dsm.vrpsolver.matrix.OracleMatrix}. The
+     * nearest locations are found on the coordinates with a {@link KdTree}, so the matrix is asked
+     * for the depot row and about neighborCount distances per location, O(n k) instead of every
+     * pair. Distant pairs save little and are left out, merges may differ from the full savings.
+     * @param matrix IndexedMatrix of the places
+     * @param depotIndex index of the depot in the matrix
+     * @param lambda weight of the distance between both locations, 1 for the classic savings
+     * @param neighborCount number of nearest locations each location is paired with
+     * @param control SolverControl polled on every location, locations left keep no saving
+     * @return an unordered SavingsList of the pairs with origin &lt; destination
+     */
+    @NonNull
+    public static SavingsList computeGranular(@NonNull IndexedMatrix matrix, int depotIndex, double lambda, int neighborCount, @NonNull SolverControl control) {
+
+        int size = matrix.size();
+        int k = Math.max(1, Math.min(neighborCount, size - 2));
+
+        ArrayList<Location> locations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            locations.add(matrix.getLocation(i));
+
+        KdTree tree = new KdTree(locations);
+        tree.remove(depotIndex);
+
+        // Nearest locations of each location, k per location
+        int[] neighbors = new int[size * k];
+        int[] neighborCounts = new int[size];
+        int[] nearest = new int[k];
+
+        for (int i = 0; i < size && !control.shouldStop(); i++) {
+            if (i != depotIndex) {
+                neighborCounts[i] = tree.findNearest(i, Double.POSITIVE_INFINITY, nearest);
+                System.arraycopy(nearest, 0, neighbors, i * k, neighborCounts[i]);
+            }
+        }
+
+        // The depot row is asked once
+        double[] depotDistances = new double[size];
+        for (int i = 0; i < size; i++)
+            depotDistances[i] = i != depotIndex ? matrix.getDistance(depotIndex, i) : 0;
+
+        int[] origins = new int[size * k];
+        int[] destinations = new int[size * k];
+        double[] savings = new double[size * k];
+        int pairs = 0;
+
+        for (int i = 0; i < size && !control.shouldStop(); i++) {
+            for (int n = 0; n < neighborCounts[i]; n++) {
+
+                int j = neighbors[i * k + n];
+
+                // A mutual pair is kept once, from its lower index
+                if (j < i && contains(neighbors, j * k, neighborCounts[j], i))
+                    continue;
+
+                int origin = Math.min(i, j);
+                int destination = Math.max(i, j);
+                double saving = depotDistances[origin] + depotDistances[destination] - lambda * matrix.getDistance(origin, destination);
+
+                origins[pairs] = origin;
+                destinations[pairs] = destination;
+                savings[pairs] = Double.isNaN(saving) || Double.isInfinite(saving) ? 0 : saving;
+                pairs++;
+
+            }
+        }
+
+        return new SavingsList(origins, destinations, savings, pairs);
+
+    }
+
+    private static boolean contains(int[] values, int from, int count, int value) {
+
+        for (int i = from; i < from + count; i++)
+            if (values[i] == value)
+                return true;
+
+        return false;
+
+    }
+
+    /**
+     * Update the savings of a single location, in O(n) instead of a full computation, once it was
+     * added to, moved in or removed from a {@link id.my.dsm.vrpsolver.matrix.MutableDistanceMatrix}.
+     * A new slot is added to the savings. Every added location must be updated, a tombstone ends up
+     * without saving. Updating the depot updates every pair.
+     * @param savings SavingsMatrix computed from the same matrix
+     * @param matrix IndexedMatrix of the places
+     * @param index index of the location whose row and column changed
+     * @see ClarkeWrightEngine#solve(id.my.dsm.vrpsolver.matrix.SubMatrix, int, SavingsMatrix, java.util.List, boolean, boolean, TimeWindows, SolverControl)
+     */
+    public static void update(@NonNull SavingsMatrix savings, @NonNull IndexedMatrix matrix, int index) {
+
+        int size = matrix.size();
+        int depotIndex = savings.getDepotIndex();
+
+        savings.ensureSize(size);
+
+        if (index == depotIndex) {
+            new SavingsTask(matrix, savings, 1, new SolverControl(), 0, size).computeRows();
+            return;
+        }
+
+        for (int j = 0; j < size; j++) {
+            savings.setSaving(index, j, computeSaving(matrix, depotIndex, index, j));
+            savings.setSaving(j, index, computeSaving(matrix, depotIndex, j, index));
+        }
+
+    }
+
+    /**
+     * Compute the saving of a single pair. A missing distance yields no saving.
+     */
+    static double computeSaving(@NonNull IndexedMatrix matrix, int depotIndex, int origin, int destination) {
+        return computeSaving(matrix, depotIndex, origin, destination, 1);
+    }
+
+    /**
+     * Compute the parameterized saving of a single pair. A missing distance yields no saving.
+     */
+    static double computeSaving(@NonNull IndexedMatrix matrix, int depotIndex, int origin, int destination, double lambda) {
+
+        if (origin == destination || origin == depotIndex || destination == depotIndex)
+            return 0;
+
+        double doi = matrix.getDistance(depotIndex, origin);
+        double doj = matrix.getDistance(depotIndex, destination);
+        double dij = matrix.getDistance(origin, destination);
+        double sij = doi + doj - lambda * dij;
+
+        return Double.isNaN(sij) || Double.isInfinite(sij) ? 0 : sij;
+
+    }
+
+    @SuppressWarnings("serial")
+    private static class SavingsTask extends RecursiveAction {
+
+        private final IndexedMatrix matrix;
+        private final SavingsMatrix savings;
+        private final double lambda;
+        private final SolverControl control;
+        private final int fromRow;
+        private final int toRow;
+
+        SavingsTask(IndexedMatrix matrix, SavingsMatrix savings, double lambda, SolverControl control, int fromRow, int toRow) {
+            this.matrix = matrix;
+            this.savings = savings;
+            this.lambda = lambda;
+            this.control = control;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+
+            if ((long) (toRow - fromRow) * matrix.size() <= SEQUENTIAL_THRESHOLD || toRow - fromRow == 1) {
+                computeRows();
+                return;
+            }
+
+            int middleRow = (fromRow + toRow) >>> 1;
+
+            invokeAll(
+                    new SavingsTask(matrix, savings, lambda, control, fromRow, middleRow),
+                    new SavingsTask(matrix, savings, lambda, control, middleRow, toRow)
+            );
+
+        }
+
+        void computeRows() {
+
+            int size = matrix.size();
+            int depotIndex = savings.getDepotIndex();
+
+            for (int i = fromRow; i < toRow && !control.shouldStop(); i++)
+                for (int j = 0; j < size; j++)
+                    savings.setSaving(i, j, computeSaving(matrix, depotIndex, i, j, lambda));
+
+        }
+
+    }
+
+    /**
+     * Fills the pairs of a row range at their packed position, the pairs of a row follow the
+     * pairs of every row above it
+     */
+    @SuppressWarnings("serial")
+    private static class PackedSavingsTask extends RecursiveAction {
+
+        private final IndexedMatrix matrix;
+        private final int depotIndex;
+        private final double lambda;
+        private final SolverControl control;
+        private final int[] origins;
+        private final int[] destinations;
+        private final double[] savings;
+        private final int fromRow;
+        private final int toRow;
+
+        PackedSavingsTask(IndexedMatrix matrix, int depotIndex, double lambda, SolverControl control, int[] origins, int[] destinations, double[] savings, int fromRow, int toRow) {
+            this.matrix = matrix;
+            this.depotIndex = depotIndex;
+            this.lambda = lambda;
+            this.control = control;
+            this.origins = origins;
+            this.destinations = destinations;
+            this.savings = savings;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+
+            if ((long) (toRow - fromRow) * matrix.size() <= SEQUENTIAL_THRESHOLD || toRow - fromRow == 1) {
+                computeRows();
+                return;
+            }
+
+            int middleRow = (fromRow + toRow) >>> 1;
+
+            invokeAll(
+                    new PackedSavingsTask(matrix, depotIndex, lambda, control, origins, destinations, savings, fromRow, middleRow),
+                    new PackedSavingsTask(matrix, depotIndex, lambda, control, origins, destinations, savings, middleRow, toRow)
+            );
+
+        }
+
+        void computeRows() {
+
+            int size = matrix.size();
+            long customers = size - 1;
+
+            for (int i = fromRow; i < toRow; i++) {
+
+                if (i == depotIndex)
+                    continue;
+
+                // Row of the i-th customer, the depot left out
+                long row = i < depotIndex ? i : i - 1;
+                int position = (int) (row * (2 * customers - row - 1) / 2);
+                boolean isStopped = control.shouldStop();
+
+                for (int j = i + 1; j < size; j++) {
+
+                    if (j == depotIndex)
+                        continue;
+
+                    origins[position] = i;
+                    destinations[position] = j;
+                    savings[position] = isStopped ? 0 : computeSaving(matrix, depotIndex, i, j, lambda);
+                    position++;
+
+                }
+
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,311 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+
+import id.my.dsm.vrpsolver.matrix.SubMatrix;
+
+/**
+ * Packed (origin, destination, saving) triples, see {@link SavingsEngine#computeList}. Only pairs with
+ * origin &lt; destination are kept, which removes the reversed duplicates. Pairs are ordered by
+ * descending saving, ties are broken by their position so both orderings below are deterministic.
+ * The position follows the (origin, destination) indices, not the order of the distances the
+ * matrix was built from, so pairs of equal saving may come in another order than before.
+ */
+public class SavingsList {
+
+    private final int[] origins;
+    private final int[] destinations;
+    private final double[] savings;
+    private final int size;
+
+    SavingsList(int[] origins, int[] destinations, double[] savings, int size) {
+        this.origins = origins;
+        this.destinations = destinations;
+        this.savings = savings;
+        this.size = size;
+    }
+
+    /**
+     * Pack every pair of non depot locations with origin &lt; destination
+     * @param savingsMatrix SavingsMatrix
+     * @return an unordered SavingsList
+     */
+    @NonNull
+    public static SavingsList fromSavingsMatrix(@NonNull SavingsMatrix savingsMatrix) {
+
+        int matrixSize = savingsMatrix.size();
+        int depotIndex = savingsMatrix.getDepotIndex();
+        int capacity = getPairCount(matrixSize);
+
+        int[] origins = new int[capacity];
+        int[] destinations = new int[capacity];
+        double[] savings = new double[capacity];
+        int size = 0;
+
+        for (int i = 0; i < matrixSize; i++) {
+
+            if (i == depotIndex)
+                continue;
+
+            for (int j = i + 1; j < matrixSize; j++) {
+
+                if (j == depotIndex)
+                    continue;
+
+                origins[size] = i;
+                destinations[size] = j;
+                savings[size] = savingsMatrix.getSaving(i, j);
+                size++;
+
+            }
+
+        }
+
+        return new SavingsList(origins, destinations, savings, size);
+
+    }
+
+    /**
+     * Pack every pair of non depot locations of a view with origin &lt; destination, e.g. the live
+     * locations of a {@link id.my.dsm.vrpsolver.matrix.MutableDistanceMatrix} whose savings are
+     * kept with {@link SavingsEngine#update}
+     * @param savingsMatrix SavingsMatrix of the parent of the view
+     * @param view          SubMatrix of the locations, the pairs are indexed as in the view
+     * @return an unordered SavingsList
+     */
+    @NonNull
+    public static SavingsList fromSavingsMatrix(@NonNull SavingsMatrix savingsMatrix, @NonNull SubMatrix view) {
+
+        int matrixSize = view.size();
+        int depotIndex = savingsMatrix.getDepotIndex();
+        int capacity = getPairCount(matrixSize);
+
+        int[] origins = new int[capacity];
+        int[] destinations = new int[capacity];
+        double[] savings = new double[capacity];
+        int size = 0;
+
+        for (int i = 0; i < matrixSize; i++) {
+
+            int parentI = view.getParentIndex(i);
+
+            if (parentI == depotIndex)
+                continue;
+
+            for (int j = i + 1; j < matrixSize; j++) {
+
+                int parentJ = view.getParentIndex(j);
+
+                if (parentJ == depotIndex)
+                    continue;
+
+                origins[size] = i;
+                destinations[size] = j;
+                savings[size] = savingsMatrix.getSaving(parentI, parentJ);
+                size++;
+
+            }
+
+        }
+
+        return new SavingsList(origins, destinations, savings, size);
+
+    }
+
+    /**
+     * Number of pairs of non depot locations with origin &lt; destination
+     * @param matrixSize number of locations, depot included
+     * @throws IllegalArgumentException if the pairs do not fit in an array
+     */
+    static int getPairCount(int matrixSize) {
+
+        long customers = Math.max(0, matrixSize - 1);
+        long pairs = customers * (customers - 1) / 2;
+
+        if (pairs > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many locations for a SavingsList: " + matrixSize);
+
+        return (int) pairs;
+
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getOrigin(int position) {
+        return origins[position];
+    }
+
+    public int getDestination(int position) {
+        return destinations[position];
+    }
+
+    public double getSaving(int position) {
+        return savings[position];
+    }
+
+    /**
+     * Iterate the pairs by descending saving
+     * @param isLazy true to extract pairs from a max-heap on demand, false to sort every pair up front
+     * @return SavingsIterator returning pair positions
+     */
+    @NonNull
+    public SavingsIterator iterator(boolean isLazy) {
+        return isLazy ? new HeapIterator() : new SortedIterator();
+    }
+
+    /**
+     * Whether the pair at position a comes before the pair at position b
+     */
+    private boolean isBefore(int a, int b) {
+        return savings[a] > savings[b] || (savings[a] == savings[b] && a < b);
+    }
+
+    /**
+     * Iterator over pair positions, avoids boxing positions into Integer
+     */
+    public interface SavingsIterator {
+        boolean hasNext();
+        int next();
+    }
+
+    /**
+     * Sorts every position with a primitive merge sort, O(k log k)
+     */
+    private class SortedIterator implements SavingsIterator {
+
+        private final int[] order;
+        private int cursor = 0;
+
+        SortedIterator() {
+
+            order = new int[size];
+            for (int i = 0; i < size; i++)
+                order[i] = i;
+
+            mergeSort(order, new int[size], 0, size);
+
+        }
+
+        private void mergeSort(int[] array, int[] buffer, int from, int to) {
+
+            // Insertion sort small ranges
+            if (to - from <= 16) {
+                for (int i = from + 1; i < to; i++) {
+                    int value = array[i];
+                    int j = i - 1;
+                    while (j >= from && isBefore(value, array[j])) {
+                        array[j + 1] = array[j];
+                        j--;
+                    }
+                    array[j + 1] = value;
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            mergeSort(array, buffer, from, middle);
+            mergeSort(array, buffer, middle, to);
+
+            // Already in order
+            if (!isBefore(array[middle], array[middle - 1]))
+                return;
+
+            System.arraycopy(array, from, buffer, from, to - from);
+
+            int left = from;
+            int right = middle;
+
+            for (int i = from; i < to; i++) {
+                if (right >= to || (left < middle && !isBefore(buffer[right], buffer[left])))
+                    array[i] = buffer[left++];
+                else
+                    array[i] = buffer[right++];
+            }
+
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor < size;
+        }
+
+        @Override
+        public int next() {
+            return order[cursor++];
+        }
+
+    }
+
+    /**
+     * Builds a binary max-heap in O(k) and extracts each position in O(log k) on demand
+     */
+    private class HeapIterator implements SavingsIterator {
+
+        private final int[] heap;
+        private int heapSize;
+
+        HeapIterator() {
+
+            heap = new int[size];
+            heapSize = size;
+
+            for (int i = 0; i < size; i++)
+                heap[i] = i;
+
+            for (int i = (heapSize >>> 1) - 1; i >= 0; i--)
+                siftDown(i);
+
+        }
+
+        private void siftDown(int index) {
+
+            int value = heap[index];
+
+            while (true) {
+
+                int child = 2 * index + 1;
+
+                if (child >= heapSize)
+                    break;
+
+                if (child + 1 < heapSize && isBefore(heap[child + 1], heap[child]))
+                    child++;
+
+                if (!isBefore(heap[child], value))
+                    break;
+
+                heap[index] = heap[child];
+                index = child;
+
+            }
+
+            heap[index] = value;
+
+        }
+
+        @Override
+        public boolean hasNext() {
+            return heapSize > 0;
+        }
+
+        @Override
+        public int next() {
+
+            int top = heap[0];
+
+            heapSize--;
+
+            if (heapSize > 0) {
+                heap[0] = heap[heapSize];
+                siftDown(0);
+            }
+
+            return top;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,74 @@
+package id.my.dsm.vrpsolver.engine;
+
+/**
+ * Clarke-Wright saving values indexed by int location ids, stored row-major in a flat double array.
+ * Pairs involving the depot and the diagonal have no saving and are stored as 0.
+ */
+public class SavingsMatrix {
+
+    private int size;
+    private int capacity; // Row length, at least size so that the matrix can grow in place
+    private final int depotIndex;
+    private double[] savings; // Row-major, origin * capacity + destination
+
+    SavingsMatrix(int size, int depotIndex) {
+        this.size = size;
+        this.capacity = size;
+        this.depotIndex = depotIndex;
+
+        long cells = (long) size * size;
+        if (cells > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many locations for a SavingsMatrix: " + size);
+
+        this.savings = new double[(int) cells];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getDepotIndex() {
+        return depotIndex;
+    }
+
+    public double getSaving(int origin, int destination) {
+        return savings[origin * capacity + destination];
+    }
+
+    void setSaving(int origin, int destination, double saving) {
+        savings[origin * capacity + destination] = saving;
+    }
+
+    /**
+     * Grow to the size of a growing matrix, the new pairs have no saving until updated. The capacity
+     * grows by a quarter, so adding locations one by one stays amortized O(n) without quadrupling
+     * the memory of a large matrix.
+     */
+    void ensureSize(int newSize) {
+
+        if (newSize <= size)
+            return;
+
+        if (newSize > capacity) {
+
+            int newCapacity = Math.max(newSize, capacity + (capacity >> 2));
+
+            long cells = (long) newCapacity * newCapacity;
+            if (cells > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Too many locations for a SavingsMatrix: " + newSize);
+
+            double[] newSavings = new double[(int) cells];
+
+            for (int i = 0; i < size; i++)
+                System.arraycopy(savings, i * capacity, newSavings, i * newCapacity, size);
+
+            savings = newSavings;
+            capacity = newCapacity;
+
+        }
+
+        size = newSize;
+
+    }
+
+}
@@ -0,0 +1,188 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+import id.my.dsm.vrpsolver.event.OptimizationProgressListener;
+import id.my.dsm.vrpsolver.model.Solution;
+
+/**
+ * Cooperative cancellation and deadline of a single solve. The engines poll {@link #shouldStop()}
+ * in their main loops and return the best result found so far once it turns true.
+ * Engines also offer their improved incumbents to an optional progress listener. Materializing
+ * solutions costs time, so engines ask {@link #isProgressDue(double)} first and only report when
+ * the cost beats the last report and the throttle interval has passed.
+ */
+public class SolverControl {
+
+    private final long startTime; // System.nanoTime() based
+    private final long deadline;
+    private final boolean isBounded;
+    private final SolverControl parent;
+    private volatile boolean isCancelled = false;
+
+    // Progress
+    private volatile OptimizationProgressListener progressListener;
+    private long progressIntervalNanos;
+    private long lastProgressTime;
+    private double lastProgressCost = Double.POSITIVE_INFINITY;
+    private final Object deliveryLock = new Object(); // Held while the listener runs, one report at a time
+
+    /**
+     * A control without deadline, only stopped by {@link #cancel()}
+     */
+    public SolverControl() {
+        this.startTime = System.nanoTime();
+        this.deadline = 0;
+        this.isBounded = false;
+        this.parent = null;
+    }
+
+    /**
+     * @param timeLimitMillis time limit in milliseconds from now
+     */
+    public SolverControl(long timeLimitMillis) {
+        this.startTime = System.nanoTime();
+        this.deadline = startTime + timeLimitMillis * 1000000L;
+        this.isBounded = true;
+        this.parent = null;
+    }
+
+    /**
+     * A control of a sub-problem, e.g. a single depot. It stops with its parent and shares its
+     * deadline, but reports no progress unless given its own listener.
+     * @param parent SolverControl of the whole solve
+     */
+    public SolverControl(@NonNull SolverControl parent) {
+        this.startTime = parent.startTime;
+        this.deadline = parent.deadline;
+        this.isBounded = parent.isBounded;
+        this.parent = parent;
+    }
+
+    /**
+     * A control of a sub-problem with a budget of its own from now, e.g. its share of the time
+     * limit once it leaves the queue of a pool. It stops with its parent, but at its own deadline.
+     * @param parent SolverControl of the whole solve
+     * @param timeLimitMillis time limit in milliseconds from now
+     */
+    public SolverControl(@NonNull SolverControl parent, long timeLimitMillis) {
+        this.startTime = parent.startTime;
+        this.deadline = System.nanoTime() + timeLimitMillis * 1000000L;
+        this.isBounded = true;
+        this.parent = parent;
+    }
+
+    /**
+     * Report improved solutions while solving
+     * @param progressListener listener called on the thread that found the solution, one call at a time, null to disable
+     * @param progressIntervalMillis minimum time between two reports
+     */
+    public synchronized void setProgressListener(@Nullable OptimizationProgressListener progressListener, long progressIntervalMillis) {
+        this.progressListener = progressListener;
+        this.progressIntervalNanos = progressIntervalMillis * 1000000L;
+        this.lastProgressTime = startTime - progressIntervalNanos;
+    }
+
+    /**
+     * Whether a solution of this cost would be reported now
+     * @param cost total distance of the solution
+     */
+    public synchronized boolean isProgressDue(double cost) {
+        return progressListener != null
+                && cost < lastProgressCost
+                && System.nanoTime() - lastProgressTime >= progressIntervalNanos;
+    }
+
+    /**
+     * Report a solution if it is due, see {@link #isProgressDue(double)}
+     * @param solutions List of Solution grouped by trip
+     * @param cost total distance of the solutions
+     */
+    public void reportProgress(@NonNull List<Solution> solutions, double cost) {
+        reportProgress(solutions, cost, false);
+    }
+
+    /**
+     * Report a solution that beats the last report. Reports are delivered one at a time, by
+     * descending cost: a report overtaken by a cheaper one while waiting for the listener is dropped.
+     * @param solutions List of Solution grouped by trip
+     * @param cost total distance of the solutions
+     * @param isForced true to ignore the throttle interval, e.g. at the end of a stage
+     */
+    public void reportProgress(@NonNull List<Solution> solutions, double cost, boolean isForced) {
+
+        OptimizationProgressListener listener;
+        long now = System.nanoTime();
+
+        synchronized (this) {
+
+            if (progressListener == null || !(cost < lastProgressCost))
+                return;
+
+            if (!isForced && now - lastProgressTime < progressIntervalNanos)
+                return;
+
+            listener = progressListener;
+            lastProgressTime = now;
+            lastProgressCost = cost;
+
+        }
+
+        synchronized (deliveryLock) {
+
+            synchronized (this) {
+                if (cost > lastProgressCost)
+                    return;
+            }
+
+            listener.onImprovedSolution(solutions, cost, now - startTime);
+
+        }
+
+    }
+
+    /**
+     * Report solutions whose cost is not known yet
+     * @see #reportProgress(List, double, boolean)
+     */
+    public void reportProgress(@NonNull List<Solution> solutions, boolean isForced) {
+
+        if (progressListener == null)
+            return;
+
+        double cost = 0;
+        for (Solution solution : solutions)
+            cost += solution.getDistance();
+
+        reportProgress(solutions, cost, isForced);
+
+    }
+
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return isCancelled || (parent != null && parent.isCancelled());
+    }
+
+    public boolean isExpired() {
+        return isBounded && System.nanoTime() - deadline >= 0;
+    }
+
+    public boolean shouldStop() {
+        return isCancelled() || isExpired();
+    }
+
+    /**
+     * Remaining time before the deadline
+     * @return remaining nanoseconds, Long.MAX_VALUE if there is no deadline
+     */
+    public long getRemainingNanos() {
+        return isBounded ? Math.max(0, deadline - System.nanoTime()) : Long.MAX_VALUE;
+    }
+
+}
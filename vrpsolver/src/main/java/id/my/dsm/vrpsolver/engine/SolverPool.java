@@ -0,0 +1,35 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Shared {@link ForkJoinPool} used by the engines to spread work across every core.
+ * ForkJoinPool.commonPool() is not available on older Android versions, so the library keeps its own.
+ */
+public final class SolverPool {
+
+    private static volatile ForkJoinPool pool;
+
+    private SolverPool() {
+    }
+
+    @NonNull
+    public static ForkJoinPool get() {
+
+        ForkJoinPool result = pool;
+
+        if (result == null) {
+            synchronized (SolverPool.class) {
+                result = pool;
+                if (result == null)
+                    pool = result = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+            }
+        }
+
+        return result;
+
+    }
+
+}
@@ -0,0 +1,111 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.matrix.HaversineOracle;
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.matrix.OracleMatrix;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+import id.my.dsm.vrpsolver.spatial.KdTree;
+
+/**
+ * Capacitated Nearest Neighbor engine for air distances that needs no matrix. The next stop is
+ * found with a {@link KdTree} query instead of a matrix row scan, so a solve runs in roughly
+ * O(n log n). Produces the same routes as {@link NearestNeighborEngine} on a Haversine matrix.
+ */
+public final class SpatialNearestNeighborEngine {
+
+    // Only the legs of the routes are asked, a small cache is enough
+    private static final int CACHE_CAPACITY = 1 << 10;
+
+    private SpatialNearestNeighborEngine() {
+    }
+
+    /**
+     * Capacitated TSP with Nearest Neighbor method on air distances
+     *
+     * @param places      List of Location
+     * @param depotIndex  index of the depot in places
+     * @param vehicles    List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip whether each trip returns to the depot
+     * @return List of Solution in Nearest Neighbor order
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull List<Location> places, int depotIndex, @NonNull List<Vehicle> vehicles, boolean isRoundTrip) {
+        return solve(places, depotIndex, vehicles, isRoundTrip, new SolverControl());
+    }
+
+    /**
+     * Capacitated TSP with Nearest Neighbor method on air distances. Once the control stops, the
+     * current trip is closed and the trips built so far are returned.
+     *
+     * @param places      List of Location
+     * @param depotIndex  index of the depot in places
+     * @param vehicles    List of Vehicle, the default vehicle is dispatched first
+     * @param isRoundTrip whether each trip returns to the depot
+     * @param control     SolverControl polled on every step
+     * @return List of Solution in Nearest Neighbor order
+     */
+    @NonNull
+    public static List<Solution> solve(@NonNull List<Location> places, int depotIndex, @NonNull List<Vehicle> vehicles, boolean isRoundTrip, @NonNull SolverControl control) {
+
+        int size = places.size();
+
+        KdTree tree = new KdTree(places);
+        tree.remove(depotIndex);
+        int unserved = size - 1;
+
+        // Distances of the chosen legs only
+        IndexedMatrix matrix = new OracleMatrix(places, new HaversineOracle(), CACHE_CAPACITY);
+
+        ArrayList<Solution> solutions = new ArrayList<>();
+        int[] route = new int[size];
+
+        Fleet fleet = new Fleet(vehicles);
+
+        // Stop dispatching once every location is served
+        while (unserved > 0 && !control.shouldStop()) {
+
+            Vehicle v = fleet.next();
+
+            if (v == null)
+                break;
+
+            double vehicleRemainingCapacity = v.getCapacity();
+            int current = depotIndex;
+            int length = 0;
+
+            while (!control.shouldStop()) {
+
+                int best = tree.findNearest(current, vehicleRemainingCapacity);
+
+                if (best == -1)
+                    break;
+
+                vehicleRemainingCapacity -= places.get(best).getDemands();
+                tree.remove(best);
+                unserved--;
+
+                route[length++] = best;
+                current = best;
+
+            }
+
+            // Every other dispatch of this vehicle would start the same way
+            if (length == 0)
+                fleet.skipType();
+
+            Trips.appendTrip(solutions, matrix, depotIndex, route, length, v, isRoundTrip);
+
+        }
+
+        return solutions;
+
+    }
+
+}
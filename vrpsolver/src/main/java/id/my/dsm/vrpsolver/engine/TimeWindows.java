@@ -0,0 +1,213 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+/**
+ * Time windows of the locations of an {@link IndexedMatrix}, the travel times between them and
+ * the shifts of the vehicles, all in the same unit as {@link id.my.dsm.vrpsolver.model.Distance#getDuration()}.
+ * A vehicle waits when it arrives before the ready time of a location, and must start the service
+ * before the due time. A vehicle is dispatched once: its trip starts at its shift start and must be
+ * back at the depot, or done with its last service for a one way trip, by its shift end. Trips of a
+ * vehicle dispatched more than once would all start at its shift start and overlap, so such
+ * vehicles are rejected, see {@link #checkVehicles(List)}.
+ * The engines keep two arrays per trip: the forward time, the earliest departure from each stop,
+ * and the backward slack, the latest service start at each stop that keeps the rest of the trip on
+ * time. A change between two positions is then checked by walking the changed stops only, so an
+ * insertion, a merge or a relocate is checked in O(1).
+ */
+public final class TimeWindows {
+
+    // Free end of a one way trip, every travel time to it is 0
+    static final int END = -1;
+
+    private final IndexedMatrix durations;
+    private final int[] durationIndices; // Index of each location in durations
+    private final double[] readyTimes;
+    private final double[] dueTimes;
+    private final double[] serviceDurations;
+
+    /**
+     * @param matrix    IndexedMatrix the engines run on, defines the location indices
+     * @param durations IndexedMatrix of the travel times, its distances are read as durations
+     */
+    public TimeWindows(@NonNull IndexedMatrix matrix, @NonNull IndexedMatrix durations) {
+
+        int size = matrix.size();
+
+        this.durations = durations;
+        this.durationIndices = new int[size];
+        this.readyTimes = new double[size];
+        this.dueTimes = new double[size];
+        this.serviceDurations = new double[size];
+
+        for (int i = 0; i < size; i++) {
+
+            Location location = matrix.getLocation(i);
+            int index = durations.indexOf(location);
+
+            if (index == -1)
+                throw new IllegalArgumentException("No travel times for location: " + location.getId());
+
+            durationIndices[i] = index;
+            readyTimes[i] = location.getReadyTime();
+            dueTimes[i] = location.getDueTime();
+            serviceDurations[i] = location.getServiceDuration();
+
+        }
+
+    }
+
+    /**
+     * Check whether any location or vehicle restricts the time, otherwise the engines can skip the schedule
+     * @param locations List of Location
+     * @param vehicles  List of Vehicle
+     * @return true if a time window, a service duration or a shift is set
+     */
+    public static boolean isConstrained(@NonNull List<Location> locations, @NonNull List<Vehicle> vehicles) {
+
+        for (Location location : locations)
+            if (location.getReadyTime() > 0 || location.getDueTime() < Double.MAX_VALUE || location.getServiceDuration() > 0)
+                return true;
+
+        for (Vehicle vehicle : vehicles)
+            if (vehicle.getShiftStart() > 0 || vehicle.getShiftEnd() < Double.MAX_VALUE)
+                return true;
+
+        return false;
+
+    }
+
+    /**
+     * Check that every vehicle is dispatched once at most, its single trip spanning its shift
+     * @param vehicles List of Vehicle
+     * @throws IllegalArgumentException if a vehicle may be dispatched more than once
+     */
+    public static void checkVehicles(@NonNull List<Vehicle> vehicles) {
+
+        for (Vehicle vehicle : vehicles)
+            if (vehicle.getDispatchLimit() > 1)
+                throw new IllegalArgumentException("Time windows and shifts need vehicles dispatched once, list each vehicle with a dispatch limit of 1: " + vehicle.getId());
+
+    }
+
+    public double getTravelTime(int origin, int destination) {
+
+        if (origin == END || destination == END)
+            return 0;
+
+        return durations.getDistance(durationIndices[origin], durationIndices[destination]);
+
+    }
+
+    public double getReadyTime(int index) {
+        return index == END ? Double.NEGATIVE_INFINITY : readyTimes[index];
+    }
+
+    public double getDueTime(int index) {
+        return index == END ? Double.MAX_VALUE : dueTimes[index];
+    }
+
+    public double getServiceDuration(int index) {
+        return index == END ? 0 : serviceDurations[index];
+    }
+
+    /**
+     * Earliest departure of a vehicle from the depot
+     */
+    public double getStartTime(@NonNull Vehicle vehicle, int depotIndex) {
+        return Math.max(vehicle.getShiftStart(), readyTimes[depotIndex]);
+    }
+
+    /**
+     * Latest return of a vehicle to the depot, or end of the last service of a one way trip
+     */
+    public double getEndTime(@NonNull Vehicle vehicle, int depotIndex) {
+        return Math.min(vehicle.getShiftEnd(), dueTimes[depotIndex]);
+    }
+
+    /**
+     * Serve a stop
+     * @param stop    location index
+     * @param arrival arrival time at the stop
+     * @return departure time after waiting and serving, +infinity if the arrival is past the due time
+     */
+    public double depart(int stop, double arrival) {
+
+        double start = Math.max(readyTimes[stop], arrival);
+
+        return start <= dueTimes[stop] ? start + serviceDurations[stop] : Double.POSITIVE_INFINITY;
+
+    }
+
+    /**
+     * Serve a stop right after another
+     * @param previous     location index of the previous stop
+     * @param departure    departure time from the previous stop
+     * @param stop         location index
+     * @return departure time from the stop, +infinity if it is reached too late
+     */
+    public double depart(int previous, double departure, int stop) {
+        return depart(stop, departure + getTravelTime(previous, stop));
+    }
+
+    /**
+     * Check an arrival against the backward slack of a stop
+     * @param stop         location index, or END
+     * @param arrival      arrival time at the stop
+     * @param latestStart  latest service start at the stop, see {@link #schedule}
+     * @return true if the trip is still on time from this stop on
+     */
+    public boolean isOnTime(int stop, double arrival, double latestStart) {
+        return Math.max(getReadyTime(stop), arrival) <= latestStart;
+    }
+
+    /**
+     * Compute the forward time and backward slack of a trip. Position 0 is the depot, positions 1
+     * to length are the stops and position length + 1 is the return to the depot or END.
+     *
+     * @param vehicle     Vehicle dispatched for the trip
+     * @param depotIndex  index of the depot
+     * @param stops       location indices of the trip, excluding the depot
+     * @param offset      position of the first stop in stops
+     * @param length      number of stops
+     * @param isRoundTrip whether the trip returns to the depot
+     * @param forward     filled with the earliest departure from each position, +infinity once late
+     * @param latest      filled with the latest service start at each position
+     * @return true if the trip is on time
+     */
+    public boolean schedule(@NonNull Vehicle vehicle, int depotIndex, @NonNull int[] stops, int offset, int length, boolean isRoundTrip, @NonNull double[] forward, @NonNull double[] latest) {
+
+        int end = isRoundTrip ? depotIndex : END;
+
+        forward[0] = getStartTime(vehicle, depotIndex);
+        int previous = depotIndex;
+
+        for (int p = 1; p <= length; p++) {
+            forward[p] = depart(previous, forward[p - 1], stops[offset + p - 1]);
+            previous = stops[offset + p - 1];
+        }
+
+        forward[length + 1] = forward[length] + getTravelTime(previous, end);
+
+        latest[length + 1] = getEndTime(vehicle, depotIndex);
+        int next = end;
+
+        for (int p = length; p >= 1; p--) {
+            int stop = stops[offset + p - 1];
+            latest[p] = Math.min(dueTimes[stop], latest[p + 1] - getTravelTime(stop, next) - serviceDurations[stop]);
+            next = stop;
+        }
+
+        latest[0] = latest[1] - getTravelTime(depotIndex, next);
+
+        return forward[length + 1] <= latest[length + 1];
+
+    }
+
+}
@@ -0,0 +1,99 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+/**
+ * Materializes int location sequences into {@link Solution} legs
+ */
+final class Trips {
+
+    private Trips() {
+    }
+
+    /**
+     * Append a single trip that starts at the depot, visits the route in order and optionally returns.
+     * Carry is the vehicle remaining capacity after each leg, the same as {@link NearestNeighborEngine}.
+     *
+     * @param solutions   List of Solution to append to
+     * @param matrix      IndexedMatrix of the places
+     * @param depotIndex  index of the depot
+     * @param route       location indices of the trip, excluding the depot
+     * @param length      number of locations in route
+     * @param vehicle     Vehicle dispatched for the trip
+     * @param isRoundTrip whether the trip returns to the depot
+     */
+    static void appendTrip(@NonNull List<Solution> solutions, @NonNull IndexedMatrix matrix, int depotIndex, @NonNull int[] route, int length, @NonNull Vehicle vehicle, boolean isRoundTrip) {
+        appendTrip(solutions, matrix, depotIndex, route, length, vehicle, isRoundTrip, null);
+    }
+
+    /**
+     * Append a single trip, with the travel time and service start of every leg when there are time windows
+     * @param timeWindows TimeWindows of the places, null to leave the schedule unset
+     * @see #appendTrip(List, IndexedMatrix, int, int[], int, Vehicle, boolean)
+     */
+    static void appendTrip(@NonNull List<Solution> solutions, @NonNull IndexedMatrix matrix, int depotIndex, @NonNull int[] route, int length, @NonNull Vehicle vehicle, boolean isRoundTrip, @Nullable TimeWindows timeWindows) {
+        appendTrip(solutions, matrix, depotIndex, route, 0, length, vehicle, isRoundTrip, timeWindows);
+    }
+
+    /**
+     * Append a single trip read from a slice of a larger array, e.g. a {@link RoutePlan}
+     * @param offset position of the first location of the trip in route
+     * @see #appendTrip(List, IndexedMatrix, int, int[], int, Vehicle, boolean, TimeWindows)
+     */
+    static void appendTrip(@NonNull List<Solution> solutions, @NonNull IndexedMatrix matrix, int depotIndex, @NonNull int[] route, int offset, int length, @NonNull Vehicle vehicle, boolean isRoundTrip, @Nullable TimeWindows timeWindows) {
+
+        if (length == 0)
+            return;
+
+        double vehicleRemainingCapacity = vehicle.getCapacity();
+        int current = depotIndex;
+        double departure = timeWindows != null ? timeWindows.getStartTime(vehicle, depotIndex) : 0;
+
+        for (int i = 0; i < length; i++) {
+
+            int destination = route[offset + i];
+            double demand = matrix.getDemand(destination);
+            vehicleRemainingCapacity -= demand;
+
+            Solution solution = new Solution(matrix.getLocation(current), matrix.getLocation(destination), matrix.getDistance(current, destination));
+            solution.setDemand(demand);
+            solution.setCarry(vehicleRemainingCapacity);
+            solution.setVehicleId(vehicle.getId()); // Assign vehicle id to solution
+
+            if (timeWindows != null) {
+                double travelTime = timeWindows.getTravelTime(current, destination);
+                double start = Math.max(timeWindows.getReadyTime(destination), departure + travelTime);
+                solution.setDuration(travelTime);
+                solution.setServiceStartTime(start);
+                departure = start + timeWindows.getServiceDuration(destination);
+            }
+
+            solutions.add(solution);
+            current = destination;
+
+        }
+
+        if (isRoundTrip) {
+            Solution solution = new Solution(matrix.getLocation(current), matrix.getLocation(depotIndex), matrix.getDistance(current, depotIndex));
+            solution.setCarry(vehicleRemainingCapacity);
+            solution.setVehicleId(vehicle.getId());
+
+            if (timeWindows != null) {
+                double travelTime = timeWindows.getTravelTime(current, depotIndex);
+                solution.setDuration(travelTime);
+                solution.setServiceStartTime(departure + travelTime);
+            }
+
+            solutions.add(solution);
+        }
+
+    }
+
+}
@@ -0,0 +1,33 @@
+package id.my.dsm.vrpsolver.enums;
+
+import androidx.annotation.NonNull;
+
+public enum ClusteringMethod {
+    SWEEP,
+    CAPACITATED_K_MEANS;
+
+    @NonNull
+    @Override
+    public String toString() {
+        switch (this) {
+            case SWEEP:
+                return "Sweep";
+            case CAPACITATED_K_MEANS:
+                return "Capacitated K-Means";
+            default:
+                throw new IllegalStateException("Unexpected ClusteringMethod value: " + this);
+        }
+    }
+
+    public static ClusteringMethod fromString(String string) {
+        switch (string) {
+            case "Sweep":
+                return ClusteringMethod.SWEEP;
+            case "Capacitated K-Means":
+                return ClusteringMethod.CAPACITATED_K_MEANS;
+            default:
+                return null;
+        }
+    }
+
+}
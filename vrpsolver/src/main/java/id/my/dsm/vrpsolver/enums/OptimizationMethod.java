@@ -4,7 +4,8 @@ import androidx.annotation.NonNull;
 
 public enum OptimizationMethod {
     NEAREST_NEIGHBOR,
-    SAVING_MATRIX;
+    SAVING_MATRIX,
+    ALNS;
 
     @NonNull
     @Override
@@ -14,6 +15,8 @@ public enum OptimizationMethod {
                 return "Nearest Neighbor";
             case SAVING_MATRIX:
                 return "Saving Matrix";
+            case ALNS:
+                return "ALNS";
             default:
                 throw new IllegalStateException("Unexpected OptimizationMethod value: " + this);
         }
@@ -25,6 +28,8 @@ public enum OptimizationMethod {
                 return OptimizationMethod.NEAREST_NEIGHBOR;
             case "Saving Matrix":
                 return OptimizationMethod.SAVING_MATRIX;
+            case "ALNS":
+                return OptimizationMethod.ALNS;
             default:
                 return null;
         }
@@ -0,0 +1,14 @@
+package id.my.dsm.vrpsolver.event;
+
+import java.util.List;
+
+import id.my.dsm.vrpsolver.model.Solution;
+
+public interface OptimizationProgressListener {
+        /**
+         * Called on the solving thread that found the solution, a worker of the solver pool when
+         * depots, clusters or starts are solved in parallel. Calls never overlap and come by
+         * descending cost, a thread reporting meanwhile waits, so keep the listener short.
+         */
+        void onImprovedSolution(List<Solution> solutions, double cost, long elapsedNanos);
+}
@@ -1,5 +1,16 @@
 package id.my.dsm.vrpsolver.event;
 
 public enum OptimizationResponseError {
-    METHOD_NOT_IMPLEMENTED;
-}
\ No newline at end of file
+    /**
+     * The optimization method has no engine
+     */
+    METHOD_NOT_IMPLEMENTED,
+    /**
+     * The places, vehicles or distances cannot be optimized, e.g. no source place or too many locations
+     */
+    INVALID_INPUT,
+    /**
+     * An engine failed while solving
+     */
+    ENGINE_FAILURE;
+}
@@ -0,0 +1,62 @@
+package id.my.dsm.vrpsolver.matrix;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.model.Location;
+
+/**
+ * Location and demand bookkeeping shared by the {@link IndexedMatrix} implementations
+ */
+public abstract class AbstractIndexedMatrix implements IndexedMatrix {
+
+    protected final int size;
+    private final Location[] locations;
+    private final HashMap<Location, Integer> indices; // Location to index lookup, used by adapters only
+    private final double[] demands;
+
+    protected AbstractIndexedMatrix(@NonNull List<Location> locations) {
+        this.size = locations.size();
+        this.locations = locations.toArray(new Location[0]);
+        this.indices = new HashMap<>(size * 2);
+        this.demands = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            indices.put(this.locations[i], i);
+            demands[i] = this.locations[i].getDemands();
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Location getLocation(int index) {
+        return locations[index];
+    }
+
+    @Override
+    public int indexOf(Location location) {
+        Integer index = indices.get(location);
+        return index != null ? index : -1;
+    }
+
+    @Override
+    public double getDemand(int index) {
+        return demands[index];
+    }
+
+    public void setDemand(int index, double demand) {
+        demands[index] = demand;
+    }
+
+    @Override
+    public boolean hasDistance(int origin, int destination) {
+        return getDistance(origin, destination) != Double.POSITIVE_INFINITY;
+    }
+
+}
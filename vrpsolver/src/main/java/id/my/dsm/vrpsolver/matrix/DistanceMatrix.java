@@ -0,0 +1,140 @@
+package id.my.dsm.vrpsolver.matrix;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.MatrixElement;
+
+/**
+ * Dense distance matrix indexed by int location ids. Distances are stored row-major in a flat
+ * double array so that a row of outgoing distances can be scanned without any allocation.
+ * Missing pairs are stored as {@link Double#POSITIVE_INFINITY}.
+ */
+public class DistanceMatrix extends AbstractIndexedMatrix {
+
+    private final double[] distances; // Row-major, origin * size + destination
+
+    public DistanceMatrix(@NonNull List<Location> locations) {
+        super(locations);
+
+        long cells = (long) size * size;
+        if (cells > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many locations for a DistanceMatrix: " + size);
+
+        this.distances = new double[(int) cells];
+
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+
+        for (int i = 0; i < size; i++)
+            distances[i * size + i] = 0;
+    }
+
+    /**
+     * Wrap row-major distances without copying them
+     */
+    DistanceMatrix(@NonNull List<Location> locations, @NonNull double[] distances) {
+        super(locations);
+        this.distances = distances;
+    }
+
+    @Override
+    public double getDistance(int origin, int destination) {
+        return distances[origin * size + destination];
+    }
+
+    public void setDistance(int origin, int destination, double distance) {
+        distances[origin * size + destination] = distance;
+    }
+
+    /**
+     * Copy any IndexedMatrix into a DistanceMatrix, e.g. a {@link SubMatrix} of an
+     * {@link OracleMatrix} that is read many times
+     * @param source IndexedMatrix to copy the distances and demands of
+     * @return a DistanceMatrix with the same indices
+     */
+    @NonNull
+    public static DistanceMatrix fromMatrix(@NonNull IndexedMatrix source) {
+
+        int size = source.size();
+        ArrayList<Location> locations = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++)
+            locations.add(source.getLocation(i));
+
+        DistanceMatrix matrix = new DistanceMatrix(locations);
+
+        for (int i = 0; i < size; i++) {
+
+            matrix.setDemand(i, source.getDemand(i));
+
+            for (int j = 0; j < size; j++)
+                if (i != j)
+                    matrix.setDistance(i, j, source.getDistance(i, j));
+
+        }
+
+        return matrix;
+
+    }
+
+    /**
+     * Adapt a List of {@link MatrixElement} into a DistanceMatrix. Elements which origin or
+     * destination is not a part of places are ignored.
+     * @param matrixElements List of MatrixElement
+     * @param places List of Location, defines the index of each location
+     * @return a DistanceMatrix
+     */
+    @NonNull
+    public static DistanceMatrix fromMatrixElements(@NonNull List<MatrixElement> matrixElements, @NonNull List<Location> places) {
+
+        DistanceMatrix matrix = new DistanceMatrix(places);
+
+        for (MatrixElement matrixElement : matrixElements) {
+
+            int origin = matrix.indexOf(matrixElement.getOrigin());
+            int destination = matrix.indexOf(matrixElement.getDestination());
+
+            if (origin == -1 || destination == -1)
+                continue;
+
+            matrix.setDistance(origin, destination, matrixElement.getDistance());
+
+        }
+
+        return matrix;
+
+    }
+
+    /**
+     * Adapt the durations of a List of {@link MatrixElement} into a DistanceMatrix of travel
+     * times, e.g. for {@link id.my.dsm.vrpsolver.engine.TimeWindows}
+     * @param matrixElements List of MatrixElement
+     * @param places List of Location, defines the index of each location
+     * @return a DistanceMatrix whose distances are the durations
+     */
+    @NonNull
+    public static DistanceMatrix fromMatrixElementDurations(@NonNull List<MatrixElement> matrixElements, @NonNull List<Location> places) {
+
+        DistanceMatrix matrix = new DistanceMatrix(places);
+
+        for (MatrixElement matrixElement : matrixElements) {
+
+            int origin = matrix.indexOf(matrixElement.getOrigin());
+            int destination = matrix.indexOf(matrixElement.getDestination());
+
+            if (origin == -1 || destination == -1)
+                continue;
+
+            matrix.setDistance(origin, destination, matrixElement.getDuration());
+
+        }
+
+        return matrix;
+
+    }
+
+}
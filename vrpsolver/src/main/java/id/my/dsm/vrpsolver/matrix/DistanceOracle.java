@@ -0,0 +1,17 @@
+package id.my.dsm.vrpsolver.matrix;
+
+import androidx.annotation.NonNull;
+
+import id.my.dsm.vrpsolver.model.Location;
+
+/**
+ * Computes the distance between two locations on demand, e.g. {@link HaversineOracle} or a local
+ * routing engine. Wrapped into an {@link OracleMatrix}, the engines only ask for the pairs they
+ * inspect and never need a full {@link id.my.dsm.vrpsolver.model.MatrixElement} list.
+ * Implementations must be thread-safe and return {@link Double#POSITIVE_INFINITY} for unreachable pairs.
+ */
+public interface DistanceOracle {
+
+    double getDistance(@NonNull Location origin, @NonNull Location destination);
+
+}
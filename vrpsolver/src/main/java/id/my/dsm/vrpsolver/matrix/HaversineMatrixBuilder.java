@@ -0,0 +1,224 @@
+package id.my.dsm.vrpsolver.matrix;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import id.my.dsm.vrpsolver.engine.SolverPool;
+import id.my.dsm.vrpsolver.enums.DistancesMethod;
+import id.my.dsm.vrpsolver.model.LatLngAlt;
+import id.my.dsm.vrpsolver.model.Location;
+
+/**
+ * Builds a {@link DistancesMethod#AIR} matrix of great-circle distances in meters from the
+ * {@link LatLngAlt} of each {@link Location}. Each location is converted once into a unit vector,
+ * so a pair only costs a few multiplications and one asin: the haversine of the central angle is
+ * a quarter of the squared chord between both vectors. Rows are computed in parallel.
+ */
+public class HaversineMatrixBuilder {
+
+    // Mean earth radius in meters
+    public static final double EARTH_RADIUS = 6371008.8;
+
+    // Number of cells computed by a single task before it stops splitting
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 14;
+
+    private final List<Location> locations;
+    private boolean isAltitudeAware = false;
+    private boolean isUpperTriangleOnly = false;
+    private ForkJoinPool pool;
+
+    public HaversineMatrixBuilder(@NonNull List<Location> locations) {
+        this.locations = locations;
+    }
+
+    /**
+     * Account for the altitude difference, the distance becomes sqrt(surface^2 + altitude^2)
+     */
+    public HaversineMatrixBuilder withAltitude(boolean isAltitudeAware) {
+        this.isAltitudeAware = isAltitudeAware;
+        return this;
+    }
+
+    /**
+     * Fill the upper triangle only and build a {@link SymmetricDistanceMatrix}
+     */
+    public HaversineMatrixBuilder withUpperTriangleOnly(boolean isUpperTriangleOnly) {
+        this.isUpperTriangleOnly = isUpperTriangleOnly;
+        return this;
+    }
+
+    public HaversineMatrixBuilder withPool(@NonNull ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Build the matrix
+     * @return a {@link SymmetricDistanceMatrix} if upper triangle only, a {@link DistanceMatrix} otherwise
+     */
+    @NonNull
+    public IndexedMatrix build() {
+
+        int size = locations.size();
+
+        // Precompute the trig terms once per location
+        double[] x = new double[size];
+        double[] y = new double[size];
+        double[] z = new double[size];
+        double[] altitudes = new double[size];
+
+        for (int i = 0; i < size; i++) {
+
+            LatLngAlt latLngAlt = locations.get(i).getLatLngAlt();
+
+            double latitude = Math.toRadians(latLngAlt.getLatitude());
+            double longitude = Math.toRadians(latLngAlt.getLongitude());
+            double cosLatitude = Math.cos(latitude);
+
+            x[i] = cosLatitude * Math.cos(longitude);
+            y[i] = cosLatitude * Math.sin(longitude);
+            z[i] = Math.sin(latitude);
+            altitudes[i] = latLngAlt.getAltitude();
+
+        }
+
+        Rows rows = isUpperTriangleOnly
+                ? new Rows(null, new SymmetricDistanceMatrix(locations), x, y, z, altitudes, isAltitudeAware)
+                : new Rows(new DistanceMatrix(locations), null, x, y, z, altitudes, isAltitudeAware);
+
+        RowsTask task = new RowsTask(rows, 0, size);
+
+        if ((long) size * size <= SEQUENTIAL_THRESHOLD)
+            task.computeRows();
+        else
+            (pool != null ? pool : SolverPool.get()).invoke(task);
+
+        return rows.symmetricMatrix != null ? rows.symmetricMatrix : rows.matrix;
+
+    }
+
+    /**
+     * Great-circle distance between two coordinates in meters
+     * @param origin LatLngAlt of the origin
+     * @param destination LatLngAlt of the destination
+     * @param isAltitudeAware whether to account for the altitude difference
+     * @return distance in meters
+     */
+    public static double computeDistance(@NonNull LatLngAlt origin, @NonNull LatLngAlt destination, boolean isAltitudeAware) {
+
+        double latitude1 = Math.toRadians(origin.getLatitude());
+        double latitude2 = Math.toRadians(destination.getLatitude());
+        double sinLatitude = Math.sin((latitude2 - latitude1) / 2);
+        double sinLongitude = Math.sin(Math.toRadians(destination.getLongitude() - origin.getLongitude()) / 2);
+
+        double haversine = sinLatitude * sinLatitude + Math.cos(latitude1) * Math.cos(latitude2) * sinLongitude * sinLongitude;
+        double distance = 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(haversine)));
+
+        if (!isAltitudeAware)
+            return distance;
+
+        double altitude = destination.getAltitude() - origin.getAltitude();
+
+        return Math.sqrt(distance * distance + altitude * altitude);
+
+    }
+
+    /**
+     * Target matrix and per location terms shared by every task
+     */
+    private static class Rows {
+
+        private final DistanceMatrix matrix;
+        private final SymmetricDistanceMatrix symmetricMatrix;
+        private final double[] x;
+        private final double[] y;
+        private final double[] z;
+        private final double[] altitudes;
+        private final boolean isAltitudeAware;
+
+        Rows(DistanceMatrix matrix, SymmetricDistanceMatrix symmetricMatrix, double[] x, double[] y, double[] z, double[] altitudes, boolean isAltitudeAware) {
+            this.matrix = matrix;
+            this.symmetricMatrix = symmetricMatrix;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.altitudes = altitudes;
+            this.isAltitudeAware = isAltitudeAware;
+        }
+
+        double computeDistance(int i, int j) {
+
+            double dx = x[i] - x[j];
+            double dy = y[i] - y[j];
+            double dz = z[i] - z[j];
+
+            // haversine = chord^2 / 4
+            double halfChord = Math.sqrt(dx * dx + dy * dy + dz * dz) / 2;
+            double distance = 2 * EARTH_RADIUS * Math.asin(Math.min(1, halfChord));
+
+            if (!isAltitudeAware)
+                return distance;
+
+            double altitude = altitudes[j] - altitudes[i];
+
+            return Math.sqrt(distance * distance + altitude * altitude);
+
+        }
+
+    }
+
+    @SuppressWarnings("serial")
+    private static class RowsTask extends RecursiveAction {
+
+        private final Rows rows;
+        private final int fromRow;
+        private final int toRow;
+
+        RowsTask(Rows rows, int fromRow, int toRow) {
+            this.rows = rows;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+
+            if ((long) (toRow - fromRow) * rows.x.length <= SEQUENTIAL_THRESHOLD || toRow - fromRow == 1) {
+                computeRows();
+                return;
+            }
+
+            int middleRow = (fromRow + toRow) >>> 1;
+
+            invokeAll(
+                    new RowsTask(rows, fromRow, middleRow),
+                    new RowsTask(rows, middleRow, toRow)
+            );
+
+        }
+
+        void computeRows() {
+
+            int size = rows.x.length;
+
+            for (int i = fromRow; i < toRow; i++) {
+
+                if (rows.symmetricMatrix != null) {
+                    for (int j = i + 1; j < size; j++)
+                        rows.symmetricMatrix.setDistance(i, j, rows.computeDistance(i, j));
+                } else {
+                    for (int j = 0; j < size; j++)
+                        if (i != j)
+                            rows.matrix.setDistance(i, j, rows.computeDistance(i, j));
+                }
+
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,27 @@
+package id.my.dsm.vrpsolver.matrix;
+
+import androidx.annotation.NonNull;
+
+import id.my.dsm.vrpsolver.model.Location;
+
+/**
+ * {@link DistanceOracle} of great-circle distances in meters
+ */
+public class HaversineOracle implements DistanceOracle {
+
+    private final boolean isAltitudeAware;
+
+    public HaversineOracle() {
+        this(false);
+    }
+
+    public HaversineOracle(boolean isAltitudeAware) {
+        this.isAltitudeAware = isAltitudeAware;
+    }
+
+    @Override
+    public double getDistance(@NonNull Location origin, @NonNull Location destination) {
+        return HaversineMatrixBuilder.computeDistance(origin.getLatLngAlt(), destination.getLatLngAlt(), isAltitudeAware);
+    }
+
+}
@@ -0,0 +1,35 @@
+package id.my.dsm.vrpsolver.matrix;
+
+import id.my.dsm.vrpsolver.model.Location;
+
+/**
+ * Distances and demands of a set of locations indexed by int location ids. This is what the
+ * engines read, regardless of how the distances are stored.
+ * Missing pairs are reported as {@link Double#POSITIVE_INFINITY}.
+ */
+public interface IndexedMatrix {
+
+    int size();
+
+    Location getLocation(int index);
+
+    /**
+     * Get the index of a {@link Location} in this matrix
+     * @param location a Location
+     * @return the index or -1 if the location is not a part of this matrix
+     */
+    int indexOf(Location location);
+
+    double getDemand(int index);
+
+    double getDistance(int origin, int destination);
+
+    /**
+     * Check whether a distance from origin to destination is known
+     * @param origin index of the origin
+     * @param destination index of the destination
+     * @return true if the distance is not missing
+     */
+    boolean hasDistance(int origin, int destination);
+
+}
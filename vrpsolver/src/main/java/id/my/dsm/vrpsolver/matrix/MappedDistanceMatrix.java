@@ -0,0 +1,99 @@
+package id.my.dsm.vrpsolver.matrix;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.model.Location;
+
+/**
+ * Distance matrix read straight from a memory-mapped {@link MatrixFile}. Nothing but the row of
+ * each location is kept on the heap, the operating system pages the distances in as the engines
+ * read them. A mapping is limited to 2 GB, so larger payloads are mapped in chunks aligned on the
+ * distance size. Thread-safe, reads never move a buffer position.
+ */
+public class MappedDistanceMatrix extends AbstractIndexedMatrix {
+
+    // Chunks of 1 GB, a distance never straddles two chunks
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    private final ByteBuffer[] chunks;
+    private final int[] rows; // Row of each location in the file, -1 if missing
+    private final long fileSize; // Number of locations in the file
+    private final boolean isSinglePrecision;
+
+    /**
+     * @see MatrixFile#map(File, List)
+     */
+    MappedDistanceMatrix(@NonNull File file, @NonNull List<Location> places) throws IOException {
+        super(places);
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+        try {
+
+            FileChannel channel = randomAccessFile.getChannel();
+            long[] header = MatrixFile.readHeader(channel);
+
+            this.fileSize = header[0];
+            this.isSinglePrecision = header[1] == 4;
+
+            // Map the file rows to the places
+            List<String> ids = MatrixFile.readIds(channel, header);
+            HashMap<String, Integer> rowsById = new HashMap<>(ids.size() * 2);
+
+            for (int i = 0; i < ids.size(); i++)
+                rowsById.put(ids.get(i), i);
+
+            this.rows = new int[size];
+            Arrays.fill(rows, -1);
+
+            for (int i = 0; i < size; i++) {
+                Integer row = rowsById.get(getLocation(i).getId());
+                if (row != null)
+                    rows[i] = row;
+            }
+
+            // The mapping stays valid once the channel is closed
+            long payloadBytes = fileSize * fileSize * header[1];
+            this.chunks = new ByteBuffer[(int) ((payloadBytes + CHUNK_MASK) >>> CHUNK_SHIFT)];
+
+            for (int c = 0; c < chunks.length; c++) {
+                long offset = (long) c << CHUNK_SHIFT;
+                long length = Math.min(CHUNK_MASK + 1, payloadBytes - offset);
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, header[2] + offset, length).order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+        } finally {
+            randomAccessFile.close();
+        }
+
+    }
+
+    @Override
+    public double getDistance(int origin, int destination) {
+
+        int originRow = rows[origin];
+        int destinationRow = rows[destination];
+
+        if (originRow == -1 || destinationRow == -1)
+            return origin == destination ? 0 : Double.POSITIVE_INFINITY;
+
+        long offset = (originRow * fileSize + destinationRow) << (isSinglePrecision ? 2 : 3);
+        ByteBuffer chunk = chunks[(int) (offset >>> CHUNK_SHIFT)];
+        int position = (int) (offset & CHUNK_MASK);
+
+        return isSinglePrecision ? chunk.getFloat(position) : chunk.getDouble(position);
+
+    }
+
+}
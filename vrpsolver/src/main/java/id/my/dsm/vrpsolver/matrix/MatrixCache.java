@@ -0,0 +1,521 @@
+package id.my.dsm.vrpsolver.matrix;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+
+import id.my.dsm.vrpsolver.enums.DistancesMethod;
+import id.my.dsm.vrpsolver.model.LatLngAlt;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.MatrixElement;
+
+/**
+ * Bounded LRU cache of distance matrices, so that the same places are not asked to a distances
+ * provider again. A location is known by its id and coordinates, a matrix by the fingerprint of
+ * its locations, whatever their order, and its {@link DistancesMethod}.
+ * <p>
+ * When no matrix has exactly the places asked for, the cached matrix sharing the most locations is
+ * reused and the {@link Loader} only computes the rows and columns of the other locations.
+ * Matrices are kept in memory up to a number of distances, and optionally in a directory of
+ * {@link MatrixFile} which outlives the process. Thread-safe, loads run outside of the lock.
+ */
+public class MatrixCache {
+
+    private static final String TAG = MatrixCache.class.getSimpleName();
+
+    public static final long DEFAULT_CAPACITY = 1 << 22; // 32 MB of distances
+    public static final int DEFAULT_MAX_FILES = 16;
+
+    private static final String FILE_SUFFIX = ".dsmx";
+
+    /**
+     * Computes the distances the cache misses, e.g. with a single request to a distances provider
+     */
+    public interface Loader {
+
+        /**
+         * @param origins         List of Location, the rows to compute
+         * @param destinations    List of Location, the columns to compute
+         * @param distancesMethod DistancesMethod of the matrix
+         * @return MatrixElement of the pairs, referencing the given Location instances. Pairs left
+         * out are missing.
+         */
+        @NonNull
+        List<MatrixElement> load(@NonNull List<Location> origins, @NonNull List<Location> destinations, @NonNull DistancesMethod distancesMethod);
+
+    }
+
+    private static final class Entry {
+
+        final String fingerprint;
+        final DistancesMethod distancesMethod;
+        final String[] keys; // Key of each row
+        final HashMap<String, Integer> rows; // Row of each key
+        final double[] distances; // Row-major
+
+        Entry(String fingerprint, DistancesMethod distancesMethod, String[] keys, double[] distances) {
+            this.fingerprint = fingerprint;
+            this.distancesMethod = distancesMethod;
+            this.keys = keys;
+            this.rows = new HashMap<>(keys.length * 2);
+            this.distances = distances;
+
+            for (int i = 0; i < keys.length; i++)
+                rows.put(keys[i], i);
+        }
+
+        long getCellCount() {
+            return (long) keys.length * keys.length;
+        }
+
+        int countShared(String[] keys) {
+            int count = 0;
+            for (String key : keys)
+                if (rows.containsKey(key))
+                    count++;
+            return count;
+        }
+
+    }
+
+    private final long capacity;
+    private final File directory;
+    private final int maxFiles;
+
+    // Access-ordered, the eldest entry is the least recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cellCount = 0;
+
+    public MatrixCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum number of distances kept in memory, a larger matrix is not kept
+     */
+    public MatrixCache(long capacity) {
+        this(capacity, null, 0);
+    }
+
+    /**
+     * @param capacity  maximum number of distances kept in memory, a larger matrix is not kept
+     * @param directory directory of the disk tier, null for memory only
+     * @param maxFiles  maximum number of matrix files kept in the directory
+     */
+    public MatrixCache(long capacity, @Nullable File directory, int maxFiles) {
+        this.capacity = capacity;
+        this.directory = directory;
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * Get the distance matrix of places, loading only the pairs no cached matrix knows
+     * @param places          List of Location, defines the index of each location
+     * @param distancesMethod DistancesMethod of the distances
+     * @param loader          Loader of the missing rows and columns
+     * @return a new DistanceMatrix, free to modify
+     */
+    @NonNull
+    public DistanceMatrix get(@NonNull List<Location> places, @NonNull DistancesMethod distancesMethod, @NonNull Loader loader) {
+
+        int size = places.size();
+        String[] keys = new String[size];
+
+        for (int i = 0; i < size; i++)
+            keys[i] = getKey(places.get(i));
+
+        String fingerprint = getFingerprint(keys, distancesMethod);
+
+        // Same places first, then the matrix sharing the most locations
+        Entry base = getEntry(fingerprint, distancesMethod);
+
+        if (base == null)
+            base = findEntry(keys, distancesMethod);
+
+        long cells = (long) size * size;
+        if (cells > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many locations for a cached matrix: " + size);
+
+        double[] distances = new double[(int) cells];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+
+        int[] baseRows = new int[size];
+        ArrayList<Location> known = new ArrayList<>();
+        ArrayList<Location> missing = new ArrayList<>();
+
+        for (int i = 0; i < size; i++) {
+
+            Integer row = base != null ? base.rows.get(keys[i]) : null;
+            baseRows[i] = row != null ? row : -1;
+
+            if (row != null)
+                known.add(places.get(i));
+            else
+                missing.add(places.get(i));
+
+        }
+
+        // Reuse the known pairs
+        if (base != null) {
+
+            int baseSize = base.keys.length;
+
+            for (int i = 0; i < size; i++) {
+
+                if (baseRows[i] == -1)
+                    continue;
+
+                int offset = baseRows[i] * baseSize;
+
+                for (int j = 0; j < size; j++)
+                    if (baseRows[j] != -1)
+                        distances[i * size + j] = base.distances[offset + baseRows[j]];
+
+            }
+
+        }
+
+        for (int i = 0; i < size; i++)
+            distances[i * size + i] = 0;
+
+        if (base != null && missing.isEmpty())
+            return new DistanceMatrix(places, distances);
+
+        // Rows of the missing locations, then their columns from the known ones
+        HashMap<Location, Integer> indices = new HashMap<>(size * 2);
+
+        for (int i = 0; i < size; i++)
+            indices.put(places.get(i), i);
+
+        if (!missing.isEmpty())
+            fill(distances, size, indices, loader.load(missing, places, distancesMethod));
+
+        if (!missing.isEmpty() && !known.isEmpty())
+            fill(distances, size, indices, loader.load(known, missing, distancesMethod));
+
+        put(new Entry(fingerprint, distancesMethod, keys, distances));
+
+        DistanceMatrix matrix = new DistanceMatrix(places, distances.clone());
+
+        if (directory != null)
+            writeFile(fingerprint, distancesMethod, keys, matrix);
+
+        return matrix;
+
+    }
+
+    /**
+     * Drop the memory tier, the files of the disk tier are kept
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            cellCount = 0;
+        }
+    }
+
+    private static void fill(double[] distances, int size, HashMap<Location, Integer> indices, List<MatrixElement> matrixElements) {
+
+        for (MatrixElement matrixElement : matrixElements) {
+
+            Integer origin = indices.get(matrixElement.getOrigin());
+            Integer destination = indices.get(matrixElement.getDestination());
+
+            if (origin == null || destination == null || origin.equals(destination))
+                continue;
+
+            distances[origin * size + destination] = matrixElement.getDistance();
+
+        }
+
+    }
+
+    private Entry getEntry(String fingerprint, DistancesMethod distancesMethod) {
+
+        synchronized (entries) {
+            Entry entry = entries.get(fingerprint);
+            if (entry != null)
+                return entry;
+        }
+
+        if (directory == null)
+            return null;
+
+        File file = getFile(fingerprint, distancesMethod);
+
+        if (!file.isFile())
+            return null;
+
+        return readFile(file, fingerprint, distancesMethod);
+
+    }
+
+    private Entry findEntry(String[] keys, DistancesMethod distancesMethod) {
+
+        Entry best = null;
+        int bestShared = 0;
+
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+
+                if (entry.distancesMethod != distancesMethod)
+                    continue;
+
+                int shared = entry.countShared(keys);
+
+                if (shared > bestShared) {
+                    best = entry;
+                    bestShared = shared;
+                }
+
+            }
+        }
+
+        if (best != null) {
+            // Mark as recently used
+            synchronized (entries) {
+                entries.get(best.fingerprint);
+            }
+        }
+
+        if (directory == null || bestShared == keys.length)
+            return best;
+
+        // Only the id table of each file is read to count the shared locations
+        File bestFile = null;
+        String prefix = getFilePrefix(distancesMethod);
+        File[] files = directory.listFiles();
+
+        if (files == null)
+            return best;
+
+        for (File file : files) {
+
+            String name = file.getName();
+
+            if (!name.startsWith(prefix) || !name.endsWith(FILE_SUFFIX))
+                continue;
+
+            synchronized (entries) {
+                if (entries.containsKey(getFileFingerprint(name)))
+                    continue;
+            }
+
+            try {
+
+                List<String> ids = MatrixFile.readIds(file);
+                HashMap<String, Boolean> isShared = new HashMap<>(ids.size() * 2);
+
+                for (String id : ids)
+                    isShared.put(id, true);
+
+                int shared = 0;
+                for (String key : keys)
+                    if (isShared.containsKey(key))
+                        shared++;
+
+                if (shared > bestShared) {
+                    bestFile = file;
+                    bestShared = shared;
+                }
+
+            } catch (IOException e) {
+                Log.e(TAG, "findEntry: Unreadable matrix file " + name + ", " + e.getMessage());
+            }
+
+        }
+
+        if (bestFile != null) {
+            Entry entry = readFile(bestFile, getFileFingerprint(bestFile.getName()), distancesMethod);
+            if (entry != null)
+                return entry;
+        }
+
+        return best;
+
+    }
+
+    private void put(Entry entry) {
+
+        synchronized (entries) {
+
+            Entry previous = entries.remove(entry.fingerprint);
+            if (previous != null)
+                cellCount -= previous.getCellCount();
+
+            if (entry.getCellCount() > capacity)
+                return;
+
+            entries.put(entry.fingerprint, entry);
+            cellCount += entry.getCellCount();
+
+            // Evict the least recently used
+            Iterator<Entry> iterator = entries.values().iterator();
+
+            while (cellCount > capacity && iterator.hasNext()) {
+                cellCount -= iterator.next().getCellCount();
+                iterator.remove();
+            }
+
+        }
+
+    }
+
+    private Entry readFile(File file, String fingerprint, DistancesMethod distancesMethod) {
+
+        try {
+
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            Entry entry;
+
+            try {
+                FileChannel channel = randomAccessFile.getChannel();
+                long[] header = MatrixFile.readHeader(channel);
+                List<String> ids = MatrixFile.readIds(channel, header);
+                entry = new Entry(fingerprint, distancesMethod, ids.toArray(new String[0]), MatrixFile.readDistances(channel, header));
+            } finally {
+                randomAccessFile.close();
+            }
+
+            // Most recently used file, kept the longest
+            file.setLastModified(System.currentTimeMillis());
+            put(entry);
+
+            return entry;
+
+        } catch (IOException e) {
+            Log.e(TAG, "readFile: Unreadable matrix file " + file.getName() + ", " + e.getMessage());
+            return null;
+        }
+
+    }
+
+    private void writeFile(String fingerprint, DistancesMethod distancesMethod, String[] keys, IndexedMatrix matrix) {
+
+        File file = getFile(fingerprint, distancesMethod);
+        File temporaryFile = new File(directory, file.getName() + ".tmp");
+
+        try {
+
+            // Readers never see a partial file
+            MatrixFile.write(keys, matrix, temporaryFile, false);
+
+            if (!temporaryFile.renameTo(file)) {
+                file.delete();
+                if (!temporaryFile.renameTo(file))
+                    throw new IOException("Can not rename " + temporaryFile.getName());
+            }
+
+        } catch (IOException e) {
+            Log.e(TAG, "writeFile: Can not write matrix file " + file.getName() + ", " + e.getMessage());
+            temporaryFile.delete();
+            return;
+        }
+
+        // Delete the least recently used files
+        File[] files = directory.listFiles();
+
+        if (files == null)
+            return;
+
+        ArrayList<File> matrixFiles = new ArrayList<>();
+
+        for (File f : files)
+            if (f.getName().endsWith(FILE_SUFFIX))
+                matrixFiles.add(f);
+
+        if (matrixFiles.size() <= maxFiles)
+            return;
+
+        // lastModified is read once per file, it may change while sorting
+        final HashMap<File, Long> lastModified = new HashMap<>();
+        for (File f : matrixFiles)
+            lastModified.put(f, f.lastModified());
+
+        Collections.sort(matrixFiles, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(lastModified.get(b), lastModified.get(a));
+            }
+        });
+
+        for (int i = Math.max(maxFiles, 1); i < matrixFiles.size(); i++)
+            matrixFiles.get(i).delete();
+
+    }
+
+    private File getFile(String fingerprint, DistancesMethod distancesMethod) {
+        return new File(directory, getFilePrefix(distancesMethod) + fingerprint + FILE_SUFFIX);
+    }
+
+    private static String getFilePrefix(DistancesMethod distancesMethod) {
+        return distancesMethod.name().toLowerCase(Locale.ROOT) + "-";
+    }
+
+    private static String getFileFingerprint(String fileName) {
+        return fileName.substring(fileName.indexOf('-') + 1, fileName.length() - FILE_SUFFIX.length());
+    }
+
+    /**
+     * Key of a location, its id and coordinates. A moved location is a new location.
+     */
+    static String getKey(Location location) {
+
+        LatLngAlt latLngAlt = location.getLatLngAlt();
+
+        if (latLngAlt == null)
+            return String.valueOf(location.getId());
+
+        return location.getId() + "@" + latLngAlt.getLatitude() + "," + latLngAlt.getLongitude() + "," + latLngAlt.getAltitude();
+
+    }
+
+    /**
+     * 64-bit FNV-1a of the sorted keys and the distances method, the order of the places does not matter
+     */
+    static String getFingerprint(String[] keys, DistancesMethod distancesMethod) {
+
+        String[] sortedKeys = keys.clone();
+        Arrays.sort(sortedKeys);
+
+        long hash = 0xCBF29CE484222325L;
+        hash = hash(hash, distancesMethod.name());
+
+        for (String key : sortedKeys)
+            hash = hash(hash, key);
+
+        return String.format(Locale.ROOT, "%016x", hash);
+
+    }
+
+    private static long hash(long hash, String string) {
+
+        for (int i = 0; i < string.length(); i++) {
+            hash ^= string.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+
+        // Separator, so that keys can not run into each other
+        hash ^= 0xFFFF;
+        hash *= 0x100000001B3L;
+
+        return hash;
+
+    }
+
+}
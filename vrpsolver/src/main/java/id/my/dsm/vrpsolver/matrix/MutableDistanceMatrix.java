@@ -0,0 +1,274 @@
+package id.my.dsm.vrpsolver.matrix;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import id.my.dsm.vrpsolver.model.Location;
+
+/**
+ * Dense distance matrix that locations can be added to or removed from in O(n), e.g. an order
+ * placed or cancelled during the day. Each location holds a slot. A removed location leaves a
+ * tombstone, a slot without location whose distances are missing, and the next added location
+ * reuses it, so the other indices never move. The slots grow by a quarter, which keeps adding
+ * amortized O(n) without quadrupling the memory of a large matrix.
+ * <p>
+ * {@link #size()} counts the tombstones, the engines solve the live locations through
+ * {@link #newLiveView()}. Not thread-safe, must not be modified while solving.
+ */
+public class MutableDistanceMatrix implements IndexedMatrix {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private Location[] locations; // null for a tombstone
+    private double[] demands;
+    private double[] distances; // Row-major, origin * capacity + destination
+    private int capacity;
+    private int size; // Slots in use, tombstones included
+    private int[] freeSlots; // Stack of the tombstones
+    private int freeSlotCount;
+    private final HashMap<Location, Integer> indices;
+
+    public MutableDistanceMatrix() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of slots allocated up front
+     */
+    public MutableDistanceMatrix(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.locations = new Location[this.capacity];
+        this.demands = new double[this.capacity];
+
+        long cells = (long) this.capacity * this.capacity;
+        if (cells > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many locations for a MutableDistanceMatrix: " + capacity);
+
+        this.distances = new double[(int) cells];
+        this.freeSlots = new int[this.capacity];
+        this.indices = new HashMap<>(this.capacity * 2);
+
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Copy any IndexedMatrix, the locations keep their indices
+     * @param source IndexedMatrix to copy the distances and demands of
+     * @return a MutableDistanceMatrix without tombstone
+     */
+    @NonNull
+    public static MutableDistanceMatrix fromMatrix(@NonNull IndexedMatrix source) {
+
+        int size = source.size();
+        MutableDistanceMatrix matrix = new MutableDistanceMatrix(size);
+
+        for (int i = 0; i < size; i++) {
+            matrix.addLocation(source.getLocation(i));
+            matrix.demands[i] = source.getDemand(i);
+        }
+
+        for (int i = 0; i < size; i++)
+            for (int j = 0; j < size; j++)
+                if (i != j)
+                    matrix.distances[i * matrix.capacity + j] = source.getDistance(i, j);
+
+        return matrix;
+
+    }
+
+    /**
+     * Add a location in a tombstone or a new slot. Its distances are missing until set.
+     * @param location a Location which is not a part of this matrix
+     * @return the index of the location
+     */
+    public int addLocation(@NonNull Location location) {
+
+        if (indices.containsKey(location))
+            throw new IllegalArgumentException("Location " + location.getId() + " is already a part of the matrix");
+
+        int index;
+
+        if (freeSlotCount > 0) {
+            index = freeSlots[--freeSlotCount];
+        } else {
+            if (size == capacity)
+                grow();
+            index = size++;
+        }
+
+        // A tombstone was cleared on removal, a new slot since its allocation
+        locations[index] = location;
+        demands[index] = location.getDemands();
+        distances[index * capacity + index] = 0;
+        indices.put(location, index);
+
+        return index;
+
+    }
+
+    /**
+     * Remove a location, its slot becomes a tombstone
+     * @param index index of a live location
+     */
+    public void removeLocation(int index) {
+
+        Location location = locations[index];
+
+        if (location == null)
+            throw new IllegalArgumentException("No location at index " + index);
+
+        indices.remove(location);
+        locations[index] = null;
+        demands[index] = 0;
+
+        // Clear the row and column
+        int offset = index * capacity;
+
+        for (int i = 0; i < size; i++) {
+            distances[offset + i] = Double.POSITIVE_INFINITY;
+            distances[i * capacity + index] = Double.POSITIVE_INFINITY;
+        }
+
+        freeSlots[freeSlotCount++] = index;
+
+    }
+
+    /**
+     * Remove a location, its slot becomes a tombstone
+     * @return the index the location held, or -1 if it was not a part of this matrix
+     */
+    public int removeLocation(@NonNull Location location) {
+
+        int index = indexOf(location);
+
+        if (index != -1)
+            removeLocation(index);
+
+        return index;
+
+    }
+
+    public void setDistance(int origin, int destination, double distance) {
+        if (origin != destination)
+            distances[origin * capacity + destination] = distance;
+    }
+
+    public void setDemand(int index, double demand) {
+        demands[index] = demand;
+    }
+
+    /**
+     * Combine both directions of every pair of a single location, the rest of the matrix is left as is
+     * @param index index of a live location
+     * @param policy how the two directions of a pair are combined
+     */
+    public void symmetrize(int index, @NonNull SymmetricDistanceMatrix.Policy policy) {
+
+        for (int i = 0; i < size; i++) {
+
+            if (i == index || locations[i] == null)
+                continue;
+
+            // The new location is the origin of the first listed direction
+            double distance = SymmetricDistanceMatrix.combine(getDistance(index, i), getDistance(i, index), policy);
+
+            distances[index * capacity + i] = distance;
+            distances[i * capacity + index] = distance;
+
+        }
+
+    }
+
+    /**
+     * @return true if the slot holds no location
+     */
+    public boolean isRemoved(int index) {
+        return locations[index] == null;
+    }
+
+    /**
+     * @return the number of live locations, tombstones excluded
+     */
+    public int getLocationCount() {
+        return size - freeSlotCount;
+    }
+
+    /**
+     * View of the live locations, in slot order, to be solved. The view reads this matrix and must
+     * not outlive the next add or remove.
+     * @return a SubMatrix whose parent indices are the slots of this matrix
+     */
+    @NonNull
+    public SubMatrix newLiveView() {
+
+        int[] slots = new int[getLocationCount()];
+        int count = 0;
+
+        for (int i = 0; i < size; i++)
+            if (locations[i] != null)
+                slots[count++] = i;
+
+        return new SubMatrix(this, slots);
+
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the Location of a slot, null for a tombstone
+     */
+    @Override
+    public Location getLocation(int index) {
+        return locations[index];
+    }
+
+    @Override
+    public int indexOf(Location location) {
+        Integer index = indices.get(location);
+        return index != null ? index : -1;
+    }
+
+    @Override
+    public double getDemand(int index) {
+        return demands[index];
+    }
+
+    @Override
+    public double getDistance(int origin, int destination) {
+        return distances[origin * capacity + destination];
+    }
+
+    @Override
+    public boolean hasDistance(int origin, int destination) {
+        return getDistance(origin, destination) != Double.POSITIVE_INFINITY;
+    }
+
+    private void grow() {
+
+        int newCapacity = capacity + Math.max(DEFAULT_CAPACITY, capacity >> 2);
+
+        long cells = (long) newCapacity * newCapacity;
+        if (cells > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many locations for a MutableDistanceMatrix: " + (size + 1));
+
+        double[] newDistances = new double[(int) cells];
+
+        Arrays.fill(newDistances, Double.POSITIVE_INFINITY);
+
+        for (int i = 0; i < size; i++)
+            System.arraycopy(distances, i * capacity, newDistances, i * newCapacity, size);
+
+        locations = Arrays.copyOf(locations, newCapacity);
+        demands = Arrays.copyOf(demands, newCapacity);
+        freeSlots = Arrays.copyOf(freeSlots, newCapacity);
+        distances = newDistances;
+        capacity = newCapacity;
+
+    }
+
+}
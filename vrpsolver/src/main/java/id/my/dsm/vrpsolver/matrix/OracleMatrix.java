@@ -0,0 +1,92 @@
+package id.my.dsm.vrpsolver.matrix;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.model.Location;
+
+/**
+ * {@link IndexedMatrix} that asks a {@link DistanceOracle} for each pair on demand and memoizes
+ * the results in a bounded, direct-mapped cache of primitive arrays. A pair that collides with
+ * another simply replaces it, so memory stays fixed no matter how many pairs are inspected.
+ */
+public class OracleMatrix extends AbstractIndexedMatrix {
+
+    public static final int DEFAULT_CACHE_CAPACITY = 1 << 16;
+
+    // Number of lock stripes guarding the cache
+    private static final int STRIPES = 64;
+
+    private static final long EMPTY = -1;
+
+    private final DistanceOracle distanceOracle;
+    private final long[] keys; // origin * size + destination
+    private final double[] values;
+    private final int mask;
+    private final Object[] locks;
+
+    public OracleMatrix(@NonNull List<Location> locations, @NonNull DistanceOracle distanceOracle) {
+        this(locations, distanceOracle, DEFAULT_CACHE_CAPACITY);
+    }
+
+    /**
+     * @param locations List of Location, defines the index of each location
+     * @param distanceOracle DistanceOracle to compute missed pairs
+     * @param cacheCapacity maximum number of memoized pairs, rounded up to a power of two
+     */
+    public OracleMatrix(@NonNull List<Location> locations, @NonNull DistanceOracle distanceOracle, int cacheCapacity) {
+        super(locations);
+        this.distanceOracle = distanceOracle;
+
+        int capacity = Integer.highestOneBit(Math.max(STRIPES, cacheCapacity) - 1) << 1;
+
+        this.keys = new long[capacity];
+        this.values = new double[capacity];
+        this.mask = capacity - 1;
+        this.locks = new Object[STRIPES];
+
+        Arrays.fill(keys, EMPTY);
+
+        for (int i = 0; i < STRIPES; i++)
+            locks[i] = new Object();
+    }
+
+    @Override
+    public double getDistance(int origin, int destination) {
+
+        if (origin == destination)
+            return 0;
+
+        long key = (long) origin * size + destination;
+        int slot = hash(key) & mask;
+        Object lock = locks[slot & (STRIPES - 1)];
+
+        synchronized (lock) {
+            if (keys[slot] == key)
+                return values[slot];
+        }
+
+        // Compute outside of the lock, the oracle might be slow
+        double distance = distanceOracle.getDistance(getLocation(origin), getLocation(destination));
+
+        synchronized (lock) {
+            keys[slot] = key;
+            values[slot] = distance;
+        }
+
+        return distance;
+
+    }
+
+    public DistanceOracle getDistanceOracle() {
+        return distanceOracle;
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+}
@@ -0,0 +1,73 @@
+package id.my.dsm.vrpsolver.matrix;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+import id.my.dsm.vrpsolver.model.Location;
+
+/**
+ * View of a subset of the locations of an {@link IndexedMatrix}, e.g. the sub-problem of a single
+ * depot. Distances and demands are read from the parent, nothing is copied but the index mapping.
+ */
+public class SubMatrix implements IndexedMatrix {
+
+    private final IndexedMatrix parent;
+    private final int[] parentIndices; // Index in the parent of each index of this matrix
+    private final int[] indices; // Index in this matrix of each parent index, -1 if not a part of it
+
+    /**
+     * @param parent        IndexedMatrix to read from
+     * @param parentIndices indices in the parent, their order defines the indices of this matrix
+     */
+    public SubMatrix(@NonNull IndexedMatrix parent, @NonNull int[] parentIndices) {
+        this.parent = parent;
+        this.parentIndices = parentIndices.clone();
+        this.indices = new int[parent.size()];
+
+        Arrays.fill(indices, -1);
+
+        for (int i = 0; i < this.parentIndices.length; i++)
+            indices[this.parentIndices[i]] = i;
+    }
+
+    /**
+     * @param index index in this matrix
+     * @return the index of the same location in the parent
+     */
+    public int getParentIndex(int index) {
+        return parentIndices[index];
+    }
+
+    @Override
+    public int size() {
+        return parentIndices.length;
+    }
+
+    @Override
+    public Location getLocation(int index) {
+        return parent.getLocation(parentIndices[index]);
+    }
+
+    @Override
+    public int indexOf(Location location) {
+        int index = parent.indexOf(location);
+        return index != -1 ? indices[index] : -1;
+    }
+
+    @Override
+    public double getDemand(int index) {
+        return parent.getDemand(parentIndices[index]);
+    }
+
+    @Override
+    public double getDistance(int origin, int destination) {
+        return parent.getDistance(parentIndices[origin], parentIndices[destination]);
+    }
+
+    @Override
+    public boolean hasDistance(int origin, int destination) {
+        return parent.hasDistance(parentIndices[origin], parentIndices[destination]);
+    }
+
+}
@@ -0,0 +1,143 @@
+package id.my.dsm.vrpsolver.matrix;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.MatrixElement;
+
+/**
+ * Symmetric distance matrix that stores only the upper triangle (origin &lt; destination) in a flat
+ * double array, half the memory of a {@link DistanceMatrix}. The diagonal is always 0.
+ * Missing pairs are stored as {@link Double#POSITIVE_INFINITY}.
+ */
+public class SymmetricDistanceMatrix extends AbstractIndexedMatrix {
+
+    /**
+     * How the two directions of a pair are combined into a single distance. A missing direction
+     * is ignored by every policy.
+     */
+    public enum Policy {
+        UPPER, // Copy the upper triangle (origin < destination) to the lower
+        MIN,
+        MAX,
+        AVERAGE
+    }
+
+    private final double[] distances; // Upper triangle, row by row
+    private final int[] rowOffsets; // Position of (row, 0) in distances, only valid for columns > row
+
+    public SymmetricDistanceMatrix(@NonNull List<Location> locations) {
+        super(locations);
+
+        long cells = (long) size * (size - 1) / 2;
+        if (cells > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many locations for a SymmetricDistanceMatrix: " + size);
+
+        this.distances = new double[(int) cells];
+        this.rowOffsets = new int[size];
+
+        for (int i = 0; i < size; i++)
+            rowOffsets[i] = (int) ((long) i * (2L * size - i - 1) / 2 - i - 1);
+
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+    }
+
+    @Override
+    public double getDistance(int origin, int destination) {
+
+        if (origin == destination)
+            return 0;
+
+        return origin < destination
+                ? distances[rowOffsets[origin] + destination]
+                : distances[rowOffsets[destination] + origin];
+
+    }
+
+    /**
+     * Set the distance of both directions of a pair
+     * @param origin index of the origin
+     * @param destination index of the destination
+     * @param distance distance between both locations
+     */
+    public void setDistance(int origin, int destination, double distance) {
+
+        if (origin == destination)
+            return;
+
+        if (origin < destination)
+            distances[rowOffsets[origin] + destination] = distance;
+        else
+            distances[rowOffsets[destination] + origin] = distance;
+
+    }
+
+    /**
+     * Symmetrize a matrix in a single pass over its upper triangle
+     * @param matrix any IndexedMatrix
+     * @param policy how the two directions of a pair are combined
+     * @return a SymmetricDistanceMatrix with the same locations and demands
+     */
+    @NonNull
+    public static SymmetricDistanceMatrix symmetrize(@NonNull IndexedMatrix matrix, @NonNull Policy policy) {
+
+        int size = matrix.size();
+
+        Location[] locations = new Location[size];
+        for (int i = 0; i < size; i++)
+            locations[i] = matrix.getLocation(i);
+
+        SymmetricDistanceMatrix symmetricMatrix = new SymmetricDistanceMatrix(Arrays.asList(locations));
+
+        for (int i = 0; i < size; i++) {
+
+            symmetricMatrix.setDemand(i, matrix.getDemand(i));
+
+            for (int j = i + 1; j < size; j++)
+                symmetricMatrix.distances[symmetricMatrix.rowOffsets[i] + j] = combine(matrix.getDistance(i, j), matrix.getDistance(j, i), policy);
+
+        }
+
+        return symmetricMatrix;
+
+    }
+
+    /**
+     * Adapt and symmetrize a List of {@link MatrixElement}
+     * @param matrixElements List of MatrixElement
+     * @param places List of Location, defines the index of each location
+     * @param policy how the two directions of a pair are combined
+     * @return a SymmetricDistanceMatrix
+     */
+    @NonNull
+    public static SymmetricDistanceMatrix fromMatrixElements(@NonNull List<MatrixElement> matrixElements, @NonNull List<Location> places, @NonNull Policy policy) {
+        return symmetrize(DistanceMatrix.fromMatrixElements(matrixElements, places), policy);
+    }
+
+    static double combine(double upper, double lower, Policy policy) {
+
+        if (upper == Double.POSITIVE_INFINITY)
+            return lower;
+
+        if (lower == Double.POSITIVE_INFINITY)
+            return upper;
+
+        switch (policy) {
+            case UPPER:
+                return upper;
+            case MIN:
+                return Math.min(upper, lower);
+            case MAX:
+                return Math.max(upper, lower);
+            case AVERAGE:
+                return (upper + lower) / 2;
+            default:
+                throw new IllegalStateException("Unexpected Policy value: " + policy);
+        }
+
+    }
+
+}
@@ -17,6 +17,11 @@ public class Location {
     private Profile profile;
     private double demands; // Number of demands in capacitated vrp
 
+    // Time window, in the unit of the matrix durations
+    private double readyTime = 0; // Earliest service start, a vehicle arriving earlier waits
+    private double dueTime = Double.MAX_VALUE; // Latest service start
+    private double serviceDuration = 0; // Time spent at the location
+
     public Location() {
     }
 
@@ -61,6 +66,40 @@ public class Location {
         this.demands = demands;
     }
 
+    public double getReadyTime() {
+        return readyTime;
+    }
+
+    public void setReadyTime(double readyTime) {
+        this.readyTime = readyTime;
+    }
+
+    public double getDueTime() {
+        return dueTime;
+    }
+
+    public void setDueTime(double dueTime) {
+        this.dueTime = dueTime;
+    }
+
+    /**
+     * Set the time window in which the service must start
+     * @param readyTime earliest service start
+     * @param dueTime latest service start
+     */
+    public void setTimeWindow(double readyTime, double dueTime) {
+        this.readyTime = readyTime;
+        this.dueTime = dueTime;
+    }
+
+    public double getServiceDuration() {
+        return serviceDuration;
+    }
+
+    public void setServiceDuration(double serviceDuration) {
+        this.serviceDuration = serviceDuration;
+    }
+
     public static class Toolbox {
 
         /**
@@ -16,6 +16,7 @@ public class Solution extends Distance {
     private double demand = 0;
     private int tripIndex;
     private String vehicleId;
+    private double serviceStartTime = 0; // Service start at the destination, waiting included. Only set with time windows
 
     // Used for deserialization
     public Solution() {
@@ -58,6 +59,14 @@ public class Solution extends Distance {
         this.vehicleId = vehicleId;
     }
 
+    public double getServiceStartTime() {
+        return serviceStartTime;
+    }
+
+    public void setServiceStartTime(double serviceStartTime) {
+        this.serviceStartTime = serviceStartTime;
+    }
+
     public static Solution fromMatrixElement(MatrixElement matrixElement) {
         return new Solution(matrixElement.getOrigin(), matrixElement.getDestination(), matrixElement.getDistance());
     }
@@ -65,7 +74,7 @@ public class Solution extends Distance {
     public static class Toolbox {
 
         /**
-         * Filter List of solution MatrixElement by vehicleId
+         * Filter List of solution MatrixElement by vehicleId, in O(n). See {@link SolutionSet#getVehicleSolutions(String)} for repeated queries.
          * @param solutionDistances List of solution Distances
          * @param vehicleId String of vehicleId
          * @return List of solution Distances filtered
@@ -85,7 +94,7 @@ public class Solution extends Distance {
         }
 
         /**
-         * Filter List of solution MatrixElement by tripIndex
+         * Filter List of solution MatrixElement by tripIndex, in O(n). See {@link SolutionSet#getTrip(int)} for repeated queries.
          * @param solutionDistances List of solution MatrixElement
          * @param tripIndex int of tripIndex
          * @return List of solution MatrixElement filtered
@@ -0,0 +1,458 @@
+package id.my.dsm.vrpsolver.model;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * List of {@link Solution} indexed by trip and by vehicle once, when it is built, instead of
+ * scanning the legs on every query like {@link Solution.Toolbox}. The legs of a trip, the trips of
+ * a vehicle and their {@link Totals} are then read in O(1).
+ * <p>
+ * A trip starts at the first leg, after a leg back to the origin of the trip, at a leg that does
+ * not leave from the previous destination (a one way trip ended) or at a vehicle change. Trips are
+ * numbered in order and the trip index of every leg is set accordingly, as
+ * {@link Solution.Toolbox#assignTripIndex(List)} does. Editing a trip with {@link #setTrip(int, List)}
+ * or {@link #addTrip(List)} updates the totals of the trip, of its vehicle and of the whole set.
+ * Read-only as a List, not thread-safe.
+ */
+public class SolutionSet extends AbstractList<Solution> implements RandomAccess {
+
+    /**
+     * Distance, travel time, load and number of stops of a trip, a vehicle or the whole set.
+     * Live, the values follow the edits of the set.
+     */
+    public static final class Totals {
+
+        private double distance;
+        private double duration;
+        private double load;
+        private int stopCount;
+
+        public double getDistance() {
+            return distance;
+        }
+
+        /**
+         * Travel time, the sum of the leg durations
+         */
+        public double getDuration() {
+            return duration;
+        }
+
+        public double getLoad() {
+            return load;
+        }
+
+        public int getStopCount() {
+            return stopCount;
+        }
+
+        private void add(Totals totals, int sign) {
+            distance += sign * totals.distance;
+            duration += sign * totals.duration;
+            load += sign * totals.load;
+            stopCount += sign * totals.stopCount;
+        }
+
+        private void clear() {
+            distance = 0;
+            duration = 0;
+            load = 0;
+            stopCount = 0;
+        }
+
+    }
+
+    private final ArrayList<List<Solution>> trips = new ArrayList<>();
+    private final ArrayList<String> tripVehicleIds = new ArrayList<>();
+    private final ArrayList<Totals> tripTotals = new ArrayList<>();
+
+    // Vehicles with a trip. Their Totals are kept once emptied, so that they stay live
+    private final HashMap<String, List<Integer>> tripsByVehicle = new HashMap<>();
+    private final HashMap<String, Totals> vehicleTotals = new HashMap<>();
+    private final Totals totals = new Totals();
+    private final LinkedHashSet<String> vehicleIds = new LinkedHashSet<>(); // In the order of their first trip
+
+    // Number of visits of each location to serve, the set is complete once none is 0
+    private final HashMap<Location, Integer> visits = new HashMap<>();
+    private int unservedCount;
+
+    private int[] legOffsets = new int[]{0}; // First leg of each trip in this list, then the leg count
+    private boolean isIndexStale = false;
+    private int version; // Incremented on every edit, the vehicle views rebuild their offsets after one
+
+    /**
+     * Index solutions, e.g. the result of an optimization
+     * @param solutions List of Solution grouped by trip
+     */
+    public SolutionSet(@NonNull List<Solution> solutions) {
+        this(solutions, Collections.<Location>emptyList());
+    }
+
+    /**
+     * Index solutions and count the locations they leave unserved, e.g. once a time limit cut
+     * the optimization short
+     * @param solutions List of Solution grouped by trip
+     * @param locations Locations the solutions should serve, e.g. every destination
+     */
+    public SolutionSet(@NonNull List<Solution> solutions, @NonNull Collection<Location> locations) {
+
+        for (Location location : locations)
+            visits.put(location, 0);
+
+        unservedCount = visits.size();
+
+        int start = 0;
+        int size = solutions.size();
+
+        for (int i = 1; i <= size; i++) {
+
+            if (i < size && !isTripStart(solutions.get(start), solutions.get(i - 1), solutions.get(i)))
+                continue;
+
+            addTrip(solutions.subList(start, i));
+            start = i;
+
+        }
+
+    }
+
+    private static boolean isTripStart(Solution first, Solution previous, Solution solution) {
+        return previous.getDestination() == first.getOrigin()
+                || solution.getOrigin() != previous.getDestination()
+                || !equals(solution.getVehicleId(), previous.getVehicleId());
+    }
+
+    /**
+     * Append a trip
+     * @param legs List of Solution of a single trip, copied
+     * @return the index of the trip
+     */
+    public int addTrip(@NonNull List<Solution> legs) {
+
+        int trip = trips.size();
+
+        trips.add(Collections.<Solution>emptyList());
+        tripVehicleIds.add(null);
+        tripTotals.add(new Totals());
+
+        setTrip(trip, legs);
+
+        return trip;
+
+    }
+
+    /**
+     * Replace the legs of a trip, e.g. once reordered. An emptied trip keeps its index.
+     * @param trip index of the trip
+     * @param legs List of Solution of a single trip, copied
+     */
+    public void setTrip(int trip, @NonNull List<Solution> legs) {
+
+        // Take the old trip out of its vehicle
+        String vehicleId = tripVehicleIds.get(trip);
+        Totals oldTotals = tripTotals.get(trip);
+
+        if (vehicleId != null) {
+
+            vehicleTotals.get(vehicleId).add(oldTotals, -1);
+
+            List<Integer> vehicleTrips = tripsByVehicle.get(vehicleId);
+            vehicleTrips.remove(Integer.valueOf(trip));
+
+            if (vehicleTrips.isEmpty())
+                tripsByVehicle.remove(vehicleId);
+
+        }
+
+        totals.add(oldTotals, -1);
+
+        for (Solution leg : trips.get(trip))
+            visit(leg.getDestination(), -1);
+
+        // Then index the new one, in the same Totals so that it stays live
+        List<Solution> tripLegs = Collections.unmodifiableList(new ArrayList<>(legs));
+        Totals newTotals = oldTotals;
+        Location origin = tripLegs.isEmpty() ? null : tripLegs.get(0).getOrigin();
+
+        newTotals.clear();
+
+        for (Solution leg : tripLegs) {
+
+            leg.setTripIndex(trip);
+
+            newTotals.distance += leg.getDistance();
+            newTotals.duration += leg.getDuration();
+            newTotals.load += leg.getDemand();
+
+            if (leg.getDestination() != origin)
+                newTotals.stopCount++;
+
+            visit(leg.getDestination(), 1);
+
+        }
+
+        vehicleId = tripLegs.isEmpty() ? null : tripLegs.get(0).getVehicleId();
+
+        trips.set(trip, tripLegs);
+        tripVehicleIds.set(trip, vehicleId);
+        totals.add(newTotals, 1);
+
+        if (vehicleId != null) {
+
+            List<Integer> vehicleTrips = tripsByVehicle.get(vehicleId);
+
+            if (vehicleTrips == null) {
+                vehicleTrips = new ArrayList<>();
+                tripsByVehicle.put(vehicleId, vehicleTrips);
+            }
+
+            if (!vehicleTotals.containsKey(vehicleId))
+                vehicleTotals.put(vehicleId, new Totals());
+
+            // Keep the trips of a vehicle in order
+            int position = Collections.binarySearch(vehicleTrips, trip);
+            vehicleTrips.add(-position - 1, trip);
+            vehicleTotals.get(vehicleId).add(newTotals, 1);
+
+        }
+
+        isIndexStale = true;
+        version++;
+
+    }
+
+    public int getTripCount() {
+        return trips.size();
+    }
+
+    /**
+     * @param trip index of the trip
+     * @return read-only List of Solution of the trip
+     */
+    @NonNull
+    public List<Solution> getTrip(int trip) {
+        return trips.get(trip);
+    }
+
+    /**
+     * @return id of the vehicle of a trip, null for an emptied trip
+     */
+    @Nullable
+    public String getTripVehicleId(int trip) {
+        return tripVehicleIds.get(trip);
+    }
+
+    @NonNull
+    public Totals getTripTotals(int trip) {
+        return tripTotals.get(trip);
+    }
+
+    /**
+     * @return ids of the vehicles with a trip, in the order of their first trip
+     */
+    @NonNull
+    public Set<String> getVehicleIds() {
+        getLegOffsets(); // Rebuilds the vehicle order too
+        return Collections.unmodifiableSet(vehicleIds);
+    }
+
+    /**
+     * @param vehicleId id of a Vehicle
+     * @return read-only List of the trip indices of the vehicle, in order
+     */
+    @NonNull
+    public List<Integer> getVehicleTrips(@NonNull String vehicleId) {
+        List<Integer> vehicleTrips = tripsByVehicle.get(vehicleId);
+        return vehicleTrips != null ? Collections.unmodifiableList(vehicleTrips) : Collections.<Integer>emptyList();
+    }
+
+    /**
+     * The same legs as {@link Solution.Toolbox#filterByVehicleId(List, String)}, without any scan.
+     * A leg is read in O(log trips of the vehicle), the offsets of its trips are rebuilt once after
+     * any number of edits.
+     * @param vehicleId id of a Vehicle
+     * @return read-only List of Solution of every trip of the vehicle, backed by this set
+     */
+    @NonNull
+    public List<Solution> getVehicleSolutions(@NonNull String vehicleId) {
+        return new VehicleSolutions(vehicleId);
+    }
+
+    /**
+     * @return Totals of a vehicle, live, null if it has no trip
+     */
+    @Nullable
+    public Totals getVehicleTotals(@NonNull String vehicleId) {
+        return tripsByVehicle.containsKey(vehicleId) ? vehicleTotals.get(vehicleId) : null;
+    }
+
+    /**
+     * @return Totals of the whole set
+     */
+    @NonNull
+    public Totals getTotals() {
+        return totals;
+    }
+
+    /**
+     * @return number of locations given on construction that no trip visits
+     */
+    public int getUnservedCount() {
+        return unservedCount;
+    }
+
+    /**
+     * @return locations given on construction that no trip visits, in O(n)
+     */
+    @NonNull
+    public List<Location> getUnservedLocations() {
+
+        ArrayList<Location> unserved = new ArrayList<>(unservedCount);
+
+        for (Location location : visits.keySet())
+            if (visits.get(location) == 0)
+                unserved.add(location);
+
+        return unserved;
+
+    }
+
+    private void visit(Location location, int count) {
+
+        Integer visitCount = visits.get(location);
+
+        // Not a location to serve, e.g. the depot
+        if (visitCount == null)
+            return;
+
+        if (visitCount == 0)
+            unservedCount--;
+
+        visitCount += count;
+        visits.put(location, visitCount);
+
+        if (visitCount == 0)
+            unservedCount++;
+
+    }
+
+    @Override
+    public Solution get(int index) {
+
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+
+        // Trip of the leg, the last of the trips starting at or before it so empty trips are skipped
+        int trip = Arrays.binarySearch(legOffsets, 0, trips.size() + 1, index);
+        trip = trip < 0 ? -trip - 2 : trip;
+
+        while (legOffsets[trip + 1] == index)
+            trip++;
+
+        return trips.get(trip).get(index - legOffsets[trip]);
+
+    }
+
+    @Override
+    public int size() {
+        return getLegOffsets()[trips.size()];
+    }
+
+    private int[] getLegOffsets() {
+
+        // Rebuilt once after any number of edits, O(trips)
+        if (isIndexStale) {
+
+            if (legOffsets.length < trips.size() + 1)
+                legOffsets = new int[trips.size() + 1];
+
+            for (int t = 0; t < trips.size(); t++)
+                legOffsets[t + 1] = legOffsets[t] + trips.get(t).size();
+
+            vehicleIds.clear();
+            for (String vehicleId : tripVehicleIds)
+                if (vehicleId != null)
+                    vehicleIds.add(vehicleId);
+
+            isIndexStale = false;
+
+        }
+
+        return legOffsets;
+
+    }
+
+    private static boolean equals(@Nullable String a, @Nullable String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Legs of the trips of a vehicle, in trip order
+     */
+    private final class VehicleSolutions extends AbstractList<Solution> implements RandomAccess {
+
+        private final String vehicleId;
+        private List<Integer> vehicleTrips = Collections.emptyList();
+        private int[] offsets = new int[]{0}; // First leg of each trip of the vehicle, then the leg count
+        private int offsetsVersion = -1;
+
+        VehicleSolutions(String vehicleId) {
+            this.vehicleId = vehicleId;
+        }
+
+        @Override
+        public Solution get(int index) {
+
+            int[] offsets = getOffsets();
+
+            if (index < 0 || index >= offsets[vehicleTrips.size()])
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + offsets[vehicleTrips.size()]);
+
+            // The trips of a vehicle are never empty, its last trip starting at or before the leg
+            int k = Arrays.binarySearch(offsets, 0, vehicleTrips.size(), index);
+            k = k < 0 ? -k - 2 : k;
+
+            return trips.get(vehicleTrips.get(k)).get(index - offsets[k]);
+
+        }
+
+        @Override
+        public int size() {
+            return getOffsets()[vehicleTrips.size()];
+        }
+
+        private int[] getOffsets() {
+
+            if (offsetsVersion != version) {
+
+                vehicleTrips = getVehicleTrips(vehicleId);
+
+                if (offsets.length < vehicleTrips.size() + 1)
+                    offsets = new int[vehicleTrips.size() + 1];
+
+                for (int k = 0; k < vehicleTrips.size(); k++)
+                    offsets[k + 1] = offsets[k] + trips.get(vehicleTrips.get(k)).size();
+
+                offsetsVersion = version;
+
+            }
+
+            return offsets;
+
+        }
+
+    }
+
+}
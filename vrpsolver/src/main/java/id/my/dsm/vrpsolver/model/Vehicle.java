@@ -1,5 +1,6 @@
 package id.my.dsm.vrpsolver.model;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.util.List;
@@ -14,6 +15,9 @@ public class Vehicle {
     // Constraints
     private double capacity;
     private int dispatchLimit;
+    private double shiftStart; // Earliest departure from the depot, in the unit of the matrix durations
+    private double shiftEnd = Double.MAX_VALUE; // Latest return to the depot
+    private String depotId; // Id of the source Location the vehicle belongs to, null if shared by every depot
 
     // Used for deserialization
     public Vehicle() {
@@ -24,6 +28,9 @@ public class Vehicle {
         this.isDefault = builder.isDefault;
         this.capacity = builder.capacity;
         this.dispatchLimit = builder.dispatchLimit;
+        this.shiftStart = builder.shiftStart;
+        this.shiftEnd = builder.shiftEnd;
+        this.depotId = builder.depotId;
     }
 
     public String getId() {
@@ -58,6 +65,31 @@ public class Vehicle {
         this.dispatchLimit = dispatchLimit;
     }
 
+    public double getShiftStart() {
+        return shiftStart;
+    }
+
+    public void setShiftStart(double shiftStart) {
+        this.shiftStart = shiftStart;
+    }
+
+    public double getShiftEnd() {
+        return shiftEnd;
+    }
+
+    public void setShiftEnd(double shiftEnd) {
+        this.shiftEnd = shiftEnd;
+    }
+
+    @Nullable
+    public String getDepotId() {
+        return depotId;
+    }
+
+    public void setDepotId(@Nullable String depotId) {
+        this.depotId = depotId;
+    }
+
     public static class Builder {
 
         private boolean isDefault;
@@ -65,6 +97,9 @@ public class Vehicle {
         // Constraints
         private double capacity = 1;
         private int dispatchLimit = 1000;
+        private double shiftStart = 0;
+        private double shiftEnd = Double.MAX_VALUE;
+        private String depotId;
 
         public Builder() {
         }
@@ -82,6 +117,26 @@ public class Vehicle {
             return this;
         }
 
+        /**
+         * The trip leaves the depot at shiftStart at the earliest and is back by shiftEnd. A vehicle
+         * with a shift, or solved with time windows, must have a dispatch limit of 1.
+         */
+        public Builder withShift(double shiftStart, double shiftEnd) {
+            this.shiftStart = shiftStart;
+            this.shiftEnd = shiftEnd;
+            return this;
+        }
+
+        /**
+         * Only dispatch the vehicle from a depot when solving with many depots, otherwise its
+         * dispatches are shared by every depot
+         * @param depot a source Location
+         */
+        public Builder withDepot(@NonNull Location depot) {
+            this.depotId = depot.getId();
+            return this;
+        }
+
         public Vehicle build() {
             return new Vehicle(this);
         }
@@ -0,0 +1,349 @@
+package id.my.dsm.vrpsolver.spatial;
+
+import androidx.annotation.NonNull;
+
+import java.util.BitSet;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.model.LatLngAlt;
+import id.my.dsm.vrpsolver.model.Location;
+
+/**
+ * Static k-d tree over the {@link LatLngAlt} of a list of locations, indexed by the location
+ * position in that list. Coordinates are projected onto the unit sphere so the Euclidean chord
+ * orders pairs exactly like the great-circle distance.
+ * Supports "nearest remaining locations with demand &lt;= capacity" queries and deletion in
+ * O(log n): every tree node keeps the minimum demand of the remaining locations below it, which
+ * also prunes subtrees that can not fit the capacity.
+ * Not thread-safe, a tree is meant to be owned by a single solve.
+ */
+public class KdTree {
+
+    private static final int NONE = -1;
+
+    private final int size;
+    private final double[][] coordinates; // Axis, location index
+    private final double[] demands;
+
+    // Tree nodes by tree position
+    private final int[] nodes; // Location index of each tree position
+    private final int[] positions; // Tree position of each location index
+    private final int[] left;
+    private final int[] right;
+    private final int[] parent;
+    private final byte[] axes;
+    private final double[] minDemands; // Minimum demand of the remaining locations in the subtree
+    private final BitSet removed;
+    private final int root;
+
+    // Query state, kept in fields so a query does not allocate
+    private double queryX;
+    private double queryY;
+    private double queryZ;
+    private double queryCapacity;
+    private int queryExcluded;
+    private int[] nearest = new int[1]; // Location indices found so far, nearest first
+    private double[] nearestDistances = new double[1];
+    private int nearestCount;
+
+    public KdTree(@NonNull List<Location> locations) {
+
+        this.size = locations.size();
+        this.coordinates = new double[3][size];
+        this.demands = new double[size];
+
+        for (int i = 0; i < size; i++) {
+
+            LatLngAlt latLngAlt = locations.get(i).getLatLngAlt();
+
+            double latitude = Math.toRadians(latLngAlt.getLatitude());
+            double longitude = Math.toRadians(latLngAlt.getLongitude());
+            double cosLatitude = Math.cos(latitude);
+
+            coordinates[0][i] = cosLatitude * Math.cos(longitude);
+            coordinates[1][i] = cosLatitude * Math.sin(longitude);
+            coordinates[2][i] = Math.sin(latitude);
+            demands[i] = locations.get(i).getDemands();
+
+        }
+
+        this.nodes = new int[size];
+        this.positions = new int[size];
+        this.left = new int[size];
+        this.right = new int[size];
+        this.parent = new int[size];
+        this.axes = new byte[size];
+        this.minDemands = new double[size];
+        this.removed = new BitSet(size);
+
+        for (int i = 0; i < size; i++)
+            nodes[i] = i;
+
+        this.root = build(0, size, NONE);
+
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove a location so it is never returned again
+     * @param index index of the location
+     */
+    public void remove(int index) {
+
+        int position = positions[index];
+
+        if (removed.get(position))
+            return;
+
+        removed.set(position);
+
+        // Refresh the minimum demand up to the root, stop once it no longer changes
+        for (int p = position; p != NONE; p = parent[p]) {
+
+            double minDemand = computeMinDemand(p);
+
+            if (p != position && minDemand == minDemands[p])
+                break;
+
+            minDemands[p] = minDemand;
+
+        }
+
+    }
+
+    public boolean isRemoved(int index) {
+        return removed.get(positions[index]);
+    }
+
+    /**
+     * Find the nearest remaining location from a location that fits the capacity.
+     * Ties are broken by the lowest location index.
+     * @param from index of the location to search from, may be removed
+     * @param capacity maximum demand
+     * @return index of the nearest location or -1 if none fits
+     */
+    public int findNearest(int from, double capacity) {
+
+        search(from, capacity, NONE);
+
+        return nearestCount > 0 ? nearest[0] : NONE;
+
+    }
+
+    /**
+     * Find the k nearest remaining locations from a location that fit the capacity, the location
+     * itself excluded. Ties are broken by the lowest location index.
+     * @param from index of the location to search from, may be removed
+     * @param capacity maximum demand
+     * @param nearest filled with the location indices, nearest first, k is its length
+     * @return number of locations found, at most k
+     */
+    public int findNearest(int from, double capacity, @NonNull int[] nearest) {
+
+        int[] buffer = this.nearest;
+        this.nearest = nearest;
+
+        if (nearestDistances.length < nearest.length)
+            nearestDistances = new double[nearest.length];
+
+        search(from, capacity, from);
+
+        this.nearest = buffer;
+
+        return nearestCount;
+
+    }
+
+    private void search(int from, double capacity, int excluded) {
+
+        queryX = coordinates[0][from];
+        queryY = coordinates[1][from];
+        queryZ = coordinates[2][from];
+        queryCapacity = capacity;
+        queryExcluded = excluded;
+        nearestCount = 0;
+
+        if (nearest.length > 0)
+            search(root);
+
+    }
+
+    private void search(int position) {
+
+        if (position == NONE || minDemands[position] > queryCapacity)
+            return;
+
+        int index = nodes[position];
+
+        if (!removed.get(position) && index != queryExcluded && demands[index] <= queryCapacity) {
+
+            double dx = coordinates[0][index] - queryX;
+            double dy = coordinates[1][index] - queryY;
+            double dz = coordinates[2][index] - queryZ;
+
+            offer(index, dx * dx + dy * dy + dz * dz);
+
+        }
+
+        int axis = axes[position];
+        double difference = coordinates[axis][index] - getQuery(axis);
+
+        int near = difference > 0 ? left[position] : right[position];
+        int far = difference > 0 ? right[position] : left[position];
+
+        search(near);
+
+        if (difference * difference <= getWorstDistance())
+            search(far);
+
+    }
+
+    /**
+     * Keep a location if it is nearer than the farthest one found so far, in O(k)
+     */
+    private void offer(int index, double distance) {
+
+        int k = nearest.length;
+        int last = nearestCount - 1;
+
+        if (nearestCount == k && (distance > nearestDistances[last] || (distance == nearestDistances[last] && index > nearest[last])))
+            return;
+
+        int p = nearestCount < k ? nearestCount++ : last;
+
+        // Insertion into the sorted arrays
+        while (p > 0 && (distance < nearestDistances[p - 1] || (distance == nearestDistances[p - 1] && index < nearest[p - 1]))) {
+            nearest[p] = nearest[p - 1];
+            nearestDistances[p] = nearestDistances[p - 1];
+            p--;
+        }
+
+        nearest[p] = index;
+        nearestDistances[p] = distance;
+
+    }
+
+    /**
+     * Squared chord of the farthest location kept, infinite until k are found
+     */
+    private double getWorstDistance() {
+        return nearestCount < nearest.length ? Double.POSITIVE_INFINITY : nearestDistances[nearestCount - 1];
+    }
+
+    private double getQuery(int axis) {
+        switch (axis) {
+            case 0:
+                return queryX;
+            case 1:
+                return queryY;
+            default:
+                return queryZ;
+        }
+    }
+
+    private double computeMinDemand(int position) {
+
+        double minDemand = removed.get(position) ? Double.POSITIVE_INFINITY : demands[nodes[position]];
+
+        if (left[position] != NONE)
+            minDemand = Math.min(minDemand, minDemands[left[position]]);
+
+        if (right[position] != NONE)
+            minDemand = Math.min(minDemand, minDemands[right[position]]);
+
+        return minDemand;
+
+    }
+
+    /**
+     * Build the subtree of nodes[from, to) split on the median of the widest axis
+     * @return tree position of the subtree root
+     */
+    private int build(int from, int to, int parentPosition) {
+
+        if (from >= to)
+            return NONE;
+
+        int axis = getWidestAxis(from, to);
+        int middle = (from + to) >>> 1;
+
+        select(coordinates[axis], from, to - 1, middle);
+
+        positions[nodes[middle]] = middle;
+        parent[middle] = parentPosition;
+        axes[middle] = (byte) axis;
+        left[middle] = build(from, middle, middle);
+        right[middle] = build(middle + 1, to, middle);
+        minDemands[middle] = computeMinDemand(middle);
+
+        return middle;
+
+    }
+
+    private int getWidestAxis(int from, int to) {
+
+        int widestAxis = 0;
+        double widestSpread = -1;
+
+        for (int axis = 0; axis < 3; axis++) {
+
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+
+            for (int i = from; i < to; i++) {
+                double value = coordinates[axis][nodes[i]];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+
+            if (max - min > widestSpread) {
+                widestAxis = axis;
+                widestSpread = max - min;
+            }
+
+        }
+
+        return widestAxis;
+
+    }
+
+    /**
+     * Quickselect nodes[low, high] so nodes[k] holds the k-th smallest value
+     */
+    private void select(double[] values, int low, int high, int k) {
+
+        while (low < high) {
+
+            double pivot = values[nodes[(low + high) >>> 1]];
+            int i = low;
+            int j = high;
+
+            while (i <= j) {
+                while (values[nodes[i]] < pivot)
+                    i++;
+                while (values[nodes[j]] > pivot)
+                    j--;
+                if (i <= j) {
+                    int swap = nodes[i];
+                    nodes[i] = nodes[j];
+                    nodes[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j)
+                high = j;
+            else if (k >= i)
+                low = i;
+            else
+                return;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,237 @@
+package id.my.dsm.vrpsolver;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import id.my.dsm.vrpsolver.enums.ClusteringMethod;
+import id.my.dsm.vrpsolver.enums.OptimizationMethod;
+import id.my.dsm.vrpsolver.event.OptimizationResponseError;
+import id.my.dsm.vrpsolver.event.OptimizationResponseListener;
+import id.my.dsm.vrpsolver.matrix.HaversineMatrixBuilder;
+import id.my.dsm.vrpsolver.model.LatLngAlt;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.SolutionSet;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+import static org.junit.Assert.*;
+
+public class DSMSolverTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void optimize_countsUnservedLocations() {
+
+        List<Location> places = TestInstances.createPlaces(40, 1);
+
+        // Two trips of 10 can not carry every demand
+        List<Vehicle> vehicles = Collections.singletonList(new Vehicle.Builder().withCapacity(10).withDispatchLimit(2).build());
+
+        SolutionSet solutions = new DSMSolver.OptimizationBuilder(new HaversineMatrixBuilder(places).build(), vehicles)
+                .withMethod(OptimizationMethod.NEAREST_NEIGHBOR)
+                .optimize();
+
+        HashSet<Location> served = new HashSet<>();
+        for (Solution solution : solutions)
+            served.add(solution.getDestination());
+
+        served.remove(places.get(0));
+
+        assertTrue(solutions.getUnservedCount() > 0);
+        assertEquals(places.size() - 1 - served.size(), solutions.getUnservedCount());
+
+        for (Location location : solutions.getUnservedLocations())
+            assertFalse(served.contains(location));
+
+    }
+
+    @Test
+    public void optimizeAsync_returnsSolutionSet() throws Exception {
+
+        List<Location> places = TestInstances.createPlaces(40, 2);
+        List<Vehicle> vehicles = Collections.singletonList(new Vehicle.Builder().withCapacity(20).withDispatchLimit(40).build());
+
+        for (OptimizationMethod method : OptimizationMethod.values()) {
+
+            List<Solution> solutions = new DSMSolver.OptimizationBuilder(new HaversineMatrixBuilder(places).build(), vehicles)
+                    .withMethod(method)
+                    .withTimeLimit(200)
+                    .optimizeAsync(DIRECT_EXECUTOR)
+                    .get();
+
+            assertTrue(solutions instanceof SolutionSet);
+            assertEquals(method.toString(), 0, ((SolutionSet) solutions).getUnservedCount());
+
+        }
+
+    }
+
+    @Test
+    public void optimize_sendsFailureThenThrows() throws Exception {
+
+        // No SOURCE place to dispatch from
+        List<Location> places = new ArrayList<>(TestInstances.createPlaces(20, 6));
+        places.set(0, new Location(new LatLngAlt(-6.2, 106.8), Location.Profile.DESTINATION, 1));
+
+        List<Vehicle> vehicles = Collections.singletonList(new Vehicle.Builder().withCapacity(20).withDispatchLimit(20).build());
+        final List<OptimizationResponseError> errors = new ArrayList<>();
+
+        DSMSolver solver = new DSMSolver.OptimizationBuilder(new HaversineMatrixBuilder(places).build(), vehicles)
+                .withListener(new OptimizationResponseListener() {
+                    @Override
+                    public void onOptimizationSuccess(List<Solution> solutions) {
+                        fail("no solution expected");
+                    }
+
+                    @Override
+                    public void onOptimizationFailed(OptimizationResponseError error) {
+                        errors.add(error);
+                    }
+                })
+                .build();
+
+        try {
+            solver.optimize();
+            fail("optimize() should throw");
+        } catch (IllegalStateException expected) {
+            assertEquals(Collections.singletonList(OptimizationResponseError.INVALID_INPUT), errors);
+        }
+
+        try {
+            solver.optimizeAsync(DIRECT_EXECUTOR).get();
+            fail("the future should throw");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+            assertEquals(2, errors.size());
+        }
+
+    }
+
+    @Test
+    public void shift_rejectsMultiTripVehicles() {
+
+        List<Location> places = TestInstances.createPlaces(20, 7);
+        List<Vehicle> vehicles = Collections.singletonList(new Vehicle.Builder().withCapacity(20).withDispatchLimit(2).withShift(0, 20000).build());
+
+        DSMSolver.OptimizationBuilder builder = new DSMSolver.OptimizationBuilder(new HaversineMatrixBuilder(places).build(), vehicles)
+                .withDurations(new HaversineMatrixBuilder(places).build());
+
+        try {
+            builder.build();
+            fail("build() should throw");
+        } catch (IllegalArgumentException expected) {
+        }
+
+    }
+
+    @Test
+    public void alnsMultiDepot_servesEveryDepot() {
+
+        List<Location> places = new ArrayList<>(TestInstances.createPlaces(61, 4));
+        places.add(new Location(new LatLngAlt(-6.1, 106.7), Location.Profile.SOURCE));
+        places.add(new Location(new LatLngAlt(-6.3, 106.9), Location.Profile.SOURCE));
+
+        List<Vehicle> vehicles = Collections.singletonList(new Vehicle.Builder().withCapacity(20).withDispatchLimit(60).build());
+
+        // Depots queued behind the others still get their share of the time limit
+        for (int multiStartCount : new int[]{1, 4}) {
+
+            SolutionSet solutions = new DSMSolver.OptimizationBuilder(new HaversineMatrixBuilder(places).build(), vehicles)
+                    .withMethod(OptimizationMethod.ALNS)
+                    .withInitialMethod(OptimizationMethod.NEAREST_NEIGHBOR)
+                    .withMultiDepot(true)
+                    .withMultiStart(multiStartCount)
+                    .withTimeLimit(500)
+                    .optimize();
+
+            assertEquals("multi-start " + multiStartCount, 0, solutions.getUnservedCount());
+
+        }
+
+    }
+
+    @Test
+    public void alnsClusters_buildEveryCluster() {
+
+        List<Location> places = TestInstances.createPlaces(61, 5);
+        List<Vehicle> vehicles = Collections.singletonList(new Vehicle.Builder().withCapacity(20).withDispatchLimit(60).build());
+
+        // Clusters queued behind the others still build their routes before searching
+        for (OptimizationMethod initialMethod : new OptimizationMethod[]{OptimizationMethod.NEAREST_NEIGHBOR, OptimizationMethod.SAVING_MATRIX}) {
+
+            SolutionSet solutions = new DSMSolver.OptimizationBuilder(new HaversineMatrixBuilder(places).build(), vehicles)
+                    .withMethod(OptimizationMethod.ALNS)
+                    .withInitialMethod(initialMethod)
+                    .withClustering(ClusteringMethod.SWEEP, 10)
+                    .withTimeLimit(500)
+                    .optimize();
+
+            assertEquals(initialMethod.toString(), 0, solutions.getUnservedCount());
+            assertTrue(initialMethod + ": single stop trips", solutions.getTripCount() < 30);
+
+        }
+
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void staticListener_receivesEverySolverResponse() {
+
+        final AtomicReference<List<Solution>> response = new AtomicReference<>();
+
+        DSMSolver.setOnOptimizationResponseListener(new OptimizationResponseListener() {
+            @Override
+            public void onOptimizationSuccess(List<Solution> solutions) {
+                response.set(solutions);
+            }
+
+            @Override
+            public void onOptimizationFailed(OptimizationResponseError error) {
+            }
+        });
+
+        List<Location> places = TestInstances.createPlaces(20, 3);
+        List<Vehicle> vehicles = Collections.singletonList(new Vehicle.Builder().withCapacity(20).withDispatchLimit(20).build());
+
+        SolutionSet solutions = new DSMSolver.OptimizationBuilder(new HaversineMatrixBuilder(places).build(), vehicles).optimize();
+
+        // A mutable copy, as listeners always received
+        assertTrue(response.get() instanceof ArrayList);
+        assertNotSame(solutions, response.get());
+        assertEquals(solutions, response.get());
+
+        response.get().clear();
+        assertFalse(solutions.isEmpty());
+
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void deprecatedConstructor_explainsTheBuilder() {
+
+        DSMSolver solver = new DSMSolver();
+        assertNotNull(solver.getOptimizationMethod());
+
+        try {
+            solver.optimize();
+            fail("optimize() should throw");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("OptimizationBuilder"));
+        }
+
+    }
+
+}
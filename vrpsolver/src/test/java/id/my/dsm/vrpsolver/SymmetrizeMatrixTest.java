@@ -0,0 +1,87 @@
+package id.my.dsm.vrpsolver;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import id.my.dsm.vrpsolver.matrix.SymmetricDistanceMatrix;
+import id.my.dsm.vrpsolver.model.LatLngAlt;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.MatrixElement;
+
+import static org.junit.Assert.*;
+
+public class SymmetrizeMatrixTest {
+
+    @Test
+    public void symmetrizeMatrix_keepsFirstListedDirection() {
+
+        Random random = new Random(5);
+        List<Location> places = new ArrayList<>();
+        for (int i = 0; i < 12; i++)
+            places.add(new Location(new LatLngAlt(random.nextDouble(), random.nextDouble()), Location.Profile.DESTINATION));
+
+        List<MatrixElement> matrix = new ArrayList<>();
+        for (Location origin : places)
+            for (Location destination : places)
+                if (origin != destination)
+                    matrix.add(new MatrixElement(origin, destination, random.nextInt(1000)));
+
+        // Not listed row by row
+        Collections.shuffle(matrix, random);
+
+        List<MatrixElement> expected = symmetrizeByNestedLoop(matrix);
+        List<MatrixElement> actual = DSMSolver.symmetrizeMatrix(matrix);
+
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals(expected.get(i).getDistance(), actual.get(i).getDistance(), 0);
+
+    }
+
+    @Test
+    public void symmetrizeMatrix_upperKeepsFirstAppearingOrigin() {
+
+        Location a = new Location(new LatLngAlt(0, 0), Location.Profile.SOURCE);
+        Location b = new Location(new LatLngAlt(0, 1), Location.Profile.DESTINATION);
+        Location c = new Location(new LatLngAlt(1, 0), Location.Profile.DESTINATION);
+
+        List<MatrixElement> matrix = new ArrayList<>();
+        matrix.add(new MatrixElement(a, c, 1));
+        matrix.add(new MatrixElement(b, a, 2));
+        matrix.add(new MatrixElement(a, b, 3));
+
+        List<MatrixElement> upper = DSMSolver.symmetrizeMatrix(matrix, SymmetricDistanceMatrix.Policy.UPPER);
+        List<MatrixElement> firstListed = DSMSolver.symmetrizeMatrix(matrix);
+
+        assertEquals(3, upper.get(1).getDistance(), 0);
+        assertEquals(2, firstListed.get(1).getDistance(), 0);
+        assertEquals(2, firstListed.get(2).getDistance(), 0);
+        assertEquals(2, matrix.get(1).getDistance(), 0);
+        assertEquals(3, matrix.get(2).getDistance(), 0);
+
+    }
+
+    /**
+     * The quadratic loop symmetrizeMatrix replaced, on copies
+     */
+    private static List<MatrixElement> symmetrizeByNestedLoop(List<MatrixElement> matrix) {
+
+        List<MatrixElement> resultMatrix = new ArrayList<>();
+        for (MatrixElement d : matrix)
+            resultMatrix.add(new MatrixElement(d.getOrigin(), d.getDestination(), d.getDistance()));
+
+        for (MatrixElement d : resultMatrix)
+            for (MatrixElement d2 : resultMatrix)
+                if (d2.getOrigin().equals(d.getDestination()) && d2.getDestination().equals(d.getOrigin()))
+                    d2.setDistance(d.getDistance());
+
+        return resultMatrix;
+
+    }
+
+}
@@ -0,0 +1,110 @@
+package id.my.dsm.vrpsolver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import id.my.dsm.vrpsolver.matrix.DistanceMatrix;
+import id.my.dsm.vrpsolver.model.LatLngAlt;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+import static org.junit.Assert.*;
+
+/**
+ * Random instances around a single depot and the checks shared by the tests
+ */
+public final class TestInstances {
+
+    private static final double EARTH_RADIUS = 6371008.8;
+
+    private TestInstances() {
+    }
+
+    /**
+     * Every customer visited exactly once, no trip over the capacity of its vehicle
+     */
+    public static void assertServed(String message, List<Location> places, List<Vehicle> vehicles, List<Solution> solutions) {
+
+        HashMap<String, Vehicle> vehiclesById = new HashMap<>();
+        for (Vehicle vehicle : vehicles)
+            vehiclesById.put(vehicle.getId(), vehicle);
+
+        HashSet<Location> visited = new HashSet<>();
+        Location depot = places.get(0);
+        double load = 0;
+
+        for (Solution solution : solutions) {
+
+            if (solution.getOrigin() == depot)
+                load = 0;
+
+            if (solution.getDestination() == depot)
+                continue;
+
+            assertTrue(message + ": visited twice", visited.add(solution.getDestination()));
+            load += solution.getDestination().getDemands();
+            assertTrue(message + ": over capacity", load <= vehiclesById.get(solution.getVehicleId()).getCapacity());
+
+        }
+
+        assertEquals(message + ": customers served", places.size() - 1, visited.size());
+
+    }
+
+    /**
+     * Depot first, then customers of demand 1 to 5 scattered around it
+     */
+    public static List<Location> createPlaces(int size, long seed) {
+
+        Random random = new Random(seed);
+        ArrayList<Location> places = new ArrayList<>();
+
+        places.add(new Location(new LatLngAlt(-6.2, 106.8), Location.Profile.SOURCE));
+
+        for (int i = 1; i < size; i++)
+            places.add(new Location(
+                    new LatLngAlt(-6.2 + random.nextGaussian() * 0.1, 106.8 + random.nextGaussian() * 0.1),
+                    Location.Profile.DESTINATION,
+                    1 + random.nextInt(5)
+            ));
+
+        return places;
+
+    }
+
+    /**
+     * Great-circle distances in meters between every pair of places, one pair at a time
+     */
+    public static DistanceMatrix createMatrix(List<Location> places) {
+
+        DistanceMatrix matrix = new DistanceMatrix(places);
+
+        for (int i = 0; i < places.size(); i++) {
+            for (int j = 0; j < places.size(); j++) {
+
+                if (i == j)
+                    continue;
+
+                LatLngAlt origin = places.get(i).getLatLngAlt();
+                LatLngAlt destination = places.get(j).getLatLngAlt();
+
+                double latitude1 = Math.toRadians(origin.getLatitude());
+                double latitude2 = Math.toRadians(destination.getLatitude());
+                double sinLatitude = Math.sin((latitude2 - latitude1) / 2);
+                double sinLongitude = Math.sin(Math.toRadians(destination.getLongitude() - origin.getLongitude()) / 2);
+                double haversine = sinLatitude * sinLatitude + Math.cos(latitude1) * Math.cos(latitude2) * sinLongitude * sinLongitude;
+
+                matrix.setDistance(i, j, 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(haversine))));
+
+            }
+        }
+
+        return matrix;
+
+    }
+
+}
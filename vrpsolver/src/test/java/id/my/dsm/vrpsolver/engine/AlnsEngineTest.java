@@ -0,0 +1,97 @@
+package id.my.dsm.vrpsolver.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import id.my.dsm.vrpsolver.TestInstances;
+import id.my.dsm.vrpsolver.matrix.HaversineMatrixBuilder;
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+import static org.junit.Assert.*;
+
+public class AlnsEngineTest {
+
+    @Test
+    public void clarkeWrightSeed_neverCostlierAndSameStops() {
+
+        for (int seed = 0; seed < 10; seed++) {
+
+            List<Location> places = TestInstances.createPlaces(40, seed);
+            IndexedMatrix matrix = new HaversineMatrixBuilder(places).build();
+            List<Vehicle> vehicles = createVehicles();
+
+            for (boolean isRoundTrip : new boolean[]{true, false}) {
+                List<Solution> initial = ClarkeWrightEngine.solve(matrix, 0, vehicles, isRoundTrip, false);
+                assertImproved("seed " + seed, places, vehicles, matrix, initial, isRoundTrip, seed);
+            }
+
+        }
+
+    }
+
+    @Test
+    public void nearestNeighborSeed_neverCostlierAndSameStops() {
+
+        for (int seed = 0; seed < 10; seed++) {
+
+            List<Location> places = TestInstances.createPlaces(40, seed);
+            IndexedMatrix matrix = new HaversineMatrixBuilder(places).build();
+            List<Vehicle> vehicles = createVehicles();
+
+            for (boolean isRoundTrip : new boolean[]{true, false}) {
+                List<Solution> initial = NearestNeighborEngine.solve(matrix, 0, vehicles, isRoundTrip);
+                assertImproved("seed " + seed, places, vehicles, matrix, initial, isRoundTrip, seed);
+            }
+
+        }
+
+    }
+
+    private static List<Vehicle> createVehicles() {
+        List<Vehicle> vehicles = new ArrayList<>();
+        vehicles.add(new Vehicle.Builder().withDefault(true).withCapacity(20).withDispatchLimit(100).build());
+        return vehicles;
+    }
+
+    private static void assertImproved(String message, List<Location> places, List<Vehicle> vehicles, IndexedMatrix matrix, List<Solution> initial, boolean isRoundTrip, long seed) {
+
+        // Read before the search, the seed legs are not expected to change but are not copied either
+        double initialCost = getCost(initial);
+        HashSet<Location> initialStops = getStops(initial);
+
+        List<Solution> solutions = AlnsEngine.solve(matrix, 0, initial, vehicles, isRoundTrip, new Random(seed), 300, new SolverControl(5000));
+
+        assertTrue(message + ": costlier than the seed", getCost(solutions) <= initialCost + 1e-6);
+        assertEquals(message + ": stops served", initialStops, getStops(solutions));
+        TestInstances.assertServed(message, places, vehicles, solutions);
+
+    }
+
+    private static double getCost(List<Solution> solutions) {
+
+        double cost = 0;
+        for (Solution solution : solutions)
+            cost += solution.getDistance();
+
+        return cost;
+
+    }
+
+    private static HashSet<Location> getStops(List<Solution> solutions) {
+
+        HashSet<Location> stops = new HashSet<>();
+        for (Solution solution : solutions)
+            stops.add(solution.getDestination());
+
+        return stops;
+
+    }
+
+}
@@ -0,0 +1,60 @@
+package id.my.dsm.vrpsolver.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.TestInstances;
+import id.my.dsm.vrpsolver.matrix.DistanceMatrix;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+import static org.junit.Assert.*;
+
+public class ClarkeWrightEngineTest {
+
+    @Test
+    public void mixedFleet_servesEveryCustomer() {
+
+        for (int seed = 0; seed < 100; seed++) {
+
+            List<Location> places = TestInstances.createPlaces(36, seed);
+            DistanceMatrix matrix = TestInstances.createMatrix(places);
+
+            // Many small vehicles and a single large one, merges grow up to the large one
+            List<Vehicle> vehicles = new ArrayList<>();
+            vehicles.add(new Vehicle.Builder().withDefault(true).withCapacity(15).withDispatchLimit(1000).build());
+            vehicles.add(new Vehicle.Builder().withCapacity(40).withDispatchLimit(1).build());
+
+            for (boolean isRoundTrip : new boolean[]{true, false}) {
+                List<Solution> solutions = ClarkeWrightEngine.solve(matrix, 0, vehicles, isRoundTrip, false);
+                TestInstances.assertServed("seed " + seed, places, vehicles, solutions);
+            }
+
+        }
+
+    }
+
+    @Test
+    public void lazySavings_matchSortedSavings() {
+
+        List<Location> places = TestInstances.createPlaces(200, 7);
+        DistanceMatrix matrix = TestInstances.createMatrix(places);
+        List<Vehicle> vehicles = new ArrayList<>();
+        vehicles.add(new Vehicle.Builder().withDefault(true).withCapacity(30).withDispatchLimit(200).build());
+
+        List<Solution> sorted = ClarkeWrightEngine.solve(matrix, 0, vehicles, true, false);
+        List<Solution> lazy = ClarkeWrightEngine.solve(matrix, 0, vehicles, true, true);
+
+        assertEquals(sorted.size(), lazy.size());
+
+        for (int i = 0; i < sorted.size(); i++) {
+            assertSame(sorted.get(i).getOrigin(), lazy.get(i).getOrigin());
+            assertSame(sorted.get(i).getDestination(), lazy.get(i).getDestination());
+        }
+
+    }
+
+}
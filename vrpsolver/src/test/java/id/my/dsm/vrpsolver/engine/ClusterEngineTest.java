@@ -0,0 +1,56 @@
+package id.my.dsm.vrpsolver.engine;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.TestInstances;
+import id.my.dsm.vrpsolver.enums.ClusteringMethod;
+import id.my.dsm.vrpsolver.matrix.HaversineMatrixBuilder;
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+import static org.junit.Assert.*;
+
+public class ClusterEngineTest {
+
+    private static final MultiDepotEngine.DepotSolver NEAREST_NEIGHBOR = new MultiDepotEngine.DepotSolver() {
+        @NonNull
+        @Override
+        public List<Solution> solve(@NonNull IndexedMatrix matrix, int depotIndex, @NonNull List<Vehicle> vehicles, @NonNull SolverControl control) {
+            return NearestNeighborEngine.solve(matrix, depotIndex, vehicles, true, control);
+        }
+    };
+
+    @Test
+    public void fewerDispatchesThanClusters_servesEveryCustomer() {
+
+        for (int seed = 0; seed < 100; seed++) {
+
+            List<Location> places = TestInstances.createPlaces(36, seed);
+            IndexedMatrix matrix = new HaversineMatrixBuilder(places).build();
+
+            // Room for every demand, but in fewer trips than there are clusters of 5 stops
+            List<Vehicle> vehicles = Collections.singletonList(new Vehicle.Builder().withCapacity(40).withDispatchLimit(4).build());
+
+            for (ClusteringMethod method : ClusteringMethod.values()) {
+
+                int[][] clusters = ClusterEngine.cluster(matrix, 0, vehicles, method, 5);
+                assertTrue(clusters.length > 4);
+
+                List<Solution> solutions = ClusterEngine.solve(matrix, 0, clusters, vehicles, true, false, false, 8, null, NEAREST_NEIGHBOR, SolverPool.get(), new SolverControl());
+
+                TestInstances.assertServed("seed " + seed + ", " + method, places, vehicles, solutions);
+
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,138 @@
+package id.my.dsm.vrpsolver.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import id.my.dsm.vrpsolver.TestInstances;
+import id.my.dsm.vrpsolver.matrix.HaversineMatrixBuilder;
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.model.LatLngAlt;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+import static org.junit.Assert.*;
+
+public class InterRouteSearchTest {
+
+    @Test
+    public void randomRoutes_neverCostlierAndStayFeasible() {
+
+        // Two capacities, so a move must fit the vehicle of the trip it lands in
+        Vehicle small = new Vehicle.Builder().withCapacity(15).withDispatchLimit(100).build();
+        Vehicle large = new Vehicle.Builder().withCapacity(25).withDispatchLimit(100).build();
+
+        for (int seed = 0; seed < 10; seed++) {
+
+            IndexedMatrix matrix = IntraRouteSearchTest.createAsymmetricMatrix(TestInstances.createPlaces(60, seed), seed);
+            Random random = new Random(seed);
+
+            for (boolean isRoundTrip : new boolean[]{true, false}) {
+
+                int[] stops = IntraRouteSearchTest.shuffle(matrix.size(), random);
+                List<Route> routes = createRoutes(matrix, stops, small, large);
+                double initialCost = computeCost(matrix, routes, isRoundTrip);
+
+                new InterRouteSearch(matrix, 0, isRoundTrip, 8).optimize(routes, new SolverControl());
+
+                String message = "seed " + seed + (isRoundTrip ? ", round trip" : ", one way");
+                assertTrue(message + ": costlier", computeCost(matrix, routes, isRoundTrip) <= initialCost + 1e-9);
+
+                int[] routed = new int[stops.length];
+                int count = 0;
+
+                for (Route route : routes) {
+
+                    double load = 0;
+
+                    for (int p = 0; p < route.length; p++) {
+                        load += matrix.getDemand(route.stops[p]);
+                        routed[count++] = route.stops[p];
+                    }
+
+                    assertTrue(message + ": over capacity", load <= route.vehicle.getCapacity());
+
+                }
+
+                assertEquals(message + ": stops routed", stops.length, count);
+                Arrays.sort(stops);
+                Arrays.sort(routed);
+                assertArrayEquals(message + ": stops", stops, routed);
+
+            }
+
+        }
+
+    }
+
+    @Test
+    public void oneWayRoutes_relocateToTheFreeEnd() {
+
+        // Stops on a line east of the depot: 1 and 2 on the first trip, 3 farther on its own
+        List<Location> places = new ArrayList<>();
+        places.add(new Location(new LatLngAlt(0, 0), Location.Profile.SOURCE));
+        for (int i = 1; i <= 3; i++)
+            places.add(new Location(new LatLngAlt(0, 0.01 * i), Location.Profile.DESTINATION, 1));
+
+        IndexedMatrix matrix = new HaversineMatrixBuilder(places).build();
+        Vehicle vehicle = new Vehicle.Builder().withCapacity(3).withDispatchLimit(2).build();
+
+        List<Route> routes = new ArrayList<>();
+        routes.add(new Route(vehicle, new int[]{1, 2, 0}, 2));
+        routes.add(new Route(vehicle, new int[]{3}, 1));
+
+        assertTrue(new InterRouteSearch(matrix, 0, false, 3).optimize(routes, new SolverControl()));
+
+        // 3 extends the first trip past its last stop, nothing is driven back
+        assertEquals(3, routes.get(0).length);
+        assertArrayEquals(new int[]{1, 2, 3}, routes.get(0).stops);
+        assertEquals(0, routes.get(1).length);
+        assertEquals(matrix.getDistance(0, 3), computeCost(matrix, routes, false), 1e-9);
+
+    }
+
+    /**
+     * Fill trips in the given order, alternating both vehicles
+     */
+    private static List<Route> createRoutes(IndexedMatrix matrix, int[] stops, Vehicle first, Vehicle second) {
+
+        List<Route> routes = new ArrayList<>();
+        Vehicle vehicle = first;
+        int[] trip = new int[stops.length];
+        int length = 0;
+        double load = 0;
+
+        for (int stop : stops) {
+
+            if (load + matrix.getDemand(stop) > vehicle.getCapacity()) {
+                routes.add(new Route(vehicle, Arrays.copyOf(trip, stops.length), length));
+                vehicle = vehicle == first ? second : first;
+                length = 0;
+                load = 0;
+            }
+
+            trip[length++] = stop;
+            load += matrix.getDemand(stop);
+
+        }
+
+        routes.add(new Route(vehicle, Arrays.copyOf(trip, stops.length), length));
+
+        return routes;
+
+    }
+
+    private static double computeCost(IndexedMatrix matrix, List<Route> routes, boolean isRoundTrip) {
+
+        double cost = 0;
+        for (Route route : routes)
+            cost += IntraRouteSearchTest.computeCost(matrix, route, isRoundTrip);
+
+        return cost;
+
+    }
+
+}
@@ -0,0 +1,131 @@
+package id.my.dsm.vrpsolver.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import id.my.dsm.vrpsolver.TestInstances;
+import id.my.dsm.vrpsolver.matrix.DistanceMatrix;
+import id.my.dsm.vrpsolver.matrix.HaversineMatrixBuilder;
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.model.LatLngAlt;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+import static org.junit.Assert.*;
+
+public class IntraRouteSearchTest {
+
+    private static final Vehicle VEHICLE = new Vehicle.Builder().withCapacity(1000).withDispatchLimit(1).build();
+
+    @Test
+    public void shuffledTrip_neverCostlierAndSameStops() {
+
+        for (int seed = 0; seed < 10; seed++) {
+
+            IndexedMatrix matrix = createAsymmetricMatrix(TestInstances.createPlaces(40, seed), seed);
+            Random random = new Random(seed);
+
+            for (boolean isRoundTrip : new boolean[]{true, false}) {
+
+                int[] stops = shuffle(matrix.size(), random);
+                Route route = new Route(VEHICLE, stops.clone(), stops.length);
+                double initialCost = computeCost(matrix, route, isRoundTrip);
+
+                new IntraRouteSearch(matrix, 0, isRoundTrip, 5).optimize(route, new SolverControl());
+
+                String message = "seed " + seed + (isRoundTrip ? ", round trip" : ", one way");
+                assertTrue(message + ": costlier", computeCost(matrix, route, isRoundTrip) <= initialCost + 1e-9);
+                assertEquals(message + ": length", stops.length, route.length);
+                assertArrayEquals(message + ": stops", sorted(stops), sorted(route.stops));
+
+            }
+
+        }
+
+    }
+
+    @Test
+    public void oneWayTrip_endsAtTheFarthestStop() {
+
+        // Stops on a line east of the depot, listed farthest first
+        List<Location> places = new ArrayList<>();
+        places.add(new Location(new LatLngAlt(0, 0), Location.Profile.SOURCE));
+        for (int i = 1; i <= 5; i++)
+            places.add(new Location(new LatLngAlt(0, 0.01 * (6 - i)), Location.Profile.DESTINATION, 1));
+
+        IndexedMatrix matrix = new HaversineMatrixBuilder(places).build();
+        Route route = new Route(VEHICLE, new int[]{1, 2, 3, 4, 5}, 5);
+
+        // Reversing the whole trip only pays off once the trip has a free end
+        assertFalse(new IntraRouteSearch(matrix, 0, true, 5).optimize(route, new SolverControl()));
+        assertTrue(new IntraRouteSearch(matrix, 0, false, 5).optimize(route, new SolverControl()));
+
+        assertArrayEquals(new int[]{5, 4, 3, 2, 1}, route.stops);
+        assertEquals(matrix.getDistance(0, 1), computeCost(matrix, route, false), 1e-9);
+
+    }
+
+    /**
+     * Air distances stretched up to 50% one way, so reversing a segment changes its cost
+     */
+    static DistanceMatrix createAsymmetricMatrix(List<Location> places, long seed) {
+
+        DistanceMatrix matrix = TestInstances.createMatrix(places);
+        Random random = new Random(seed);
+
+        for (int i = 0; i < matrix.size(); i++)
+            for (int j = 0; j < matrix.size(); j++)
+                matrix.setDistance(i, j, matrix.getDistance(i, j) * (1 + random.nextDouble() * 0.5));
+
+        return matrix;
+
+    }
+
+    /**
+     * Every customer of the matrix in a random order, the depot being 0
+     */
+    static int[] shuffle(int size, Random random) {
+
+        int[] stops = new int[size - 1];
+        for (int i = 0; i < stops.length; i++)
+            stops[i] = i + 1;
+
+        for (int i = stops.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int stop = stops[i];
+            stops[i] = stops[j];
+            stops[j] = stop;
+        }
+
+        return stops;
+
+    }
+
+    /**
+     * Cost of a trip from the depot 0, walked leg by leg
+     */
+    static double computeCost(IndexedMatrix matrix, Route route, boolean isRoundTrip) {
+
+        double cost = 0;
+        int previous = 0;
+
+        for (int p = 0; p < route.length; p++) {
+            cost += matrix.getDistance(previous, route.stops[p]);
+            previous = route.stops[p];
+        }
+
+        return isRoundTrip ? cost + matrix.getDistance(previous, 0) : cost;
+
+    }
+
+    private static int[] sorted(int[] stops) {
+        int[] copy = stops.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+}
@@ -0,0 +1,129 @@
+package id.my.dsm.vrpsolver.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.TestInstances;
+import id.my.dsm.vrpsolver.matrix.HaversineMatrixBuilder;
+import id.my.dsm.vrpsolver.matrix.HaversineOracle;
+import id.my.dsm.vrpsolver.matrix.MutableDistanceMatrix;
+import id.my.dsm.vrpsolver.model.LatLngAlt;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+import static org.junit.Assert.*;
+
+public class ReoptimizationEngineTest {
+
+    private static final List<Location> NONE = Collections.emptyList();
+
+    @Test
+    public void add_servesNewLocation() {
+
+        List<Location> places = new ArrayList<>(TestInstances.createPlaces(30, 1));
+        MutableDistanceMatrix matrix = MutableDistanceMatrix.fromMatrix(new HaversineMatrixBuilder(places).build());
+        List<Vehicle> vehicles = createVehicles();
+        List<Solution> solutions = NearestNeighborEngine.solve(matrix, 0, vehicles, true);
+
+        Location added = createLocation(-6.25, 106.85, 2);
+        assertEquals(places.size(), addLocation(matrix, added));
+        places.add(added);
+
+        solutions = ReoptimizationEngine.update(matrix, 0, solutions, vehicles, Collections.singletonList(added), NONE, true);
+
+        TestInstances.assertServed("add", places, vehicles, solutions);
+
+    }
+
+    @Test
+    public void cancel_afterRemovalFromMatrix() {
+
+        List<Location> places = new ArrayList<>(TestInstances.createPlaces(30, 2));
+        MutableDistanceMatrix matrix = MutableDistanceMatrix.fromMatrix(new HaversineMatrixBuilder(places).build());
+        List<Vehicle> vehicles = createVehicles();
+        List<Solution> solutions = NearestNeighborEngine.solve(matrix, 0, vehicles, true);
+
+        Location cancelled = places.remove(5);
+        matrix.removeLocation(cancelled);
+
+        solutions = ReoptimizationEngine.update(matrix, 0, solutions, vehicles, NONE, Collections.singletonList(cancelled), true);
+
+        TestInstances.assertServed("cancel", places, vehicles, solutions);
+
+    }
+
+    @Test
+    public void cancelThenAdd_reusesTombstone() {
+
+        for (int k = 0; k < 4; k++) {
+
+            boolean isLocalSearch = k % 2 == 1;
+            boolean isPlan = k >= 2;
+
+            List<Location> places = new ArrayList<>(TestInstances.createPlaces(30, 3));
+            MutableDistanceMatrix matrix = MutableDistanceMatrix.fromMatrix(new HaversineMatrixBuilder(places).build());
+            List<Vehicle> vehicles = createVehicles();
+            List<Solution> solutions = NearestNeighborEngine.solve(matrix, 0, vehicles, true);
+
+            // A plan holds the indices of its stops, its legs read before the matrix changes
+            if (isPlan) {
+                solutions = RoutePlan.fromSolutions(solutions, matrix, 0, vehicles, true, null).asSolutions();
+                for (Solution solution : solutions)
+                    assertNotNull(solution.getDestination());
+            }
+
+            // The new order takes the slot of the cancelled one, a full load no other stop fits with
+            Location cancelled = places.remove(5);
+            int slot = matrix.removeLocation(cancelled);
+
+            Location added = createLocation(-6.25, 106.85, 20);
+            assertEquals(slot, addLocation(matrix, added));
+            places.add(added);
+
+            solutions = ReoptimizationEngine.update(matrix, 0, solutions, vehicles, Collections.singletonList(added), Collections.singletonList(cancelled), true, null, isLocalSearch, LocalSearchEngine.DEFAULT_NEIGHBOR_COUNT, new SolverControl());
+
+            TestInstances.assertServed("local search " + isLocalSearch + ", plan " + isPlan, places, vehicles, solutions);
+
+            HashSet<Location> visited = new HashSet<>();
+            for (Solution solution : solutions)
+                visited.add(solution.getDestination());
+
+            assertFalse(visited.contains(cancelled));
+
+        }
+
+    }
+
+    private static List<Vehicle> createVehicles() {
+        return Collections.singletonList(new Vehicle.Builder().withCapacity(20).withDispatchLimit(30).build());
+    }
+
+    private static Location createLocation(double latitude, double longitude, double demand) {
+        return new Location(new LatLngAlt(latitude, longitude), Location.Profile.DESTINATION, demand);
+    }
+
+    /**
+     * Add a location with its air distances to every live location
+     */
+    private static int addLocation(MutableDistanceMatrix matrix, Location location) {
+
+        HaversineOracle oracle = new HaversineOracle();
+        int index = matrix.addLocation(location);
+
+        for (int i = 0; i < matrix.size(); i++) {
+            if (i != index && !matrix.isRemoved(i)) {
+                matrix.setDistance(index, i, oracle.getDistance(location, matrix.getLocation(i)));
+                matrix.setDistance(i, index, oracle.getDistance(matrix.getLocation(i), location));
+            }
+        }
+
+        return index;
+
+    }
+
+}
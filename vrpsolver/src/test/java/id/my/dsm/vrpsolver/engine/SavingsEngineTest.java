@@ -0,0 +1,174 @@
+package id.my.dsm.vrpsolver.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import id.my.dsm.vrpsolver.TestInstances;
+import id.my.dsm.vrpsolver.matrix.DistanceMatrix;
+import id.my.dsm.vrpsolver.matrix.DistanceOracle;
+import id.my.dsm.vrpsolver.matrix.HaversineMatrixBuilder;
+import id.my.dsm.vrpsolver.matrix.HaversineOracle;
+import id.my.dsm.vrpsolver.matrix.MutableDistanceMatrix;
+import id.my.dsm.vrpsolver.matrix.OracleMatrix;
+import id.my.dsm.vrpsolver.matrix.SubMatrix;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+import static org.junit.Assert.*;
+
+public class SavingsEngineTest {
+
+    @Test
+    public void granularSavings_askOracleForNeighborPairsOnly() {
+
+        int size = 1000;
+        List<Location> places = TestInstances.createPlaces(size, 3);
+        List<Vehicle> vehicles = Collections.singletonList(new Vehicle.Builder().withCapacity(30).withDispatchLimit(size).build());
+
+        final AtomicLong calls = new AtomicLong();
+        final HaversineOracle haversine = new HaversineOracle();
+
+        DistanceOracle oracle = new DistanceOracle() {
+            @Override
+            public double getDistance(Location origin, Location destination) {
+                calls.incrementAndGet();
+                return haversine.getDistance(origin, destination);
+            }
+        };
+
+        List<Solution> solutions = ClarkeWrightEngine.solve(new OracleMatrix(places, oracle), 0, vehicles, true, false);
+
+        TestInstances.assertServed("granular", places, vehicles, solutions);
+
+        // Neighbor pairs and the depot row, then the legs of the routes
+        assertTrue("oracle calls " + calls.get(), calls.get() < (long) size * (SavingsEngine.DEFAULT_NEIGHBOR_COUNT + 8));
+
+    }
+
+    @Test
+    public void granularSavings_matchFullSavings() {
+
+        List<Location> places = TestInstances.createPlaces(300, 4);
+        DistanceMatrix matrix = TestInstances.createMatrix(places);
+
+        SavingsMatrix full = SavingsEngine.compute(matrix, 0);
+        SavingsList granular = SavingsEngine.computeGranular(matrix, 0, 1, 8, new SolverControl());
+
+        boolean[] seen = new boolean[places.size() * places.size()];
+
+        for (int p = 0; p < granular.size(); p++) {
+
+            int origin = granular.getOrigin(p);
+            int destination = granular.getDestination(p);
+
+            assertTrue(origin < destination);
+            assertTrue(origin != 0);
+            assertFalse("pair listed twice", seen[origin * places.size() + destination]);
+            assertEquals(full.getSaving(origin, destination), granular.getSaving(p), 1e-6);
+
+            seen[origin * places.size() + destination] = true;
+
+        }
+
+        // Every location is paired with at least its own neighbors
+        assertTrue(granular.size() >= (places.size() - 1) * 8 / 2);
+
+    }
+
+    @Test
+    public void packedSavings_matchSavingsMatrix() {
+
+        // Large enough to split across the pool, with the depot inside the rows
+        List<Location> places = TestInstances.createPlaces(300, 7);
+        DistanceMatrix matrix = TestInstances.createMatrix(places);
+
+        for (int depotIndex : new int[]{0, 150, 299}) {
+
+            SavingsList expected = SavingsList.fromSavingsMatrix(SavingsEngine.compute(matrix, depotIndex));
+            SavingsList packed = SavingsEngine.computeList(matrix, depotIndex, 1, SolverPool.get(), new SolverControl());
+
+            assertEquals(expected.size(), packed.size());
+
+            for (int p = 0; p < expected.size(); p++) {
+                assertEquals(expected.getOrigin(p), packed.getOrigin(p));
+                assertEquals(expected.getDestination(p), packed.getDestination(p));
+                assertEquals(expected.getSaving(p), packed.getSaving(p), 0);
+            }
+
+        }
+
+    }
+
+    @Test
+    public void updatedSavings_matchComputedSavings() {
+
+        List<Location> places = new ArrayList<>(TestInstances.createPlaces(40, 5));
+        List<Location> later = TestInstances.createPlaces(20, 6).subList(1, 20);
+
+        // No spare slot, every added location grows the matrix and the savings
+        MutableDistanceMatrix matrix = MutableDistanceMatrix.fromMatrix(new HaversineMatrixBuilder(places).build());
+        SavingsMatrix savings = SavingsEngine.compute(matrix, 0);
+        List<Vehicle> vehicles = Collections.singletonList(new Vehicle.Builder().withCapacity(30).withDispatchLimit(60).build());
+
+        for (int k = 0; k < later.size(); k++) {
+
+            // Cancel an order every other new one, the next one reuses its slot
+            if (k % 2 == 1) {
+                int index = matrix.removeLocation(places.remove(k + 1));
+                SavingsEngine.update(savings, matrix, index);
+            }
+
+            Location location = later.get(k);
+            places.add(location);
+            SavingsEngine.update(savings, matrix, addLocation(matrix, location));
+
+            SubMatrix view = matrix.newLiveView();
+            SavingsMatrix computed = SavingsEngine.compute(matrix, 0);
+
+            assertEquals(matrix.size(), savings.size());
+
+            for (int i = 0; i < matrix.size(); i++)
+                for (int j = 0; j < matrix.size(); j++)
+                    assertEquals(computed.getSaving(i, j), savings.getSaving(i, j), 1e-9);
+
+            // Same routes from the kept savings as from savings computed on the view
+            List<Solution> kept = ClarkeWrightEngine.solve(view, 0, savings, vehicles, true, false, null, new SolverControl());
+            List<Solution> fresh = ClarkeWrightEngine.solve(view, 0, vehicles, true, false);
+
+            TestInstances.assertServed("step " + k, places, vehicles, kept);
+            assertEquals(fresh.size(), kept.size());
+
+            for (int i = 0; i < fresh.size(); i++) {
+                assertSame(fresh.get(i).getOrigin(), kept.get(i).getOrigin());
+                assertSame(fresh.get(i).getDestination(), kept.get(i).getDestination());
+            }
+
+        }
+
+    }
+
+    /**
+     * Add a location with its air distances to every live location
+     */
+    private static int addLocation(MutableDistanceMatrix matrix, Location location) {
+
+        HaversineOracle oracle = new HaversineOracle();
+        int index = matrix.addLocation(location);
+
+        for (int i = 0; i < matrix.size(); i++) {
+            if (i != index && !matrix.isRemoved(i)) {
+                matrix.setDistance(index, i, oracle.getDistance(location, matrix.getLocation(i)));
+                matrix.setDistance(i, index, oracle.getDistance(matrix.getLocation(i), location));
+            }
+        }
+
+        return index;
+
+    }
+
+}
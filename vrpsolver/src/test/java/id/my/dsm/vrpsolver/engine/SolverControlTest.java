@@ -0,0 +1,82 @@
+package id.my.dsm.vrpsolver.engine;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import id.my.dsm.vrpsolver.event.OptimizationProgressListener;
+import id.my.dsm.vrpsolver.model.Solution;
+
+import static org.junit.Assert.*;
+
+public class SolverControlTest {
+
+    @Test
+    public void reportProgress_deliversOneAtATimeByDescendingCost() throws InterruptedException {
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final double[] lastCost = {Double.POSITIVE_INFINITY};
+
+        final SolverControl control = new SolverControl();
+        control.setProgressListener(new OptimizationProgressListener() {
+            @Override
+            public void onImprovedSolution(List<Solution> solutions, double cost, long elapsedNanos) {
+
+                if (running.incrementAndGet() != 1)
+                    failure.compareAndSet(null, "overlapping calls");
+
+                if (!(cost < lastCost[0]))
+                    failure.compareAndSet(null, "cost " + cost + " after " + lastCost[0]);
+
+                lastCost[0] = cost;
+                Thread.yield();
+                running.decrementAndGet();
+
+            }
+        }, 0);
+
+        final int threadCount = 4;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+
+        for (int t = 0; t < threadCount; t++) {
+
+            final int offset = t;
+
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    // Interleaved costs, every thread keeps improving on its own reports
+                    for (int i = 10000; i > 0; i--)
+                        control.reportProgress(Collections.<Solution>emptyList(), i * threadCount + offset, true);
+
+                }
+            });
+
+            threads[t].start();
+
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads)
+            thread.join();
+
+        assertNull(failure.get(), failure.get());
+        assertEquals(threadCount, lastCost[0], 0);
+
+    }
+
+}
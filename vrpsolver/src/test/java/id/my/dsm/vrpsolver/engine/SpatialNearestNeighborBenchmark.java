@@ -0,0 +1,74 @@
+package id.my.dsm.vrpsolver.engine;
+
+import java.util.Collections;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.TestInstances;
+import id.my.dsm.vrpsolver.matrix.HaversineMatrixBuilder;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+/**
+ * Times the k-d tree Nearest Neighbor against the matrix path (Haversine matrix + row scan).
+ * Not a unit test, run {@link #main} by hand, sizes may be given as arguments.
+ */
+public final class SpatialNearestNeighborBenchmark {
+
+    private static final int[] SIZES = {500, 2000, 5000};
+
+    // Runs before the timed ones so both paths are compiled
+    private static final int WARMUP_RUNS = 3;
+
+    private SpatialNearestNeighborBenchmark() {
+    }
+
+    public static void main(String[] args) {
+
+        int[] sizes = SIZES;
+
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        for (int run = 0; run < WARMUP_RUNS; run++)
+            measure(sizes[0]);
+
+        for (int size : sizes) {
+            long[] times = measure(size);
+            System.out.println("Nearest Neighbor " + size + " places | Matrix: " + times[0] / 1000000 + " ms | k-d tree: " + times[1] / 1000000 + " ms");
+        }
+
+    }
+
+    /**
+     * @return nanoseconds taken by the matrix path and by the k-d tree
+     */
+    private static long[] measure(int size) {
+
+        List<Location> places = TestInstances.createPlaces(size, size);
+        List<Vehicle> vehicles = Collections.singletonList(new Vehicle.Builder().withCapacity(50).withDispatchLimit(size).build());
+
+        long start = System.nanoTime();
+        List<Solution> matrixSolutions = NearestNeighborEngine.solve(new HaversineMatrixBuilder(places).build(), 0, vehicles, true);
+        long matrixTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        List<Solution> spatialSolutions = SpatialNearestNeighborEngine.solve(places, 0, vehicles, true);
+        long spatialTime = System.nanoTime() - start;
+
+        // Same routes or the timings compare different work
+        if (matrixSolutions.size() != spatialSolutions.size())
+            throw new IllegalStateException("Routes differ on " + size + " places");
+
+        for (int i = 0; i < matrixSolutions.size(); i++)
+            if (matrixSolutions.get(i).getDestination() != spatialSolutions.get(i).getDestination())
+                throw new IllegalStateException("Routes differ on " + size + " places");
+
+        return new long[]{matrixTime, spatialTime};
+
+    }
+
+}
@@ -0,0 +1,43 @@
+package id.my.dsm.vrpsolver.engine;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.TestInstances;
+import id.my.dsm.vrpsolver.matrix.HaversineMatrixBuilder;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+import static org.junit.Assert.*;
+
+/**
+ * The k-d tree Nearest Neighbor must produce the same routes as the matrix path (Haversine matrix + row scan)
+ */
+public class SpatialNearestNeighborEngineTest {
+
+    @Test
+    public void spatialIndex_matchesMatrixPath() {
+
+        for (boolean isRoundTrip : new boolean[]{true, false}) {
+
+            List<Location> places = TestInstances.createPlaces(300, 11);
+            List<Vehicle> vehicles = Collections.singletonList(new Vehicle.Builder().withCapacity(50).withDispatchLimit(300).build());
+
+            List<Solution> matrixSolutions = NearestNeighborEngine.solve(new HaversineMatrixBuilder(places).build(), 0, vehicles, isRoundTrip);
+            List<Solution> spatialSolutions = SpatialNearestNeighborEngine.solve(places, 0, vehicles, isRoundTrip);
+
+            assertEquals(matrixSolutions.size(), spatialSolutions.size());
+
+            for (int i = 0; i < matrixSolutions.size(); i++) {
+                assertSame(matrixSolutions.get(i).getOrigin(), spatialSolutions.get(i).getOrigin());
+                assertSame(matrixSolutions.get(i).getDestination(), spatialSolutions.get(i).getDestination());
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,227 @@
+package id.my.dsm.vrpsolver.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import id.my.dsm.vrpsolver.TestInstances;
+import id.my.dsm.vrpsolver.matrix.HaversineMatrixBuilder;
+import id.my.dsm.vrpsolver.matrix.IndexedMatrix;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.Solution;
+import id.my.dsm.vrpsolver.model.Vehicle;
+
+import static org.junit.Assert.*;
+
+/**
+ * Every path must serve each stop between its ready and due times, after the travel and the
+ * service before it, and bring each vehicle back within its shift. The air distances in meters
+ * are read as travel times.
+ */
+public class TimeWindowsTest {
+
+    private static final double SERVICE_DURATION = 600;
+
+    @Test
+    public void nearestNeighbor_keepsWindowsAndShifts() {
+
+        for (int seed = 0; seed < 5; seed++) {
+            for (boolean isRoundTrip : new boolean[]{true, false}) {
+
+                List<Location> places = createPlaces(seed);
+                IndexedMatrix matrix = new HaversineMatrixBuilder(places).build();
+                List<Vehicle> vehicles = createVehicles();
+
+                List<Solution> solutions = NearestNeighborEngine.solve(matrix, 0, vehicles, isRoundTrip, null, 0, new TimeWindows(matrix, matrix), new SolverControl());
+
+                assertOnTime("seed " + seed, matrix, vehicles, solutions, isRoundTrip);
+
+            }
+        }
+
+    }
+
+    @Test
+    public void savingMatrix_keepsWindowsAndShifts() {
+
+        for (int seed = 0; seed < 5; seed++) {
+            for (boolean isRoundTrip : new boolean[]{true, false}) {
+
+                List<Location> places = createPlaces(seed);
+                IndexedMatrix matrix = new HaversineMatrixBuilder(places).build();
+                List<Vehicle> vehicles = createVehicles();
+
+                List<Solution> solutions = ClarkeWrightEngine.solve(matrix, 0, vehicles, isRoundTrip, false, 1, new TimeWindows(matrix, matrix), new SolverControl());
+
+                assertOnTime("seed " + seed, matrix, vehicles, solutions, isRoundTrip);
+
+            }
+        }
+
+    }
+
+    @Test
+    public void localSearch_keepsWindowsAndShifts() {
+
+        for (int seed = 0; seed < 5; seed++) {
+            for (boolean isRoundTrip : new boolean[]{true, false}) {
+
+                List<Location> places = createPlaces(seed);
+                IndexedMatrix matrix = new HaversineMatrixBuilder(places).build();
+                List<Vehicle> vehicles = createVehicles();
+                TimeWindows timeWindows = new TimeWindows(matrix, matrix);
+
+                List<Solution> initial = NearestNeighborEngine.solve(matrix, 0, vehicles, isRoundTrip, null, 0, timeWindows, new SolverControl());
+                int served = countServed(matrix, initial);
+
+                List<Solution> solutions = LocalSearchEngine.improve(matrix, 0, initial, vehicles, isRoundTrip, 10, true, true, timeWindows, new SolverControl());
+
+                assertOnTime("seed " + seed, matrix, vehicles, solutions, isRoundTrip);
+                assertEquals("seed " + seed + ": served", served, countServed(matrix, solutions));
+
+            }
+        }
+
+    }
+
+    @Test
+    public void multiTripVehicle_isRejected() {
+
+        List<Location> places = createPlaces(0);
+        IndexedMatrix matrix = new HaversineMatrixBuilder(places).build();
+        TimeWindows timeWindows = new TimeWindows(matrix, matrix);
+
+        // Every trip would start at the shift start, overlapping the trips before it
+        List<Vehicle> vehicles = new ArrayList<>();
+        vehicles.add(new Vehicle.Builder().withCapacity(20).withDispatchLimit(3).withShift(0, 20000).build());
+
+        try {
+            NearestNeighborEngine.solve(matrix, 0, vehicles, true, null, 0, timeWindows, new SolverControl());
+            fail("Nearest Neighbor should reject the vehicle");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            ClarkeWrightEngine.solve(matrix, 0, vehicles, true, false, 1, timeWindows, new SolverControl());
+            fail("Saving Matrix should reject the vehicle");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        // Without time windows the same vehicle is dispatched three times
+        List<Solution> solutions = NearestNeighborEngine.solve(matrix, 0, vehicles, true);
+        assertTrue(countServed(matrix, solutions) > 0);
+
+    }
+
+    /**
+     * Customers with a service duration and a window opening within the first hours
+     */
+    private static List<Location> createPlaces(long seed) {
+
+        List<Location> places = TestInstances.createPlaces(50, seed);
+        Random random = new Random(seed);
+
+        for (int i = 1; i < places.size(); i++) {
+            Location location = places.get(i);
+            double readyTime = random.nextInt(20000);
+            location.setReadyTime(readyTime);
+            location.setDueTime(readyTime + 5000 + random.nextInt(20000));
+            location.setServiceDuration(SERVICE_DURATION);
+        }
+
+        return places;
+
+    }
+
+    /**
+     * Vehicles dispatched once, some with a shift too tight to serve much
+     */
+    private static List<Vehicle> createVehicles() {
+
+        List<Vehicle> vehicles = new ArrayList<>();
+
+        for (int v = 0; v < 12; v++)
+            vehicles.add(new Vehicle.Builder()
+                    .withCapacity(20)
+                    .withDispatchLimit(1)
+                    .withShift(v * 1000, v % 3 == 0 ? v * 1000 + 8000 : 60000)
+                    .build());
+
+        return vehicles;
+
+    }
+
+    /**
+     * Walk every trip from its vehicle shift start and check each leg against the windows
+     */
+    private static void assertOnTime(String message, IndexedMatrix matrix, List<Vehicle> vehicles, List<Solution> solutions, boolean isRoundTrip) {
+
+        HashMap<String, Vehicle> vehiclesById = new HashMap<>();
+        for (Vehicle vehicle : vehicles)
+            vehiclesById.put(vehicle.getId(), vehicle);
+
+        Location depot = matrix.getLocation(0);
+        HashSet<String> dispatched = new HashSet<>();
+        Vehicle vehicle = null;
+        double departure = 0;
+        int waits = 0;
+
+        for (int i = 0; i < solutions.size(); i++) {
+
+            Solution solution = solutions.get(i);
+
+            if (solution.getOrigin() == depot) {
+                vehicle = vehiclesById.get(solution.getVehicleId());
+                assertTrue(message + ": vehicle dispatched twice", dispatched.add(vehicle.getId()));
+                departure = vehicle.getShiftStart();
+            }
+
+            int origin = matrix.indexOf(solution.getOrigin());
+            int destination = matrix.indexOf(solution.getDestination());
+            double arrival = departure + matrix.getDistance(origin, destination);
+
+            if (solution.getDestination() == depot) {
+                assertEquals(message + ": return time", arrival, solution.getServiceStartTime(), 1e-6);
+                assertTrue(message + ": back after the shift", arrival <= vehicle.getShiftEnd() + 1e-6);
+                continue;
+            }
+
+            double start = Math.max(arrival, solution.getDestination().getReadyTime());
+
+            if (start > arrival)
+                waits++;
+
+            assertEquals(message + ": service start", start, solution.getServiceStartTime(), 1e-6);
+            assertTrue(message + ": served after the due time", start <= solution.getDestination().getDueTime() + 1e-6);
+
+            departure = start + solution.getDestination().getServiceDuration();
+
+            // The last service of a one way trip ends within the shift
+            boolean isLastStop = i + 1 == solutions.size() || solutions.get(i + 1).getOrigin() == depot;
+            if (!isRoundTrip && isLastStop)
+                assertTrue(message + ": done after the shift", departure <= vehicle.getShiftEnd() + 1e-6);
+
+        }
+
+        // The windows actually constrained the trips
+        assertTrue(message + ": no wait", waits > 0);
+        assertTrue(message + ": nothing served", countServed(matrix, solutions) > 0);
+
+    }
+
+    private static int countServed(IndexedMatrix matrix, List<Solution> solutions) {
+
+        int served = 0;
+        for (Solution solution : solutions)
+            if (solution.getDestination() != matrix.getLocation(0))
+                served++;
+
+        return served;
+
+    }
+
+}
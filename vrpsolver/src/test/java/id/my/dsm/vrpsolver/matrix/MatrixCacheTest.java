@@ -0,0 +1,189 @@
+package id.my.dsm.vrpsolver.matrix;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.TestInstances;
+import id.my.dsm.vrpsolver.enums.DistancesMethod;
+import id.my.dsm.vrpsolver.model.Location;
+import id.my.dsm.vrpsolver.model.MatrixElement;
+
+import static org.junit.Assert.*;
+
+public class MatrixCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void samePlaces_areNotLoadedAgain() {
+
+        List<Location> places = TestInstances.createPlaces(30, 1);
+        CountingLoader loader = new CountingLoader(places);
+        MatrixCache cache = new MatrixCache();
+
+        assertDistances(loader, places, cache.get(places, DistancesMethod.AIR, loader));
+        assertEquals(1, loader.calls);
+
+        // Any order of the same places is a hit
+        List<Location> shuffled = new ArrayList<>(places);
+        Collections.reverse(shuffled);
+
+        assertDistances(loader, shuffled, cache.get(shuffled, DistancesMethod.AIR, loader));
+        assertEquals(1, loader.calls);
+
+        // Another method is another matrix
+        cache.get(places, DistancesMethod.TRAVEL, loader);
+        assertEquals(2, loader.calls);
+
+    }
+
+    @Test
+    public void sharedPlaces_onlyLoadTheMissingRowsAndColumns() {
+
+        List<Location> all = TestInstances.createPlaces(40, 2);
+        List<Location> first = all.subList(0, 30);
+        List<Location> second = new ArrayList<>(all.subList(10, 40));
+        second.add(0, all.get(0));
+
+        CountingLoader loader = new CountingLoader(all);
+        MatrixCache cache = new MatrixCache();
+
+        cache.get(first, DistancesMethod.AIR, loader);
+        loader.pairs.clear();
+
+        DistanceMatrix matrix = cache.get(second, DistancesMethod.AIR, loader);
+        assertDistances(loader, second, matrix);
+
+        // Rows of the 10 new places, then their columns from the 21 known ones
+        assertEquals(3, loader.calls);
+        assertEquals(10 * second.size() + 21 * 10, loader.pairs.size());
+
+        HashSet<Location> known = new HashSet<>(first);
+
+        for (String pair : loader.pairs) {
+            String[] ids = pair.split(">");
+            assertFalse("loaded a known pair " + pair, known.contains(loader.get(ids[0])) && known.contains(loader.get(ids[1])));
+        }
+
+    }
+
+    @Test
+    public void leastRecentlyUsed_isEvictedByCells() {
+
+        List<Location> all = TestInstances.createPlaces(60, 3);
+        List<Location> a = all.subList(0, 20);
+        List<Location> b = all.subList(20, 40);
+        List<Location> c = all.subList(40, 60);
+
+        CountingLoader loader = new CountingLoader(all);
+
+        // Room for two matrices of 20 places
+        MatrixCache cache = new MatrixCache(2 * 20 * 20);
+
+        cache.get(a, DistancesMethod.AIR, loader);
+        cache.get(b, DistancesMethod.AIR, loader);
+        cache.get(a, DistancesMethod.AIR, loader); // b is now the least recently used
+        cache.get(c, DistancesMethod.AIR, loader);
+        assertEquals(3, loader.calls);
+
+        cache.get(a, DistancesMethod.AIR, loader);
+        cache.get(c, DistancesMethod.AIR, loader);
+        assertEquals(3, loader.calls);
+
+        cache.get(b, DistancesMethod.AIR, loader);
+        assertEquals(4, loader.calls);
+
+        // Larger than the capacity, never kept
+        cache.get(all, DistancesMethod.TRAVEL, loader);
+        cache.get(all, DistancesMethod.TRAVEL, loader);
+        assertEquals(6, loader.calls);
+
+    }
+
+    @Test
+    public void diskTier_outlivesTheMemoryTier() throws IOException {
+
+        List<Location> places = TestInstances.createPlaces(30, 4);
+        CountingLoader loader = new CountingLoader(places);
+        File directory = folder.newFolder("matrices");
+
+        MatrixCache cache = new MatrixCache(MatrixCache.DEFAULT_CAPACITY, directory, MatrixCache.DEFAULT_MAX_FILES);
+        cache.get(places, DistancesMethod.AIR, loader);
+        cache.clear();
+
+        assertDistances(loader, places, cache.get(places, DistancesMethod.AIR, loader));
+        assertEquals(1, loader.calls);
+
+        // A new cache on the same directory, as after a restart
+        MatrixCache restarted = new MatrixCache(MatrixCache.DEFAULT_CAPACITY, directory, MatrixCache.DEFAULT_MAX_FILES);
+        assertDistances(loader, places, restarted.get(places, DistancesMethod.AIR, loader));
+        assertEquals(1, loader.calls);
+
+    }
+
+    private static void assertDistances(CountingLoader loader, List<Location> places, DistanceMatrix matrix) {
+
+        assertEquals(places.size(), matrix.size());
+
+        for (int i = 0; i < places.size(); i++)
+            for (int j = 0; j < places.size(); j++)
+                assertEquals(i == j ? 0 : loader.getDistance(places.get(i), places.get(j)), matrix.getDistance(i, j), 0);
+
+    }
+
+    /**
+     * Distinct asymmetric distances from the index of each place, counting what is asked
+     */
+    private static final class CountingLoader implements MatrixCache.Loader {
+
+        final List<Location> places;
+        final List<String> pairs = new ArrayList<>();
+        int calls = 0;
+
+        CountingLoader(List<Location> places) {
+            this.places = places;
+        }
+
+        double getDistance(Location origin, Location destination) {
+            return 1000 * places.indexOf(origin) + places.indexOf(destination) + 1;
+        }
+
+        Location get(String id) {
+            for (Location location : places)
+                if (location.getId().equals(id))
+                    return location;
+            return null;
+        }
+
+        @NonNull
+        @Override
+        public List<MatrixElement> load(@NonNull List<Location> origins, @NonNull List<Location> destinations, @NonNull DistancesMethod distancesMethod) {
+
+            calls++;
+            List<MatrixElement> matrixElements = new ArrayList<>();
+
+            for (Location origin : origins) {
+                for (Location destination : destinations) {
+                    pairs.add(origin.getId() + ">" + destination.getId());
+                    matrixElements.add(new MatrixElement(origin, destination, getDistance(origin, destination)));
+                }
+            }
+
+            return matrixElements;
+
+        }
+
+    }
+
+}
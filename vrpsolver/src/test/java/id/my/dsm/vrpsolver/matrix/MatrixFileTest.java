@@ -0,0 +1,149 @@
+package id.my.dsm.vrpsolver.matrix;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.TestInstances;
+import id.my.dsm.vrpsolver.model.LatLngAlt;
+import id.my.dsm.vrpsolver.model.Location;
+
+import static org.junit.Assert.*;
+
+public class MatrixFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeThenMap_float64() throws IOException {
+        assertRoundTrip(false, 0);
+    }
+
+    @Test
+    public void writeThenMap_float32() throws IOException {
+        // float32 keeps 24 bits of mantissa
+        assertRoundTrip(true, 1e-6);
+    }
+
+    @Test
+    public void readIds_inRowOrder() throws IOException {
+
+        List<Location> places = TestInstances.createPlaces(20, 2);
+        File file = folder.newFile("ids.dsmx");
+
+        MatrixFile.write(new HaversineMatrixBuilder(places).build(), file, false);
+        List<String> ids = MatrixFile.readIds(file);
+
+        assertEquals(places.size(), ids.size());
+        for (int i = 0; i < places.size(); i++)
+            assertEquals(places.get(i).getId(), ids.get(i));
+
+    }
+
+    @Test
+    public void corruptHeader_throwsIOException() throws IOException {
+
+        List<Location> places = TestInstances.createPlaces(20, 3);
+
+        // Magic, version, size past the payload, bytes per distance, payload offset inside the header
+        long[][] corruptions = {{0, 0x12345678}, {4, 99}, {8, 1000}, {12, 3}, {16, 8}};
+
+        for (long[] corruption : corruptions) {
+
+            File file = folder.newFile("corrupt-" + corruption[0] + ".dsmx");
+            MatrixFile.write(new HaversineMatrixBuilder(places).build(), file, false);
+
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                randomAccessFile.seek(corruption[0]);
+                randomAccessFile.write(toLittleEndian((int) corruption[1]));
+            } finally {
+                randomAccessFile.close();
+            }
+
+            try {
+                MatrixFile.map(file, places);
+                fail("no IOException at byte " + corruption[0]);
+            } catch (IOException expected) {
+            }
+
+        }
+
+        // Truncated payload
+        File file = folder.newFile("truncated.dsmx");
+        MatrixFile.write(new HaversineMatrixBuilder(places).build(), file, false);
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(randomAccessFile.length() - 8);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        try {
+            MatrixFile.map(file, places);
+            fail("no IOException on a truncated file");
+        } catch (IOException expected) {
+        }
+
+    }
+
+    private void assertRoundTrip(boolean isSinglePrecision, double relativeDelta) throws IOException {
+
+        List<Location> places = TestInstances.createPlaces(50, 1);
+        DistanceMatrix matrix = DistanceMatrix.fromMatrix(new HaversineMatrixBuilder(places).build());
+
+        // A few missing pairs
+        matrix.setDistance(3, 7, Double.POSITIVE_INFINITY);
+        matrix.setDistance(7, 3, Double.POSITIVE_INFINITY);
+        matrix.setDistance(10, 0, Double.POSITIVE_INFINITY);
+
+        File file = folder.newFile(isSinglePrecision ? "float32.dsmx" : "float64.dsmx");
+        MatrixFile.write(matrix, file, isSinglePrecision);
+
+        // Mapped in another order, with a place the file does not know
+        List<Location> mappedPlaces = new ArrayList<>(places);
+        Collections.reverse(mappedPlaces);
+        Location unknown = new Location(new LatLngAlt(-6.3, 106.7), Location.Profile.DESTINATION, 1);
+        mappedPlaces.add(unknown);
+
+        MappedDistanceMatrix mapped = MatrixFile.map(file, mappedPlaces);
+
+        assertEquals(mappedPlaces.size(), mapped.size());
+
+        for (int i = 0; i < places.size(); i++) {
+            for (int j = 0; j < places.size(); j++) {
+
+                double expected = matrix.getDistance(i, j);
+                double actual = mapped.getDistance(mapped.indexOf(places.get(i)), mapped.indexOf(places.get(j)));
+
+                if (Double.isInfinite(expected))
+                    assertEquals(Double.POSITIVE_INFINITY, actual, 0);
+                else
+                    assertEquals(expected, actual, expected * relativeDelta);
+
+            }
+        }
+
+        int u = mapped.indexOf(unknown);
+
+        for (int i = 0; i < mapped.size(); i++) {
+            assertEquals(i == u ? 0 : Double.POSITIVE_INFINITY, mapped.getDistance(u, i), 0);
+            assertEquals(i == u ? 0 : Double.POSITIVE_INFINITY, mapped.getDistance(i, u), 0);
+        }
+
+    }
+
+    private static byte[] toLittleEndian(int value) {
+        return new byte[]{(byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24)};
+    }
+
+}
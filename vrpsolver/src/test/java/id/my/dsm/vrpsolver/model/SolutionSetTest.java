@@ -0,0 +1,116 @@
+package id.my.dsm.vrpsolver.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import id.my.dsm.vrpsolver.TestInstances;
+import id.my.dsm.vrpsolver.engine.NearestNeighborEngine;
+import id.my.dsm.vrpsolver.matrix.HaversineMatrixBuilder;
+
+import static org.junit.Assert.*;
+
+public class SolutionSetTest {
+
+    @Test
+    public void vehicleSolutions_matchFilterByVehicleId() {
+
+        SolutionSet solutions = createSolutionSet();
+        List<String> vehicleIds = new ArrayList<>(solutions.getVehicleIds());
+
+        assertTrue(vehicleIds.size() > 1);
+        assertVehicleSolutions(solutions);
+
+        List<Solution> view = solutions.getVehicleSolutions(vehicleIds.get(0));
+
+        // Empty a trip, hand another one to the other vehicle
+        solutions.setTrip(0, Collections.<Solution>emptyList());
+        solutions.setTrip(solutions.getTripCount() - 1, withVehicleId(solutions.getTrip(solutions.getTripCount() - 1), vehicleIds.get(0)));
+
+        assertVehicleSolutions(solutions);
+        assertEquals(solutions.getVehicleSolutions(vehicleIds.get(0)), view);
+
+    }
+
+    @Test
+    public void totals_followEdits() {
+
+        SolutionSet solutions = createSolutionSet();
+        SolutionSet.Totals tripTotals = solutions.getTripTotals(1);
+        List<Solution> legs = solutions.getTrip(2);
+
+        solutions.setTrip(1, legs.subList(0, 1));
+
+        assertSame(tripTotals, solutions.getTripTotals(1));
+        assertEquals(legs.get(0).getDistance(), tripTotals.getDistance(), 1e-9);
+        assertEquals(1, tripTotals.getStopCount());
+
+    }
+
+    @Test
+    public void emptiedVehicle_isNotListed() {
+
+        SolutionSet solutions = createSolutionSet();
+        String vehicleId = solutions.getTripVehicleId(solutions.getTripCount() - 1);
+        SolutionSet.Totals vehicleTotals = solutions.getVehicleTotals(vehicleId);
+
+        for (int trip : new ArrayList<>(solutions.getVehicleTrips(vehicleId)))
+            solutions.setTrip(trip, Collections.<Solution>emptyList());
+
+        assertFalse(solutions.getVehicleIds().contains(vehicleId));
+        assertNull(solutions.getVehicleTotals(vehicleId));
+        assertTrue(solutions.getVehicleSolutions(vehicleId).isEmpty());
+        assertEquals(0, vehicleTotals.getStopCount());
+        assertEquals(0, vehicleTotals.getDistance(), 1e-9);
+
+    }
+
+    /**
+     * Trips of two vehicles, the small ones first
+     */
+    private static SolutionSet createSolutionSet() {
+
+        List<Location> places = TestInstances.createPlaces(40, 1);
+        List<Vehicle> vehicles = new ArrayList<>();
+        vehicles.add(new Vehicle.Builder().withDefault(true).withCapacity(15).withDispatchLimit(3).build());
+        vehicles.add(new Vehicle.Builder().withCapacity(20).withDispatchLimit(20).build());
+
+        return new SolutionSet(NearestNeighborEngine.solve(new HaversineMatrixBuilder(places).build(), 0, vehicles, true));
+
+    }
+
+    private static List<Solution> withVehicleId(List<Solution> legs, String vehicleId) {
+
+        List<Solution> copies = new ArrayList<>();
+
+        for (Solution leg : legs) {
+            Solution copy = new Solution(leg.getOrigin(), leg.getDestination(), leg.getDistance());
+            copy.setVehicleId(vehicleId);
+            copies.add(copy);
+        }
+
+        return copies;
+
+    }
+
+    private static void assertVehicleSolutions(SolutionSet solutions) {
+
+        List<Solution> legs = new ArrayList<>(solutions);
+
+        for (String vehicleId : solutions.getVehicleIds()) {
+
+            List<Solution> expected = Solution.Toolbox.filterByVehicleId(legs, vehicleId);
+            List<Solution> actual = solutions.getVehicleSolutions(vehicleId);
+
+            assertEquals(expected.size(), actual.size());
+
+            for (int i = 0; i < expected.size(); i++)
+                assertSame(expected.get(i), actual.get(i));
+
+        }
+
+    }
+
+}
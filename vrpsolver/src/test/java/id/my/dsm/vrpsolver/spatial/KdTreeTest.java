@@ -0,0 +1,203 @@
+package id.my.dsm.vrpsolver.spatial;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import id.my.dsm.vrpsolver.matrix.HaversineMatrixBuilder;
+import id.my.dsm.vrpsolver.model.LatLngAlt;
+import id.my.dsm.vrpsolver.model.Location;
+
+import static org.junit.Assert.*;
+
+public class KdTreeTest {
+
+    @Test
+    public void findNearest_matchesBruteForce() {
+
+        List<Location> places = createPlaces(500, 1);
+        KdTree tree = new KdTree(places);
+        Random random = new Random(2);
+
+        for (int query = 0; query < 200; query++) {
+            int from = random.nextInt(places.size());
+            double capacity = 1 + random.nextInt(5);
+            assertEquals(findNearest(places, new boolean[places.size()], from, capacity), tree.findNearest(from, capacity));
+        }
+
+    }
+
+    @Test
+    public void remove_isNeverReturnedAgain() {
+
+        List<Location> places = createPlaces(300, 3);
+        KdTree tree = new KdTree(places);
+        boolean[] removed = new boolean[places.size()];
+
+        // Walk like Nearest Neighbor, removing each stop once visited
+        int current = 0;
+        tree.remove(current);
+        removed[current] = true;
+
+        for (int step = 1; step < places.size(); step++) {
+
+            int next = tree.findNearest(current, Double.POSITIVE_INFINITY);
+
+            assertEquals(findNearest(places, removed, current, Double.POSITIVE_INFINITY), next);
+            assertFalse(removed[next]);
+
+            tree.remove(next);
+            removed[next] = true;
+            assertTrue(tree.isRemoved(next));
+
+            // Removing twice is a no-op
+            tree.remove(next);
+            current = next;
+
+        }
+
+        assertEquals(-1, tree.findNearest(current, Double.POSITIVE_INFINITY));
+
+    }
+
+    @Test
+    public void findNearest_prunesOnMinimumDemand() {
+
+        List<Location> places = createPlaces(400, 4);
+        KdTree tree = new KdTree(places);
+        boolean[] removed = new boolean[places.size()];
+
+        // Remove every location of demand 1, then a capacity of 1 fits nothing left
+        for (int i = 0; i < places.size(); i++) {
+            if (places.get(i).getDemands() <= 1) {
+                tree.remove(i);
+                removed[i] = true;
+            }
+        }
+
+        assertEquals(-1, tree.findNearest(0, 1));
+
+        for (double capacity = 2; capacity <= 5; capacity++) {
+
+            int nearest = tree.findNearest(0, capacity);
+
+            assertEquals(findNearest(places, removed, 0, capacity), nearest);
+            assertTrue(places.get(nearest).getDemands() <= capacity);
+
+        }
+
+    }
+
+    @Test
+    public void findNearest_breaksTiesByLowestIndex() {
+
+        // Four locations at the same distance from the center, listed out of tree order
+        List<Location> places = new ArrayList<>();
+        places.add(new Location(new LatLngAlt(0, 0), Location.Profile.SOURCE));
+        places.add(new Location(new LatLngAlt(0, 0.01), Location.Profile.DESTINATION, 1));
+        places.add(new Location(new LatLngAlt(0, -0.01), Location.Profile.DESTINATION, 1));
+        places.add(new Location(new LatLngAlt(0.01, 0), Location.Profile.DESTINATION, 1));
+        places.add(new Location(new LatLngAlt(-0.01, 0), Location.Profile.DESTINATION, 1));
+
+        KdTree tree = new KdTree(places);
+        tree.remove(0);
+
+        assertEquals(1, tree.findNearest(0, 1));
+
+        tree.remove(1);
+        assertEquals(2, tree.findNearest(0, 1));
+
+        // Duplicate coordinates
+        places.add(new Location(new LatLngAlt(0, 0.01), Location.Profile.DESTINATION, 1));
+        places.add(new Location(new LatLngAlt(0, 0.01), Location.Profile.DESTINATION, 1));
+        tree = new KdTree(places);
+        tree.remove(1);
+
+        assertEquals(5, tree.findNearest(1, 1));
+
+    }
+
+    @Test
+    public void findNearestK_matchesBruteForce() {
+
+        List<Location> places = createPlaces(500, 5);
+        KdTree tree = new KdTree(places);
+        boolean[] removed = new boolean[places.size()];
+
+        for (int i = 0; i < places.size(); i += 7) {
+            tree.remove(i);
+            removed[i] = true;
+        }
+
+        int[] nearest = new int[12];
+
+        for (int from = 0; from < places.size(); from += 13) {
+
+            double capacity = 1 + from % 5;
+            int count = tree.findNearest(from, capacity, nearest);
+
+            // Brute force, the location itself excluded
+            boolean[] excluded = removed.clone();
+            excluded[from] = true;
+            int[] expected = new int[nearest.length];
+
+            for (int k = 0; k < expected.length; k++) {
+                expected[k] = findNearest(places, excluded, from, capacity);
+                excluded[expected[k]] = true;
+            }
+
+            assertEquals(nearest.length, count);
+            assertArrayEquals(expected, nearest);
+
+        }
+
+        assertEquals(0, tree.findNearest(0, 1, new int[0]));
+
+    }
+
+    /**
+     * Row scan by great-circle distance, ties broken by the lowest index
+     */
+    private static int findNearest(List<Location> places, boolean[] removed, int from, double capacity) {
+
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+
+        for (int i = 0; i < places.size(); i++) {
+
+            if (removed[i] || places.get(i).getDemands() > capacity)
+                continue;
+
+            double distance = HaversineMatrixBuilder.computeDistance(places.get(from).getLatLngAlt(), places.get(i).getLatLngAlt(), false);
+
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+
+        }
+
+        return best;
+
+    }
+
+    private static List<Location> createPlaces(int size, long seed) {
+
+        Random random = new Random(seed);
+        ArrayList<Location> places = new ArrayList<>();
+
+        for (int i = 0; i < size; i++)
+            places.add(new Location(
+                    new LatLngAlt(-6.2 + random.nextGaussian() * 0.1, 106.8 + random.nextGaussian() * 0.1),
+                    Location.Profile.DESTINATION,
+                    1 + random.nextInt(5)
+            ));
+
+        return places;
+
+    }
+
+}